@@ -38,8 +38,10 @@ import java.util.Set;
 import java.util.TreeSet;
 
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
+import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.projectforge.access.AccessType;
@@ -54,6 +56,9 @@ import org.projectforge.core.ConfigurationParam;
 import org.projectforge.core.QueryFilter;
 import org.projectforge.task.TaskDO;
 import org.projectforge.task.TaskDao;
+import org.projectforge.task.TaskIdSets;
+import org.projectforge.task.TaskNode;
+import org.projectforge.user.PFUserContext;
 import org.projectforge.user.PFUserDO;
 
 /**
@@ -67,6 +72,11 @@ public class AddressDao extends BaseDao<AddressDO>
 
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(AddressDao.class);
 
+  /**
+   * Sort properties supported by paged list queries.
+   */
+  private static final String[] PAGEABLE_SORT_PROPERTIES = { "name", "firstName", "organization", "lastUpdate"};
+
   private Configuration configuration;
 
   private TaskDao taskDao;
@@ -139,7 +149,6 @@ public class AddressDao extends BaseDao<AddressDO>
     } else {
       myFilter = new AddressFilter(filter);
     }
-    final QueryFilter queryFilter = new QueryFilter(myFilter);
     if (StringUtils.isBlank(myFilter.getSearchString()) == true) {
       if (myFilter.isDeleted() == false) {
         if (myFilter.isNewest() == true) {
@@ -155,6 +164,42 @@ public class AddressDao extends BaseDao<AddressDO>
         myFilter.setSearchString("*" + myFilter.getSearchString() + "*");
       }
     }
+    final QueryFilter queryFilter = createQueryFilter(myFilter);
+    final List<AddressDO> result = getList(queryFilter);
+    if (myFilter.isDoublets() == true) {
+      final HashSet<String> fullnames = new HashSet<String>();
+      final HashSet<String> doubletFullnames = new HashSet<String>();
+      for (final AddressDO address : result) {
+        final String fullname = getNormalizedFullname(address);
+        if (fullnames.contains(fullname) == true) {
+          doubletFullnames.add(fullname);
+        }
+        fullnames.add(fullname);
+      }
+      final List<AddressDO> doublets = new LinkedList<AddressDO>();
+      for (final AddressDO address : result) {
+        if (doubletFullnames.contains(getNormalizedFullname(address)) == true) {
+          doublets.add(address);
+        }
+      }
+      return doublets;
+    }
+    return result;
+  }
+
+  /**
+   * @see org.projectforge.core.BaseDao#createQueryFilter(org.projectforge.core.BaseSearchFilter)
+   */
+  @Override
+  public QueryFilter createQueryFilter(final BaseSearchFilter filter)
+  {
+    final AddressFilter myFilter;
+    if (filter instanceof AddressFilter) {
+      myFilter = (AddressFilter) filter;
+    } else {
+      myFilter = new AddressFilter(filter);
+    }
+    final QueryFilter queryFilter = new QueryFilter(myFilter);
     if (myFilter.isFilter() == true) {
       // Proceed contact status:
       // Use filter only for non deleted entries:
@@ -199,26 +244,79 @@ public class AddressDao extends BaseDao<AddressDO>
       }
     }
     queryFilter.addOrder(Order.asc("name"));
-    final List<AddressDO> result = getList(queryFilter);
-    if (myFilter.isDoublets() == true) {
-      final HashSet<String> fullnames = new HashSet<String>();
-      final HashSet<String> doubletFullnames = new HashSet<String>();
-      for (final AddressDO address : result) {
-        final String fullname = getNormalizedFullname(address);
-        if (fullnames.contains(fullname) == true) {
-          doubletFullnames.add(fullname);
-        }
-        fullnames.add(fullname);
+    return queryFilter;
+  }
+
+  /**
+   * Restricts the addresses to the tasks the logged-in user has select access to. Addresses without task are assigned to the default task.
+   * @see #hasAccess(PFUserDO, AddressDO, AddressDO, OperationType, boolean)
+   */
+  @Override
+  protected void addSelectAccessRestrictions(final QueryFilter queryFilter)
+  {
+    final PFUserDO user = PFUserContext.getUser();
+    final Criterion taskRestriction = createIdRestriction("task.id", getSelectableTaskIds(user));
+    if (taskRestriction == null) {
+      return;
+    }
+    final Integer defaultTaskId = getDefaultTaskId();
+    if (defaultTaskId != null && accessChecker.hasPermission(user, defaultTaskId, AccessType.TASKS, OperationType.SELECT, false) == true) {
+      queryFilter.add(Restrictions.or(Restrictions.isNull("task.id"), taskRestriction));
+    } else {
+      queryFilter.add(taskRestriction);
+    }
+  }
+
+  /**
+   * @return The tasks with select access of the given user (cached by the task tree).
+   */
+  private TaskIdSets getSelectableTaskIds(final PFUserDO user)
+  {
+    return taskDao.getTaskTree().getTaskIdSets("AddressDao.select:" + user.getId(), userGroupCache.getUserGroups(user),
+        new TaskIdSets.Builder() {
+          @Override
+          public void build(final TaskNode rootNode, final TaskIdSets idSets)
+          {
+            addSelectableTaskIds(user, rootNode, idSets);
+          }
+        });
+  }
+
+  private void addSelectableTaskIds(final PFUserDO user, final TaskNode node, final TaskIdSets idSets)
+  {
+    if (accessChecker.hasPermission(user, node.getId(), AccessType.TASKS, OperationType.SELECT, false) == true) {
+      idSets.addAllowedId(node.getId());
+    } else {
+      idSets.addDeniedId(node.getId());
+    }
+    if (node.hasChilds() == true) {
+      for (final TaskNode child : node.getChilds()) {
+        addSelectableTaskIds(user, child, idSets);
       }
-      final List<AddressDO> doublets = new LinkedList<AddressDO>();
-      for (final AddressDO address : result) {
-        if (doubletFullnames.contains(getNormalizedFullname(address)) == true) {
-          doublets.add(address);
-        }
+    }
+  }
+
+  /**
+   * Paged list queries aren't supported for full text searches, doublets, newest entries, favorites and if the select access restriction of
+   * the logged-in user is too large (see {@link #isIdRestrictionSupported(TaskIdSets)}).
+   * @see org.projectforge.core.BaseDao#isPageable(org.projectforge.core.BaseSearchFilter, java.lang.String)
+   */
+  @Override
+  public boolean isPageable(final BaseSearchFilter filter, final String sortProperty)
+  {
+    if (filter.isSearchNotEmpty() == true || filter.isUseModificationFilter() == true) {
+      return false;
+    }
+    if (filter instanceof AddressFilter) {
+      final AddressFilter myFilter = (AddressFilter) filter;
+      if (myFilter.isDoublets() == true || (myFilter.isDeleted() == false && (myFilter.isNewest() == true || myFilter.isMyFavorites() == true))) {
+        return false;
       }
-      return doublets;
     }
-    return result;
+    if (ArrayUtils.contains(PAGEABLE_SORT_PROPERTIES, sortProperty) == false) {
+      return false;
+    }
+    return isIdRestrictionSupported(getSelectableTaskIds(PFUserContext.getUser()));
   }
 
   private String getNormalizedFullname(final AddressDO address)
@@ -35,7 +35,6 @@ import org.apache.commons.lang.Validate;
 import org.projectforge.common.DateHelper;
 import org.projectforge.common.DateHolder;
 import org.projectforge.common.DatePrecision;
-import org.projectforge.core.UserException;
 
 
 /**
@@ -79,34 +78,16 @@ public class DayHolder extends DateHolder
     if (to.before(from) == true) {
       return BigDecimal.ZERO;
     }
-    final DayHolder day = new DayHolder(from);
+    final Holidays holidays = Holidays.getInstance();
+    final int fromYear = from.getYear();
+    final int toYear = to.getYear();
     BigDecimal numberOfWorkingDays = BigDecimal.ZERO;
-    int numberOfFullWorkingDays = 0;
-    int dayCounter = 1;
-    if (day.isWorkingDay() == true) {
-      final BigDecimal workFraction = day.getWorkFraction();
-      if (workFraction != null) {
-        numberOfWorkingDays = numberOfWorkingDays.add(day.getWorkFraction());
-      } else {
-        numberOfFullWorkingDays++;
-      }
+    for (int year = fromYear; year <= toYear; year++) {
+      final WorkingDayIndex index = holidays.getWorkingDayIndex(year);
+      final int fromDayOfYear = year == fromYear ? from.getDayOfYear() : 1;
+      final int toDayOfYear = year == toYear ? to.getDayOfYear() : index.getNumberOfDays();
+      numberOfWorkingDays = index.addWorkingDays(numberOfWorkingDays, fromDayOfYear, toDayOfYear);
     }
-    do {
-      day.add(Calendar.DAY_OF_MONTH, 1);
-      if (dayCounter++ > 740) { // Endless loop protection, time period greater 2 years.
-        throw new UserException(
-            "getNumberOfWorkingDays does not support calculation of working days for a time period greater than two years!");
-      }
-      if (day.isWorkingDay() == true) {
-        final BigDecimal workFraction = day.getWorkFraction();
-        if (workFraction != null) {
-          numberOfWorkingDays = numberOfWorkingDays.add(day.getWorkFraction());
-        } else {
-          numberOfFullWorkingDays++;
-        }
-      }
-    } while (day.isSameDay(to) == false);
-    numberOfWorkingDays = numberOfWorkingDays.add(new BigDecimal(numberOfFullWorkingDays));
     return numberOfWorkingDays;
   }
 
@@ -51,6 +51,9 @@ public class Holidays
   /** Contains all holidays of a year. Key is the year. Value is a map of all holidays in the year with the day of the year as key. */
   private Map<Integer, Map<Integer, Holiday>> holidaysByYear = new HashMap<Integer, Map<Integer, Holiday>>();
 
+  /** The working day index by year. */
+  private Map<Integer, WorkingDayIndex> workingDayIndexByYear = new HashMap<Integer, WorkingDayIndex>();
+
   private Map<HolidayDefinition, ConfigureHoliday> reconfiguredHolidays = new HashMap<HolidayDefinition, ConfigureHoliday>();
 
   private ConfigXml xmlConfiguration;
@@ -183,6 +186,7 @@ public class Holidays
           }
         }
         holidaysByYear.clear();
+        workingDayIndexByYear.clear();
       }
     }
     Map<Integer, Holiday> holidays = holidaysByYear.get(new Integer(year));
@@ -193,6 +197,21 @@ public class Holidays
     return holidays;
   }
 
+  /**
+   * @param year
+   * @return The index of all working days of the given year (built on first access).
+   */
+  public synchronized WorkingDayIndex getWorkingDayIndex(final int year)
+  {
+    final Map<Integer, Holiday> holidays = getHolidays(year);
+    WorkingDayIndex index = workingDayIndexByYear.get(year);
+    if (index == null) {
+      index = new WorkingDayIndex(year, holidays);
+      workingDayIndexByYear.put(year, index);
+    }
+    return index;
+  }
+
   public boolean isHoliday(int year, int dayOfYear)
   {
     return (getHolidays(year).containsKey(dayOfYear) == true);
@@ -0,0 +1,161 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.calendar;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Index of the working days of one year, built from the {@link Holidays} (including the holidays configured in config.xml). Working days
+ * are all days except weekends and non-working holidays (the same as {@link DayHolder#isWorkingDay()}).<br/>
+ * The number of working days up to every day of the year is stored as prefix sum, so the number of working days of a time period and the
+ * n-th working day of the year are simple array look-ups. Holidays with a work fraction (e. g. Christmas eve) are stored separately.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * 
+ */
+public class WorkingDayIndex
+{
+  private final int year;
+
+  /**
+   * Number of working days from the first day of the year up to the day of year (index), index 0 is 0.
+   */
+  private final int[] workingDays;
+
+  /**
+   * The day of year of every working day of this year (n-th working day at index n - 1).
+   */
+  private final int[] workingDayOfYear;
+
+  /**
+   * The working days with a work fraction (sorted by day of year).
+   */
+  private final int[] fractionDays;
+
+  private final BigDecimal[] fractions;
+
+  WorkingDayIndex(final int year, final Map<Integer, Holiday> holidays)
+  {
+    this.year = year;
+    final Calendar cal = new GregorianCalendar(year, Calendar.JANUARY, 1);
+    final int numberOfDays = cal.getActualMaximum(Calendar.DAY_OF_YEAR);
+    int dayOfWeek = cal.get(Calendar.DAY_OF_WEEK);
+    workingDays = new int[numberOfDays + 1];
+    final int[] positions = new int[numberOfDays];
+    final List<Integer> fractionDayList = new ArrayList<Integer>();
+    final List<BigDecimal> fractionList = new ArrayList<BigDecimal>();
+    int counter = 0;
+    for (int dayOfYear = 1; dayOfYear <= numberOfDays; dayOfYear++) {
+      if (dayOfWeek != Calendar.SATURDAY && dayOfWeek != Calendar.SUNDAY) {
+        final Holiday holiday = holidays.get(dayOfYear);
+        if (holiday == null || holiday.isWorkingDay() == true) {
+          positions[counter++] = dayOfYear;
+          if (holiday != null && holiday.getWorkFraction() != null) {
+            fractionDayList.add(dayOfYear);
+            fractionList.add(holiday.getWorkFraction());
+          }
+        }
+      }
+      workingDays[dayOfYear] = counter;
+      dayOfWeek = dayOfWeek == Calendar.SATURDAY ? Calendar.SUNDAY : dayOfWeek + 1;
+    }
+    workingDayOfYear = new int[counter];
+    System.arraycopy(positions, 0, workingDayOfYear, 0, counter);
+    fractionDays = new int[fractionDayList.size()];
+    for (int i = 0; i < fractionDays.length; i++) {
+      fractionDays[i] = fractionDayList.get(i);
+    }
+    fractions = fractionList.toArray(new BigDecimal[fractionList.size()]);
+  }
+
+  public int getYear()
+  {
+    return year;
+  }
+
+  /**
+   * @return 365 or 366.
+   */
+  public int getNumberOfDays()
+  {
+    return workingDays.length - 1;
+  }
+
+  /**
+   * @return The number of working days of the whole year.
+   */
+  public int getNumberOfWorkingDays()
+  {
+    return workingDayOfYear.length;
+  }
+
+  /**
+   * @param dayOfYear 0 (no day) up to the number of days of the year.
+   * @return The number of working days from the first day of the year up to the given day (inclusive).
+   */
+  public int getNumberOfWorkingDays(final int dayOfYear)
+  {
+    return workingDays[dayOfYear];
+  }
+
+  /**
+   * @param number Starting with 1 (first working day of the year) up to {@link #getNumberOfWorkingDays()}.
+   * @return The day of year of the given working day.
+   */
+  public int getDayOfYearOfWorkingDay(final int number)
+  {
+    Validate.isTrue(number >= 1 && number <= workingDayOfYear.length);
+    return workingDayOfYear[number - 1];
+  }
+
+  /**
+   * Adds the working days of the given time period to the given sum: Full working days count 1, holidays with a work fraction count with
+   * their work fraction.
+   * @param sum
+   * @param fromDayOfYear First day (inclusive).
+   * @param toDayOfYear Last day (inclusive).
+   * @return The new sum.
+   */
+  public BigDecimal addWorkingDays(BigDecimal sum, final int fromDayOfYear, final int toDayOfYear)
+  {
+    if (toDayOfYear < fromDayOfYear) {
+      return sum;
+    }
+    int numberOfFullWorkingDays = workingDays[toDayOfYear] - workingDays[fromDayOfYear - 1];
+    for (int i = 0; i < fractionDays.length; i++) {
+      if (fractionDays[i] >= fromDayOfYear && fractionDays[i] <= toDayOfYear) {
+        sum = sum.add(fractions[i]);
+        numberOfFullWorkingDays--;
+      }
+    }
+    return sum.add(new BigDecimal(numberOfFullWorkingDays));
+  }
+}
@@ -23,9 +23,22 @@
 
 package org.projectforge.common;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * This class is usefull, if the stored object of derived classes has to be cached. After reaching expireTime during a request, the method
- * refresh will be called.
+ * refresh will be called.<br/>
+ * If asyncRefresh is enabled, an expired cache (expireTime reached) will be refreshed by a background thread and all readers will get the
+ * previous data until the refresh is finished. Therefore the derived class has to build its data in local variables and has to assign them
+ * at the end of {@link #refresh()} (volatile fields recommended). An explicit {@link #setExpired()} will still be handled synchronously, so
+ * any modification is visible on next use.<br/>
+ * Refreshes are serialized by a dedicated lock, not by the monitor of the cache. So methods of derived classes synchronized on the cache
+ * aren't blocked by a running refresh, but {@link #refresh()} must not modify data in use by other threads (build new data and assign it
+ * at the end). Derived classes should call {@link #checkRefresh()} before entering their own synchronized blocks and should register
+ * direct modifications of the cached data via {@link #afterModification(Runnable)}.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
 public abstract class AbstractCache
@@ -40,11 +53,24 @@ public abstract class AbstractCache
 
   protected long expireTime = 60 * TICKS_PER_MINUTE;
 
-  private transient long timeOfLastRefresh = -1;
+  private transient volatile long timeOfLastRefresh = -1;
+
+  private transient volatile boolean isExpired = true;
+
+  private transient volatile boolean refreshInProgress = false;
+
+  private boolean asyncRefresh = false;
+
+  private final AtomicBoolean asyncRefreshRunning = new AtomicBoolean(false);
+
+  /** Serializes the refreshes (the monitor of this cache is left to the derived classes). */
+  private final ReentrantLock refreshLock = new ReentrantLock();
 
-  private transient boolean isExpired = true;
+  /** The thread running {@link #refresh()}, if any. */
+  private transient volatile Thread refreshThread;
 
-  private transient boolean refreshInProgress = false;
+  /** Modifications done while a refresh is running, replayed on the new data (guarded by this). */
+  private transient List<Runnable> modificationsDuringRefresh;
 
   protected AbstractCache()
   {
@@ -70,6 +96,21 @@ public abstract class AbstractCache
     this.expireTime = expireTime * TICKS_PER_HOUR;
   }
 
+  /**
+   * If true, the cache will be refreshed in background after expireTime is reached and all readers will get the old data until the refresh
+   * is finished. Default is false.
+   * @param asyncRefresh
+   */
+  public void setAsyncRefresh(final boolean asyncRefresh)
+  {
+    this.asyncRefresh = asyncRefresh;
+  }
+
+  public boolean isAsyncRefresh()
+  {
+    return asyncRefresh;
+  }
+
   /**
    * Cache will be refreshed before next use.
    */
@@ -88,27 +129,122 @@ public abstract class AbstractCache
   }
 
   /**
-   * Checks the expire time and calls refresh, if cache is expired.
+   * Checks the expire time and calls refresh, if cache is expired. If asyncRefresh is enabled and the cache isn't explicitly expired, the
+   * refresh will be done in background and this method returns immediately.
    */
-  protected synchronized void checkRefresh()
+  protected void checkRefresh()
+  {
+    if (refreshInProgress == false && this.isExpired == false && System.currentTimeMillis() - this.timeOfLastRefresh <= this.expireTime) {
+      // Nothing to do (no synchronization needed).
+      return;
+    }
+    if (asyncRefresh == true && this.isExpired == false && this.timeOfLastRefresh > 0) {
+      // The current data is only outdated, so use it until the background refresh is finished.
+      startAsyncRefresh();
+      return;
+    }
+    synchronizedRefresh();
+  }
+
+  private void synchronizedRefresh()
   {
-    if (refreshInProgress == true) {
-      // Do nothing because refreshing is already in progress.
+    if (refreshThread == Thread.currentThread()) {
+      // Do nothing because refreshing is already in progress (called by refresh itself).
       return;
     }
-    if (this.isExpired == true || System.currentTimeMillis() - this.timeOfLastRefresh > this.expireTime) {
-      try {
-        refreshInProgress = true;
-        this.timeOfLastRefresh = System.currentTimeMillis();
+    if (Thread.holdsLock(this) == true) {
+      // Called inside a synchronized block of the derived class: don't wait for a running refresh (dead lock, because the refresh
+      // synchronizes on this cache for assigning its data and replaying modifications), the current data is used instead.
+      if (refreshLock.tryLock() == false) {
+        return;
+      }
+    } else {
+      refreshLock.lock();
+    }
+    try {
+      if (this.isExpired == true || System.currentTimeMillis() - this.timeOfLastRefresh > this.expireTime) {
+        try {
+          refreshInProgress = true;
+          refreshThread = Thread.currentThread();
+          // Reset the expired flag before refreshing: any setExpired() call during the refresh forces a further refresh.
+          this.isExpired = false;
+          try {
+            this.refresh();
+          } catch (final Throwable ex) {
+            log.error(ex.getMessage(), ex);
+          }
+          this.timeOfLastRefresh = System.currentTimeMillis();
+        } finally {
+          replayModificationsDuringRefresh();
+        }
+      }
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  private void startAsyncRefresh()
+  {
+    if (asyncRefreshRunning.compareAndSet(false, true) == false) {
+      // Do nothing because the background refresh is already running.
+      return;
+    }
+    final Thread thread = new Thread(getClass().getSimpleName() + "-refresh") {
+      @Override
+      public void run()
+      {
+        try {
+          final long start = System.currentTimeMillis();
+          synchronizedRefresh();
+          log.info("Background refresh of " + AbstractCache.this.getClass().getSimpleName() + " done in "
+              + (System.currentTimeMillis() - start) + "ms.");
+        } finally {
+          asyncRefreshRunning.set(false);
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Should be called by derived classes after modifying the cached data directly (without setExpired) while holding the monitor of this
+   * cache. If a refresh is running in another thread, its result may not contain this modification, therefore the given replay will be
+   * run on the new data after the refresh (synchronized on this cache). The replay has to be idempotent, because the refresh may have
+   * read the modification already.
+   * @param replay
+   */
+  protected synchronized void afterModification(final Runnable replay)
+  {
+    final Thread thread = refreshThread;
+    if (thread == null || thread == Thread.currentThread()) {
+      return;
+    }
+    if (modificationsDuringRefresh == null) {
+      modificationsDuringRefresh = new ArrayList<Runnable>();
+    }
+    modificationsDuringRefresh.add(replay);
+  }
+
+  private synchronized void replayModificationsDuringRefresh()
+  {
+    refreshThread = null;
+    final List<Runnable> replays = modificationsDuringRefresh;
+    modificationsDuringRefresh = null;
+    try {
+      if (replays == null) {
+        return;
+      }
+      log.info("Replaying " + replays.size() + " modification(s) of " + getClass().getSimpleName() + " done while refreshing.");
+      for (final Runnable replay : replays) {
         try {
-          this.refresh();
+          replay.run();
         } catch (final Throwable ex) {
           log.error(ex.getMessage(), ex);
         }
-        this.isExpired = false;
-      } finally {
-        refreshInProgress = false;
       }
+    } finally {
+      refreshInProgress = false;
     }
   }
 
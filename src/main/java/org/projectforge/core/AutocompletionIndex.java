@@ -0,0 +1,246 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.projectforge.common.DateHelper;
+
+/**
+ * In-memory index of the distinct values of one property (e. g. all locations of time sheets) for autocompletion. Each value is stored with
+ * its number of occurrences and the newest modification date of the data objects using this value. The values are found by sub strings
+ * (case insensitive) with help of a tri-gram index and are ranked by their frequency. All methods are thread safe.<br/>
+ * If the index is loaded only with the data objects modified after a given date, occurrences of older data objects are ignored by
+ * {@link #add(String, Date)} and {@link #remove(String, Date)}, because they weren't counted on load.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * @see BaseDao#getAutocompletion(String, String)
+ */
+public class AutocompletionIndex
+{
+  private static final int N = 3;
+
+  /**
+   * Indexes are reloaded after this time, so values of data objects modified before the indexed period are dropped.
+   */
+  public static final long MAX_AGE = DateHelper.MILLIS_DAY;
+
+  /**
+   * Indexes not searched within this time are removed for freeing the memory (and reloaded on demand).
+   */
+  public static final long MAX_IDLE = DateHelper.MILLIS_HOUR;
+
+  private static class Entry
+  {
+    private final String value;
+
+    private final String lowerValue;
+
+    private int count;
+
+    private long lastUpdate;
+
+    private Entry(final String value)
+    {
+      this.value = value;
+      this.lowerValue = StringUtils.lowerCase(value);
+    }
+  }
+
+  private static final Comparator<Entry> FREQUENCY_COMPARATOR = new Comparator<Entry>() {
+    @Override
+    public int compare(final Entry e1, final Entry e2)
+    {
+      if (e1.count != e2.count) {
+        return e1.count > e2.count ? -1 : 1;
+      }
+      return e1.value.compareTo(e2.value);
+    }
+  };
+
+  private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+  private final Map<String, Set<Entry>> ngrams = new HashMap<String, Set<Entry>>();
+
+  private final long indexedSince;
+
+  private final long created = System.currentTimeMillis();
+
+  private volatile long lastSearch = created;
+
+  /**
+   * Index of the values of all data objects.
+   */
+  public AutocompletionIndex()
+  {
+    this(null);
+  }
+
+  /**
+   * @param indexedSince The index contains only the values of data objects modified after this date. If null, all values are indexed.
+   */
+  public AutocompletionIndex(final Date indexedSince)
+  {
+    this.indexedSince = indexedSince != null ? indexedSince.getTime() : Long.MIN_VALUE;
+  }
+
+  /**
+   * Adds an occurrence of the given value.
+   * @param value If blank, nothing will be done.
+   * @param lastUpdate The modification date of the data object using this value.
+   */
+  public synchronized void add(final String value, final Date lastUpdate)
+  {
+    if (StringUtils.isBlank(value) == true || isIndexed(lastUpdate) == false) {
+      return;
+    }
+    Entry entry = entries.get(value);
+    if (entry == null) {
+      entry = new Entry(value);
+      entries.put(value, entry);
+      for (final String ngram : getNGrams(entry.lowerValue)) {
+        Set<Entry> set = ngrams.get(ngram);
+        if (set == null) {
+          set = new HashSet<Entry>();
+          ngrams.put(ngram, set);
+        }
+        set.add(entry);
+      }
+    }
+    ++entry.count;
+    if (lastUpdate != null && lastUpdate.getTime() > entry.lastUpdate) {
+      entry.lastUpdate = lastUpdate.getTime();
+    }
+  }
+
+  /**
+   * Removes an occurrence of the given value. The value itself is removed if no more occurrences exist.
+   * @param value
+   * @param lastUpdate The modification date of the data object using this value (before the modification).
+   */
+  public synchronized void remove(final String value, final Date lastUpdate)
+  {
+    if (value == null || isIndexed(lastUpdate) == false) {
+      return;
+    }
+    final Entry entry = entries.get(value);
+    if (entry == null || --entry.count > 0) {
+      return;
+    }
+    entries.remove(value);
+    for (final String ngram : getNGrams(entry.lowerValue)) {
+      final Set<Entry> set = ngrams.get(ngram);
+      if (set != null) {
+        set.remove(entry);
+        if (set.isEmpty() == true) {
+          ngrams.remove(ngram);
+        }
+      }
+    }
+  }
+
+  /**
+   * @param searchString Sub string to search for (case insensitive).
+   * @param modifiedSince Only values of data objects modified after this date are returned. If null, all values are returned.
+   * @return All values containing the search string ordered by their frequency (descending).
+   */
+  public synchronized List<String> search(final String searchString, final Date modifiedSince)
+  {
+    lastSearch = System.currentTimeMillis();
+    final String str = StringUtils.lowerCase(searchString);
+    Collection<Entry> candidates = entries.values();
+    if (str.length() >= N) {
+      // Use the smallest set of entries containing any n-gram of the search string:
+      for (final String ngram : getNGrams(str)) {
+        final Set<Entry> set = ngrams.get(ngram);
+        if (set == null) {
+          return new ArrayList<String>();
+        }
+        if (set.size() < candidates.size()) {
+          candidates = set;
+        }
+      }
+    }
+    final long minLastUpdate = modifiedSince != null ? modifiedSince.getTime() : Long.MIN_VALUE;
+    final List<Entry> matches = new ArrayList<Entry>();
+    for (final Entry entry : candidates) {
+      if (entry.lastUpdate > minLastUpdate && entry.lowerValue.contains(str) == true) {
+        matches.add(entry);
+      }
+    }
+    Collections.sort(matches, FREQUENCY_COMPARATOR);
+    final List<String> result = new ArrayList<String>(matches.size());
+    for (final Entry entry : matches) {
+      result.add(entry.value);
+    }
+    return result;
+  }
+
+  /**
+   * @return The number of distinct values.
+   */
+  public synchronized int size()
+  {
+    return entries.size();
+  }
+
+  /**
+   * @return true, if this index is older than {@link #MAX_AGE} or wasn't searched within {@link #MAX_IDLE}.
+   */
+  public boolean isExpired()
+  {
+    return isExpired(System.currentTimeMillis());
+  }
+
+  boolean isExpired(final long now)
+  {
+    return now - created > MAX_AGE || now - lastSearch > MAX_IDLE;
+  }
+
+  /**
+   * @return true, if an occurrence with the given modification date is part of this index.
+   */
+  private boolean isIndexed(final Date lastUpdate)
+  {
+    return lastUpdate == null || lastUpdate.getTime() > indexedSince;
+  }
+
+  private static Set<String> getNGrams(final String str)
+  {
+    final Set<String> result = new HashSet<String>();
+    for (int i = 0; i + N <= str.length(); i++) {
+      result.add(str.substring(i, i + N));
+    }
+    return result;
+  }
+}
@@ -32,10 +32,15 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.persistence.Id;
 
@@ -48,17 +53,28 @@ import org.apache.commons.lang.Validate;
 import org.apache.log4j.Logger;
 import org.apache.lucene.queryParser.MultiFieldQueryParser;
 import org.apache.lucene.util.Version;
+import org.hibernate.CacheMode;
 import org.hibernate.Criteria;
 import org.hibernate.HibernateException;
 import org.hibernate.LockMode;
 import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Disjunction;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.metadata.ClassMetadata;
 import org.hibernate.search.FullTextQuery;
 import org.hibernate.search.FullTextSession;
 import org.hibernate.search.Search;
 import org.hibernate.search.annotations.DocumentId;
+import org.hibernate.type.CollectionType;
+import org.hibernate.type.Type;
 import org.projectforge.access.AccessChecker;
 import org.projectforge.access.AccessException;
 import org.projectforge.access.OperationType;
@@ -68,6 +84,7 @@ import org.projectforge.common.DateHelper;
 import org.projectforge.common.DateHolder;
 import org.projectforge.database.DatabaseDao;
 import org.projectforge.lucene.ClassicAnalyzer;
+import org.projectforge.task.TaskIdSets;
 import org.projectforge.user.PFUserContext;
 import org.projectforge.user.PFUserDO;
 import org.projectforge.user.UserGroupCache;
@@ -79,6 +96,8 @@ import org.springframework.orm.hibernate3.support.HibernateDaoSupport;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import de.micromata.hibernate.history.Historizable;
@@ -105,10 +124,35 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
   /**
    * Maximum allowed mass updates within one massUpdate call.
    */
-  public static final int MAX_MASS_UPDATE = 100;
+  public static final int MAX_MASS_UPDATE = 50000;
 
   public static final String MAX_MASS_UPDATE_EXCEEDED_EXCEPTION_I18N = "massUpdate.error.maximumNumberOfAllowedMassUpdatesExceeded";
 
+  /**
+   * Fetch size of the cursor used by {@link #processList(QueryFilter, ListEntryHandler)}.
+   */
+  private static final int PROCESS_LIST_FETCH_SIZE = 500;
+
+  /**
+   * Number of entries of a mass update loaded, flushed and cleared together (should match hibernate.jdbc.batch_size).
+   */
+  private static final int MASS_UPDATE_BATCH_SIZE = 50;
+
+  /**
+   * Maximum number of ids of an id restriction of paged list queries and counts (the bind parameters of a statement are limited, e. g. to
+   * 32767 by the PostgreSQL JDBC driver). Above this limit paged list queries aren't supported and the full list is filtered in memory.
+   * @see #isIdRestrictionSupported(TaskIdSets)
+   */
+  public static final int MAX_ID_RESTRICTION_SIZE = 10000;
+
+  /**
+   * Maximum number of ids of one in-clause of an id restriction. Shorter in-clauses are filled up to the next power of two, so the
+   * statements are reusable.
+   */
+  private static final int MAX_IDS_PER_IN_CLAUSE = 1024;
+
+  private static final int MIN_IDS_PER_IN_CLAUSE = 16;
+
   private static final List<DisplayHistoryEntry> EMPTY_HISTORY_ENTRIES = new ArrayList<DisplayHistoryEntry>();
 
   private static final Logger log = Logger.getLogger(BaseDao.class);
@@ -168,6 +212,17 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
    */
   protected boolean supportAfterUpdate = false;
 
+  /**
+   * Is the entity fetched with any eagerly loaded collection? Determined by {@link #hasEagerCollections()} on first usage.
+   */
+  private Boolean eagerCollections;
+
+  /**
+   * Autocompletion indexes by property, created on first usage of {@link #getAutocompletion(String, String)} and maintained on every
+   * modification. Expired indexes (see {@link AutocompletionIndex#isExpired()}) are removed on the next usage or modification.
+   */
+  private final ConcurrentMap<String, AutocompletionIndex> autocompletionIndexes = new ConcurrentHashMap<String, AutocompletionIndex>();
+
   /**
    * Get all declared hibernate search fields. These fields are defined over annotations in the database object class. The names are the
    * property names or, if defined the name declared in the annotation of a field. <br/>
@@ -476,6 +531,364 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     return list;
   }
 
+  /**
+   * Processes the entries filtered by the given filter one by one (streaming). Only entries with select access of the logged-in user are
+   * given to the handler. In contrast to {@link #getList(QueryFilter)} the result list will not be sorted by {@link #sort(List)}, so use
+   * the order of the given filter instead.
+   * @param filter
+   * @param handler
+   * @return The number of processed entries.
+   * @see #internalProcessList(QueryFilter, ListEntryHandler)
+   */
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public int processList(final QueryFilter filter, final ListEntryHandler<O> handler) throws AccessException
+  {
+    checkLoggedInUserSelectAccess();
+    if (accessChecker.isRestrictedUser() == true) {
+      return 0;
+    }
+    return internalProcessList(filter, handler, true);
+  }
+
+  /**
+   * Processes the entries filtered by the given filter one by one without any access checking.
+   * @param filter
+   * @param handler
+   * @return The number of processed entries.
+   * @see #processList(QueryFilter, ListEntryHandler)
+   */
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public int internalProcessList(final QueryFilter filter, final ListEntryHandler<O> handler)
+  {
+    return internalProcessList(filter, handler, false);
+  }
+
+  /**
+   * The entries are read via a forward only cursor of an own read-only session which is cleared periodically, so huge result sets (e. g.
+   * all time sheets of a year) are processed in bounded memory. Full text searches and history searches are processed on the
+   * (materialized) result of {@link #internalGetList(QueryFilter)}.
+   */
+  @SuppressWarnings("unchecked")
+  private int internalProcessList(final QueryFilter filter, final ListEntryHandler<O> handler, final boolean checkAccess)
+  {
+    final BaseSearchFilter searchFilter = filter.getFilter();
+    if (searchFilter.isSearchNotEmpty() == true || searchFilter.isUseModificationFilter() == true) {
+      int counter = 0;
+      for (final O obj : internalGetList(filter)) {
+        if (checkAccess == true) {
+          if (hasLoggedInUserSelectAccess(obj, false) == false) {
+            continue;
+          }
+          afterLoad(obj);
+        }
+        ++counter;
+        if (handler.handle(obj) == false) {
+          break;
+        }
+      }
+      return counter;
+    }
+    filter.clearErrorMessage();
+    if (searchFilter.isIgnoreDeleted() == false) {
+      filter.add(Restrictions.eq("deleted", searchFilter.isDeleted()));
+    }
+    if (searchFilter.getModifiedSince() != null) {
+      filter.add(Restrictions.ge("lastUpdate", searchFilter.getModifiedSince()));
+    }
+    // Joins (aliases or eagerly fetched collections) may return duplicates, only in this case the processed ids have to be stored:
+    final Set<Serializable> processedIds = filter.hasJoins() == true || hasEagerCollections() == true ? new HashSet<Serializable>()
+        : null;
+    int counter = 0;
+    final Session session = getHibernateTemplate().getSessionFactory().openSession();
+    try {
+      session.setDefaultReadOnly(true);
+      final Criteria criteria = filter.buildCriteria(session, clazz);
+      criteria.setFetchSize(PROCESS_LIST_FETCH_SIZE);
+      criteria.setCacheMode(CacheMode.IGNORE);
+      final ScrollableResults results = criteria.scroll(ScrollMode.FORWARD_ONLY);
+      try {
+        int rowCounter = 0;
+        while (true) {
+          if (rowCounter > 0 && rowCounter % PROCESS_LIST_FETCH_SIZE == 0) {
+            // Detach the already handled objects before the next row is read, so the current object is always attached.
+            session.clear();
+          }
+          if (results.next() == false) {
+            break;
+          }
+          ++rowCounter;
+          final O obj = (O) results.get(0);
+          if (processedIds != null && processedIds.add(obj.getId()) == false) {
+            continue; // Entry is already processed (joined criteria may return duplicates).
+          }
+          if (checkAccess == true) {
+            if (hasLoggedInUserSelectAccess(obj, false) == false) {
+              continue;
+            }
+            afterLoad(obj);
+          }
+          ++counter;
+          if (handler.handle(obj) == false) {
+            break;
+          }
+        }
+      } finally {
+        results.close();
+      }
+    } finally {
+      session.close();
+    }
+    return counter;
+  }
+
+  /**
+   * @return true if the entity has any collection which isn't loaded lazy (criteria queries may join it and return duplicates).
+   */
+  private boolean hasEagerCollections()
+  {
+    if (eagerCollections == null) {
+      boolean result = false;
+      final SessionFactory sessionFactory = getHibernateTemplate().getSessionFactory();
+      final ClassMetadata metadata = sessionFactory.getClassMetadata(clazz);
+      if (metadata != null) {
+        for (final Type type : metadata.getPropertyTypes()) {
+          if (type.isCollectionType() == true
+              && ((SessionFactoryImplementor) sessionFactory).getCollectionPersister(((CollectionType) type).getRole()).isLazy() == false) {
+            result = true;
+            break;
+          }
+        }
+      }
+      eagerCollections = result;
+    }
+    return eagerCollections;
+  }
+
+  /**
+   * Builds the query filter for the given search filter. Used by the paged list queries. Overwrite this method if {@link #getList(BaseSearchFilter)}
+   * builds more complex query filters.
+   * @param filter
+   * @return new QueryFilter(filter) at default.
+   * @see #getListPage(BaseSearchFilter, PageRequest)
+   * @see #getCount(BaseSearchFilter)
+   */
+  public QueryFilter createQueryFilter(final BaseSearchFilter filter)
+  {
+    return new QueryFilter(filter);
+  }
+
+  /**
+   * Paged list queries are only supported if the result of {@link #getList(BaseSearchFilter)} is given by the query filter of
+   * {@link #createQueryFilter(BaseSearchFilter)} (no full text search or post-filtering of the result list) and if the sort property is a
+   * data base column. Overwrite this method for supporting paged list queries.
+   * @param filter
+   * @param sortProperty
+   * @return false at default.
+   */
+  public boolean isPageable(final BaseSearchFilter filter, final String sortProperty)
+  {
+    return false;
+  }
+
+  /**
+   * Keyset pagination (where sortProperty > lastSortValue) needs a non-nullable sort property. For all other sort properties offset
+   * pagination is used.
+   * @param sortProperty
+   * @return false at default.
+   */
+  protected boolean isKeysetSortProperty(final String sortProperty)
+  {
+    return false;
+  }
+
+  /**
+   * Gets one page of the list filtered by the given filter. Only the entries of the requested page are loaded from the data base. Entries
+   * without select access are skipped and the page is filled up with the following entries.
+   * @param filter
+   * @param page
+   * @return The entries of the requested page.
+   * @see #isPageable(BaseSearchFilter, String)
+   */
+  @SuppressWarnings("unchecked")
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public List<O> getListPage(final BaseSearchFilter filter, final PageRequest page) throws AccessException
+  {
+    checkLoggedInUserSelectAccess();
+    if (accessChecker.isRestrictedUser() == true) {
+      return null;
+    }
+    final boolean keyset = isKeysetSortProperty(page.getSortProperty());
+    final List<O> result = new ArrayList<O>();
+    final Set<Serializable> ids = new HashSet<Serializable>();
+    boolean useKeyset = keyset == true && page.hasLastKey() == true;
+    Serializable lastSortValue = page.getLastSortValue();
+    Serializable lastId = page.getLastId();
+    int firstResult = page.getFirstResult();
+    while (true) {
+      final QueryFilter queryFilter = createPageQueryFilter(filter);
+      if (useKeyset == true) {
+        final String property = page.getSortProperty();
+        if (page.isAscending() == true) {
+          queryFilter.add(Restrictions.or(Restrictions.gt(property, lastSortValue),
+              Restrictions.and(Restrictions.eq(property, lastSortValue), Restrictions.gt("id", lastId))));
+        } else {
+          queryFilter.add(Restrictions.or(Restrictions.lt(property, lastSortValue),
+              Restrictions.and(Restrictions.eq(property, lastSortValue), Restrictions.lt("id", lastId))));
+        }
+      } else {
+        queryFilter.setFirstResult(firstResult);
+      }
+      queryFilter.addOrder(page.isAscending() == true ? Order.asc(page.getSortProperty()) : Order.desc(page.getSortProperty()));
+      queryFilter.addOrder(page.isAscending() == true ? Order.asc("id") : Order.desc("id"));
+      queryFilter.setMaxResults(page.getPageSize());
+      final Criteria criteria = queryFilter.buildCriteria(getSession(), clazz);
+      setCacheRegion(criteria);
+      final List<O> list = criteria.list();
+      for (final O obj : list) {
+        if (result.size() >= page.getPageSize()) {
+          break;
+        }
+        if (ids.add(obj.getId()) == true && hasLoggedInUserSelectAccess(obj, false) == true) {
+          afterLoad(obj);
+          result.add(obj);
+        }
+      }
+      if (result.size() >= page.getPageSize() || list.size() < page.getPageSize()) {
+        break;
+      }
+      // Entries without select access were skipped, so fill up the page with the following entries:
+      if (keyset == true) {
+        final O last = list.get(list.size() - 1);
+        lastSortValue = (Serializable) BeanHelper.getProperty(last, page.getSortProperty());
+        lastId = last.getId();
+        useKeyset = true;
+      } else {
+        firstResult += list.size();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Gets the number of entries matching the given filter (via count query). Entries without select access of the logged-in user are only
+   * excluded if the select access is given by {@link #addSelectAccessRestrictions(QueryFilter)}.
+   * @param filter
+   * @return The number of entries.
+   * @see #isPageable(BaseSearchFilter, String)
+   */
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public long getCount(final BaseSearchFilter filter) throws AccessException
+  {
+    checkLoggedInUserSelectAccess();
+    if (accessChecker.isRestrictedUser() == true) {
+      return 0;
+    }
+    final QueryFilter queryFilter = createPageQueryFilter(filter);
+    final Criteria criteria = queryFilter.buildCriteria(getSession(), clazz);
+    criteria.setProjection(Projections.countDistinct("id"));
+    final Number count = (Number) criteria.uniqueResult();
+    return count != null ? count.longValue() : 0;
+  }
+
+  /**
+   * Creates the query filter of paged list queries and counts: the query filter of {@link #createQueryFilter(BaseSearchFilter)} without
+   * orders, with the deleted and modified since restrictions of the given filter and with the select access restrictions of the
+   * logged-in user.
+   * @param filter
+   * @see #addSelectAccessRestrictions(QueryFilter)
+   */
+  protected QueryFilter createPageQueryFilter(final BaseSearchFilter filter)
+  {
+    final QueryFilter queryFilter = createQueryFilter(filter);
+    queryFilter.removeOrders();
+    queryFilter.setMaxResults(-1);
+    final BaseSearchFilter searchFilter = queryFilter.getFilter();
+    if (searchFilter.isIgnoreDeleted() == false) {
+      queryFilter.add(Restrictions.eq("deleted", searchFilter.isDeleted()));
+    }
+    if (searchFilter.getModifiedSince() != null) {
+      queryFilter.add(Restrictions.ge("lastUpdate", searchFilter.getModifiedSince()));
+    }
+    addSelectAccessRestrictions(queryFilter);
+    return queryFilter;
+  }
+
+  /**
+   * Adds the select access of the logged-in user as restrictions to the query filter of paged list queries and counts. Otherwise entries
+   * without select access would be counted and the offsets of the pages would be shifted by the skipped entries. Does nothing at default.
+   * Please overwrite this method if your dao supports paged list queries and the select access depends on the entries.
+   * @param queryFilter
+   * @see #isPageable(BaseSearchFilter, String)
+   */
+  protected void addSelectAccessRestrictions(final QueryFilter queryFilter)
+  {
+  }
+
+  /**
+   * Restricts the given id property to the allowed ids. The smaller one of both collections is used for the restriction, long id lists are
+   * split into several in-clauses.
+   * @param property E. g. "task.id".
+   * @param idSets
+   * @return The restriction or null, if no id is denied (no restriction needed).
+   * @see #isIdRestrictionSupported(TaskIdSets)
+   */
+  protected static Criterion createIdRestriction(final String property, final TaskIdSets idSets)
+  {
+    final Collection<Integer> allowedIds = idSets.getAllowedIds();
+    final Collection<Integer> deniedIds = idSets.getDeniedIds();
+    if (deniedIds.isEmpty() == true) {
+      return null;
+    }
+    if (allowedIds.isEmpty() == true) {
+      // Matches no entry, because the id is never null:
+      return Restrictions.isNull("id");
+    }
+    if (allowedIds.size() <= deniedIds.size()) {
+      return createInRestriction(property, allowedIds);
+    }
+    return Restrictions.not(createInRestriction(property, deniedIds));
+  }
+
+  /**
+   * @param idSets
+   * @return true, if the number of ids of the id restriction doesn't exceed {@link #MAX_ID_RESTRICTION_SIZE}.
+   * @see #createIdRestriction(String, TaskIdSets)
+   */
+  protected static boolean isIdRestrictionSupported(final TaskIdSets idSets)
+  {
+    return Math.min(idSets.getAllowedIds().size(), idSets.getDeniedIds().size()) <= MAX_ID_RESTRICTION_SIZE;
+  }
+
+  private static Criterion createInRestriction(final String property, final Collection<Integer> ids)
+  {
+    final List<Integer> list = new ArrayList<Integer>(ids);
+    Disjunction disjunction = null;
+    Criterion result = null;
+    for (int from = 0; from < list.size(); from += MAX_IDS_PER_IN_CLAUSE) {
+      final List<Integer> chunk = new ArrayList<Integer>(list.subList(from, Math.min(from + MAX_IDS_PER_IN_CLAUSE, list.size())));
+      int size = MIN_IDS_PER_IN_CLAUSE;
+      while (size < chunk.size()) {
+        size <<= 1;
+      }
+      final Integer lastId = chunk.get(chunk.size() - 1);
+      while (chunk.size() < size) {
+        // Duplicate ids don't change the result of the in-clause:
+        chunk.add(lastId);
+      }
+      final Criterion in = Restrictions.in(property, chunk);
+      if (result == null) {
+        result = in;
+      } else {
+        if (disjunction == null) {
+          disjunction = Restrictions.disjunction();
+          disjunction.add(result);
+        }
+        disjunction.add(in);
+      }
+    }
+    return disjunction != null ? disjunction : result;
+  }
+
   private org.apache.lucene.search.Query createFullTextQuery(final String[] searchFields, final QueryFilter queryFilter,
       final String searchString)
   {
@@ -863,6 +1276,26 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
   {
   }
 
+  /**
+   * Runs the given task after the commit of the current transaction, so shared caches and indices don't contain modifications of rolled
+   * back transactions. If no transaction (synchronization) is active, the task is run immediately.
+   * @param task
+   */
+  protected void runAfterCommit(final Runnable task)
+  {
+    if (TransactionSynchronizationManager.isSynchronizationActive() == false) {
+      task.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCommit()
+      {
+        task.run();
+      }
+    });
+  }
+
   /**
    * This method will be called after inserting. Does nothing at default.
    * @param obj The inserted object
@@ -932,6 +1365,14 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
   {
   }
 
+  /**
+   * This method will be called before undeleting. Does nothing at default.
+   * @param obj The object to undelete.
+   */
+  protected void onUndelete(final O obj)
+  {
+  }
+
   /**
    * This method will be called after undeleting. Does nothing at default.
    * @param obj The deleted object.
@@ -956,6 +1397,7 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     final Session session = getHibernateTemplate().getSessionFactory().getCurrentSession();
     final Serializable id = session.save(obj);
     log.info("New object added (" + id + "): " + obj.toString());
+    addToAutocompletionIndexes(obj);
     prepareHibernateSearch(obj, OperationType.INSERT);
     session.flush();
     Search.getFullTextSession(session).flushToIndexes();
@@ -1070,6 +1512,9 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
       dbObjBackup = null;
     }
     final boolean wantsReindexAllDependentObjects = wantsReindexAllDependentObjects(obj, dbObj);
+    if (dbObj.isDeleted() == false) {
+      removeFromAutocompletionIndexes(dbObj);
+    }
     // Copy all values of modified user to database object, ignore field 'deleted'.
     final ModificationStatus result = copyValues(obj, dbObj, "deleted");
     if (result != ModificationStatus.NONE) {
@@ -1078,6 +1523,9 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     } else {
       log.info("No modifications detected (no update needed): " + dbObj.toString());
     }
+    if (dbObj.isDeleted() == false) {
+      addToAutocompletionIndexes(dbObj);
+    }
     prepareHibernateSearch(obj, OperationType.UPDATE);
     final Session session = getHibernateTemplate().getSessionFactory().getCurrentSession();
     session.flush();
@@ -1156,6 +1604,9 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     onDelete(obj);
     final O dbObj = getHibernateTemplate().load(clazz, obj.getId(), LockMode.PESSIMISTIC_WRITE);
     onSaveOrModify(obj);
+    if (dbObj.isDeleted() == false) {
+      removeFromAutocompletionIndexes(dbObj);
+    }
     copyValues(obj, dbObj, "deleted"); // If user has made additional changes.
     dbObj.setDeleted(true);
     dbObj.setLastUpdate();
@@ -1190,6 +1641,9 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     onDelete(obj);
     final O dbObj = getHibernateTemplate().load(clazz, obj.getId(), LockMode.PESSIMISTIC_WRITE);
     checkLoggedInUserDeleteAccess(obj, dbObj);
+    if (dbObj.isDeleted() == false) {
+      removeFromAutocompletionIndexes(dbObj);
+    }
     getHibernateTemplate().delete(dbObj);
     log.info("Object deleted: " + obj.toString());
     afterSaveOrModify(obj);
@@ -1217,13 +1671,18 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
   @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW, isolation = Isolation.REPEATABLE_READ)
   public void internalUndelete(final O obj)
   {
+    onUndelete(obj);
     final O dbObj = getHibernateTemplate().load(clazz, obj.getId(), LockMode.PESSIMISTIC_WRITE);
     onSaveOrModify(obj);
+    final boolean wasDeleted = dbObj.isDeleted();
     copyValues(obj, dbObj, "deleted"); // If user has made additional changes.
     dbObj.setDeleted(false);
     obj.setDeleted(false);
     dbObj.setLastUpdate();
     obj.setLastUpdate(dbObj.getLastUpdate());
+    if (wasDeleted == true) {
+      addToAutocompletionIndexes(dbObj);
+    }
     log.info("Object undeleted: " + dbObj.toString());
     final Session session = getHibernateTemplate().getSessionFactory().getCurrentSession();
     session.flush();
@@ -1565,33 +2024,97 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
   }
 
   /**
-   * Only generic check access will be done. The matching entries will not be checked!
+   * Only generic check access will be done. The matching entries will not be checked!<br/>
+   * The values are served by an in-memory index per property (see {@link AutocompletionIndex}), which is loaded on the first call for a
+   * property and maintained by all following modifications of this dao.
    * @param property Property of the data base entity.
    * @param searchString String the user has typed in.
-   * @return All matching entries (like search) for the given property modified or updated in the last 2 years.
+   * @return All matching entries (like search) for the given property modified or updated in the last 2 years, the most used values first.
    */
-  @SuppressWarnings("unchecked")
   public List<String> getAutocompletion(final String property, final String searchString)
   {
     checkLoggedInUserSelectAccess();
     if (StringUtils.isBlank(searchString) == true) {
       return null;
     }
-    final String hql = "select distinct "
-        + property
-        + " from "
-        + clazz.getSimpleName()
-        + " t where deleted=false and lastUpdate > ? and lower(t."
-        + property
-        + ") like ?) order by t."
-        + property;
-    final Query query = getSession().createQuery(hql);
     final DateHolder dh = new DateHolder();
     dh.add(Calendar.YEAR, -2); // Search only for entries of the last 2 years.
-    query.setDate(0, dh.getDate());
-    query.setString(1, "%" + StringUtils.lowerCase(searchString) + "%");
-    final List<String> list = query.list();
-    return list;
+    return getAutocompletionIndex(property).search(searchString, dh.getDate());
+  }
+
+  /**
+   * Gets the index of the given property or loads it from the data base (values of the last 2 years only).
+   */
+  @SuppressWarnings("unchecked")
+  private AutocompletionIndex getAutocompletionIndex(final String property)
+  {
+    AutocompletionIndex index = autocompletionIndexes.get(property);
+    if (index != null && index.isExpired() == false) {
+      return index;
+    }
+    synchronized (autocompletionIndexes) {
+      index = autocompletionIndexes.get(property);
+      if (index != null && index.isExpired() == false) {
+        return index;
+      }
+      final String hql = "select t."
+          + property
+          + ", t.lastUpdate from "
+          + clazz.getSimpleName()
+          + " t where deleted=false and lastUpdate > ? and t."
+          + property
+          + " is not null";
+      final Query query = getSession().createQuery(hql);
+      final DateHolder dh = new DateHolder();
+      dh.add(Calendar.YEAR, -2);
+      query.setTimestamp(0, dh.getDate());
+      index = new AutocompletionIndex(dh.getDate());
+      for (final Object[] oa : (List<Object[]>) query.list()) {
+        index.add((String) oa[0], (Date) oa[1]);
+      }
+      log.info("Autocompletion index of " + clazz.getSimpleName() + "." + property + " loaded: " + index.size() + " values.");
+      autocompletionIndexes.put(property, index);
+      return index;
+    }
+  }
+
+  private void addToAutocompletionIndexes(final O obj)
+  {
+    for (final Map.Entry<String, AutocompletionIndex> entry : autocompletionIndexes.entrySet()) {
+      if (removeIfExpired(entry) == true) {
+        continue;
+      }
+      final Object value = BeanHelper.getProperty(obj, entry.getKey());
+      if (value instanceof String) {
+        entry.getValue().add((String) value, obj.getLastUpdate());
+      }
+    }
+  }
+
+  private void removeFromAutocompletionIndexes(final O obj)
+  {
+    for (final Map.Entry<String, AutocompletionIndex> entry : autocompletionIndexes.entrySet()) {
+      if (removeIfExpired(entry) == true) {
+        continue;
+      }
+      final Object value = BeanHelper.getProperty(obj, entry.getKey());
+      if (value instanceof String) {
+        entry.getValue().remove((String) value, obj.getLastUpdate());
+      }
+    }
+  }
+
+  /**
+   * Expired indexes aren't maintained anymore, they're reloaded on their next usage.
+   * @return true, if the index of the given entry was expired and is removed.
+   */
+  private boolean removeIfExpired(final Map.Entry<String, AutocompletionIndex> entry)
+  {
+    if (entry.getValue().isExpired() == false) {
+      return false;
+    }
+    autocompletionIndexes.remove(entry.getKey(), entry.getValue());
+    return true;
   }
 
   /**
@@ -1624,7 +2147,26 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     HibernateSearchDependentObjectsReindexer.getSingleton().reindexDependents(getHibernateTemplate(), obj);
   }
 
-  @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW)
+  /**
+   * Re-index all dependent objects of the given objects manually (hibernate search) in one job.
+   * @param objects
+   * @see #reindexDependentObjects(ExtendedBaseDO)
+   */
+  public void reindexDependentObjects(final Collection<O> objects)
+  {
+    HibernateSearchDependentObjectsReindexer.getSingleton().reindexDependents(getHibernateTemplate(), objects);
+  }
+
+  /**
+   * Updates all given entries modified by {@link #massUpdateEntry(ExtendedBaseDO, ExtendedBaseDO, Object)} within one transaction. The data
+   * base objects are loaded, flushed (JDBC batching of the updates and history entries) and cleared in blocks of
+   * {@link #MASS_UPDATE_BATCH_SIZE}. Entries without update access (see
+   * {@link #hasLoggedInUserMassUpdateAccess(ExtendedBaseDO, ExtendedBaseDO, Map)}) or failing the validation are skipped. The dependent
+   * objects of all updated entries are re-indexed in one job at the end.
+   * @param list
+   * @param master
+   */
+  @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW, isolation = Isolation.REPEATABLE_READ)
   public void massUpdate(final List<O> list, final O master)
   {
     if (list == null || list.size() == 0) {
@@ -1634,16 +2176,105 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     if (list.size() > MAX_MASS_UPDATE) {
       throw new UserException(MAX_MASS_UPDATE_EXCEEDED_EXCEPTION_I18N, new Object[] { MAX_MASS_UPDATE});
     }
+    accessChecker.checkRestrictedOrDemoUser();
     final Object store = prepareMassUpdateStore(list, master);
-    for (final O entry : list) {
-      if (massUpdateEntry(entry, master, store) == true) {
-        try {
-          update(entry);
-        } catch (final Exception ex) {
-          log.info("Exception occured while updating entry inside mass update: " + entry);
+    final Map<Object, Boolean> accessCache = new HashMap<Object, Boolean>();
+    final List<O> reindexList = new ArrayList<O>();
+    final Session session = getHibernateTemplate().getSessionFactory().getCurrentSession();
+    int counter = 0;
+    for (int fromIndex = 0; fromIndex < list.size(); fromIndex += MASS_UPDATE_BATCH_SIZE) {
+      final List<O> block = new ArrayList<O>();
+      final List<Serializable> ids = new ArrayList<Serializable>();
+      for (final O entry : list.subList(fromIndex, Math.min(fromIndex + MASS_UPDATE_BATCH_SIZE, list.size()))) {
+        if (entry.getId() != null && massUpdateEntry(entry, master, store) == true) {
+          block.add(entry);
+          ids.add(entry.getId());
         }
       }
+      if (block.isEmpty() == true) {
+        continue;
+      }
+      final Map<Serializable, O> dbObjs = loadForMassUpdate(session, ids);
+      for (final O entry : block) {
+        if (updateMassUpdateEntry(entry, dbObjs.get(entry.getId()), accessCache, reindexList) == true) {
+          ++counter;
+        }
+      }
+      session.flush();
+      Search.getFullTextSession(session).flushToIndexes();
+      session.clear();
+    }
+    log.info("Mass update: " + counter + " of " + list.size() + " entries updated.");
+    if (reindexList.isEmpty() == false) {
+      reindexDependentObjects(reindexList);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<Serializable, O> loadForMassUpdate(final Session session, final List<Serializable> ids)
+  {
+    final Criteria criteria = session.createCriteria(clazz).add(Restrictions.in("id", ids));
+    criteria.setLockMode(LockMode.PESSIMISTIC_WRITE);
+    final Map<Serializable, O> result = new HashMap<Serializable, O>();
+    for (final O dbObj : (List<O>) criteria.list()) {
+      result.put(dbObj.getId(), dbObj);
+    }
+    return result;
+  }
+
+  /**
+   * Does the same as {@link #internalUpdate(ExtendedBaseDO, boolean)} without flushing.
+   * @return true, if the entry was updated, false if skipped.
+   */
+  private boolean updateMassUpdateEntry(final O entry, final O dbObj, final Map<Object, Boolean> accessCache, final List<O> reindexList)
+  {
+    if (dbObj == null) {
+      log.info("Entry to update inside mass update not found: " + entry);
+      return false;
     }
+    try {
+      onSaveOrModify(entry);
+    } catch (final Exception ex) {
+      log.info("Exception occured while updating entry inside mass update: " + entry + ": " + ex.getMessage());
+      return false;
+    }
+    if (hasLoggedInUserMassUpdateAccess(entry, dbObj, accessCache) == false) {
+      log.info("No access for updating entry inside mass update: " + entry);
+      return false;
+    }
+    onChange(entry, dbObj);
+    final O dbObjBackup = supportAfterUpdate == true ? getBackupObject(dbObj) : null;
+    if (wantsReindexAllDependentObjects(entry, dbObj) == true) {
+      reindexList.add(entry);
+    }
+    if (dbObj.isDeleted() == false) {
+      removeFromAutocompletionIndexes(dbObj);
+    }
+    final ModificationStatus result = copyValues(entry, dbObj, "deleted");
+    if (result != ModificationStatus.NONE) {
+      dbObj.setLastUpdate();
+    }
+    if (dbObj.isDeleted() == false) {
+      addToAutocompletionIndexes(dbObj);
+    }
+    prepareHibernateSearch(entry, OperationType.UPDATE);
+    afterSaveOrModify(entry);
+    afterUpdate(entry, dbObjBackup, result != ModificationStatus.NONE);
+    afterUpdate(entry, dbObjBackup);
+    return true;
+  }
+
+  /**
+   * Checks the update access of the logged-in user for one entry of a mass update. Overload this method for re-using the results of
+   * expensive checks for all entries, e. g. the access rights per task.
+   * @param obj The modified entry.
+   * @param dbObj The data base object.
+   * @param accessCache Cache for the whole mass update, may be used by derived classes.
+   * @return true, if the entry may be updated.
+   */
+  protected boolean hasLoggedInUserMassUpdateAccess(final O obj, final O dbObj, final Map<Object, Boolean> accessCache)
+  {
+    return hasLoggedInUserUpdateAccess(obj, dbObj, false);
   }
 
   /**
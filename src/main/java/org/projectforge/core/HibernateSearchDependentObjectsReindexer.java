@@ -23,21 +23,30 @@
 
 package org.projectforge.core;
 
+import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.hibernate.CacheMode;
 import org.hibernate.FlushMode;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.proxy.HibernateProxyHelper;
 import org.hibernate.search.FullTextSession;
 import org.hibernate.search.Search;
 import org.hibernate.search.annotations.ContainedIn;
@@ -48,7 +57,9 @@ import org.springframework.orm.hibernate3.HibernateTemplate;
 import org.springframework.util.CollectionUtils;
 
 /**
- * Hotfix: Hibernate-search does not update index of dependent objects.
+ * Hotfix: Hibernate-search does not update index of dependent objects.<br/>
+ * The objects to re-index the dependents of are queued (bounded and without duplicates) and processed in batches by one background
+ * thread.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
 public class HibernateSearchDependentObjectsReindexer
@@ -62,6 +73,67 @@ public class HibernateSearchDependentObjectsReindexer
     return instance;
   }
 
+  /**
+   * Maximum number of objects waiting for re-indexing their dependents. Callers are blocked while the queue is full.
+   */
+  static final int MAX_QUEUE_SIZE = 10000;
+
+  /**
+   * Maximum number of queued objects processed within one session.
+   */
+  static final int BATCH_SIZE = 100;
+
+  /**
+   * Maximum time in ms a caller waits for free space in a full queue. The object is skipped (and counted as failure) afterwards.
+   */
+  private static final long MAX_QUEUE_WAIT_MILLIS = 60 * 1000;
+
+  static class QueueEntry
+  {
+    final Class< ? > clazz;
+
+    final Serializable id;
+
+    private QueueEntry(final Class< ? > clazz, final Serializable id)
+    {
+      this.clazz = clazz;
+      this.id = id;
+    }
+  }
+
+  /**
+   * Queued objects by class name and id in insertion order.
+   */
+  private final Map<String, QueueEntry> queue = new LinkedHashMap<String, QueueEntry>();
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(final Runnable runnable)
+    {
+      final Thread thread = new Thread(runnable, "HibernateSearchDependentObjectsReindexer");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  /**
+   * Guarded by queue.
+   */
+  private boolean workerScheduled;
+
+  /**
+   * Guarded by queue.
+   */
+  private SessionFactory sessionFactory;
+
+  private final AtomicLong queuedCounter = new AtomicLong();
+
+  private final AtomicLong coalescedCounter = new AtomicLong();
+
+  private final AtomicLong indexedCounter = new AtomicLong();
+
+  private final AtomicLong failedCounter = new AtomicLong();
+
   /**
    * Key is the embedded class (annotated with @IndexEmbedded), value the set of all dependent objects.
    */
@@ -113,25 +185,179 @@ public class HibernateSearchDependentObjectsReindexer
     }
   }
 
+  /**
+   * Queues the given object for re-indexing its dependent objects.
+   * @see #reindexDependents(HibernateTemplate, Collection)
+   */
   public void reindexDependents(final HibernateTemplate hibernateTemplate, final BaseDO< ? > obj)
   {
-    new Thread() {
-      @Override
-      public void run()
-      {
-        final SessionFactory sessionFactory = hibernateTemplate.getSessionFactory();
-        final HibernateTemplate template = new HibernateTemplate(sessionFactory);
-        final Session session = template.getSessionFactory().openSession();
-        final Set<String> alreadyReindexed = new HashSet<String>();
-        final List<Entry> entryList = map.get(obj.getClass());
-        reindexDependents(template, session, obj, entryList, alreadyReindexed);
-        session.disconnect();
-        final int size = alreadyReindexed.size();
-        if (size >= 10) {
-          log.info("Re-indexing of " + size + " objects done after updating " + obj.getClass().getName() + ":" + obj.getId());
+    reindexDependents(hibernateTemplate, Collections.singletonList(obj));
+  }
+
+  /**
+   * Queues the given objects for re-indexing their dependent objects. The queue is processed by one background thread, up to
+   * {@link #BATCH_SIZE} objects per session. Objects already queued are ignored (coalescing). If the queue is full
+   * ({@link #MAX_QUEUE_SIZE}) the caller is blocked until the worker has processed some objects.
+   * @param hibernateTemplate
+   * @param objects
+   */
+  public void reindexDependents(final HibernateTemplate hibernateTemplate, final Collection< ? extends BaseDO< ? >> objects)
+  {
+    if (CollectionUtils.isEmpty(objects) == true) {
+      return;
+    }
+    for (final BaseDO< ? > obj : objects) {
+      final Class< ? > clazz = HibernateProxyHelper.getClassWithoutInitializingProxy(obj);
+      if (map.containsKey(clazz) == false || obj.getId() == null) {
+        // Nothing to do.
+        continue;
+      }
+      if (enqueue(hibernateTemplate.getSessionFactory(), clazz, obj.getId()) == false) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return false, if the caller thread was interrupted while waiting for free space in the queue.
+   */
+  private boolean enqueue(final SessionFactory sessionFactory, final Class< ? > clazz, final Serializable id)
+  {
+    final String key = clazz.getName() + ":" + id;
+    synchronized (queue) {
+      this.sessionFactory = sessionFactory;
+      if (queue.containsKey(key) == true) {
+        coalescedCounter.incrementAndGet();
+        return true;
+      }
+      final long deadline = System.currentTimeMillis() + MAX_QUEUE_WAIT_MILLIS;
+      while (queue.size() >= MAX_QUEUE_SIZE) {
+        final long wait = deadline - System.currentTimeMillis();
+        if (wait <= 0) {
+          log.error("Queue of dependent objects to re-index is full, re-indexing of dependents of " + key + " skipped.");
+          failedCounter.incrementAndGet();
+          return true;
+        }
+        try {
+          queue.wait(wait);
+        } catch (final InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          failedCounter.incrementAndGet();
+          return false;
+        }
+      }
+      queue.put(key, new QueueEntry(clazz, id));
+      queuedCounter.incrementAndGet();
+      if (workerScheduled == false) {
+        workerScheduled = true;
+        executor.execute(new Runnable() {
+          @Override
+          public void run()
+          {
+            processQueue();
+          }
+        });
+      }
+    }
+    return true;
+  }
+
+  private void processQueue()
+  {
+    while (true) {
+      final List<QueueEntry> batch = new ArrayList<QueueEntry>();
+      final SessionFactory sf;
+      synchronized (queue) {
+        final Iterator<QueueEntry> it = queue.values().iterator();
+        while (it.hasNext() == true && batch.size() < BATCH_SIZE) {
+          batch.add(it.next());
+          it.remove();
+        }
+        if (batch.isEmpty() == true) {
+          workerScheduled = false;
+          return;
+        }
+        sf = sessionFactory;
+        queue.notifyAll(); // Wake up blocked callers.
+      }
+      try {
+        indexedCounter.addAndGet(processBatch(sf, batch));
+      } catch (final Exception ex) {
+        log.error("Exception encountered while re-indexing dependent objects: " + ex.getMessage(), ex);
+        failedCounter.addAndGet(batch.size());
+      }
+    }
+  }
+
+  /**
+   * Re-indexes the dependents of the given queued objects within one session.
+   * @return The number of re-indexed dependent objects.
+   */
+  int processBatch(final SessionFactory sessionFactory, final List<QueueEntry> batch)
+  {
+    final HibernateTemplate template = new HibernateTemplate(sessionFactory);
+    final Session session = sessionFactory.openSession();
+    try {
+      final Set<String> alreadyReindexed = new HashSet<String>();
+      for (final QueueEntry queueEntry : batch) {
+        final BaseDO< ? > obj = (BaseDO< ? >) session.get(queueEntry.clazz, queueEntry.id);
+        if (obj == null) {
+          // Object was deleted in the meantime.
+          continue;
         }
+        reindexDependents(template, session, obj, map.get(queueEntry.clazz), alreadyReindexed);
       }
-    }.start();
+      Search.getFullTextSession(session).flushToIndexes();
+      final int size = alreadyReindexed.size();
+      if (size >= 10) {
+        log.info("Re-indexing of " + size + " objects done after updating " + batch.size() + " object(s).");
+      }
+      return size;
+    } finally {
+      session.close();
+    }
+  }
+
+  /**
+   * @return The number of objects waiting for re-indexing their dependents.
+   */
+  public int getQueueSize()
+  {
+    synchronized (queue) {
+      return queue.size();
+    }
+  }
+
+  /**
+   * @return The number of all objects queued since start-up.
+   */
+  public long getQueuedCounter()
+  {
+    return queuedCounter.get();
+  }
+
+  /**
+   * @return The number of objects ignored since start-up because they were already queued.
+   */
+  public long getCoalescedCounter()
+  {
+    return coalescedCounter.get();
+  }
+
+  /**
+   * @return The number of dependent objects re-indexed since start-up.
+   */
+  public long getIndexedCounter()
+  {
+    return indexedCounter.get();
+  }
+
+  /**
+   * @return The number of failures (objects which couldn't be re-indexed or queued) since start-up.
+   */
+  public long getFailedCounter()
+  {
+    return failedCounter.get();
   }
 
   private void reindexDependents(final HibernateTemplate hibernateTemplate, final Session session, final BaseDO< ? > obj,
@@ -187,9 +413,10 @@ public class HibernateSearchDependentObjectsReindexer
     } catch (final Exception ex) {
       // Don't fail if any exception while re-indexing occurs.
       log.info("Fail to re-index " + obj.getClass() + ": " + ex.getMessage());
+      failedCounter.incrementAndGet();
     }
     // session.flush(); // clear every batchSize since the queue is processed
-    final List<Entry> entryList = map.get(obj.getClass());
+    final List<Entry> entryList = map.get(HibernateProxyHelper.getClassWithoutInitializingProxy(obj));
     reindexDependents(hibernateTemplate, session, obj, entryList, alreadyReindexed);
   }
 
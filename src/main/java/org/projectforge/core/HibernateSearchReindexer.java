@@ -23,15 +23,24 @@
 
 package org.projectforge.core;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.commons.lang.ClassUtils;
 import org.apache.commons.lang.StringUtils;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
 import org.projectforge.common.DateHelper;
 import org.projectforge.common.StringHelper;
 import org.projectforge.database.DatabaseDao;
+import org.projectforge.database.ReindexCheckpoint;
 import org.projectforge.mail.Mail;
 import org.projectforge.mail.SendMail;
 import org.projectforge.registry.Registry;
@@ -50,6 +59,11 @@ public class HibernateSearchReindexer
 {
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(HibernateSearchReindexer.class);
 
+  /**
+   * Number of entity classes re-indexed in parallel.
+   */
+  private static final int REINDEX_THREADS = 3;
+
   private static final String ERROR_MSG = "Error while re-indexing data base: found lock files while re-indexing data-base. "
       + "Try to run re-index manually in the web administration menu and if occured again, "
       + "shutdown ProjectForge, delete lock file(s) in hibernate-search sub directory and restart.";
@@ -65,13 +79,35 @@ public class HibernateSearchReindexer
   private HibernateTemplate hibernate;
 
   public void execute()
+  {
+    execute(new ReindexSettings());
+  }
+
+  /**
+   * Runs the re-index job asynchronously, e. g. after a data-base import. The administrator is informed on errors as by the nightly job.
+   * @param settings
+   */
+  public void executeInBackground(final ReindexSettings settings)
+  {
+    final Thread thread = new Thread("HibernateSearchReindexer") {
+      @Override
+      public void run()
+      {
+        execute(settings);
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void execute(final ReindexSettings settings)
   {
     log.info("Re-index job started.");
     if (databaseDao == null) {
       log.error("Job not configured, aborting.");
       return;
     }
-    final String result = rebuildDatabaseSearchIndices();
+    final String result = rebuildDatabaseSearchIndices(settings);
     if (result.contains("*") == true) {
       log.fatal(ERROR_MSG);
       final String recipients = configuration.getStringValue(ConfigurationParam.SYSTEM_ADMIN_E_MAIL);
@@ -106,23 +142,33 @@ public class HibernateSearchReindexer
       try {
         currentReindexRun = new Date();
         final StringBuffer buf = new StringBuffer();
+        final List<Class< ? >> classList = new ArrayList<Class< ? >>();
+        ReindexCheckpoint checkpoint = null;
         if (classes != null && classes.length > 0) {
           for (final Class< ? > cls : classes) {
-            reindex(cls, settings, buf);
+            classList.add(cls);
           }
         } else {
           // Re-index: HistoryEntry:
-          reindex(HistoryEntry.class, settings, buf);
+          classList.add(HistoryEntry.class);
           // Re-index of all ProjectForge entities:
           for (final RegistryEntry entry : Registry.instance().getOrderedList()) {
             if (entry.getNestedDOClasses() != null) {
               for (final Class< ? > nestedDOClass : entry.getNestedDOClasses()) {
-                reindex(nestedDOClass, settings, buf);
+                classList.add(nestedDOClass);
               }
             }
-            reindex(entry.getDOClass(), settings, buf);
+            classList.add(entry.getDOClass());
+          }
+          if (settings.getFromDate() == null && settings.getLastNEntries() == null) {
+            // Full re-index: continue an aborted run (if wanted).
+            checkpoint = databaseDao.getReindexCheckpoint(settings.isResumeAbortedRun());
           }
         }
+        final boolean success = reindex(classList, settings, buf, checkpoint);
+        if (checkpoint != null && success == true) {
+          checkpoint.delete();
+        }
         return buf.toString();
       } finally {
         currentReindexRun = null;
@@ -130,13 +176,58 @@ public class HibernateSearchReindexer
     }
   }
 
+  /**
+   * Re-indexes the given classes in parallel ({@link #REINDEX_THREADS} threads).
+   * @return true, if all classes were re-indexed without errors.
+   */
+  private boolean reindex(final List<Class< ? >> classList, final ReindexSettings settings, final StringBuffer buf,
+      final ReindexCheckpoint checkpoint)
+  {
+    if (classList.size() == 1) {
+      return reindex(classList.get(0), settings, buf, checkpoint);
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(REINDEX_THREADS);
+    final List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+    for (final Class< ? > cls : classList) {
+      futures.add(executor.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call()
+        {
+          return reindex(cls, settings, buf, checkpoint);
+        }
+      }));
+    }
+    executor.shutdown();
+    boolean success = true;
+    for (final Future<Boolean> future : futures) {
+      try {
+        if (future.get() == false) {
+          success = false;
+        }
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        log.error("Re-indexing interrupted.", ex);
+        executor.shutdownNow();
+        return false;
+      } catch (final ExecutionException ex) {
+        log.error("Exception encountered while re-indexing: " + ex.getCause().getMessage(), ex.getCause());
+        success = false;
+      }
+    }
+    return success && buf.indexOf("*") < 0;
+  }
+
+  /**
+   * @return false, if an error occurred.
+   */
   @SuppressWarnings({ "rawtypes", "unchecked"})
-  private void reindex(final Class< ? > clazz, final ReindexSettings settings, final StringBuffer buf)
+  private boolean reindex(final Class< ? > clazz, final ReindexSettings settings, final StringBuffer buf,
+      final ReindexCheckpoint checkpoint)
   {
     // PF-378: Performance of run of full re-indexing the data-base is very slow for large data-bases
     // Single transactions needed, otherwise the full run will be very slow for large data-bases.
     final TransactionTemplate tx = new TransactionTemplate(new HibernateTransactionManager(hibernate.getSessionFactory()));
-    tx.execute(new TransactionCallback() {
+    final Object result = tx.execute(new TransactionCallback() {
       // The call-back is needed, otherwise a lot of transactions are left open until last run is completed:
       public Object doInTransaction(final TransactionStatus status)
       {
@@ -144,18 +235,20 @@ public class HibernateSearchReindexer
           hibernate.execute(new HibernateCallback() {
             public Object doInHibernate(final Session session) throws HibernateException
             {
-              databaseDao.reindex(clazz, settings, buf);
+              databaseDao.reindex(clazz, settings, buf, checkpoint);
               status.setRollbackOnly();
               return null;
             }
           });
         } catch (final Exception ex) {
-          buf.append(" (an error occured, see log file for further information.), ");
+          buf.append(ClassUtils.getShortClassName(clazz)).append(" (an error occured, see log file for further information.), ");
           log.error("While rebuilding data-base-search-index for '" + clazz.getName() + "': " + ex.getMessage(), ex);
+          return Boolean.FALSE;
         }
-        return null;
+        return Boolean.TRUE;
       }
     });
+    return Boolean.TRUE.equals(result);
   }
 
   public String rebuildDatabaseSearchIndices()
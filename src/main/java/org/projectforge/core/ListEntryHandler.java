@@ -0,0 +1,39 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.core;
+
+/**
+ * Handler for processing the entries of a result list one by one without holding the whole list in memory. The entries may be detached
+ * from their hibernate session after handling, so don't access lazy loaded associations of an entry after the handle method is left.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * @see BaseDao#processList(QueryFilter, ListEntryHandler)
+ */
+public interface ListEntryHandler<O>
+{
+  /**
+   * @param obj The current entry.
+   * @return false, if the processing should be stopped, otherwise true.
+   */
+  public boolean handle(O obj);
+}
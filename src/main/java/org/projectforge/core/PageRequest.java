@@ -0,0 +1,123 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.core;
+
+import java.io.Serializable;
+
+/**
+ * Request for one page of a result list: sort property, page size and the position of the page. The position is given by the sort value
+ * and id of the last entry of the previous page (keyset pagination) or, if not known, by the index of the first entry (offset
+ * pagination).
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * @see BaseDao#getListPage(BaseSearchFilter, PageRequest)
+ */
+public class PageRequest implements Serializable
+{
+  private static final long serialVersionUID = -3413178389573498466L;
+
+  private String sortProperty;
+
+  private boolean ascending = true;
+
+  private int pageSize;
+
+  private int firstResult;
+
+  private Serializable lastSortValue;
+
+  private Serializable lastId;
+
+  public PageRequest(final String sortProperty, final boolean ascending, final int pageSize)
+  {
+    this.sortProperty = sortProperty;
+    this.ascending = ascending;
+    this.pageSize = pageSize;
+  }
+
+  public String getSortProperty()
+  {
+    return sortProperty;
+  }
+
+  public boolean isAscending()
+  {
+    return ascending;
+  }
+
+  public int getPageSize()
+  {
+    return pageSize;
+  }
+
+  /**
+   * Index of the first entry of the page. Only used if no last seen key is given.
+   */
+  public int getFirstResult()
+  {
+    return firstResult;
+  }
+
+  public PageRequest setFirstResult(final int firstResult)
+  {
+    this.firstResult = firstResult;
+    return this;
+  }
+
+  /**
+   * @return The value of the sort property of the last entry of the previous page.
+   */
+  public Serializable getLastSortValue()
+  {
+    return lastSortValue;
+  }
+
+  /**
+   * @return The id of the last entry of the previous page.
+   */
+  public Serializable getLastId()
+  {
+    return lastId;
+  }
+
+  /**
+   * Sets the key of the last entry of the previous page.
+   * @param lastSortValue
+   * @param lastId
+   * @return this for chaining.
+   */
+  public PageRequest setLastKey(final Serializable lastSortValue, final Serializable lastId)
+  {
+    this.lastSortValue = lastSortValue;
+    this.lastId = lastId;
+    return this;
+  }
+
+  /**
+   * @return true, if the key of the last entry of the previous page is given.
+   */
+  public boolean hasLastKey()
+  {
+    return lastSortValue != null && lastId != null;
+  }
+}
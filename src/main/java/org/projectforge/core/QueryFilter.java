@@ -25,6 +25,7 @@ package org.projectforge.core;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 
@@ -49,6 +50,8 @@ public class QueryFilter
 
   private int maxResults = -1;
 
+  private int firstResult = -1;
+
   private String name;
 
   private String alias;
@@ -157,6 +160,21 @@ public class QueryFilter
     return this;
   }
 
+  /**
+   * Removes all orders (not the orders of sub criterias), e. g. for count queries or for replacing the orders.
+   * @return this for chaining.
+   */
+  public QueryFilter removeOrders()
+  {
+    final Iterator<Object> it = filterSettings.iterator();
+    while (it.hasNext() == true) {
+      if (it.next() instanceof Order) {
+        it.remove();
+      }
+    }
+    return this;
+  }
+
   public void setFetchMode(final String associationPath, final FetchMode mode)
   {
     this.associationPath = associationPath;
@@ -228,6 +246,9 @@ public class QueryFilter
     if (maxResults > 0) {
       criteria.setMaxResults(maxResults);
     }
+    if (firstResult > 0) {
+      criteria.setFirstResult(firstResult);
+    }
   }
 
   /**
@@ -248,6 +269,19 @@ public class QueryFilter
     return this;
   }
 
+  /**
+   * @return true if any alias or sub criteria is given (the result may contain duplicate entries).
+   */
+  public boolean hasJoins()
+  {
+    for (final Object obj : filterSettings) {
+      if (obj instanceof Alias || obj instanceof QueryFilter) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public QueryFilter createCriteria(final String name)
   {
     final QueryFilter filter = new QueryFilter(name);
@@ -279,6 +313,22 @@ public class QueryFilter
     return maxResults;
   }
 
+  /**
+   * @see org.hibernate.Criteria#setFirstResult(int)
+   * @param value
+   * @return
+   */
+  public QueryFilter setFirstResult(final int value)
+  {
+    this.firstResult = value;
+    return this;
+  }
+
+  public int getFirstResult()
+  {
+    return firstResult;
+  }
+
   class Alias
   {
     String arg0;
@@ -34,6 +34,8 @@ public class ReindexSettings
 
   private Integer lastNEntries;
 
+  private boolean resumeAbortedRun = true;
+
   public ReindexSettings()
   {
   }
@@ -53,6 +55,25 @@ public class ReindexSettings
   {
     return lastNEntries;
   }
+
+  /**
+   * @return true, if a full re-index should continue an aborted full re-index run (default). Should be false, if the data base was
+   *         replaced (e. g. restored) since the aborted run.
+   * @see org.projectforge.database.ReindexCheckpoint
+   */
+  public boolean isResumeAbortedRun()
+  {
+    return resumeAbortedRun;
+  }
+
+  /**
+   * @return this for chaining.
+   */
+  public ReindexSettings setResumeAbortedRun(final boolean resumeAbortedRun)
+  {
+    this.resumeAbortedRun = resumeAbortedRun;
+    return this;
+  }
   
   @Override
   public String toString()
@@ -37,6 +37,7 @@ import org.projectforge.continuousdb.UpdateEntryImpl;
 import org.projectforge.continuousdb.UpdatePreCheckStatus;
 import org.projectforge.continuousdb.UpdateRunningStatus;
 import org.projectforge.fibu.AuftragDO;
+import org.projectforge.fibu.AuftragDao;
 import org.projectforge.fibu.AuftragsPositionDO;
 import org.projectforge.fibu.EingangsrechnungDO;
 import org.projectforge.fibu.EmployeeDO;
@@ -69,6 +70,42 @@ public class DatabaseCoreUpdates
   public static List<UpdateEntry> getUpdateEntries()
   {
     final List<UpdateEntry> list = new ArrayList<UpdateEntry>();
+    // /////////////////////////////////////////////////////////////////
+    // 5.6
+    // /////////////////////////////////////////////////////////////////
+    list.add(new UpdateEntryImpl(
+        CORE_REGION_ID,
+        "5.6",
+        "2014-09-15",
+        "Adds t_fibu_auftrag.invoiced_sum, t_fibu_auftrag.to_be_invoiced_sum, t_fibu_auftrag.completely_invoiced, t_fibu_auftrag.closed_not_completely_invoiced.") {
+
+      @Override
+      public UpdatePreCheckStatus runPreCheck()
+      {
+        if (dao.doTableAttributesExist(AuftragDO.class, "invoicedSum", "toBeInvoicedSum", "completelyInvoiced",
+            "closedNotCompletelyInvoiced") == false) {
+          return UpdatePreCheckStatus.READY_FOR_UPDATE;
+        }
+        return UpdatePreCheckStatus.ALREADY_UPDATED;
+      }
+
+      @Override
+      public UpdateRunningStatus runUpdate()
+      {
+        if (dao.doTableAttributesExist(AuftragDO.class, "invoicedSum", "toBeInvoicedSum", "completelyInvoiced",
+            "closedNotCompletelyInvoiced") == false) {
+          final Table orderTable = new Table(AuftragDO.class);
+          dao.addTableAttributes(orderTable, new TableAttribute(AuftragDO.class, "invoicedSum"));
+          dao.addTableAttributes(orderTable, new TableAttribute(AuftragDO.class, "toBeInvoicedSum"));
+          dao.addTableAttributes(orderTable, new TableAttribute(AuftragDO.class, "completelyInvoiced").setDefaultValue("false"));
+          dao.addTableAttributes(orderTable, new TableAttribute(AuftragDO.class, "closedNotCompletelyInvoiced").setDefaultValue("false"));
+          dao.createMissingIndices();
+          Registry.instance().getDao(AuftragDao.class).rebuildInvoiceStatus();
+        }
+        return UpdateRunningStatus.DONE;
+      }
+    });
+
     // /////////////////////////////////////////////////////////////////
     // 5.5
     // /////////////////////////////////////////////////////////////////
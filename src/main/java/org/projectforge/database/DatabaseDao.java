@@ -24,10 +24,21 @@
 package org.projectforge.database;
 
 import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.ClassUtils;
 import org.hibernate.CacheMode;
@@ -36,6 +47,7 @@ import org.hibernate.FlushMode;
 import org.hibernate.ScrollMode;
 import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.Transaction;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
@@ -47,8 +59,8 @@ import org.projectforge.common.DateHelper;
 import org.projectforge.core.AbstractBaseDO;
 import org.projectforge.core.ConfigXml;
 import org.projectforge.core.ExtendedBaseDO;
+import org.projectforge.core.NumberFormatter;
 import org.projectforge.core.ReindexSettings;
-import org.projectforge.timesheet.TimesheetDO;
 import org.projectforge.web.calendar.DateTimeFormatter;
 import org.springframework.orm.hibernate3.support.HibernateDaoSupport;
 import org.springframework.transaction.annotation.Isolation;
@@ -67,9 +79,33 @@ public class DatabaseDao extends HibernateDaoSupport
 {
   private static final int MIN_REINDEX_ENTRIES_4_USE_SCROLL_MODE = 2000;
 
+  /**
+   * A full re-index of entity classes with more entries is done in parallel by id ranges (shards).
+   */
+  private static final int MIN_REINDEX_ENTRIES_4_USE_SHARDS = 20000;
+
+  /**
+   * Maximum number of threads (shards) used for re-indexing one entity class.
+   */
+  private static final int MAX_REINDEX_SHARDS = 4;
+
+  private static final int REINDEX_BATCH_SIZE = 1000;
+
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(DatabaseDao.class);
 
-  private Date currentReindexRun = null;
+  private static class ReindexProgress
+  {
+    private final Date started = new Date();
+
+    private volatile long total;
+
+    private final AtomicLong done = new AtomicLong();
+  }
+
+  /**
+   * The currently running re-index jobs by entity class.
+   */
+  private final ConcurrentMap<Class< ? >, ReindexProgress> currentReindexRuns = new ConcurrentHashMap<Class< ? >, ReindexProgress>();
 
   /**
    * Since yesterday and 1,000 newest entries at maximimum.
@@ -89,9 +125,10 @@ public class DatabaseDao extends HibernateDaoSupport
   @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW, isolation = Isolation.REPEATABLE_READ)
   public String rebuildDatabaseSearchIndices(final Class< ? > clazz, final ReindexSettings settings)
   {
-    if (currentReindexRun != null) {
+    final ReindexProgress progress = currentReindexRuns.get(clazz);
+    if (progress != null) {
       return "Another re-index job is already running. The job was started at: "
-          + DateTimeFormatter.instance().getFormattedDateTime(currentReindexRun, Locale.ENGLISH, DateHelper.UTC) + " (UTC)";
+          + DateTimeFormatter.instance().getFormattedDateTime(progress.started, Locale.ENGLISH, DateHelper.UTC) + " (UTC)";
     }
     final StringBuffer buf = new StringBuffer();
     reindex(clazz, settings, buf);
@@ -101,71 +138,117 @@ public class DatabaseDao extends HibernateDaoSupport
   @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW, isolation = Isolation.REPEATABLE_READ)
   public void reindex(final Class< ? > clazz, final ReindexSettings settings, final StringBuffer buf)
   {
-    if (currentReindexRun != null) {
-      buf.append(" (cancelled due to another running index-job)");
+    reindex(clazz, settings, buf, null);
+  }
+
+  /**
+   * Re-indexes the given class. Different classes may be re-indexed in parallel by different threads, but each class only once at a
+   * time.
+   * @param clazz
+   * @param settings
+   * @param buf The result (class name and errors) is appended.
+   * @param checkpoint If given (full re-index only), already re-indexed classes are skipped and the progress is stored.
+   */
+  @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW, isolation = Isolation.REPEATABLE_READ)
+  public void reindex(final Class< ? > clazz, final ReindexSettings settings, final StringBuffer buf, final ReindexCheckpoint checkpoint)
+  {
+    final ReindexProgress progress = new ReindexProgress();
+    if (currentReindexRuns.putIfAbsent(clazz, progress) != null) {
+      buf.append(ClassUtils.getShortClassName(clazz)).append(" (cancelled due to another running index-job), ");
       return;
     }
-    synchronized (this) {
-      try {
-        currentReindexRun = new Date();
-        buf.append(ClassUtils.getShortClassName(clazz));
-        final File file = new File(ConfigXml.getInstance().getApplicationHomeDir() + "/hibernate-search/" + clazz.getName() + "/write.lock");
-        if (file.exists() == true) {
-          final Date lastModified = new Date(file.lastModified());
-          final String message;
-          if (System.currentTimeMillis() - file.lastModified() > 60000) { // Last modified date is older than 60 seconds.
-            message = "(*** write.lock with last modification '"
-                + DateTimeFormatter.instance().getFormattedDateTime(lastModified)
-                + "' exists (skip re-index). May-be your admin should delete this file (see log). ***)";
-            log.error(file.getAbsoluteFile() + " " + message);
-          } else {
-            message = "(*** write.lock temporarily exists (skip re-index). ***)";
-            log.info(file.getAbsolutePath() + " " + message);
-          }
-          buf.append(" ").append(message);
+    try {
+      final StringBuffer line = new StringBuffer();
+      line.append(ClassUtils.getShortClassName(clazz));
+      final File file = new File(ConfigXml.getInstance().getApplicationHomeDir() + "/hibernate-search/" + clazz.getName() + "/write.lock");
+      if (checkpoint != null && checkpoint.isDone(clazz) == true) {
+        line.append(" (already done)");
+      } else if (file.exists() == true) {
+        final Date lastModified = new Date(file.lastModified());
+        final String message;
+        if (System.currentTimeMillis() - file.lastModified() > 60000) { // Last modified date is older than 60 seconds.
+          message = "(*** write.lock with last modification '"
+              + DateTimeFormatter.instance().getFormattedDateTime(lastModified)
+              + "' exists (skip re-index). May-be your admin should delete this file (see log). ***)";
+          log.error(file.getAbsoluteFile() + " " + message);
         } else {
-          reindex(clazz, settings);
+          message = "(*** write.lock temporarily exists (skip re-index). ***)";
+          log.info(file.getAbsolutePath() + " " + message);
         }
-        buf.append(", ");
-      } finally {
-        currentReindexRun = null;
+        line.append(" ").append(message);
+      } else {
+        reindex(clazz, settings, progress, checkpoint);
+        if (checkpoint != null) {
+          checkpoint.setDone(clazz);
+        }
+      }
+      buf.append(line).append(", ");
+    } finally {
+      currentReindexRuns.remove(clazz);
+    }
+  }
+
+  /**
+   * @return The progress of all currently running re-index jobs (one line per class) or null, if no re-index job is running.
+   */
+  public String getReindexProgress()
+  {
+    if (currentReindexRuns.isEmpty() == true) {
+      return null;
+    }
+    final StringBuffer buf = new StringBuffer();
+    for (final Map.Entry<Class< ? >, ReindexProgress> entry : currentReindexRuns.entrySet()) {
+      final ReindexProgress progress = entry.getValue();
+      buf.append(ClassUtils.getShortClassName(entry.getKey())).append(": ").append(NumberFormatter.format(progress.done.get()));
+      if (progress.total > 0) {
+        buf.append(" / ").append(NumberFormatter.format(progress.total)).append(" (")
+        .append(progress.done.get() * 100 / progress.total).append("%)");
       }
+      buf.append(", started at ")
+      .append(DateTimeFormatter.instance().getFormattedDateTime(progress.started, Locale.ENGLISH, DateHelper.UTC)).append(" (UTC)\n");
     }
+    return buf.toString();
+  }
+
+  /**
+   * @param resume If true, the check-point of the last aborted full re-index run is returned (if not expired). Otherwise the check-point
+   *          of an aborted run is deleted.
+   * @return The check-point of the last aborted full re-index run or a new one.
+   */
+  public ReindexCheckpoint getReindexCheckpoint(final boolean resume)
+  {
+    return new ReindexCheckpoint(new File(ConfigXml.getInstance().getApplicationHomeDir() + "/hibernate-search/reindex-checkpoint.properties"),
+        resume);
   }
 
   /**
    * 
    * @param clazz
    */
-  private long reindex(final Class< ? > clazz, final ReindexSettings settings)
+  private long reindex(final Class< ? > clazz, final ReindexSettings settings, final ReindexProgress progress,
+      final ReindexCheckpoint checkpoint)
   {
     if (settings.getLastNEntries() != null || settings.getFromDate() != null) {
       // OK, only partly re-index required:
-      return reindexObjects(clazz, settings);
+      return reindexObjects(clazz, settings, progress);
     }
     // OK, full re-index required:
-    if (isIn(clazz, HistoryEntry.class, TimesheetDO.class) == true) {
-      // MassIndexer throws LazyInitializationException for some classes, so use it only for the important classes (with most entries):
-      return reindexMassIndexer(clazz);
-    }
-    return reindexObjects(clazz, null);
-  }
-
-  private boolean isIn(final Class< ? > clazz, final Class< ? >... classes)
-  {
-    for (final Class< ? > cls : classes) {
-      if (clazz.equals(cls) == true) {
-        return true;
+    final Long number = (Long) createCriteria(getSession(), clazz, null, true).uniqueResult();
+    if (number > MIN_REINDEX_ENTRIES_4_USE_SHARDS || (checkpoint != null && checkpoint.getShards(clazz) != null)) {
+      final long[][] shards = getShards(clazz, number, checkpoint);
+      if (shards != null) {
+        return reindexShards(clazz, shards, number, progress, checkpoint);
       }
     }
-    return false;
+    return reindexObjects(clazz, null, progress);
   }
 
-  private long reindexObjects(final Class< ? > clazz, final ReindexSettings settings)
+  private long reindexObjects(final Class< ? > clazz, final ReindexSettings settings, final ReindexProgress progress)
   {
     final Session session = getSession();
     Criteria criteria = createCriteria(session, clazz, settings, true);
     final Long number = (Long) criteria.uniqueResult(); // Get number of objects to re-index (select count(*) from).
+    progress.total = number;
     final boolean scrollMode = number > MIN_REINDEX_ENTRIES_4_USE_SCROLL_MODE ? true : false;
     log.info("Starting re-indexing of "
         + number
@@ -174,7 +257,7 @@ public class DatabaseDao extends HibernateDaoSupport
         + " with scrollMode="
         + scrollMode
         + "...");
-    final int batchSize = 1000;// NumberUtils.createInteger(System.getProperty("hibernate.search.worker.batch_size")
+    final int batchSize = REINDEX_BATCH_SIZE;// NumberUtils.createInteger(System.getProperty("hibernate.search.worker.batch_size")
     final FullTextSession fullTextSession = Search.getFullTextSession(session);
     fullTextSession.setFlushMode(FlushMode.MANUAL);
     fullTextSession.setCacheMode(CacheMode.IGNORE);
@@ -189,6 +272,7 @@ public class DatabaseDao extends HibernateDaoSupport
           ((ExtendedBaseDO< ? >) obj).recalculate();
         }
         fullTextSession.index(obj); // index each element
+        progress.done.incrementAndGet();
         if (index++ % batchSize == 0)
           session.flush(); // clear every batchSize since the queue is processed
       }
@@ -200,6 +284,7 @@ public class DatabaseDao extends HibernateDaoSupport
           ((ExtendedBaseDO< ? >) obj).recalculate();
         }
         fullTextSession.index(obj);
+        progress.done.incrementAndGet();
         if (index++ % batchSize == 0)
           session.flush(); // clear every batchSize since the queue is processed
       }
@@ -211,31 +296,150 @@ public class DatabaseDao extends HibernateDaoSupport
   }
 
   /**
-   * 
-   * @param clazz
+   * Splits the id range of the given class in equal parts, one per thread. If a check-point of an aborted run exists, the stored shards are
+   * returned.
+   * @return null, if the class has no numeric ids.
    */
-  private long reindexMassIndexer(final Class< ? > clazz)
+  private long[][] getShards(final Class< ? > clazz, final long number, final ReindexCheckpoint checkpoint)
   {
-    final Session session = getSession();
-    final Criteria criteria = createCriteria(session, clazz, null, true);
-    final Long number = (Long) criteria.uniqueResult(); // Get number of objects to re-index (select count(*) from).
-    log.info("Starting (mass) re-indexing of " + number + " entries of type " + clazz.getName() + "...");
-    final FullTextSession fullTextSession = Search.getFullTextSession(session);
+    if (checkpoint != null) {
+      final long[][] shards = checkpoint.getShards(clazz);
+      if (shards != null) {
+        log.info("Resuming re-indexing of " + clazz.getName() + " from check-point.");
+        return shards;
+      }
+    }
+    final Object[] minMax = (Object[]) getSession().createCriteria(clazz)
+        .setProjection(Projections.projectionList().add(Projections.min("id")).add(Projections.max("id"))).uniqueResult();
+    if (minMax == null || minMax[0] instanceof Number == false || minMax[1] instanceof Number == false) {
+      return null;
+    }
+    final long min = ((Number) minMax[0]).longValue();
+    final long max = ((Number) minMax[1]).longValue();
+    final int size = (int) Math.max(1, Math.min(MAX_REINDEX_SHARDS, number / (MIN_REINDEX_ENTRIES_4_USE_SHARDS / 2)));
+    final long step = (max - min) / size + 1;
+    final long[][] shards = new long[size][];
+    for (int i = 0; i < size; i++) {
+      final long from = min + i * step;
+      // { first id, last id, last re-indexed id }
+      shards[i] = new long[] { from, Math.min(max, from + step - 1), from - 1};
+    }
+    if (checkpoint != null) {
+      checkpoint.setShards(clazz, shards);
+    }
+    return shards;
+  }
+
+  /**
+   * Re-indexes the id ranges (shards) of the given class in parallel, each thread with its own session. The index of the class is purged
+   * first (if not resumed from a check-point).
+   */
+  private long reindexShards(final Class< ? > clazz, final long[][] shards, final long number, final ReindexProgress progress,
+      final ReindexCheckpoint checkpoint)
+  {
+    progress.total = number;
+    boolean resumed = false;
+    for (final long[] shard : shards) {
+      if (shard[2] >= shard[0]) {
+        resumed = true; // At least one shard was (partly) done by an aborted run.
+      }
+    }
+    final FullTextSession fullTextSession = Search.getFullTextSession(getSession());
+    if (resumed == false) {
+      fullTextSession.purgeAll(clazz);
+      fullTextSession.flushToIndexes();
+    }
+    log.info("Starting re-indexing of " + number + " entries of type " + clazz.getName() + " in " + shards.length + " threads...");
+    final Class< ? > idClass = getIdClass(clazz);
+    final ExecutorService executor = Executors.newFixedThreadPool(shards.length);
+    final List<Future<Long>> futures = new ArrayList<Future<Long>>();
+    for (int i = 0; i < shards.length; i++) {
+      final int shardIndex = i;
+      futures.add(executor.submit(new Callable<Long>() {
+        @Override
+        public Long call() throws Exception
+        {
+          return reindexShard(clazz, idClass, shardIndex, shards[shardIndex], progress, checkpoint);
+        }
+      }));
+    }
+    executor.shutdown();
+    long counter = 0;
     try {
-      fullTextSession.createIndexer(clazz)//
-      .batchSizeToLoadObjects(25) //
-      //.cacheMode(CacheMode.NORMAL) //
-      .threadsToLoadObjects(5) //
-      //.threadsForIndexWriter(1) //
-      .threadsForSubsequentFetching(20) //
-      .startAndWait();
+      for (final Future<Long> future : futures) {
+        counter += future.get();
+      }
     } catch (final InterruptedException ex) {
-      log.error("Exception encountered while reindexing: " + ex.getMessage(), ex);
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Re-indexing of " + clazz.getName() + " interrupted.", ex);
+    } catch (final ExecutionException ex) {
+      throw new RuntimeException("Exception encountered while re-indexing " + clazz.getName() + ": " + ex.getCause().getMessage(), ex
+          .getCause());
     }
-    final SearchFactory searchFactory = fullTextSession.getSearchFactory();
-    searchFactory.optimize(clazz);
-    log.info("Re-indexing of " + number + " objects of type " + clazz.getName() + " done.");
-    return number;
+    fullTextSession.getSearchFactory().optimize(clazz);
+    log.info("Re-indexing of " + counter + " objects of type " + clazz.getName() + " done.");
+    return counter;
+  }
+
+  private long reindexShard(final Class< ? > clazz, final Class< ? > idClass, final int shardIndex, final long[] shard,
+      final ReindexProgress progress, final ReindexCheckpoint checkpoint)
+  {
+    final Session session = getSessionFactory().openSession();
+    final FullTextSession fullTextSession = Search.getFullTextSession(session);
+    fullTextSession.setFlushMode(FlushMode.MANUAL);
+    fullTextSession.setCacheMode(CacheMode.IGNORE);
+    final Transaction tx = session.beginTransaction();
+    long counter = 0;
+    try {
+      final ScrollableResults results = session.createCriteria(clazz) //
+          .add(Restrictions.gt("id", toId(shard[2], idClass))) //
+          .add(Restrictions.le("id", toId(shard[1], idClass))) //
+          .addOrder(Order.asc("id")) //
+          .setFetchSize(REINDEX_BATCH_SIZE) //
+          .scroll(ScrollMode.FORWARD_ONLY);
+      long lastId = shard[2];
+      while (results.next() == true) {
+        final Object obj = results.get(0);
+        if (obj instanceof ExtendedBaseDO< ? >) {
+          ((ExtendedBaseDO< ? >) obj).recalculate();
+        }
+        fullTextSession.index(obj);
+        lastId = ((Number) session.getIdentifier(obj)).longValue();
+        progress.done.incrementAndGet();
+        if (++counter % REINDEX_BATCH_SIZE == 0) {
+          fullTextSession.flushToIndexes();
+          fullTextSession.clear();
+          if (checkpoint != null) {
+            checkpoint.setShardPosition(clazz, shardIndex, shard, lastId);
+          }
+        }
+      }
+      results.close();
+      fullTextSession.flushToIndexes();
+      tx.commit();
+      if (checkpoint != null) {
+        checkpoint.setShardPosition(clazz, shardIndex, shard, shard[1]);
+      }
+      return counter;
+    } catch (final RuntimeException ex) {
+      tx.rollback();
+      throw ex;
+    } finally {
+      session.close();
+    }
+  }
+
+  private Class< ? > getIdClass(final Class< ? > clazz)
+  {
+    return getSessionFactory().getClassMetadata(clazz).getIdentifierType().getReturnedClass();
+  }
+
+  private Serializable toId(final long value, final Class< ? > idClass)
+  {
+    if (Integer.class.equals(idClass) == true) {
+      return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+    }
+    return value;
   }
 
   private Criteria createCriteria(final Session session, final Class< ? > clazz, final ReindexSettings settings, final boolean rowCount)
@@ -0,0 +1,837 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.database;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.ForeignKey;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.mapping.PrimaryKey;
+import org.hibernate.mapping.Table;
+import org.projectforge.common.DatabaseDialect;
+import org.projectforge.core.HibernateSearchReindexer;
+import org.projectforge.core.ReindexSettings;
+import org.projectforge.fibu.AuftragDao;
+import org.projectforge.fibu.RechnungCache;
+import org.projectforge.fibu.kost.KostCache;
+import org.projectforge.task.TaskTree;
+import org.projectforge.user.UserGroupCache;
+
+/**
+ * Fast binary snapshots of the data-base, e. g. for setting up test environments. Unlike {@link XmlDump} the tables are dumped and
+ * restored on JDBC level including the original ids:
+ * <ul>
+ * <li>Every table is written to its own gzipped file (format see {@link SnapshotRowCodec}), the tables are written in parallel.</li>
+ * <li>The manifest file contains the tables with their columns, number of rows and restore level.</li>
+ * <li>The tables are restored in the order of their foreign keys (ties are resolved by the order of {@link XmlDump}). All tables of the
+ * same level (tables without dependencies to each other) are restored in parallel using JDBC batch inserts.</li>
+ * <li>Columns referencing the own table (e. g. the parent task) are inserted as null and updated in a second pass, because the
+ * referenced row may be inserted later.</li>
+ * </ul>
+ * All tables are written from one snapshot of the data-base (see {@link #writeSnapshot(File)}). The data-base has to be empty for
+ * restoring or has to be cleared by the restore (see {@link #restoreSnapshot(File, boolean)}).
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * 
+ */
+public class DatabaseSnapshot
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(DatabaseSnapshot.class);
+
+  public static final String MANIFEST_FILENAME = "snapshot.properties";
+
+  private static final String VERSION = "1";
+
+  private static final int NUMBER_OF_THREADS = 4;
+
+  private static final int BATCH_SIZE = 1000;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private DataSource dataSource;
+
+  private XmlDump xmlDump;
+
+  private AuftragDao auftragDao;
+
+  private HibernateSearchReindexer hibernateSearchReindexer;
+
+  private TaskTree taskTree;
+
+  private UserGroupCache userGroupCache;
+
+  private KostCache kostCache;
+
+  private RechnungCache rechnungCache;
+
+  private static class TableInfo
+  {
+    String name;
+
+    String primaryKey;
+
+    int level;
+
+    String[] columns;
+
+    int[] types;
+
+    /**
+     * Columns of foreign keys referencing the own table.
+     */
+    String[] selfReferences;
+
+    long rows;
+
+    String file;
+  }
+
+  public void setDataSource(final DataSource dataSource)
+  {
+    this.dataSource = dataSource;
+  }
+
+  public void setXmlDump(final XmlDump xmlDump)
+  {
+    this.xmlDump = xmlDump;
+  }
+
+  public void setAuftragDao(final AuftragDao auftragDao)
+  {
+    this.auftragDao = auftragDao;
+  }
+
+  public void setHibernateSearchReindexer(final HibernateSearchReindexer hibernateSearchReindexer)
+  {
+    this.hibernateSearchReindexer = hibernateSearchReindexer;
+  }
+
+  public void setTaskTree(final TaskTree taskTree)
+  {
+    this.taskTree = taskTree;
+  }
+
+  public void setUserGroupCache(final UserGroupCache userGroupCache)
+  {
+    this.userGroupCache = userGroupCache;
+  }
+
+  public void setKostCache(final KostCache kostCache)
+  {
+    this.kostCache = kostCache;
+  }
+
+  public void setRechnungCache(final RechnungCache rechnungCache)
+  {
+    this.rechnungCache = rechnungCache;
+  }
+
+  /**
+   * Writes all tables and the manifest into the given directory. All tables are read from the same data-base snapshot, so the written
+   * snapshot is consistent even if the data-base is modified meanwhile: PostgreSQL exports the snapshot of a repeatable read transaction
+   * (pg_export_snapshot) and the tables are read in parallel by transactions importing this snapshot. Other data-bases (HSQLDB) read all
+   * tables sequentially in one serializable transaction.
+   * @param dir Will be created if not exist.
+   */
+  public void writeSnapshot(final File dir)
+  {
+    dir.mkdirs();
+    final long start = System.currentTimeMillis();
+    final List<TableInfo> tables = getTables();
+    Connection con = null;
+    Statement stmt = null;
+    ResultSet rs = null;
+    try {
+      con = dataSource.getConnection();
+      con.setReadOnly(true);
+      con.setAutoCommit(false);
+      if (HibernateUtils.getDialect() == DatabaseDialect.PostgreSQL) {
+        con.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        stmt = con.createStatement();
+        rs = stmt.executeQuery("select pg_export_snapshot()");
+        rs.next();
+        final String snapshotId = rs.getString(1);
+        // The exported snapshot is valid as long as this transaction is open:
+        final List<Callable<Object>> jobs = new ArrayList<Callable<Object>>();
+        for (final TableInfo table : tables) {
+          jobs.add(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception
+            {
+              writeTable(dir, table, snapshotId);
+              return null;
+            }
+          });
+        }
+        execute(jobs);
+      } else {
+        con.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        for (final TableInfo table : tables) {
+          writeTable(dir, table, con);
+        }
+      }
+    } catch (final SQLException ex) {
+      log.error(ex.getMessage(), ex);
+      throw new RuntimeException(ex);
+    } catch (final IOException ex) {
+      log.error(ex.getMessage(), ex);
+      throw new RuntimeException(ex);
+    } finally {
+      rollback(con);
+      close(con, stmt, rs);
+    }
+    writeManifest(dir, tables);
+    log.info("Snapshot of " + tables.size() + " tables written to '" + dir.getAbsolutePath() + "' in "
+        + (System.currentTimeMillis() - start) + "ms.");
+  }
+
+  /**
+   * Restores all tables of the given snapshot. The tables have to be empty.
+   * @param dir Directory containing the manifest and the table files.
+   * @see #restoreSnapshot(File, boolean)
+   */
+  public void restoreSnapshot(final File dir)
+  {
+    restoreSnapshot(dir, false);
+  }
+
+  /**
+   * Restores all tables of the given snapshot. The invoice status of the orders is recalculated afterwards (the snapshot may be written by
+   * an older version), the caches are expired and the search indices are rebuilt.<br/>
+   * Every table is committed on its own, so a failed restore leaves a partially restored data-base. A further restore into this data-base
+   * is only possible with clearDataBase.
+   * @param dir Directory containing the manifest and the table files.
+   * @param clearDataBase If true, all rows of all tables are deleted before restoring, otherwise the tables have to be empty.
+   */
+  public void restoreSnapshot(final File dir, final boolean clearDataBase)
+  {
+    final long start = System.currentTimeMillis();
+    final List<TableInfo> tables = readManifest(dir);
+    if (clearDataBase == true) {
+      clearTables();
+    }
+    checkEmpty(tables);
+    final TreeMap<Integer, List<TableInfo>> levels = new TreeMap<Integer, List<TableInfo>>();
+    for (final TableInfo table : tables) {
+      List<TableInfo> list = levels.get(table.level);
+      if (list == null) {
+        list = new ArrayList<TableInfo>();
+        levels.put(table.level, list);
+      }
+      list.add(table);
+    }
+    long maxId = 0;
+    for (final List<TableInfo> list : levels.values()) {
+      final List<Callable<Object>> jobs = new ArrayList<Callable<Object>>();
+      for (final TableInfo table : list) {
+        jobs.add(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception
+          {
+            return restoreTable(dir, table);
+          }
+        });
+      }
+      for (final Object id : execute(jobs)) {
+        maxId = Math.max(maxId, (Long) id);
+      }
+    }
+    updateSequence(maxId);
+    auftragDao.rebuildInvoiceStatus();
+    // The rows are restored bypassing Hibernate:
+    taskTree.setExpired();
+    userGroupCache.setExpired();
+    kostCache.setExpired();
+    rechnungCache.setExpired();
+    if (hibernateSearchReindexer != null) {
+      // The data base is new, so don't continue any aborted re-index run:
+      hibernateSearchReindexer.executeInBackground(new ReindexSettings().setResumeAbortedRun(false));
+    } else {
+      log.warn("No HibernateSearchReindexer available (not running as web application), please rebuild the search indices manually.");
+    }
+    log.info("Snapshot of " + tables.size() + " tables restored from '" + dir.getAbsolutePath() + "' in "
+        + (System.currentTimeMillis() - start) + "ms.");
+  }
+
+  /**
+   * @return All mapped tables with their restore level. The tables are ordered by level and by the order of {@link XmlDump}.
+   */
+  @SuppressWarnings("unchecked")
+  private List<TableInfo> getTables()
+  {
+    final Configuration configuration = HibernateUtils.getConfiguration();
+    final List<Class< ? >> entities = new ArrayList<Class< ? >>();
+    entities.addAll(xmlDump.getRestoreOrder());
+    entities.addAll(HibernateEntities.instance().getOrderedEntities());
+    entities.addAll(HibernateEntities.instance().getOrderedHistoryEntities());
+    final Map<String, Table> tables = new LinkedHashMap<String, Table>();
+    for (final Class< ? > entity : entities) {
+      final PersistentClass persistentClass = configuration.getClassMapping(entity.getName());
+      if (persistentClass != null && tables.containsKey(persistentClass.getTable().getName()) == false) {
+        tables.put(persistentClass.getTable().getName(), persistentClass.getTable());
+      }
+    }
+    // Join tables etc.:
+    final Iterator<Table> it = configuration.getTableMappings();
+    while (it.hasNext() == true) {
+      final Table table = it.next();
+      if (table.isPhysicalTable() == true && tables.containsKey(table.getName()) == false) {
+        tables.put(table.getName(), table);
+      }
+    }
+    final Map<String, Integer> levels = new HashMap<String, Integer>();
+    for (final Table table : tables.values()) {
+      getLevel(table, tables, levels, new HashSet<String>());
+    }
+    final List<TableInfo> result = new ArrayList<TableInfo>();
+    for (final Table table : tables.values()) {
+      final TableInfo info = new TableInfo();
+      info.name = table.getName();
+      info.level = levels.get(table.getName());
+      final PrimaryKey primaryKey = table.getPrimaryKey();
+      if (primaryKey != null && primaryKey.getColumnSpan() == 1) {
+        info.primaryKey = ((Column) primaryKey.getColumns().get(0)).getName();
+      }
+      info.file = table.getName() + ".bin.gz";
+      info.selfReferences = getSelfReferences(table);
+      result.add(info);
+    }
+    // Stable sort (the order of XmlDump is preserved inside each level):
+    Collections.sort(result, new Comparator<TableInfo>() {
+      @Override
+      public int compare(final TableInfo o1, final TableInfo o2)
+      {
+        return o1.level - o2.level;
+      }
+    });
+    return result;
+  }
+
+  /**
+   * @return 0 for tables without foreign keys, otherwise 1 + the maximum level of the referenced tables. Self-references are ignored
+   *         (they are restored in a second pass, see {@link #getSelfReferences(Table)}), cycles are broken and logged.
+   */
+  @SuppressWarnings("unchecked")
+  private int getLevel(final Table table, final Map<String, Table> tables, final Map<String, Integer> levels, final Set<String> visiting)
+  {
+    final Integer cached = levels.get(table.getName());
+    if (cached != null) {
+      return cached;
+    }
+    visiting.add(table.getName());
+    int level = 0;
+    final Iterator<ForeignKey> it = table.getForeignKeyIterator();
+    while (it.hasNext() == true) {
+      final Table referencedTable = it.next().getReferencedTable();
+      if (referencedTable == null || referencedTable.getName().equals(table.getName()) == true
+          || tables.containsKey(referencedTable.getName()) == false) {
+        continue;
+      }
+      if (visiting.contains(referencedTable.getName()) == true) {
+        log.warn("Cyclic foreign keys between tables " + table.getName() + " and " + referencedTable.getName()
+            + ", restoring may fail if both tables are referencing each other.");
+        continue;
+      }
+      level = Math.max(level, getLevel(tables.get(referencedTable.getName()), tables, levels, visiting) + 1);
+    }
+    visiting.remove(table.getName());
+    levels.put(table.getName(), level);
+    return level;
+  }
+
+  /**
+   * @return The columns of all foreign keys referencing the given table itself.
+   */
+  @SuppressWarnings("unchecked")
+  private String[] getSelfReferences(final Table table)
+  {
+    final List<String> result = new ArrayList<String>();
+    final Iterator<ForeignKey> it = table.getForeignKeyIterator();
+    while (it.hasNext() == true) {
+      final ForeignKey foreignKey = it.next();
+      final Table referencedTable = foreignKey.getReferencedTable();
+      if (referencedTable == null || referencedTable.getName().equals(table.getName()) == false) {
+        continue;
+      }
+      for (final Column column : (List<Column>) foreignKey.getColumns()) {
+        result.add(column.getName());
+      }
+    }
+    return result.toArray(new String[result.size()]);
+  }
+
+  /**
+   * Writes the given table on an own connection importing the given PostgreSQL snapshot.
+   */
+  private void writeTable(final File dir, final TableInfo table, final String snapshotId) throws SQLException, IOException
+  {
+    Connection con = null;
+    Statement stmt = null;
+    try {
+      con = dataSource.getConnection();
+      con.setReadOnly(true);
+      con.setAutoCommit(false); // Needed by PostgreSQL for using cursors (fetch size).
+      con.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+      stmt = con.createStatement();
+      // Has to be the first statement of the transaction:
+      stmt.execute("set transaction snapshot '" + snapshotId + "'");
+      writeTable(dir, table, con);
+    } finally {
+      rollback(con);
+      close(con, stmt, null);
+    }
+  }
+
+  /**
+   * Reads the given table in the (already started) transaction of the given connection.
+   */
+  private void writeTable(final File dir, final TableInfo table, final Connection con) throws SQLException, IOException
+  {
+    final long start = System.currentTimeMillis();
+    Statement stmt = null;
+    ResultSet rs = null;
+    DataOutputStream out = null;
+    try {
+      stmt = con.createStatement();
+      stmt.setFetchSize(BATCH_SIZE);
+      rs = stmt.executeQuery("select * from " + table.name + (table.primaryKey != null ? " order by " + table.primaryKey : ""));
+      final ResultSetMetaData metaData = rs.getMetaData();
+      table.columns = new String[metaData.getColumnCount()];
+      table.types = new int[metaData.getColumnCount()];
+      for (int i = 0; i < table.columns.length; i++) {
+        table.columns[i] = metaData.getColumnName(i + 1);
+        table.types[i] = metaData.getColumnType(i + 1);
+      }
+      final SnapshotRowCodec codec = new SnapshotRowCodec(table.types);
+      out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(new File(dir, table.file)),
+          BUFFER_SIZE)));
+      long rows = 0;
+      while (rs.next() == true) {
+        codec.writeRow(out, codec.getRow(rs));
+        ++rows;
+      }
+      codec.writeEndOfTable(out);
+      out.close();
+      out = null;
+      table.rows = rows;
+    } finally {
+      IOUtils.closeQuietly((OutputStream) out);
+      close(null, stmt, rs);
+    }
+    log.info("Table " + table.name + " with " + table.rows + " rows written in " + (System.currentTimeMillis() - start) + "ms.");
+  }
+
+  /**
+   * The columns referencing the own table are inserted as null and updated afterwards by {@link #restoreSelfReferences}.
+   * @return The maximum value of the primary key (if numeric), otherwise 0.
+   */
+  private long restoreTable(final File dir, final TableInfo table) throws SQLException, IOException
+  {
+    final long start = System.currentTimeMillis();
+    final StringBuffer sql = new StringBuffer();
+    sql.append("insert into ").append(table.name).append(" (").append(StringUtils.join(table.columns, ", ")).append(") values (");
+    int primaryKeyIndex = -1;
+    for (int i = 0; i < table.columns.length; i++) {
+      sql.append(i > 0 ? ", ?" : "?");
+      if (table.columns[i].equalsIgnoreCase(table.primaryKey) == true) {
+        primaryKeyIndex = i;
+      }
+    }
+    sql.append(")");
+    final boolean[] selfReferences = new boolean[table.columns.length];
+    boolean hasSelfReferences = false;
+    if (table.selfReferences != null && table.selfReferences.length > 0) {
+      if (primaryKeyIndex < 0) {
+        log.warn("Table " + table.name + " without single primary key references itself, restoring may fail.");
+      } else {
+        for (int i = 0; i < table.columns.length; i++) {
+          for (final String column : table.selfReferences) {
+            if (table.columns[i].equalsIgnoreCase(column) == true) {
+              selfReferences[i] = true;
+            }
+          }
+        }
+      }
+    }
+    long maxId = 0;
+    Connection con = null;
+    PreparedStatement stmt = null;
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(new File(dir, table.file)), BUFFER_SIZE)));
+      con = dataSource.getConnection();
+      con.setAutoCommit(false);
+      stmt = con.prepareStatement(sql.toString());
+      final SnapshotRowCodec codec = new SnapshotRowCodec(table.types);
+      long rows = 0;
+      Object[] values;
+      while ((values = codec.readRow(in)) != null) {
+        for (int i = 0; i < values.length; i++) {
+          if (values[i] == null || selfReferences[i] == true) {
+            hasSelfReferences = hasSelfReferences == true || values[i] != null;
+            stmt.setNull(i + 1, table.types[i]);
+          } else {
+            stmt.setObject(i + 1, values[i], table.types[i]);
+          }
+        }
+        if (primaryKeyIndex >= 0 && values[primaryKeyIndex] instanceof Number) {
+          maxId = Math.max(maxId, ((Number) values[primaryKeyIndex]).longValue());
+        }
+        stmt.addBatch();
+        if (++rows % BATCH_SIZE == 0) {
+          stmt.executeBatch();
+        }
+      }
+      stmt.executeBatch();
+      if (rows != table.rows) {
+        throw new IllegalStateException("Snapshot of table " + table.name + " is corrupted: " + table.rows + " rows expected but "
+            + rows + " rows found.");
+      }
+      if (hasSelfReferences == true) {
+        restoreSelfReferences(dir, table, con, primaryKeyIndex, selfReferences);
+      }
+      con.commit();
+    } catch (final SQLException ex) {
+      rollback(con);
+      throw ex;
+    } catch (final RuntimeException ex) {
+      rollback(con);
+      throw ex;
+    } finally {
+      IOUtils.closeQuietly((InputStream) in);
+      close(con, stmt, null);
+    }
+    log.info("Table " + table.name + " with " + table.rows + " rows restored in " + (System.currentTimeMillis() - start) + "ms.");
+    return maxId;
+  }
+
+  /**
+   * Second pass of {@link #restoreTable(File, TableInfo)}: sets the columns referencing the own table after all rows are inserted.
+   */
+  private void restoreSelfReferences(final File dir, final TableInfo table, final Connection con, final int primaryKeyIndex,
+      final boolean[] selfReferences) throws SQLException, IOException
+  {
+    final StringBuffer sql = new StringBuffer();
+    sql.append("update ").append(table.name).append(" set ");
+    boolean first = true;
+    for (int i = 0; i < table.columns.length; i++) {
+      if (selfReferences[i] == true) {
+        sql.append(first == true ? "" : ", ").append(table.columns[i]).append(" = ?");
+        first = false;
+      }
+    }
+    sql.append(" where ").append(table.columns[primaryKeyIndex]).append(" = ?");
+    PreparedStatement stmt = null;
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(new File(dir, table.file)), BUFFER_SIZE)));
+      stmt = con.prepareStatement(sql.toString());
+      final SnapshotRowCodec codec = new SnapshotRowCodec(table.types);
+      long rows = 0;
+      Object[] values;
+      while ((values = codec.readRow(in)) != null) {
+        boolean hasValue = false;
+        int index = 0;
+        for (int i = 0; i < values.length; i++) {
+          if (selfReferences[i] == false) {
+            continue;
+          }
+          if (values[i] == null) {
+            stmt.setNull(++index, table.types[i]);
+          } else {
+            stmt.setObject(++index, values[i], table.types[i]);
+            hasValue = true;
+          }
+        }
+        if (hasValue == false) {
+          stmt.clearParameters();
+          continue;
+        }
+        stmt.setObject(++index, values[primaryKeyIndex], table.types[primaryKeyIndex]);
+        stmt.addBatch();
+        if (++rows % BATCH_SIZE == 0) {
+          stmt.executeBatch();
+        }
+      }
+      stmt.executeBatch();
+      log.info("Self references of " + rows + " rows of table " + table.name + " restored.");
+    } finally {
+      IOUtils.closeQuietly((InputStream) in);
+      close(null, stmt, null);
+    }
+  }
+
+  /**
+   * The ids are restored, so the sequence of PostgreSQL has to be set to the maximum id. HSQLDB uses identity columns, so nothing is
+   * to do.
+   */
+  private void updateSequence(final long maxId)
+  {
+    if (maxId <= 0 || HibernateUtils.getDialect() != DatabaseDialect.PostgreSQL) {
+      return;
+    }
+    Connection con = null;
+    Statement stmt = null;
+    try {
+      con = dataSource.getConnection();
+      stmt = con.createStatement();
+      stmt.execute("select setval('hibernate_sequence', " + maxId + ")");
+    } catch (final SQLException ex) {
+      log.error("Can't update sequence 'hibernate_sequence' to " + maxId + ": " + ex.getMessage(), ex);
+    } finally {
+      close(con, stmt, null);
+    }
+  }
+
+  /**
+   * Deletes all rows of all mapped tables in one transaction (in reverse restore order, self-references are set to null first).
+   */
+  private void clearTables()
+  {
+    final List<TableInfo> tables = getTables();
+    Collections.reverse(tables);
+    Connection con = null;
+    Statement stmt = null;
+    try {
+      con = dataSource.getConnection();
+      con.setAutoCommit(false);
+      stmt = con.createStatement();
+      for (final TableInfo table : tables) {
+        if (table.selfReferences != null && table.selfReferences.length > 0) {
+          stmt.executeUpdate("update " + table.name + " set " + StringUtils.join(table.selfReferences, " = null, ") + " = null");
+        }
+      }
+      for (final TableInfo table : tables) {
+        final int rows = stmt.executeUpdate("delete from " + table.name);
+        log.info(rows + " rows of table " + table.name + " deleted.");
+      }
+      con.commit();
+    } catch (final SQLException ex) {
+      rollback(con);
+      log.error(ex.getMessage(), ex);
+      throw new RuntimeException(ex);
+    } finally {
+      close(con, stmt, null);
+    }
+  }
+
+  private void checkEmpty(final List<TableInfo> tables)
+  {
+    Connection con = null;
+    Statement stmt = null;
+    ResultSet rs = null;
+    try {
+      con = dataSource.getConnection();
+      stmt = con.createStatement();
+      for (final TableInfo table : tables) {
+        rs = stmt.executeQuery("select count(*) from " + table.name);
+        rs.next();
+        if (rs.getLong(1) > 0) {
+          throw new IllegalStateException("Can't restore snapshot, the data-base isn't empty (table " + table.name + ").");
+        }
+        rs.close();
+        rs = null;
+      }
+    } catch (final SQLException ex) {
+      log.error(ex.getMessage(), ex);
+      throw new RuntimeException(ex);
+    } finally {
+      close(con, stmt, rs);
+    }
+  }
+
+  private void writeManifest(final File dir, final List<TableInfo> tables)
+  {
+    final Properties props = new Properties();
+    props.setProperty("version", VERSION);
+    props.setProperty("created", String.valueOf(System.currentTimeMillis()));
+    final List<String> names = new ArrayList<String>();
+    for (final TableInfo table : tables) {
+      names.add(table.name);
+      final String[] types = new String[table.types.length];
+      for (int i = 0; i < types.length; i++) {
+        types[i] = String.valueOf(table.types[i]);
+      }
+      props.setProperty(table.name + ".columns", StringUtils.join(table.columns, ","));
+      props.setProperty(table.name + ".types", StringUtils.join(types, ","));
+      props.setProperty(table.name + ".level", String.valueOf(table.level));
+      props.setProperty(table.name + ".rows", String.valueOf(table.rows));
+      props.setProperty(table.name + ".file", table.file);
+      if (table.primaryKey != null) {
+        props.setProperty(table.name + ".primaryKey", table.primaryKey);
+      }
+      if (table.selfReferences != null && table.selfReferences.length > 0) {
+        props.setProperty(table.name + ".selfReferences", StringUtils.join(table.selfReferences, ","));
+      }
+    }
+    props.setProperty("tables", StringUtils.join(names, ","));
+    OutputStream out = null;
+    try {
+      out = new FileOutputStream(new File(dir, MANIFEST_FILENAME));
+      props.store(out, "ProjectForge data-base snapshot");
+    } catch (final IOException ex) {
+      log.error(ex.getMessage(), ex);
+      throw new RuntimeException(ex);
+    } finally {
+      IOUtils.closeQuietly(out);
+    }
+  }
+
+  private List<TableInfo> readManifest(final File dir)
+  {
+    final Properties props = new Properties();
+    InputStream in = null;
+    try {
+      in = new FileInputStream(new File(dir, MANIFEST_FILENAME));
+      props.load(in);
+    } catch (final IOException ex) {
+      log.error(ex.getMessage(), ex);
+      throw new RuntimeException(ex);
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+    if (VERSION.equals(props.getProperty("version")) == false) {
+      throw new IllegalArgumentException("Unsupported snapshot version: " + props.getProperty("version"));
+    }
+    final List<TableInfo> tables = new ArrayList<TableInfo>();
+    for (final String name : StringUtils.split(props.getProperty("tables"), ",")) {
+      final TableInfo table = new TableInfo();
+      table.name = name;
+      table.columns = StringUtils.split(props.getProperty(name + ".columns"), ",");
+      final String[] types = StringUtils.split(props.getProperty(name + ".types"), ",");
+      table.types = new int[types.length];
+      for (int i = 0; i < types.length; i++) {
+        table.types[i] = Integer.parseInt(types[i]);
+      }
+      table.level = Integer.parseInt(props.getProperty(name + ".level"));
+      table.rows = Long.parseLong(props.getProperty(name + ".rows"));
+      table.file = props.getProperty(name + ".file");
+      table.primaryKey = props.getProperty(name + ".primaryKey");
+      table.selfReferences = StringUtils.split(props.getProperty(name + ".selfReferences"), ",");
+      tables.add(table);
+    }
+    return tables;
+  }
+
+  /**
+   * Executes the given jobs in parallel and waits for their termination.
+   * @return The results of the jobs.
+   */
+  private List<Object> execute(final List<Callable<Object>> jobs)
+  {
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.min(NUMBER_OF_THREADS, Math.max(1, jobs.size())));
+    try {
+      final List<Future<Object>> futures = executor.invokeAll(jobs);
+      final List<Object> results = new ArrayList<Object>();
+      for (final Future<Object> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(ex);
+    } catch (final ExecutionException ex) {
+      log.error(ex.getCause().getMessage(), ex.getCause());
+      throw new RuntimeException(ex.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void rollback(final Connection con)
+  {
+    if (con == null) {
+      return;
+    }
+    try {
+      con.rollback();
+    } catch (final SQLException ex) {
+      log.error(ex.getMessage(), ex);
+    }
+  }
+
+  private void close(final Connection con, final Statement stmt, final ResultSet rs)
+  {
+    if (rs != null) {
+      try {
+        rs.close();
+      } catch (final SQLException ex) {
+        log.error(ex.getMessage(), ex);
+      }
+    }
+    if (stmt != null) {
+      try {
+        stmt.close();
+      } catch (final SQLException ex) {
+        log.error(ex.getMessage(), ex);
+      }
+    }
+    if (con != null) {
+      try {
+        con.close();
+      } catch (final SQLException ex) {
+        log.error(ex.getMessage(), ex);
+      }
+    }
+  }
+}
@@ -278,12 +278,31 @@ public class HibernateUtils
         instance.databaseDialect = DatabaseDialect.PostgreSQL;
       } else if ("org.hibernate.dialect.HSQLDialect".equals(dialect) == true) {
         instance.databaseDialect = DatabaseDialect.HSQL;
+      } else {
+        log.warn("Unknown or unsupported dialect: " + dialect);
       }
-      log.warn("Unknown or unsupported dialect: " + dialect);
     }
     return instance.databaseDialect;
   }
 
+  /**
+   * @param startColumn SQL expression of the start time stamp.
+   * @param stopColumn SQL expression of the stop time stamp.
+   * @return The native SQL expression of the interval between both time stamps in seconds.
+   * @throws UnsupportedOperationException if the data-base dialect isn't supported.
+   */
+  public static String getIntervalInSecondsSql(final String startColumn, final String stopColumn)
+  {
+    final DatabaseDialect dialect = getDialect();
+    if (dialect == DatabaseDialect.PostgreSQL) {
+      return "extract(epoch from (" + stopColumn + " - " + startColumn + "))";
+    } else if (dialect == DatabaseDialect.HSQL) {
+      // Whole seconds only (time sheets are bookable in minute steps, so this is exact enough).
+      return "datediff('ss', " + startColumn + ", " + stopColumn + ")";
+    }
+    throw new UnsupportedOperationException("Interval in seconds isn't supported for the data-base dialect: " + dialect);
+  }
+
   private boolean internalIsEntity(final Class< ? > entity)
   {
     final String entityName = entity.getName();
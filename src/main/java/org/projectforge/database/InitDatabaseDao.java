@@ -35,6 +35,7 @@ import org.projectforge.core.ConfigurationDOXmlDumpHook;
 import org.projectforge.core.ConfigurationDao;
 import org.projectforge.core.ConfigurationParam;
 import org.projectforge.core.HibernateSearchReindexer;
+import org.projectforge.core.ReindexSettings;
 import org.projectforge.database.xstream.XStreamSavingConverter;
 import org.projectforge.task.TaskDO;
 import org.projectforge.task.TaskNode;
@@ -252,13 +253,8 @@ public class InitDatabaseDao extends HibernateDaoSupport
       }
       log.fatal("Database successfully initialized with test data.");
     }
-    new Thread() {
-      @Override
-      public void run()
-      {
-        hibernateSearchReindexer.rebuildDatabaseSearchIndices();
-      }
-    }.start();
+    // The data base is new, so don't continue any aborted re-index run:
+    hibernateSearchReindexer.executeInBackground(new ReindexSettings().setResumeAbortedRun(false));
     taskTree.setExpired();
     userGroupCache.setExpired();
     return user;
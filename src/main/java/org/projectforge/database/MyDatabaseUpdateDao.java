@@ -37,6 +37,7 @@ import org.projectforge.continuousdb.DatabaseUpdateDao;
 import org.projectforge.continuousdb.UpdateEntry;
 import org.projectforge.continuousdb.UpdaterConfiguration;
 import org.projectforge.core.BaseDO;
+import org.projectforge.fibu.AuftragDO;
 import org.projectforge.plugins.core.AbstractPlugin;
 import org.projectforge.plugins.core.PluginsRegistry;
 import org.projectforge.registry.Registry;
@@ -122,6 +123,14 @@ public class MyDatabaseUpdateDao extends DatabaseUpdateDao
     if (createIndex("idx_timesheet_user_time", "t_timesheet", "user_id, start_time") == true) {
       ++result;
     }
+    if (doTableAttributesExist(AuftragDO.class, "completelyInvoiced", "closedNotCompletelyInvoiced") == true) {
+      if (createIndex("idx_fibu_auftrag_completely_invoiced", "t_fibu_auftrag", "completely_invoiced") == true) {
+        ++result;
+      }
+      if (createIndex("idx_fibu_auftrag_closed_not_invoiced", "t_fibu_auftrag", "closed_not_completely_invoiced, deleted") == true) {
+        ++result;
+      }
+    }
     for (final AbstractPlugin plugin : PluginsRegistry.instance().getPlugins()) {
       if (plugin.isInitialized() == false) {
         // Plug-in not (yet) initialized, skip. this is normal on first start-up phase.
@@ -0,0 +1,232 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.database;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Properties;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.projectforge.common.DateHelper;
+
+/**
+ * Progress of a full re-index run, stored in a properties file after every step. If a run is aborted (e. g. by a crash) the next full
+ * re-index run continues with the entity classes and id ranges not yet completed. The file is deleted after a successful run.<br/>
+ * The check-point stores the start time of its run. It is only honoured by a run resuming the aborted one and only if the aborted run
+ * was started within the last {@link #MAX_AGE} millis, otherwise it is deleted and the new run starts from scratch.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * @see DatabaseDao#reindex(Class, org.projectforge.core.ReindexSettings, StringBuffer, ReindexCheckpoint)
+ */
+public class ReindexCheckpoint
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(ReindexCheckpoint.class);
+
+  /**
+   * Check-points of older runs are expired, because the data base may have been changed completely meanwhile (e. g. by a restore).
+   */
+  public static final long MAX_AGE = 2 * DateHelper.MILLIS_DAY;
+
+  private static final String RUN_STARTED = "run.started";
+
+  private final File file;
+
+  private final Properties properties = new Properties();
+
+  private final boolean resumed;
+
+  /**
+   * Loads the check-point file if exists and if the given run should resume an aborted run. Otherwise an existing check-point file is
+   * deleted.
+   * @param file
+   * @param resume If false, a new run is started in any case (e. g. after restoring the data base).
+   */
+  public ReindexCheckpoint(final File file, final boolean resume)
+  {
+    this.file = file;
+    boolean loaded = false;
+    if (file.exists() == true) {
+      if (resume == true) {
+        loaded = load();
+      }
+      if (loaded == false) {
+        log.info("Deleting check-point file of a previous re-index run: " + file.getAbsolutePath());
+        delete();
+      }
+    }
+    if (loaded == false) {
+      properties.setProperty(RUN_STARTED, String.valueOf(System.currentTimeMillis()));
+    }
+    this.resumed = loaded;
+  }
+
+  /**
+   * @return true, if this check-point continues an aborted run.
+   */
+  public boolean isResumed()
+  {
+    return resumed;
+  }
+
+  /**
+   * @return The start time of the run of this check-point (also of the aborted run, if resumed).
+   */
+  public synchronized Date getRunStarted()
+  {
+    return new Date(getRunStartedMillis());
+  }
+
+  /**
+   * @return The start time of the run or 0, if not given or invalid.
+   */
+  private long getRunStartedMillis()
+  {
+    final String value = properties.getProperty(RUN_STARTED);
+    if (value == null) {
+      return 0;
+    }
+    try {
+      return Long.parseLong(value);
+    } catch (final NumberFormatException ex) {
+      return 0;
+    }
+  }
+
+  /**
+   * @return true, if the given class was completely re-indexed.
+   */
+  public synchronized boolean isDone(final Class< ? > clazz)
+  {
+    return "true".equals(properties.getProperty(clazz.getName() + ".done"));
+  }
+
+  public synchronized void setDone(final Class< ? > clazz)
+  {
+    properties.setProperty(clazz.getName() + ".done", "true");
+    save();
+  }
+
+  /**
+   * @return The id ranges (from, to, last re-indexed id) of the given class or null, if not yet stored.
+   */
+  public synchronized long[][] getShards(final Class< ? > clazz)
+  {
+    final String value = properties.getProperty(clazz.getName() + ".shards");
+    if (value == null) {
+      return null;
+    }
+    final int size = Integer.parseInt(value);
+    final long[][] shards = new long[size][];
+    for (int i = 0; i < size; i++) {
+      final String[] values = StringUtils.split(properties.getProperty(clazz.getName() + ".shard." + i), ',');
+      if (values == null || values.length != 3) {
+        return null;
+      }
+      shards[i] = new long[] { Long.parseLong(values[0]), Long.parseLong(values[1]), Long.parseLong(values[2])};
+    }
+    return shards;
+  }
+
+  public synchronized void setShards(final Class< ? > clazz, final long[][] shards)
+  {
+    properties.setProperty(clazz.getName() + ".shards", String.valueOf(shards.length));
+    for (int i = 0; i < shards.length; i++) {
+      setShard(clazz, i, shards[i]);
+    }
+    save();
+  }
+
+  /**
+   * Stores the last re-indexed id of the given shard.
+   */
+  public synchronized void setShardPosition(final Class< ? > clazz, final int shardIndex, final long[] shard, final long lastId)
+  {
+    shard[2] = lastId;
+    setShard(clazz, shardIndex, shard);
+    save();
+  }
+
+  /**
+   * Deletes the check-point file.
+   */
+  public synchronized void delete()
+  {
+    properties.clear();
+    if (file.exists() == true && file.delete() == false) {
+      log.error("Can't delete check-point file: " + file.getAbsolutePath());
+    }
+  }
+
+  private void setShard(final Class< ? > clazz, final int shardIndex, final long[] shard)
+  {
+    properties.setProperty(clazz.getName() + ".shard." + shardIndex, shard[0] + "," + shard[1] + "," + shard[2]);
+  }
+
+  /**
+   * @return true, if the check-point file was loaded and belongs to a run started within the last {@link #MAX_AGE} millis.
+   */
+  private boolean load()
+  {
+    InputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      properties.load(in);
+    } catch (final IOException ex) {
+      log.error("Can't read check-point file '" + file.getAbsolutePath() + "' (starting re-index from scratch): " + ex.getMessage(), ex);
+      properties.clear();
+      return false;
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+    final long runStarted = getRunStartedMillis();
+    if (runStarted <= 0 || runStarted + MAX_AGE < System.currentTimeMillis()) {
+      log.info("Check-point file '" + file.getAbsolutePath() + "' is expired (starting re-index from scratch).");
+      properties.clear();
+      return false;
+    }
+    log.info("Resuming re-index run started at " + new Date(runStarted) + " from check-point file: " + file.getAbsolutePath());
+    return true;
+  }
+
+  private void save()
+  {
+    OutputStream out = null;
+    try {
+      if (file.getParentFile() != null) {
+        file.getParentFile().mkdirs();
+      }
+      out = new FileOutputStream(file);
+      properties.store(out, "ProjectForge re-index check-point");
+    } catch (final IOException ex) {
+      log.error("Can't write check-point file '" + file.getAbsolutePath() + "': " + ex.getMessage(), ex);
+    } finally {
+      IOUtils.closeQuietly(out);
+    }
+  }
+}
@@ -0,0 +1,274 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.database;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+/**
+ * Binary format of the table files of a {@link DatabaseSnapshot}: every row is written as length-prefixed record (int length followed by
+ * the bytes of the row), the end of the table is marked by the length -1. Inside a row, each column value is preceded by a flag byte (0
+ * for null, 1 otherwise) and written in a compact, type dependent form.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * 
+ */
+class SnapshotRowCodec
+{
+  private static final int END_OF_TABLE = -1;
+
+  private static final int BOOLEAN = 1, INT = 2, LONG = 3, DOUBLE = 4, DECIMAL = 5, STRING = 6, DATE = 7, TIME = 8, TIMESTAMP = 9,
+      BINARY = 10;
+
+  private final int[] categories;
+
+  private final ByteArrayOutputStream rowBuffer = new ByteArrayOutputStream(256);
+
+  private final DataOutputStream rowOut = new DataOutputStream(rowBuffer);
+
+  private byte[] readBuffer = new byte[256];
+
+  /**
+   * @param sqlTypes The JDBC types ({@link Types}) of the columns.
+   */
+  SnapshotRowCodec(final int[] sqlTypes)
+  {
+    categories = new int[sqlTypes.length];
+    for (int i = 0; i < sqlTypes.length; i++) {
+      categories[i] = getCategory(sqlTypes[i]);
+    }
+  }
+
+  /**
+   * Reads the values of the current row of the result set.
+   */
+  Object[] getRow(final ResultSet rs) throws SQLException
+  {
+    final Object[] values = new Object[categories.length];
+    for (int i = 0; i < categories.length; i++) {
+      final int col = i + 1;
+      switch (categories[i]) {
+        case BOOLEAN:
+          values[i] = rs.getBoolean(col);
+          break;
+        case INT:
+          values[i] = rs.getInt(col);
+          break;
+        case LONG:
+          values[i] = rs.getLong(col);
+          break;
+        case DOUBLE:
+          values[i] = rs.getDouble(col);
+          break;
+        case DECIMAL:
+          values[i] = rs.getBigDecimal(col);
+          break;
+        case DATE:
+          values[i] = rs.getDate(col);
+          break;
+        case TIME:
+          values[i] = rs.getTime(col);
+          break;
+        case TIMESTAMP:
+          values[i] = rs.getTimestamp(col);
+          break;
+        case BINARY:
+          values[i] = rs.getBytes(col);
+          break;
+        default:
+          values[i] = rs.getString(col);
+      }
+      if (rs.wasNull() == true) {
+        values[i] = null;
+      }
+    }
+    return values;
+  }
+
+  void writeRow(final DataOutputStream out, final Object[] values) throws IOException
+  {
+    rowBuffer.reset();
+    for (int i = 0; i < categories.length; i++) {
+      final Object value = values[i];
+      if (value == null) {
+        rowOut.writeByte(0);
+        continue;
+      }
+      rowOut.writeByte(1);
+      switch (categories[i]) {
+        case BOOLEAN:
+          rowOut.writeBoolean((Boolean) value);
+          break;
+        case INT:
+          rowOut.writeInt(((Number) value).intValue());
+          break;
+        case LONG:
+          rowOut.writeLong(((Number) value).longValue());
+          break;
+        case DOUBLE:
+          rowOut.writeDouble(((Number) value).doubleValue());
+          break;
+        case DECIMAL:
+          final BigDecimal decimal = (BigDecimal) value;
+          rowOut.writeInt(decimal.scale());
+          writeBytes(decimal.unscaledValue().toByteArray());
+          break;
+        case DATE:
+        case TIME:
+          rowOut.writeLong(((java.util.Date) value).getTime());
+          break;
+        case TIMESTAMP:
+          rowOut.writeLong(((Timestamp) value).getTime());
+          rowOut.writeInt(((Timestamp) value).getNanos());
+          break;
+        case BINARY:
+          writeBytes((byte[]) value);
+          break;
+        default:
+          writeBytes(value.toString().getBytes("UTF-8"));
+      }
+    }
+    rowOut.flush();
+    out.writeInt(rowBuffer.size());
+    rowBuffer.writeTo(out);
+  }
+
+  void writeEndOfTable(final DataOutputStream out) throws IOException
+  {
+    out.writeInt(END_OF_TABLE);
+  }
+
+  /**
+   * @return The values of the next row or null, if the end of the table is reached.
+   */
+  Object[] readRow(final DataInputStream in) throws IOException
+  {
+    final int length = in.readInt();
+    if (length == END_OF_TABLE) {
+      return null;
+    }
+    if (readBuffer.length < length) {
+      readBuffer = new byte[Math.max(length, 2 * readBuffer.length)];
+    }
+    in.readFully(readBuffer, 0, length);
+    final DataInputStream row = new DataInputStream(new ByteArrayInputStream(readBuffer, 0, length));
+    final Object[] values = new Object[categories.length];
+    for (int i = 0; i < categories.length; i++) {
+      if (row.readByte() == 0) {
+        continue;
+      }
+      switch (categories[i]) {
+        case BOOLEAN:
+          values[i] = row.readBoolean();
+          break;
+        case INT:
+          values[i] = row.readInt();
+          break;
+        case LONG:
+          values[i] = row.readLong();
+          break;
+        case DOUBLE:
+          values[i] = row.readDouble();
+          break;
+        case DECIMAL:
+          final int scale = row.readInt();
+          values[i] = new BigDecimal(new BigInteger(readBytes(row)), scale);
+          break;
+        case DATE:
+          values[i] = new java.sql.Date(row.readLong());
+          break;
+        case TIME:
+          values[i] = new java.sql.Time(row.readLong());
+          break;
+        case TIMESTAMP:
+          final Timestamp timestamp = new Timestamp(row.readLong());
+          timestamp.setNanos(row.readInt());
+          values[i] = timestamp;
+          break;
+        case BINARY:
+          values[i] = readBytes(row);
+          break;
+        default:
+          values[i] = new String(readBytes(row), "UTF-8");
+      }
+    }
+    return values;
+  }
+
+  private void writeBytes(final byte[] bytes) throws IOException
+  {
+    rowOut.writeInt(bytes.length);
+    rowOut.write(bytes);
+  }
+
+  private byte[] readBytes(final DataInputStream in) throws IOException
+  {
+    final byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  private static int getCategory(final int sqlType)
+  {
+    switch (sqlType) {
+      case Types.BIT:
+      case Types.BOOLEAN:
+        return BOOLEAN;
+      case Types.TINYINT:
+      case Types.SMALLINT:
+      case Types.INTEGER:
+        return INT;
+      case Types.BIGINT:
+        return LONG;
+      case Types.REAL:
+      case Types.FLOAT:
+      case Types.DOUBLE:
+        return DOUBLE;
+      case Types.NUMERIC:
+      case Types.DECIMAL:
+        return DECIMAL;
+      case Types.DATE:
+        return DATE;
+      case Types.TIME:
+        return TIME;
+      case Types.TIMESTAMP:
+        return TIMESTAMP;
+      case Types.BINARY:
+      case Types.VARBINARY:
+      case Types.LONGVARBINARY:
+      case Types.BLOB:
+        return BINARY;
+      default:
+        return STRING;
+    }
+  }
+}
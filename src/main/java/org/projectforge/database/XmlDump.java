@@ -23,6 +23,7 @@
 
 package org.projectforge.database;
 
+import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -40,6 +41,7 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
@@ -48,6 +50,7 @@ import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 import javax.persistence.Transient;
+import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.io.IOUtils;
@@ -62,17 +65,23 @@ import org.hibernate.Hibernate;
 import org.hibernate.LockOptions;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
 import org.projectforge.access.AccessEntryDO;
 import org.projectforge.access.GroupTaskAccessDO;
 import org.projectforge.common.BeanHelper;
 import org.projectforge.common.XStreamHelper;
 import org.projectforge.core.AbstractBaseDO;
 import org.projectforge.core.ConfigurationDO;
+import org.projectforge.core.InternalErrorException;
+import org.projectforge.database.stax.DumpModel;
+import org.projectforge.database.stax.DumpReader;
+import org.projectforge.database.stax.DumpWriter;
 import org.projectforge.database.xstream.HibernateXmlConverter;
 import org.projectforge.database.xstream.XStreamSavingConverter;
 import org.projectforge.fibu.AbstractRechnungDO;
 import org.projectforge.fibu.AbstractRechnungsPositionDO;
 import org.projectforge.fibu.AuftragDO;
+import org.projectforge.fibu.AuftragDao;
 import org.projectforge.fibu.AuftragsPositionDO;
 import org.projectforge.fibu.EingangsrechnungDO;
 import org.projectforge.fibu.EingangsrechnungsPositionDO;
@@ -112,8 +121,17 @@ public class XmlDump
 
   private static final String XML_DUMP_FILENAME = System.getProperty("user.home") + "/tmp/database-dump.xml.gz";
 
+  /**
+   * Fields of orders calculated from the invoices after restoring (see {@link AuftragDao#rebuildInvoiceStatus()}), so they may differ from
+   * the dump (e. g. dumps written before the introduction of these fields).
+   */
+  private static final String[] AUFTRAG_INVOICE_STATUS_FIELDS = { "invoicedSum", "toBeInvoicedSum", "completelyInvoiced",
+      "closedNotCompletelyInvoiced"};
+
   private HibernateTemplate hibernate;
 
+  private AuftragDao auftragDao;
+
   private final List<XmlDumpHook> xmlDumpHooks = new LinkedList<XmlDumpHook>();
 
   /**
@@ -122,6 +140,15 @@ public class XmlDump
   private final Class< ? >[] embeddedClasses = new Class< ? >[] { UserRightDO.class, AuftragsPositionDO.class,
       EingangsrechnungsPositionDO.class, RechnungsPositionDO.class};
 
+  /**
+   * The order of restoring the objects, referenced objects are restored first. The entities of the plugins are restored afterwards.
+   */
+  private final Class< ? >[] orderedClasses = new Class< ? >[] { PFUserDO.class, GroupDO.class, TaskDO.class, KundeDO.class,
+      ProjektDO.class, Kost1DO.class, Kost2ArtDO.class, Kost2DO.class, AuftragDO.class, //
+      RechnungDO.class, EingangsrechnungDO.class, EmployeeSalaryDO.class, KostZuweisungDO.class,//
+      UserPrefEntryDO.class, UserPrefDO.class, //
+      AccessEntryDO.class, GroupTaskAccessDO.class, ConfigurationDO.class};
+
   public HibernateTemplate getHibernate()
   {
     Validate.notNull(hibernate);
@@ -133,6 +160,11 @@ public class XmlDump
     this.hibernate = hibernate;
   }
 
+  public void setAuftragDao(final AuftragDao auftragDao)
+  {
+    this.auftragDao = auftragDao;
+  }
+
   public void registerHook(final XmlDumpHook xmlDumpHook)
   {
     for (final XmlDumpHook hook : xmlDumpHooks) {
@@ -161,12 +193,38 @@ public class XmlDump
   }
 
   /**
+   * Restores the dump (written by {@link #dumpDatabase(String, OutputStream)} or {@link #dumpDatabaseStreaming(String, OutputStream)}) and
+   * recalculates the invoice status of the orders afterwards.
    * @param reader
    * @return Only for test cases.
    */
   public XStreamSavingConverter restoreDatabase(final Reader reader)
   {
-    final List<AbstractPlugin> plugins = PluginsRegistry.instance().getPlugins();
+    final BufferedReader bufferedReader = new BufferedReader(reader);
+    try {
+      // Detect the format of the dump by the root element:
+      final char[] buf = new char[1024];
+      bufferedReader.mark(buf.length);
+      final int length = bufferedReader.read(buf);
+      bufferedReader.reset();
+      final XStreamSavingConverter converter;
+      if (length > 0 && new String(buf, 0, length).contains("<" + DumpWriter.ELEMENT_ROOT) == true) {
+        converter = restoreDatabaseFromStream(bufferedReader);
+      } else {
+        converter = restoreDatabaseFromXStream(bufferedReader);
+      }
+      // The orders are restored bypassing the AuftragDao:
+      auftragDao.rebuildInvoiceStatus();
+      return converter;
+    } catch (final IOException ex) {
+      log.error(ex.getMessage(), ex);
+      IOUtils.closeQuietly(bufferedReader);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  private XStreamSavingConverter restoreDatabaseFromXStream(final Reader reader)
+  {
     final XStreamSavingConverter xstreamSavingConverter = new XStreamSavingConverter() {
 
       @Override
@@ -220,22 +278,7 @@ public class XmlDump
           final AuftragDO auftrag = (AuftragDO) obj;
           return save(auftrag, auftrag.getPositionen());
         }
-        if (plugins != null) {
-          for (final AbstractPlugin plugin : plugins) {
-            try {
-              plugin.onBeforeRestore(this, obj);
-            } catch (final Exception ex) {
-              log.error("Error in Plugin while restoring object: " + ex.getMessage(), ex);
-            }
-          }
-        }
-        for (final XmlDumpHook xmlDumpHook : xmlDumpHooks) {
-          try {
-            xmlDumpHook.onBeforeRestore(this, obj);
-          } catch (final Exception ex) {
-            log.error("Error in XmlDumpHook while restoring object: " + ex.getMessage(), ex);
-          }
-        }
+        onBeforeRestore(this, obj);
         return super.onBeforeSave(session, obj);
       }
 
@@ -245,24 +288,13 @@ public class XmlDump
       @Override
       public void onAfterSave(final Object obj, final Serializable id)
       {
-        if (plugins != null) {
-          for (final AbstractPlugin plugin : plugins) {
-            plugin.onAfterRestore(this, obj, id);
-          }
-        }
+        onAfterRestore(this, obj, id);
       }
     };
     // UserRightDO is inserted on cascade while inserting PFUserDO.
     xstreamSavingConverter.appendIgnoredObjects(embeddedClasses);
-    xstreamSavingConverter.appendOrderedType(PFUserDO.class, GroupDO.class, TaskDO.class, KundeDO.class, ProjektDO.class, Kost1DO.class,
-        Kost2ArtDO.class, Kost2DO.class, AuftragDO.class, //
-        RechnungDO.class, EingangsrechnungDO.class, EmployeeSalaryDO.class, KostZuweisungDO.class,//
-        UserPrefEntryDO.class, UserPrefDO.class, //
-        AccessEntryDO.class, GroupTaskAccessDO.class, ConfigurationDO.class);
-    if (plugins != null) {
-      for (final AbstractPlugin plugin : plugins) {
-        xstreamSavingConverter.appendOrderedType(plugin.getPersistentEntities());
-      }
+    for (final Class< ? >[] types : getOrderedClasses()) {
+      xstreamSavingConverter.appendOrderedType(types);
     }
     Session session = null;
     try {
@@ -291,6 +323,142 @@ public class XmlDump
     return xstreamSavingConverter;
   }
 
+  /**
+   * Restores a dump written by {@link #dumpDatabaseStreaming(String, OutputStream)}. The objects are read and inserted one by one in
+   * batches, so the memory usage is independent of the size of the dump. Each batch is committed, so the data-base has to be empty and
+   * has to be emptied again if the restore fails.
+   * @param reader
+   * @throws InternalErrorException if the restore fails after some batches were committed (the data-base is partially restored).
+   * @return The converter containing the mapping of the ids and the number of restored objects (but not the objects itself).
+   */
+  private XStreamSavingConverter restoreDatabaseFromStream(final Reader reader)
+  {
+    final XStreamSavingConverter xstreamSavingConverter = new XStreamSavingConverter();
+    final DumpReader dumpReader = new DumpReader(createDumpModel(), xstreamSavingConverter) {
+      @Override
+      protected void onBeforeSave(final Object obj)
+      {
+        if (isRestoredWithoutHooks(obj) == false) {
+          onBeforeRestore(xstreamSavingConverter, obj);
+        }
+      }
+
+      @Override
+      protected void onAfterSave(final Object obj, final Serializable id)
+      {
+        onAfterRestore(xstreamSavingConverter, obj, id);
+      }
+    };
+    Session session = null;
+    try {
+      session = hibernate.getSessionFactory().openSession(EmptyInterceptor.INSTANCE);
+      session.setFlushMode(FlushMode.MANUAL);
+      dumpReader.read(session, reader);
+    } catch (final Exception ex) {
+      log.error(ex.getMessage(), ex);
+      if (dumpReader.getCommittedCounter() > 0) {
+        // The batches are committed, so the data-base isn't empty anymore and a further restore will be refused:
+        log.fatal("Restore of data-base aborted, " + dumpReader.getCommittedCounter()
+            + " top level objects are already committed. Please empty the data-base before restoring again.");
+        throw new InternalErrorException("administration.setup.error.import.partial", dumpReader.getCommittedCounter());
+      }
+      throw new RuntimeException(ex);
+    } finally {
+      IOUtils.closeQuietly(reader);
+      if (session != null) {
+        session.close();
+      }
+    }
+    return xstreamSavingConverter;
+  }
+
+  private DumpModel createDumpModel()
+  {
+    final DumpModel model = new DumpModel(hibernate.getSessionFactory());
+    model.appendEmbeddedType(embeddedClasses);
+    for (final Class< ? >[] types : getOrderedClasses()) {
+      model.appendOrderedType(types);
+    }
+    return model;
+  }
+
+  /**
+   * @return The ordered classes followed by the persistent entities of the plugins.
+   */
+  private List<Class< ? >[]> getOrderedClasses()
+  {
+    final List<Class< ? >[]> result = new ArrayList<Class< ? >[]>();
+    result.add(orderedClasses);
+    final List<AbstractPlugin> plugins = PluginsRegistry.instance().getPlugins();
+    if (plugins != null) {
+      for (final AbstractPlugin plugin : plugins) {
+        result.add(plugin.getPersistentEntities());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return The order of restoring the entities (used by {@link DatabaseSnapshot} for ordering the tables).
+   */
+  List<Class< ? >> getRestoreOrder()
+  {
+    final List<Class< ? >> result = new ArrayList<Class< ? >>();
+    for (final Class< ? >[] types : getOrderedClasses()) {
+      if (types != null) {
+        for (final Class< ? > type : types) {
+          result.add(type);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * The XStream restore saves users, invoices and orders (including their rights and positions) itself without calling the hooks, so the
+   * streaming restore skips the hooks for these objects as well.
+   */
+  private static boolean isRestoredWithoutHooks(final Object obj)
+  {
+    return obj instanceof PFUserDO
+        || obj instanceof UserRightDO
+        || obj instanceof AbstractRechnungDO< ? >
+        || obj instanceof AbstractRechnungsPositionDO
+        || obj instanceof AuftragDO
+        || obj instanceof AuftragsPositionDO;
+  }
+
+  private void onBeforeRestore(final XStreamSavingConverter xstreamSavingConverter, final Object obj)
+  {
+    final List<AbstractPlugin> plugins = PluginsRegistry.instance().getPlugins();
+    if (plugins != null) {
+      for (final AbstractPlugin plugin : plugins) {
+        try {
+          plugin.onBeforeRestore(xstreamSavingConverter, obj);
+        } catch (final Exception ex) {
+          log.error("Error in Plugin while restoring object: " + ex.getMessage(), ex);
+        }
+      }
+    }
+    for (final XmlDumpHook xmlDumpHook : xmlDumpHooks) {
+      try {
+        xmlDumpHook.onBeforeRestore(xstreamSavingConverter, obj);
+      } catch (final Exception ex) {
+        log.error("Error in XmlDumpHook while restoring object: " + ex.getMessage(), ex);
+      }
+    }
+  }
+
+  private void onAfterRestore(final XStreamSavingConverter xstreamSavingConverter, final Object obj, final Serializable id)
+  {
+    final List<AbstractPlugin> plugins = PluginsRegistry.instance().getPlugins();
+    if (plugins != null) {
+      for (final AbstractPlugin plugin : plugins) {
+        plugin.onAfterRestore(xstreamSavingConverter, obj, id);
+      }
+    }
+  }
+
   /**
    * @return Only for test cases.
    */
@@ -355,6 +523,52 @@ public class XmlDump
     }
   }
 
+  /**
+   * Writes the dump object by object (see {@link DumpWriter}), so the memory usage is independent of the size of the data-base. The dump
+   * is restorable via {@link #restoreDatabase(Reader)}.
+   * @param filename virtual filename: If the filename suffix is "gz" then the dump will be compressed.
+   * @param out
+   * @throws RuntimeException if the dump couldn't be written completely.
+   */
+  public void dumpDatabaseStreaming(final String filename, final OutputStream out)
+  {
+    final DumpWriter dumpWriter = new DumpWriter(createDumpModel());
+    Writer writer = null;
+    GZIPOutputStream gzipOut = null;
+    Session session = null;
+    Transaction tx = null;
+    try {
+      if (filename.endsWith(".gz") == true) {
+        gzipOut = new GZIPOutputStream(out);
+        writer = new OutputStreamWriter(gzipOut, "utf-8");
+      } else {
+        writer = new OutputStreamWriter(out, "utf-8");
+      }
+      session = hibernate.getSessionFactory().openSession(EmptyInterceptor.INSTANCE);
+      session.setDefaultReadOnly(true);
+      session.setFlushMode(FlushMode.MANUAL);
+      tx = session.beginTransaction();
+      dumpWriter.write(session, writer);
+      // Closes the gzip stream as well and writes its trailer, so any error is detected here:
+      writer.close();
+    } catch (final IOException ex) {
+      log.error(ex.getMessage(), ex);
+      throw new RuntimeException(ex);
+    } catch (final XMLStreamException ex) {
+      log.error(ex.getMessage(), ex);
+      throw new RuntimeException(ex);
+    } finally {
+      if (tx != null) {
+        tx.rollback();
+      }
+      if (session != null) {
+        session.close();
+      }
+      IOUtils.closeQuietly(writer);
+      IOUtils.closeQuietly(gzipOut);
+    }
+  }
+
   public void dumpDatabase(final String path, final String encoding)
   {
     OutputStream out = null;
@@ -380,6 +594,9 @@ public class XmlDump
     try {
       session = sessionFactory.openSession(EmptyInterceptor.INSTANCE);
       session.setDefaultReadOnly(true);
+      if (xstreamSavingConverter.getRestoredObjectsCounter().isEmpty() == false) {
+        return verifyObjectsCounter(session, xstreamSavingConverter.getRestoredObjectsCounter());
+      }
       int counter = 0;
       for (final Map.Entry<Class< ? >, List<Object>> entry : xstreamSavingConverter.getAllObjects().entrySet()) {
         final List<Object> objects = entry.getValue();
@@ -437,6 +654,33 @@ public class XmlDump
     }
   }
 
+  /**
+   * The objects of a streaming restore aren't hold in memory, so only the number of objects of each type is verified.
+   * @return Number of checked objects. This number is negative if any error occurs.
+   */
+  private int verifyObjectsCounter(final Session session, final Map<Class< ? >, Integer> restoredObjectsCounter)
+  {
+    boolean hasError = false;
+    int counter = 0;
+    for (final Map.Entry<Class< ? >, Integer> entry : restoredObjectsCounter.entrySet()) {
+      final Long count = (Long) session.createQuery("select count(*) from " + entry.getKey().getName()).uniqueResult();
+      if (count == null || count < entry.getValue()) {
+        log.error("Objects not sucessfully imported! " + entry.getValue() + " objects of type " + entry.getKey().getName()
+            + " restored, but only " + count + " found in the data base.");
+        hasError = true;
+      }
+      counter += entry.getValue();
+    }
+    if (hasError == true) {
+      log.fatal("*********** A inconsistency in the import was found! This may result in a data loss or corrupted data! Please retry the import. "
+          + counter
+          + " entries checked.");
+      return -counter;
+    }
+    log.info("Data-base import successfully verified: " + counter + " entries checked.");
+    return counter;
+  }
+
   /**
    * @param o1
    * @param o2
@@ -629,6 +873,10 @@ public class XmlDump
       // transients.
       return false;
     }
+    if (field.getDeclaringClass() == AuftragDO.class && ArrayUtils.contains(AUFTRAG_INVOICE_STATUS_FIELDS, field.getName()) == true) {
+      // Recalculated after restoring.
+      return false;
+    }
     return true;
   }
 }
@@ -0,0 +1,133 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.database.stax;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hibernate.EntityMode;
+import org.hibernate.metadata.ClassMetadata;
+
+/**
+ * Precomputed description of all persistent properties of one entity class for writing and reading the streaming data-base dump.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * 
+ */
+class DumpEntityMetadata
+{
+  enum Kind
+  {
+    /** Simple value (string, number, date etc.). */
+    VALUE,
+    /** Many-to-one or one-to-one association, written as id. */
+    REFERENCE,
+    /** Collection of entities not owned by this entity (e. g. many-to-many), written as list of ids. */
+    REFERENCES,
+    /** Collection of dependent entities, written nested inside this entity. */
+    CHILDREN,
+    /** Not written, e. g. the inverse side of associations whose entities are written as top level objects. */
+    SKIP;
+  }
+
+  static class Property
+  {
+    final String name;
+
+    final int index;
+
+    final Kind kind;
+
+    /**
+     * Type of the value, of the referenced entity or of the collection elements.
+     */
+    final Class< ? > type;
+
+    /**
+     * Only for collections: true, if the collection is a list, otherwise a set.
+     */
+    final boolean list;
+
+    /**
+     * True, if a new instance of the entity has a non null value for this property. A null value has to be written explicit.
+     */
+    final boolean nonNullDefault;
+
+    Property(final String name, final int index, final Kind kind, final Class< ? > type, final boolean list, final boolean nonNullDefault)
+    {
+      this.name = name;
+      this.index = index;
+      this.kind = kind;
+      this.type = type;
+      this.list = list;
+      this.nonNullDefault = nonNullDefault;
+    }
+  }
+
+  final Class< ? > entityClass;
+
+  final ClassMetadata classMetadata;
+
+  final Class< ? > identifierType;
+
+  final Property[] properties;
+
+  private final Map<String, Property> propertiesByName = new HashMap<String, Property>();
+
+  DumpEntityMetadata(final Class< ? > entityClass, final ClassMetadata classMetadata, final Property[] properties)
+  {
+    this.entityClass = entityClass;
+    this.classMetadata = classMetadata;
+    this.identifierType = classMetadata.getIdentifierType().getReturnedClass();
+    this.properties = properties;
+    for (final Property property : properties) {
+      propertiesByName.put(property.name, property);
+    }
+  }
+
+  Property getProperty(final String name)
+  {
+    return propertiesByName.get(name);
+  }
+
+  Object newInstance()
+  {
+    try {
+      return entityClass.newInstance();
+    } catch (final InstantiationException ex) {
+      throw new IllegalArgumentException("Can't instantiate entity of type " + entityClass.getName(), ex);
+    } catch (final IllegalAccessException ex) {
+      throw new IllegalArgumentException("Can't instantiate entity of type " + entityClass.getName(), ex);
+    }
+  }
+
+  Object[] getPropertyValues(final Object obj)
+  {
+    return classMetadata.getPropertyValues(obj, EntityMode.POJO);
+  }
+
+  void setPropertyValues(final Object obj, final Object[] values)
+  {
+    classMetadata.setPropertyValues(obj, values, EntityMode.POJO);
+  }
+}
@@ -0,0 +1,230 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.database.stax;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.EntityMode;
+import org.hibernate.SessionFactory;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.metadata.CollectionMetadata;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.type.CollectionType;
+import org.hibernate.type.EntityType;
+import org.hibernate.type.Type;
+import org.projectforge.database.HibernateEntities;
+
+import de.micromata.hibernate.history.delta.PropertyDelta;
+
+/**
+ * Describes which entities are written by the streaming data-base dump and in which order. The order of the top level entities is the
+ * order of restoring, so referenced entities should be written first. References to entities which aren't restored yet are fixed after
+ * all entities are restored.<br/>
+ * Dependent entities (embedded types and elements of unidirectional one-to-many associations) are written nested inside their owner.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * 
+ */
+public class DumpModel
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(DumpModel.class);
+
+  private final SessionFactory sessionFactory;
+
+  private final List<Class< ? >> orderedTypes = new ArrayList<Class< ? >>();
+
+  private final Set<Class< ? >> embeddedTypes = new HashSet<Class< ? >>();
+
+  /**
+   * Element types of unidirectional one-to-many associations: element class -> owning associations (entity name and property).
+   */
+  private Map<Class< ? >, List<String[]>> ownedTypes;
+
+  private final Map<Class< ? >, DumpEntityMetadata> metadataCache = new HashMap<Class< ? >, DumpEntityMetadata>();
+
+  public DumpModel(final SessionFactory sessionFactory)
+  {
+    this.sessionFactory = sessionFactory;
+    this.embeddedTypes.add(PropertyDelta.class);
+  }
+
+  public SessionFactory getSessionFactory()
+  {
+    return sessionFactory;
+  }
+
+  public DumpModel appendOrderedType(final Class< ? >... types)
+  {
+    if (types != null) {
+      for (final Class< ? > type : types) {
+        this.orderedTypes.add(type);
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Objects of these types are only written nested inside their parent objects (e. g. positions of invoices).
+   */
+  public DumpModel appendEmbeddedType(final Class< ? >... types)
+  {
+    if (types != null) {
+      for (final Class< ? > type : types) {
+        this.embeddedTypes.add(type);
+      }
+    }
+    return this;
+  }
+
+  /**
+   * @return The appended ordered types followed by all other entities (in the order of {@link HibernateEntities}) and the history
+   *         entities. The embedded types are excluded.
+   */
+  List<Class< ? >> getTopLevelTypes()
+  {
+    final Set<Class< ? >> set = new LinkedHashSet<Class< ? >>();
+    set.addAll(orderedTypes);
+    set.addAll(HibernateEntities.instance().getOrderedEntities());
+    set.addAll(HibernateEntities.instance().getOrderedHistoryEntities());
+    final List<Class< ? >> result = new ArrayList<Class< ? >>();
+    for (final Class< ? > type : set) {
+      if (isEmbedded(type) == true || sessionFactory.getClassMetadata(type) == null) {
+        continue;
+      }
+      result.add(type);
+    }
+    return result;
+  }
+
+  /**
+   * @return true, if objects of the given type are written only nested inside their parents.
+   */
+  boolean isEmbedded(final Class< ? > type)
+  {
+    for (final Class< ? > embeddedType : embeddedTypes) {
+      if (embeddedType.isAssignableFrom(type) == true) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return The owning associations ({entity name, property name}) if the given type is element of unidirectional one-to-many
+   *         associations, otherwise null. Objects of this type are written nested inside their owner and only the objects without owner
+   *         are written as top level objects.
+   */
+  synchronized List<String[]> getOwners(final Class< ? > type)
+  {
+    if (ownedTypes == null) {
+      ownedTypes = new HashMap<Class< ? >, List<String[]>>();
+      @SuppressWarnings("unchecked")
+      final Map<String, CollectionMetadata> map = sessionFactory.getAllCollectionMetadata();
+      for (final CollectionMetadata collectionMetadata : map.values()) {
+        final CollectionPersister persister = (CollectionPersister) collectionMetadata;
+        if (persister.isOneToMany() == false || persister.isInverse() == true || persister.getElementType().isEntityType() == false) {
+          continue;
+        }
+        final Class< ? > elementType = persister.getElementType().getReturnedClass();
+        final String ownerEntityName = persister.getOwnerEntityPersister().getEntityName();
+        final String property = persister.getRole().substring(ownerEntityName.length() + 1);
+        List<String[]> owners = ownedTypes.get(elementType);
+        if (owners == null) {
+          owners = new ArrayList<String[]>();
+          ownedTypes.put(elementType, owners);
+        }
+        owners.add(new String[] { ownerEntityName, property});
+      }
+    }
+    return ownedTypes.get(type);
+  }
+
+  /**
+   * @return The cached meta data or null if the given class isn't an entity.
+   */
+  synchronized DumpEntityMetadata getMetadata(final Class< ? > entityClass)
+  {
+    DumpEntityMetadata metadata = metadataCache.get(entityClass);
+    if (metadata != null || metadataCache.containsKey(entityClass) == true) {
+      return metadata;
+    }
+    final ClassMetadata classMetadata = sessionFactory.getClassMetadata(entityClass);
+    if (classMetadata != null) {
+      metadata = createMetadata(entityClass, classMetadata);
+    }
+    metadataCache.put(entityClass, metadata);
+    return metadata;
+  }
+
+  private DumpEntityMetadata createMetadata(final Class< ? > entityClass, final ClassMetadata classMetadata)
+  {
+    final String[] names = classMetadata.getPropertyNames();
+    final Type[] types = classMetadata.getPropertyTypes();
+    final DumpEntityMetadata.Property[] properties = new DumpEntityMetadata.Property[names.length];
+    Object[] defaults = null;
+    try {
+      defaults = classMetadata.getPropertyValues(entityClass.newInstance(), EntityMode.POJO);
+    } catch (final Exception ex) {
+      log.warn("Can't instantiate entity of type " + entityClass.getName() + ": " + ex.getMessage());
+    }
+    for (int i = 0; i < names.length; i++) {
+      final Type type = types[i];
+      final boolean nonNullDefault = defaults != null && defaults[i] != null;
+      DumpEntityMetadata.Kind kind;
+      Class< ? > valueType;
+      boolean list = false;
+      if (type.isCollectionType() == true) {
+        final CollectionType collectionType = (CollectionType) type;
+        final CollectionPersister persister = (CollectionPersister) sessionFactory.getCollectionMetadata(collectionType.getRole());
+        final Type elementType = persister.getElementType();
+        list = List.class.isAssignableFrom(collectionType.getReturnedClass());
+        valueType = elementType.getReturnedClass();
+        if (elementType.isEntityType() == false || Collection.class.isAssignableFrom(collectionType.getReturnedClass()) == false) {
+          log.warn("Collection '" + collectionType.getRole() + "' isn't supported by the streaming dump and will be ignored.");
+          kind = DumpEntityMetadata.Kind.SKIP;
+        } else if (isEmbedded(valueType) == true || (persister.isOneToMany() == true && persister.isInverse() == false)) {
+          kind = DumpEntityMetadata.Kind.CHILDREN;
+        } else if (persister.isInverse() == true) {
+          kind = DumpEntityMetadata.Kind.SKIP;
+        } else {
+          kind = DumpEntityMetadata.Kind.REFERENCES;
+        }
+      } else if (type.isEntityType() == true) {
+        kind = DumpEntityMetadata.Kind.REFERENCE;
+        valueType = ((EntityType) type).getReturnedClass();
+      } else {
+        kind = DumpEntityMetadata.Kind.VALUE;
+        valueType = type.getReturnedClass();
+      }
+      properties[i] = new DumpEntityMetadata.Property(names[i], i, kind, valueType, list, nonNullDefault);
+    }
+    return new DumpEntityMetadata(entityClass, classMetadata, properties);
+  }
+}
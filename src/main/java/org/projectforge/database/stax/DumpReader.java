@@ -0,0 +1,501 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.database.stax;
+
+import java.io.Reader;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.hibernate.CacheMode;
+import org.hibernate.EntityMode;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.projectforge.common.XStreamHelper;
+import org.projectforge.core.IManualIndex;
+import org.projectforge.database.xstream.XStreamSavingConverter;
+
+import com.thoughtworks.xstream.XStream;
+
+import de.micromata.hibernate.history.HistoryEntry;
+
+/**
+ * Reads a dump written by {@link DumpWriter} entity by entity and inserts the entities in batches (the session is flushed, committed and
+ * cleared regularly). The mapping between the ids of the dump and the new ids of the data-base is registered in the given
+ * {@link XStreamSavingConverter}, so the {@link org.projectforge.database.XmlDumpHook}s are usable as well. References to entities not yet
+ * restored are fixed after all entities are inserted.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * 
+ */
+public class DumpReader
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(DumpReader.class);
+
+  /**
+   * Number of top level entities after which the session is flushed and cleared.
+   */
+  private static final int BATCH_SIZE = 100;
+
+  /**
+   * An entity read from the stream (including its nested dependent entities) and not yet saved.
+   */
+  private static class ReadEntity
+  {
+    final DumpEntityMetadata metadata;
+
+    final Object obj;
+
+    final Serializable oldId;
+
+    final List<ReadEntity> children = new ArrayList<ReadEntity>();
+
+    List<DeferredReference> deferredReferences;
+
+    ReadEntity(final DumpEntityMetadata metadata, final Object obj, final Serializable oldId)
+    {
+      this.metadata = metadata;
+      this.obj = obj;
+      this.oldId = oldId;
+    }
+  }
+
+  /**
+   * Reference (or collection of references) of an entity to entities which weren't restored while the entity itself was restored.
+   */
+  private static class DeferredReference
+  {
+    final DumpEntityMetadata.Property property;
+
+    /**
+     * Class names and ids of the referenced objects.
+     */
+    final List<String[]> references;
+
+    Serializable newId;
+
+    DeferredReference(final DumpEntityMetadata.Property property, final List<String[]> references)
+    {
+      this.property = property;
+      this.references = references;
+    }
+  }
+
+  private final DumpModel model;
+
+  private final XStreamSavingConverter xstreamSavingConverter;
+
+  private final Map<String, Class< ? >> classes = new HashMap<String, Class< ? >>();
+
+  private final Map<Class< ? >, List<DeferredReference>> deferredReferences = new HashMap<Class< ? >, List<DeferredReference>>();
+
+  private XStream xstream;
+
+  private Session session;
+
+  private XMLStreamReader xml;
+
+  private Transaction tx;
+
+  private int topLevelCounter;
+
+  private int committedCounter;
+
+  /**
+   * @param model
+   * @param xstreamSavingConverter Used for registering the entity mappings (old and new ids).
+   */
+  public DumpReader(final DumpModel model, final XStreamSavingConverter xstreamSavingConverter)
+  {
+    this.model = model;
+    this.xstreamSavingConverter = xstreamSavingConverter;
+  }
+
+  /**
+   * Reads and saves all entities. The session is flushed and cleared after each batch and a transaction is committed after each batch.
+   * Therefore the data-base should be empty before: if the restore fails, the already committed batches remain (see
+   * {@link #getCommittedCounter()}) and the data-base has to be emptied before the next try.
+   * @param session
+   * @param reader
+   * @return The number of read top level entities.
+   * @throws HibernateException if any entity can't be saved. The restore is aborted, but the already committed batches remain.
+   */
+  public int read(final Session session, final Reader reader) throws XMLStreamException
+  {
+    this.session = session;
+    session.setCacheMode(CacheMode.IGNORE);
+    xml = XMLInputFactory.newInstance().createXMLStreamReader(reader);
+    xml.nextTag();
+    if (DumpWriter.ELEMENT_ROOT.equals(xml.getLocalName()) == false) {
+      throw new XMLStreamException("Unsupported dump format, root element '" + DumpWriter.ELEMENT_ROOT + "' expected.", xml.getLocation());
+    }
+    final String version = xml.getAttributeValue(null, DumpWriter.ATTR_VERSION);
+    if (DumpWriter.VERSION.equals(version) == false) {
+      throw new XMLStreamException("Unsupported dump version '" + version + "'.", xml.getLocation());
+    }
+    topLevelCounter = 0;
+    committedCounter = 0;
+    tx = session.beginTransaction();
+    try {
+      while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+        final ReadEntity entity = readEntity(new HashMap<String, Object>());
+        if (entity == null) {
+          continue;
+        }
+        prepare(entity);
+        save(entity);
+        if (++topLevelCounter % BATCH_SIZE == 0) {
+          flushAndClear();
+        }
+      }
+      flushAndClear();
+      log.info("Read " + topLevelCounter + " top level objects.");
+      fixDeferredReferences();
+      tx.commit();
+      committedCounter = topLevelCounter;
+      return topLevelCounter;
+    } finally {
+      if (tx.isActive() == true && tx.wasCommitted() == false) {
+        tx.rollback();
+      }
+    }
+  }
+
+  /**
+   * @return The number of top level entities already committed. If {@link #read(Session, Reader)} failed, these entities remain in the
+   *         data-base (their references to entities of later batches may be unresolved).
+   */
+  public int getCommittedCounter()
+  {
+    return committedCounter;
+  }
+
+  /**
+   * Will be called directly before an object (top level or dependent object) will be saved. Does nothing at default.
+   * @param obj
+   */
+  protected void onBeforeSave(final Object obj)
+  {
+  }
+
+  /**
+   * Will be called directly after an object was saved. Does nothing at default.
+   * @param obj
+   * @param id The new id of the data-base.
+   */
+  protected void onAfterSave(final Object obj, final Serializable id)
+  {
+  }
+
+  private void flushAndClear()
+  {
+    session.flush();
+    session.clear();
+    tx.commit();
+    committedCounter = topLevelCounter;
+    tx = session.beginTransaction();
+  }
+
+  private ReadEntity readEntity(final Map<String, Object> readObjects) throws XMLStreamException
+  {
+    final Class< ? > type = getClass(xml.getAttributeValue(null, DumpWriter.ATTR_CLASS));
+    final DumpEntityMetadata metadata = type != null ? model.getMetadata(type) : null;
+    if (metadata == null) {
+      log.warn("Ignore unknown entity " + xml.getAttributeValue(null, DumpWriter.ATTR_CLASS));
+      skipElement();
+      return null;
+    }
+    final Serializable oldId = (Serializable) DumpValueConverter.fromString(xml.getAttributeValue(null, DumpWriter.ATTR_ID),
+        metadata.identifierType);
+    final Object obj = metadata.newInstance();
+    if (obj instanceof IManualIndex) {
+      metadata.classMetadata.setIdentifier(obj, oldId, EntityMode.POJO);
+    }
+    final ReadEntity entity = new ReadEntity(metadata, obj, oldId);
+    readObjects.put(type.getName() + "#" + oldId, obj);
+    final Object[] values = metadata.getPropertyValues(obj);
+    while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      final String name = xml.getAttributeValue(null, DumpWriter.ATTR_NAME);
+      final DumpEntityMetadata.Property property = metadata.getProperty(name);
+      if (property == null || property.kind == DumpEntityMetadata.Kind.SKIP) {
+        log.warn("Ignore unknown property '" + name + "' of entity " + type.getName());
+        skipElement();
+        continue;
+      }
+      final String element = xml.getLocalName();
+      if (DumpWriter.ELEMENT_PROPERTY.equals(element) == true) {
+        if ("true".equals(xml.getAttributeValue(null, DumpWriter.ATTR_NULL)) == true) {
+          values[property.index] = null;
+          skipElement();
+        } else if ("true".equals(xml.getAttributeValue(null, DumpWriter.ATTR_XSTREAM)) == true) {
+          values[property.index] = getXStream().fromXML(xml.getElementText());
+        } else {
+          values[property.index] = DumpValueConverter.fromString(xml.getElementText(), property.type);
+        }
+      } else if (DumpWriter.ELEMENT_REFERENCE.equals(element) == true) {
+        final String[] reference = readReference();
+        final Object value = resolve(reference, readObjects);
+        if (value == null) {
+          final List<String[]> references = new ArrayList<String[]>(1);
+          references.add(reference);
+          addDeferredReference(entity, new DeferredReference(property, references));
+        }
+        values[property.index] = value;
+      } else if (DumpWriter.ELEMENT_COLLECTION.equals(element) == true) {
+        final Collection<Object> collection = getEmptyCollection(property, values[property.index]);
+        values[property.index] = collection;
+        List<String[]> references = null;
+        boolean resolved = true;
+        while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+          if (DumpWriter.ELEMENT_ENTITY.equals(xml.getLocalName()) == true) {
+            final ReadEntity child = readEntity(readObjects);
+            if (child != null) {
+              entity.children.add(child);
+              collection.add(child.obj);
+            }
+          } else {
+            final String[] reference = readReference();
+            if (references == null) {
+              references = new ArrayList<String[]>();
+            }
+            references.add(reference);
+            final Object value = resolve(reference, readObjects);
+            if (value == null) {
+              resolved = false;
+            } else {
+              collection.add(value);
+            }
+          }
+        }
+        if (resolved == false) {
+          addDeferredReference(entity, new DeferredReference(property, references));
+        }
+      } else {
+        log.warn("Ignore unknown element '" + element + "' of entity " + type.getName());
+        skipElement();
+      }
+    }
+    metadata.setPropertyValues(obj, values);
+    return entity;
+  }
+
+  /**
+   * @return class name and id. The stream is positioned at the end of the (empty) reference element.
+   */
+  private String[] readReference() throws XMLStreamException
+  {
+    final String[] reference = new String[] { xml.getAttributeValue(null, DumpWriter.ATTR_CLASS),
+        xml.getAttributeValue(null, DumpWriter.ATTR_ID)};
+    skipElement();
+    return reference;
+  }
+
+  /**
+   * @param reference class name and old id.
+   * @param readObjects The objects of the current top level entity which aren't yet saved.
+   * @return The object (proxy) with the new id or null, if not (yet) restored.
+   */
+  private Object resolve(final String[] reference, final Map<String, Object> readObjects)
+  {
+    final Object obj = readObjects.get(reference[0] + "#" + reference[1]);
+    if (obj != null) {
+      return obj;
+    }
+    final Class< ? > type = getClass(reference[0]);
+    final DumpEntityMetadata metadata = type != null ? model.getMetadata(type) : null;
+    if (metadata == null) {
+      return null;
+    }
+    final Serializable oldId = (Serializable) DumpValueConverter.fromString(reference[1], metadata.identifierType);
+    final Serializable newId = xstreamSavingConverter.getNewId(type, oldId);
+    if (newId == null) {
+      return null;
+    }
+    return session.load(type, newId);
+  }
+
+  private void addDeferredReference(final ReadEntity entity, final DeferredReference deferredReference)
+  {
+    if (entity.deferredReferences == null) {
+      entity.deferredReferences = new ArrayList<DeferredReference>();
+    }
+    entity.deferredReferences.add(deferredReference);
+  }
+
+  private void prepare(final ReadEntity entity)
+  {
+    if (entity.obj instanceof HistoryEntry) {
+      xstreamSavingConverter.updateHistoryEntityId((HistoryEntry) entity.obj);
+    }
+    onBeforeSave(entity.obj);
+    for (final ReadEntity child : entity.children) {
+      prepare(child);
+    }
+  }
+
+  private void save(final ReadEntity entity)
+  {
+    final Class< ? > type = entity.metadata.entityClass;
+    final Serializable newId;
+    try {
+      if (session.contains(entity.obj) == true) {
+        // Already saved on cascade.
+        newId = session.getIdentifier(entity.obj);
+      } else {
+        newId = session.save(entity.obj);
+      }
+    } catch (final HibernateException ex) {
+      // Abort the restore, the transaction of the current batch is rolled back.
+      log.fatal("Failed to write " + entity.obj + " ex=" + ex, ex);
+      throw ex;
+    }
+    xstreamSavingConverter.registerEntityMapping(type, entity.oldId, newId);
+    xstreamSavingConverter.incrementRestoredObjectsCounter(type);
+    if (entity.deferredReferences != null) {
+      List<DeferredReference> list = deferredReferences.get(type);
+      if (list == null) {
+        list = new ArrayList<DeferredReference>();
+        deferredReferences.put(type, list);
+      }
+      for (final DeferredReference deferredReference : entity.deferredReferences) {
+        deferredReference.newId = newId;
+        list.add(deferredReference);
+      }
+    }
+    onAfterSave(entity.obj, newId);
+    for (final ReadEntity child : entity.children) {
+      save(child);
+    }
+  }
+
+  private void fixDeferredReferences()
+  {
+    final Map<String, Object> emptyMap = new HashMap<String, Object>();
+    int counter = 0;
+    for (final Map.Entry<Class< ? >, List<DeferredReference>> entry : deferredReferences.entrySet()) {
+      final DumpEntityMetadata metadata = model.getMetadata(entry.getKey());
+      for (final DeferredReference deferredReference : entry.getValue()) {
+        final Object obj = session.get(entry.getKey(), deferredReference.newId);
+        if (obj == null) {
+          continue;
+        }
+        final String property = deferredReference.property.name;
+        if (deferredReference.property.kind == DumpEntityMetadata.Kind.REFERENCE) {
+          final String[] reference = deferredReference.references.get(0);
+          final Object value = resolve(reference, emptyMap);
+          if (value == null) {
+            log.error("Can't resolve reference '" + property + "' of " + obj + " to " + reference[0] + " with id " + reference[1]);
+            continue;
+          }
+          metadata.classMetadata.setPropertyValue(obj, property, value, EntityMode.POJO);
+        } else {
+          final Object current = metadata.classMetadata.getPropertyValue(obj, property, EntityMode.POJO);
+          final Collection<Object> collection = getEmptyCollection(deferredReference.property, current);
+          for (final String[] reference : deferredReference.references) {
+            final Object value = resolve(reference, emptyMap);
+            if (value == null) {
+              log.error("Can't resolve element of '" + property + "' of " + obj + ": " + reference[0] + " with id " + reference[1]);
+              continue;
+            }
+            collection.add(value);
+          }
+          if (collection != current) {
+            metadata.classMetadata.setPropertyValue(obj, property, collection, EntityMode.POJO);
+          }
+        }
+        if (++counter % BATCH_SIZE == 0) {
+          flushAndClear();
+        }
+      }
+    }
+    session.flush();
+    session.clear();
+    deferredReferences.clear();
+    log.info("Fixed " + counter + " references to entities restored later.");
+  }
+
+  @SuppressWarnings("unchecked")
+  private Collection<Object> getEmptyCollection(final DumpEntityMetadata.Property property, final Object current)
+  {
+    if (current instanceof Collection< ? >) {
+      final Collection<Object> collection = (Collection<Object>) current;
+      collection.clear();
+      return collection;
+    }
+    if (property.list == true) {
+      return new ArrayList<Object>();
+    }
+    return new HashSet<Object>();
+  }
+
+  private Class< ? > getClass(final String className)
+  {
+    if (className == null) {
+      return null;
+    }
+    Class< ? > type = classes.get(className);
+    if (type == null && classes.containsKey(className) == false) {
+      try {
+        type = Class.forName(className);
+      } catch (final ClassNotFoundException ex) {
+        log.warn("Class not found: " + className);
+      }
+      classes.put(className, type);
+    }
+    return type;
+  }
+
+  /**
+   * Skips the current element including all nested elements. The stream is positioned at the end of the skipped element.
+   */
+  private void skipElement() throws XMLStreamException
+  {
+    int depth = 1;
+    while (depth > 0) {
+      final int event = xml.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        ++depth;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        --depth;
+      }
+    }
+  }
+
+  private XStream getXStream()
+  {
+    if (xstream == null) {
+      xstream = XStreamHelper.createXStream();
+    }
+    return xstream;
+  }
+}
@@ -0,0 +1,162 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.database.stax;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang.LocaleUtils;
+
+/**
+ * Converts the simple property values of the entities from and to their string representation of the streaming data-base dump. Dates
+ * are stored as milliseconds, enums by name and binaries base64 encoded.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * 
+ */
+public class DumpValueConverter
+{
+  /**
+   * @param type
+   * @return true, if values of the given type are supported by {@link #toString(Object)} and {@link #fromString(String, Class)}.
+   */
+  public static boolean isSupported(final Class< ? > type)
+  {
+    return type == String.class
+        || type == Integer.class
+        || type == Long.class
+        || type == Short.class
+        || type == Byte.class
+        || type == Double.class
+        || type == Float.class
+        || type == Boolean.class
+        || type == Character.class
+        || type == BigDecimal.class
+        || type == BigInteger.class
+        || Date.class.isAssignableFrom(type) == true
+        || Calendar.class.isAssignableFrom(type) == true
+        || type.isEnum() == true
+        || type == Locale.class
+        || TimeZone.class.isAssignableFrom(type) == true
+        || type == byte[].class
+        || type == Class.class;
+  }
+
+  /**
+   * @param value
+   * @return The string representation or null if the value is null or the type of the value isn't supported.
+   */
+  public static String toString(final Object value)
+  {
+    if (value == null) {
+      return null;
+    }
+    if (value instanceof Date) {
+      return String.valueOf(((Date) value).getTime());
+    } else if (value instanceof Calendar) {
+      return String.valueOf(((Calendar) value).getTimeInMillis());
+    } else if (value instanceof Enum< ? >) {
+      return ((Enum< ? >) value).name();
+    } else if (value instanceof TimeZone) {
+      return ((TimeZone) value).getID();
+    } else if (value instanceof byte[]) {
+      return new String(Base64.encodeBase64((byte[]) value));
+    } else if (value instanceof Class< ? >) {
+      return ((Class< ? >) value).getName();
+    } else if (value instanceof BigDecimal) {
+      return ((BigDecimal) value).toPlainString();
+    } else if (isSupported(value.getClass()) == false) {
+      return null;
+    }
+    return value.toString();
+  }
+
+  /**
+   * @param str
+   * @param type The type of the property.
+   * @return The value of the given type.
+   * @throws IllegalArgumentException if the string isn't parseable or the type isn't supported.
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes"})
+  public static Object fromString(final String str, final Class< ? > type)
+  {
+    if (str == null) {
+      return null;
+    }
+    if (type == String.class) {
+      return str;
+    } else if (type == Integer.class) {
+      return Integer.valueOf(str);
+    } else if (type == Long.class) {
+      return Long.valueOf(str);
+    } else if (type == Short.class) {
+      return Short.valueOf(str);
+    } else if (type == Byte.class) {
+      return Byte.valueOf(str);
+    } else if (type == Double.class) {
+      return Double.valueOf(str);
+    } else if (type == Float.class) {
+      return Float.valueOf(str);
+    } else if (type == Boolean.class) {
+      return Boolean.valueOf(str);
+    } else if (type == Character.class) {
+      return str.length() > 0 ? str.charAt(0) : null;
+    } else if (type == BigDecimal.class) {
+      return new BigDecimal(str);
+    } else if (type == BigInteger.class) {
+      return new BigInteger(str);
+    } else if (type == java.sql.Timestamp.class) {
+      return new java.sql.Timestamp(Long.parseLong(str));
+    } else if (type == java.sql.Date.class) {
+      return new java.sql.Date(Long.parseLong(str));
+    } else if (type == java.sql.Time.class) {
+      return new java.sql.Time(Long.parseLong(str));
+    } else if (Date.class.isAssignableFrom(type) == true) {
+      return new Date(Long.parseLong(str));
+    } else if (Calendar.class.isAssignableFrom(type) == true) {
+      final Calendar cal = Calendar.getInstance();
+      cal.setTimeInMillis(Long.parseLong(str));
+      return cal;
+    } else if (type.isEnum() == true) {
+      return Enum.valueOf((Class) type, str);
+    } else if (type == Locale.class) {
+      return LocaleUtils.toLocale(str);
+    } else if (TimeZone.class.isAssignableFrom(type) == true) {
+      return TimeZone.getTimeZone(str);
+    } else if (type == byte[].class) {
+      return Base64.decodeBase64(str.getBytes());
+    } else if (type == Class.class) {
+      try {
+        return Class.forName(str);
+      } catch (final ClassNotFoundException ex) {
+        throw new IllegalArgumentException("Class not found: " + str, ex);
+      }
+    }
+    throw new IllegalArgumentException("Unsupported type: " + type);
+  }
+}
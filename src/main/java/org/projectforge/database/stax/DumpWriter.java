@@ -0,0 +1,322 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.database.stax;
+
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.hibernate.CacheMode;
+import org.hibernate.EntityMode;
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.HibernateProxyHelper;
+import org.projectforge.common.XStreamHelper;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Writes all entities of the data-base entity by entity to a StAX stream. The entities are read page by page (the collections of a page
+ * are fetched together) and the session is cleared after each page, so the memory usage is independent of the size of the data-base. References to other entities are written
+ * as ids, dependent entities are written nested inside their owner.<br/>
+ * Format:
+ * 
+ * <pre>
+ * &lt;projectforge-dump version="1"&gt;
+ *   &lt;entity class="org.projectforge.user.GroupDO" id="2"&gt;
+ *     &lt;property name="name"&gt;PF_Admin&lt;/property&gt;
+ *     &lt;reference name="tenant" class="..." id="1"/&gt;
+ *     &lt;collection name="assignedUsers"&gt;&lt;reference class="org.projectforge.user.PFUserDO" id="1"/&gt;&lt;/collection&gt;
+ *   &lt;/entity&gt;
+ * &lt;/projectforge-dump&gt;
+ * </pre>
+ * 
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * 
+ */
+public class DumpWriter
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(DumpWriter.class);
+
+  public static final String ELEMENT_ROOT = "projectforge-dump";
+
+  public static final String VERSION = "1";
+
+  static final String ELEMENT_ENTITY = "entity";
+
+  static final String ELEMENT_PROPERTY = "property";
+
+  static final String ELEMENT_REFERENCE = "reference";
+
+  static final String ELEMENT_COLLECTION = "collection";
+
+  static final String ATTR_VERSION = "version";
+
+  static final String ATTR_CLASS = "class";
+
+  static final String ATTR_ID = "id";
+
+  static final String ATTR_NAME = "name";
+
+  static final String ATTR_NULL = "null";
+
+  static final String ATTR_XSTREAM = "xstream";
+
+  /**
+   * Number of top level entities per page, the session is cleared after each page.
+   */
+  private static final int BATCH_SIZE = 100;
+
+  private final DumpModel model;
+
+  private XStream xstream;
+
+  private XMLStreamWriter xml;
+
+  private List<Class< ? >> topLevelTypes;
+
+  private int counter;
+
+  public DumpWriter(final DumpModel model)
+  {
+    this.model = model;
+  }
+
+  /**
+   * Writes all entities. The given session should be read-only, it's cleared regularly.
+   * @param session
+   * @param writer
+   * @return The number of written top level entities.
+   */
+  public int write(final Session session, final Writer writer) throws XMLStreamException
+  {
+    counter = 0;
+    xml = XMLOutputFactory.newInstance().createXMLStreamWriter(writer);
+    xml.writeStartDocument("utf-8", "1.0");
+    newLine(0);
+    xml.writeStartElement(ELEMENT_ROOT);
+    xml.writeAttribute(ATTR_VERSION, VERSION);
+    session.setCacheMode(CacheMode.IGNORE);
+    topLevelTypes = model.getTopLevelTypes();
+    for (final Class< ? > type : topLevelTypes) {
+      write(session, type);
+    }
+    newLine(0);
+    xml.writeEndElement();
+    xml.writeEndDocument();
+    xml.flush();
+    log.info("Wrote " + counter + " top level objects.");
+    return counter;
+  }
+
+  private void write(final Session session, final Class< ? > type) throws XMLStreamException
+  {
+    final DumpEntityMetadata metadata = model.getMetadata(type);
+    final String idProperty = metadata.classMetadata.getIdentifierPropertyName();
+    final String firstPageHql = getPageQuery(type, idProperty, false);
+    final String nextPageHql = getPageQuery(type, idProperty, true);
+    final List<String> fetchHqls = getFetchQueries(type, metadata, idProperty);
+    int typeCounter = 0;
+    Serializable lastId = null;
+    while (true) {
+      // Keyset pagination: every page is a new query, so the collections of the page can be fetched with one query per collection
+      // property instead of one query per entity and collection.
+      final Query query = session.createQuery(lastId == null ? firstPageHql : nextPageHql);
+      if (lastId != null) {
+        query.setParameter("lastId", lastId);
+      }
+      query.setReadOnly(true);
+      query.setMaxResults(BATCH_SIZE);
+      final List< ? > page = query.list();
+      if (page.isEmpty() == true) {
+        break;
+      }
+      final List<Serializable> ids = new ArrayList<Serializable>(page.size());
+      for (final Object obj : page) {
+        ids.add(session.getIdentifier(obj));
+      }
+      lastId = ids.get(ids.size() - 1);
+      for (final String fetchHql : fetchHqls) {
+        // The returned entities are the ones of the page (same session), only their collections are initialized.
+        session.createQuery(fetchHql).setParameterList("ids", ids).setReadOnly(true).list();
+      }
+      for (final Object obj : page) {
+        final Class< ? > objClass = HibernateProxyHelper.getClassWithoutInitializingProxy(obj);
+        if (objClass.equals(type) == false && topLevelTypes.contains(objClass) == true) {
+          // Sub class is written separately.
+          continue;
+        }
+        newLine(1);
+        writeEntity(session, obj, 1);
+        ++typeCounter;
+        ++counter;
+      }
+      xml.flush();
+      session.clear();
+      if (page.size() < BATCH_SIZE) {
+        break;
+      }
+    }
+    log.info("Wrote " + typeCounter + " objects of type " + type.getName());
+  }
+
+  private String getPageQuery(final Class< ? > type, final String idProperty, final boolean nextPage)
+  {
+    final StringBuffer hql = new StringBuffer();
+    hql.append("select o from ").append(type.getName()).append(" o");
+    String separator = " where ";
+    if (nextPage == true) {
+      hql.append(separator).append("o.").append(idProperty).append(" > :lastId");
+      separator = " and ";
+    }
+    final List<String[]> owners = model.getOwners(type);
+    if (owners != null) {
+      // Objects with owner are written nested inside their owners. Not exists instead of not in, so the data-base may use an anti join
+      // instead of evaluating the sub select for every row.
+      for (final String[] owner : owners) {
+        hql.append(separator).append("not exists (select e.").append(idProperty).append(" from ").append(owner[0]).append(" p join p.")
+        .append(owner[1]).append(" e where e.").append(idProperty).append(" = o.").append(idProperty).append(")");
+        separator = " and ";
+      }
+    }
+    hql.append(" order by o.").append(idProperty);
+    return hql.toString();
+  }
+
+  /**
+   * @return One fetch join query for every collection (children and references) of the given type.
+   */
+  private List<String> getFetchQueries(final Class< ? > type, final DumpEntityMetadata metadata, final String idProperty)
+  {
+    final List<String> result = new ArrayList<String>();
+    for (final DumpEntityMetadata.Property property : metadata.properties) {
+      if (property.kind != DumpEntityMetadata.Kind.CHILDREN && property.kind != DumpEntityMetadata.Kind.REFERENCES) {
+        continue;
+      }
+      result.add("select distinct o from " + type.getName() + " o left join fetch o." + property.name + " where o." + idProperty
+          + " in (:ids)");
+    }
+    return result;
+  }
+
+  private void writeEntity(final Session session, final Object obj, final int depth) throws XMLStreamException
+  {
+    final Class< ? > type = HibernateProxyHelper.getClassWithoutInitializingProxy(obj);
+    final DumpEntityMetadata metadata = model.getMetadata(type);
+    xml.writeStartElement(ELEMENT_ENTITY);
+    xml.writeAttribute(ATTR_CLASS, type.getName());
+    xml.writeAttribute(ATTR_ID, DumpValueConverter.toString(session.getIdentifier(obj)));
+    final Object[] values = metadata.getPropertyValues(obj);
+    for (final DumpEntityMetadata.Property property : metadata.properties) {
+      final Object value = values[property.index];
+      if (property.kind == DumpEntityMetadata.Kind.SKIP) {
+        continue;
+      }
+      if (value == null) {
+        if (property.nonNullDefault == true && property.kind != DumpEntityMetadata.Kind.CHILDREN
+            && property.kind != DumpEntityMetadata.Kind.REFERENCES) {
+          newLine(depth + 1);
+          xml.writeEmptyElement(ELEMENT_PROPERTY);
+          xml.writeAttribute(ATTR_NAME, property.name);
+          xml.writeAttribute(ATTR_NULL, "true");
+        }
+        continue;
+      }
+      newLine(depth + 1);
+      if (property.kind == DumpEntityMetadata.Kind.VALUE) {
+        xml.writeStartElement(ELEMENT_PROPERTY);
+        xml.writeAttribute(ATTR_NAME, property.name);
+        final String str = DumpValueConverter.toString(value);
+        if (str != null) {
+          xml.writeCharacters(str);
+        } else {
+          xml.writeAttribute(ATTR_XSTREAM, "true");
+          xml.writeCharacters(getXStream().toXML(value));
+        }
+        xml.writeEndElement();
+      } else if (property.kind == DumpEntityMetadata.Kind.REFERENCE) {
+        writeReference(property.name, value);
+      } else {
+        xml.writeStartElement(ELEMENT_COLLECTION);
+        xml.writeAttribute(ATTR_NAME, property.name);
+        for (final Object element : (Collection< ? >) value) {
+          if (element == null) {
+            continue;
+          }
+          newLine(depth + 2);
+          if (property.kind == DumpEntityMetadata.Kind.CHILDREN) {
+            writeEntity(session, element, depth + 2);
+          } else {
+            writeReference(null, element);
+          }
+        }
+        newLine(depth + 1);
+        xml.writeEndElement();
+      }
+    }
+    newLine(depth);
+    xml.writeEndElement();
+  }
+
+  private void writeReference(final String name, final Object value) throws XMLStreamException
+  {
+    final Serializable id;
+    if (value instanceof HibernateProxy) {
+      // Don't initialize the proxy.
+      id = ((HibernateProxy) value).getHibernateLazyInitializer().getIdentifier();
+    } else {
+      id = model.getMetadata(HibernateProxyHelper.getClassWithoutInitializingProxy(value)).classMetadata.getIdentifier(value,
+          EntityMode.POJO);
+    }
+    xml.writeEmptyElement(ELEMENT_REFERENCE);
+    if (name != null) {
+      xml.writeAttribute(ATTR_NAME, name);
+    }
+    xml.writeAttribute(ATTR_CLASS, HibernateProxyHelper.getClassWithoutInitializingProxy(value).getName());
+    xml.writeAttribute(ATTR_ID, DumpValueConverter.toString(id));
+  }
+
+  private void newLine(final int depth) throws XMLStreamException
+  {
+    xml.writeCharacters("\n");
+    for (int i = 0; i < depth; i++) {
+      xml.writeCharacters("  ");
+    }
+  }
+
+  private XStream getXStream()
+  {
+    if (xstream == null) {
+      xstream = XStreamHelper.createXStream();
+    }
+    return xstream;
+  }
+}
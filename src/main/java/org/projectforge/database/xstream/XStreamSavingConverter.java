@@ -90,6 +90,9 @@ public class XStreamSavingConverter implements Converter
 
   private final Map<String, Class< ? >> historyClassMapping = new HashMap<String, Class< ? >>();
 
+  // Number of restored objects per type, only used by the streaming restore (the objects itself aren't hold in memory).
+  private final Map<Class< ? >, Integer> restoredObjectsCounter = new HashMap<Class< ? >, Integer>();
+
   private Session session;
 
   public XStreamSavingConverter() throws HibernateException
@@ -117,6 +120,20 @@ public class XStreamSavingConverter implements Converter
     return historyEntries;
   }
 
+  /**
+   * @return The number of restored objects per type of a streaming restore (empty for XStream restores).
+   */
+  public Map<Class< ? >, Integer> getRestoredObjectsCounter()
+  {
+    return restoredObjectsCounter;
+  }
+
+  public void incrementRestoredObjectsCounter(final Class< ? > type)
+  {
+    final Integer counter = restoredObjectsCounter.get(type);
+    restoredObjectsCounter.put(type, counter != null ? counter + 1 : 1);
+  }
+
   @SuppressWarnings("rawtypes")
   @Override
   public boolean canConvert(final Class arg0)
@@ -173,17 +190,9 @@ public class XStreamSavingConverter implements Converter
   {
     if (obj instanceof HistoryEntry) {
       final HistoryEntry entry = (HistoryEntry) obj;
-      final Integer origEntityId = entry.getEntityId();
-      final String entityClassname = entry.getClassName();
-      final Serializable newId = getNewId(entityClassname, origEntityId);
       final List<PropertyDelta> delta = entry.getDelta();
       Serializable id = null;
-      if (newId != null) {
-        // No public access, so try this:
-        invokeHistorySetter(entry, "setEntityId", Integer.class, newId);
-      } else {
-        log.error("Can't find mapping of old entity id. This results in a corrupted history: " + entry);
-      }
+      updateHistoryEntityId(entry);
       invokeHistorySetter(entry, "setDelta", List.class, null);
       id = save(entry);
       final List<PropertyDelta> list = new ArrayList<PropertyDelta>();
@@ -198,6 +207,21 @@ public class XStreamSavingConverter implements Converter
     return null;
   }
 
+  /**
+   * Replaces the entity id of the given history entry (id of the imported xml object) by the new id of the data-base.
+   * @param entry
+   */
+  public void updateHistoryEntityId(final HistoryEntry entry)
+  {
+    final Serializable newId = getNewId(entry.getClassName(), entry.getEntityId());
+    if (newId != null) {
+      // No public access, so try this:
+      invokeHistorySetter(entry, "setEntityId", Integer.class, newId);
+    } else {
+      log.error("Can't find mapping of old entity id. This results in a corrupted history: " + entry);
+    }
+  }
+
   /**
    * Does nothing at default.
    * @param obj Please note: the id isn't yet set to this object!
@@ -384,7 +408,7 @@ public class XStreamSavingConverter implements Converter
     return ClassUtils.getShortClassName(cls);
   }
 
-  protected void registerEntityMapping(final Class< ? > entityClass, final Serializable oldId, final Serializable newId)
+  public void registerEntityMapping(final Class< ? > entityClass, final Serializable oldId, final Serializable newId)
   {
     final Serializable registeredNewId = getNewId(entityClass, oldId);
     if (registeredNewId != null && registeredNewId.equals(newId) == false) {
@@ -135,8 +135,17 @@ public class AuftragDO extends DefaultBaseDO
   @DateBridge(resolution = Resolution.DAY)
   private Date periodOfPerformanceEnd;
 
+  private BigDecimal invoicedSum;
+
+  private BigDecimal toBeInvoicedSum;
+
+  private boolean completelyInvoiced;
+
+  private boolean closedNotCompletelyInvoiced;
+
   static {
-    AbstractHistorizableBaseDO.putNonHistorizableProperty(AuftragDO.class, "uiStatusAsXml", "uiStatus");
+    AbstractHistorizableBaseDO.putNonHistorizableProperty(AuftragDO.class, "uiStatusAsXml", "uiStatus", "invoicedSum", "toBeInvoicedSum",
+        "completelyInvoiced", "closedNotCompletelyInvoiced");
   }
 
   /**
@@ -756,4 +765,70 @@ public class AuftragDO extends DefaultBaseDO
     this.periodOfPerformanceEnd = periodOfPerformanceEnd;
     return this;
   }
+
+  /**
+   * Net sum of all invoice positions assigned to the positions of this order. This value is maintained by the AuftragDao on every
+   * modification of this order or of an assigned invoice and is used for querying the orders.
+   * @see AuftragDao#updateInvoiceStatus(java.util.Collection)
+   */
+  @Column(name = "invoiced_sum", scale = 2, precision = 12)
+  public BigDecimal getInvoicedSum()
+  {
+    return invoicedSum;
+  }
+
+  public AuftragDO setInvoicedSum(final BigDecimal invoicedSum)
+  {
+    this.invoicedSum = invoicedSum;
+    return this;
+  }
+
+  /**
+   * Net sum of the closed positions not yet invoiced (maintained by the AuftragDao).
+   * @see #getZuFakturierenSum()
+   */
+  @Column(name = "to_be_invoiced_sum", scale = 2, precision = 12)
+  public BigDecimal getToBeInvoicedSum()
+  {
+    return toBeInvoicedSum;
+  }
+
+  public AuftragDO setToBeInvoicedSum(final BigDecimal toBeInvoicedSum)
+  {
+    this.toBeInvoicedSum = toBeInvoicedSum;
+    return this;
+  }
+
+  /**
+   * Persisted value of {@link #isVollstaendigFakturiert()} (maintained by the AuftragDao).
+   */
+  @Column(name = "completely_invoiced", nullable = false)
+  public boolean isCompletelyInvoiced()
+  {
+    return completelyInvoiced;
+  }
+
+  public AuftragDO setCompletelyInvoiced(final boolean completelyInvoiced)
+  {
+    this.completelyInvoiced = completelyInvoiced;
+    return this;
+  }
+
+  /**
+   * True if this order or any of its positions is closed or any payment milestone is reached and not completely invoiced (maintained by
+   * the AuftragDao).
+   * @see #isAbgeschlossenUndNichtVollstaendigFakturiert()
+   * @see #isZahlplanAbgeschlossenUndNichtVollstaendigFakturiert()
+   */
+  @Column(name = "closed_not_completely_invoiced", nullable = false)
+  public boolean isClosedNotCompletelyInvoiced()
+  {
+    return closedNotCompletelyInvoiced;
+  }
+
+  public AuftragDO setClosedNotCompletelyInvoiced(final boolean closedNotCompletelyInvoiced)
+  {
+    this.closedNotCompletelyInvoiced = closedNotCompletelyInvoiced;
+    return this;
+  }
 }
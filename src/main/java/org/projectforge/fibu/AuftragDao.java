@@ -23,6 +23,8 @@
 
 package org.projectforge.fibu;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
@@ -35,14 +37,15 @@ import java.util.Set;
 import java.util.TreeSet;
 
 import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.collections.Predicate;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
-import org.hibernate.Criteria;
+import org.hibernate.Session;
+import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
 import org.projectforge.access.OperationType;
-import org.projectforge.common.DatabaseDialect;
 import org.projectforge.common.DateHelper;
 import org.projectforge.common.NumberHelper;
 import org.projectforge.core.BaseDao;
@@ -53,7 +56,6 @@ import org.projectforge.core.MessageParam;
 import org.projectforge.core.MessageParamType;
 import org.projectforge.core.QueryFilter;
 import org.projectforge.core.UserException;
-import org.projectforge.database.HibernateUtils;
 import org.projectforge.database.SQLHelper;
 import org.projectforge.mail.Mail;
 import org.projectforge.mail.SendMail;
@@ -76,6 +78,8 @@ public class AuftragDao extends BaseDao<AuftragDO>
 
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(AuftragDao.class);
 
+  private static final int REBUILD_INVOICE_STATUS_CHUNK_SIZE = 500;
+
   private static final Class< ? >[] ADDITIONAL_HISTORY_SEARCH_DOS = new Class[] { AuftragsPositionDO.class};
 
   private static final String[] ADDITIONAL_SEARCH_FIELDS = new String[] { "contactPerson.username", "contactPerson.firstname",
@@ -317,11 +321,11 @@ public class AuftragDao extends BaseDao<AuftragDO>
     if (abgeschlossenNichtFakturiert != null) {
       return abgeschlossenNichtFakturiert;
     }
-    final AuftragFilter filter = new AuftragFilter();
-    filter.setListType(AuftragFilter.FILTER_ABGESCHLOSSEN_NF);
     try {
-      final List<AuftragDO> list = getList(filter, false);
-      abgeschlossenNichtFakturiert = list != null ? list.size() : 0;
+      @SuppressWarnings("unchecked")
+      final List<Long> list = getHibernateTemplate().find(
+          "select count(t.id) from AuftragDO t where t.deleted = false and t.closedNotCompletelyInvoiced = true");
+      abgeschlossenNichtFakturiert = CollectionUtils.isEmpty(list) == false && list.get(0) != null ? list.get(0).intValue() : 0;
       return abgeschlossenNichtFakturiert;
     } catch (final Exception ex) {
       log.error("Exception ocurred while getting number of closed and not invoiced orders: " + ex.getMessage(), ex);
@@ -345,29 +349,20 @@ public class AuftragDao extends BaseDao<AuftragDO>
       myFilter = new AuftragFilter(filter);
     }
     final QueryFilter queryFilter = new QueryFilter(myFilter);
-    Boolean vollstaendigFakturiert = null;
     if (myFilter.isShowBeauftragtNochNichtVollstaendigFakturiert() == true) {
       queryFilter.add(Restrictions.not(Restrictions.in("auftragsStatus", new AuftragsStatus[] { AuftragsStatus.ABGELEHNT,
           AuftragsStatus.ERSETZT, AuftragsStatus.GELEGT, AuftragsStatus.GROB_KALKULATION, AuftragsStatus.IN_ERSTELLUNG})));
-      vollstaendigFakturiert = false;
+      queryFilter.add(Restrictions.eq("completelyInvoiced", false));
     } else if (myFilter.isShowNochNichtVollstaendigFakturiert() == true) {
       queryFilter.add(Restrictions.not(Restrictions.in("auftragsStatus", new AuftragsStatus[] { AuftragsStatus.ABGELEHNT,
           AuftragsStatus.ERSETZT})));
-      vollstaendigFakturiert = false;
+      queryFilter.add(Restrictions.eq("completelyInvoiced", false));
     } else if (myFilter.isShowVollstaendigFakturiert() == true) {
-      vollstaendigFakturiert = true;
+      queryFilter.add(Restrictions.eq("completelyInvoiced", true));
     } else if (myFilter.isShowAbgelehnt() == true) {
       queryFilter.add(Restrictions.eq("auftragsStatus", AuftragsStatus.ABGELEHNT));
     } else if (myFilter.isShowAbgeschlossenNichtFakturiert() == true) {
-      queryFilter
-      .createAlias("positionen", "position")
-      .createAlias("paymentSchedules", "paymentSchedule", Criteria.FULL_JOIN)
-      .add(
-          Restrictions.or(
-              Restrictions.or(Restrictions.eq("auftragsStatus", AuftragsStatus.ABGESCHLOSSEN),
-                  Restrictions.eq("position.status", AuftragsPositionsStatus.ABGESCHLOSSEN)),
-                  Restrictions.eq("paymentSchedule.reached", true)));
-      vollstaendigFakturiert = false;
+      queryFilter.add(Restrictions.eq("closedNotCompletelyInvoiced", true));
     } else if (myFilter.isShowAkquise() == true) {
       queryFilter.add(Restrictions.in("auftragsStatus", new AuftragsStatus[] { AuftragsStatus.GELEGT, AuftragsStatus.IN_ERSTELLUNG,
           AuftragsStatus.GROB_KALKULATION}));
@@ -377,6 +372,12 @@ public class AuftragDao extends BaseDao<AuftragDO>
     } else if (myFilter.isShowErsetzt() == true) {
       queryFilter.add(Restrictions.eq("auftragsStatus", AuftragsStatus.ERSETZT));
     }
+    if (myFilter.getAuftragsPositionsArt() != null) {
+      // Only orders with at least one position of the given type:
+      final DetachedCriteria positionen = DetachedCriteria.forClass(AuftragsPositionDO.class)
+          .add(Restrictions.eq("art", myFilter.getAuftragsPositionsArt())).setProjection(Projections.property("auftrag.id"));
+      queryFilter.add(Subqueries.propertyIn("id", positionen));
+    }
     if (myFilter.getYear() > 1900) {
       final Calendar cal = DateHelper.getUTCCalendar();
       cal.set(Calendar.YEAR, myFilter.getYear());
@@ -390,61 +391,127 @@ public class AuftragDao extends BaseDao<AuftragDO>
       queryFilter.add(Restrictions.between("angebotsDatum", lo, hi));
     }
     queryFilter.addOrder(Order.desc("nummer"));
-    final List<AuftragDO> list;
     if (checkAccess == true) {
-      list = getList(queryFilter);
+      return getList(queryFilter);
     } else {
-      list = internalGetList(queryFilter);
-    }
-    if (vollstaendigFakturiert != null || myFilter.getAuftragsPositionsArt() != null) {
-      final Boolean invoiced = vollstaendigFakturiert;
-      final AuftragFilter fil = myFilter;
-      CollectionUtils.filter(list, new Predicate() {
-        public boolean evaluate(final Object object)
-        {
-          final AuftragDO auftrag = (AuftragDO) object;
-          if (fil.getAuftragsPositionsArt() != null) {
-            boolean match = false;
-            if (CollectionUtils.isNotEmpty(auftrag.getPositionen()) == true) {
-              for (final AuftragsPositionDO position : auftrag.getPositionen()) {
-                if (fil.getAuftragsPositionsArt() == position.getArt()) {
-                  match = true;
-                  break;
-                }
-              }
-            }
-            if (match == false) {
-              return false;
-            }
+      return internalGetList(queryFilter);
+    }
+  }
+
+  /**
+   * Calculates the invoice status of the given order: the invoiced sum (of the assigned invoices of the {@link RechnungCache}), the sum to
+   * be invoiced and the flags completely invoiced and closed but not completely invoiced. These persisted values are used for selecting
+   * the orders by the list types of the {@link AuftragFilter}.
+   * @param auftrag
+   */
+  void calculateInvoiceStatus(final AuftragDO auftrag)
+  {
+    calculateInvoiceStatus(auftrag, null);
+  }
+
+  /**
+   * @param update Not yet published modification of an invoice (may be null), the invoice positions of this update are used instead of
+   *          the cached ones.
+   */
+  private void calculateInvoiceStatus(final AuftragDO auftrag, final RechnungCache.InvoicePositionsUpdate update)
+  {
+    BigDecimal invoicedSum = BigDecimal.ZERO;
+    BigDecimal toBeInvoicedSum = BigDecimal.ZERO;
+    if (auftrag.getPositionen() != null) {
+      for (final AuftragsPositionDO pos : auftrag.getPositionen()) {
+        BigDecimal invoiced = BigDecimal.ZERO;
+        if (pos.getId() != null) {
+          final Set<RechnungsPositionVO> set = update != null ? update.getRechnungsPositionVOSetByAuftragsPositionId(pos.getId())
+              : rechnungCache.getRechnungsPositionVOSetByAuftragsPositionId(pos.getId());
+          if (set != null) {
+            invoiced = RechnungDao.getNettoSumme(set);
           }
-          final boolean orderIsCompletelyInvoiced = auftrag.isVollstaendigFakturiert();
-          if (HibernateUtils.getDialect() != DatabaseDialect.HSQL && myFilter.isShowAbgeschlossenNichtFakturiert() == true) {
-            // if order is completed and not all positions are completely invoiced
-            if (auftrag.getAuftragsStatus() == AuftragsStatus.ABGESCHLOSSEN && orderIsCompletelyInvoiced == false) {
-              return true;
-            }
-            // if order is completed and not completely invoiced
-            if (auftrag.getPositionen() != null) {
-              for (final AuftragsPositionDO pos : auftrag.getPositionen()) {
-                if (pos.isAbgeschlossenUndNichtVollstaendigFakturiert() == true) {
-                  return true;
-                }
-              }
-            }
-            if (auftrag.getPaymentSchedules() != null) {
-              for (final PaymentScheduleDO schedule : auftrag.getPaymentSchedules()) {
-                if (schedule.isReached() == true && schedule.isVollstaendigFakturiert() == false) {
-                  return true;
-                }
-              }
-            }
-            return false;
+        }
+        invoicedSum = invoicedSum.add(invoiced);
+        if (pos.getStatus() == AuftragsPositionsStatus.ABGESCHLOSSEN) {
+          if (pos.getNettoSumme() != null) {
+            toBeInvoicedSum = toBeInvoicedSum.add(pos.getNettoSumme());
           }
-          return orderIsCompletelyInvoiced == invoiced;
+          toBeInvoicedSum = toBeInvoicedSum.subtract(invoiced);
         }
-      });
+      }
     }
-    return list;
+    auftrag.setInvoicedSum(invoicedSum.setScale(2, RoundingMode.HALF_UP));
+    auftrag.setToBeInvoicedSum(toBeInvoicedSum.setScale(2, RoundingMode.HALF_UP));
+    auftrag.setCompletelyInvoiced(auftrag.isVollstaendigFakturiert());
+    // The invoice status is calculated for all orders, also for orders without status (e. g. on rebuild):
+    final boolean abgeschlossenUndNichtVollstaendigFakturiert = auftrag.getAuftragsStatus() != null
+        && auftrag.isAbgeschlossenUndNichtVollstaendigFakturiert() == true;
+    auftrag.setClosedNotCompletelyInvoiced(abgeschlossenUndNichtVollstaendigFakturiert == true
+        || auftrag.isZahlplanAbgeschlossenUndNichtVollstaendigFakturiert() == true);
+  }
+
+  /**
+   * Recalculates the invoice status of the given orders, e. g. after modifying an assigned invoice.
+   * @param auftragIds
+   * @see #calculateInvoiceStatus(AuftragDO)
+   */
+  @Transactional(readOnly = false, propagation = Propagation.REQUIRED)
+  public void updateInvoiceStatus(final Collection<Integer> auftragIds)
+  {
+    updateInvoiceStatus(auftragIds, null);
+    abgeschlossenNichtFakturiert = null;
+  }
+
+  /**
+   * Recalculates the invoice status of all orders assigned to the modified invoice inside the modifying transaction. The invoice cache
+   * and the cached number of closed but not completely invoiced orders are updated after the commit.
+   * @param update The modification of the invoice read by {@link RechnungCache#readUpdate(Integer)}.
+   */
+  @Transactional(readOnly = false, propagation = Propagation.REQUIRED)
+  public void updateInvoiceStatus(final RechnungCache.InvoicePositionsUpdate update)
+  {
+    if (update == null) {
+      return;
+    }
+    updateInvoiceStatus(update.getAuftragIds(), update);
+    runAfterCommit(new Runnable() {
+      @Override
+      public void run()
+      {
+        rechnungCache.applyUpdate(update);
+        abgeschlossenNichtFakturiert = null;
+      }
+    });
+  }
+
+  private void updateInvoiceStatus(final Collection<Integer> auftragIds, final RechnungCache.InvoicePositionsUpdate update)
+  {
+    if (CollectionUtils.isEmpty(auftragIds) == true) {
+      return;
+    }
+    for (final Integer auftragId : auftragIds) {
+      final AuftragDO auftrag = getHibernateTemplate().get(AuftragDO.class, auftragId);
+      if (auftrag != null) {
+        // Unmodified values are ignored by Hibernate's dirty check.
+        calculateInvoiceStatus(auftrag, update);
+      }
+    }
+  }
+
+  /**
+   * Recalculates the invoice status of all orders (used by the data base update introducing the status columns and after restoring the
+   * data base). The invoice cache is reloaded first, because the invoices may be written bypassing the RechnungDao.
+   */
+  @SuppressWarnings("unchecked")
+  @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW)
+  public void rebuildInvoiceStatus()
+  {
+    log.info("Calculating the invoice status of all orders...");
+    rechnungCache.forceReload();
+    final List<Integer> auftragIds = getHibernateTemplate().find("select t.id from AuftragDO t");
+    final Session session = getSession();
+    for (int i = 0; i < auftragIds.size(); i += REBUILD_INVOICE_STATUS_CHUNK_SIZE) {
+      updateInvoiceStatus(auftragIds.subList(i, Math.min(i + REBUILD_INVOICE_STATUS_CHUNK_SIZE, auftragIds.size())));
+      session.flush();
+      session.clear();
+    }
+    log.info("Calculating the invoice status of " + auftragIds.size() + " orders done.");
   }
 
   @SuppressWarnings("unchecked")
@@ -485,6 +552,7 @@ public class AuftragDao extends BaseDao<AuftragDO>
         position.checkVollstaendigFakturiert();
       }
     }
+    calculateInvoiceStatus(obj);
     abgeschlossenNichtFakturiert = null;
     final String uiStatusAsXml = XmlObjectWriter.writeAsXml(obj.getUiStatus());
     obj.setUiStatusAsXml(uiStatusAsXml);
@@ -515,7 +583,7 @@ public class AuftragDao extends BaseDao<AuftragDO>
   @Override
   protected void afterLoad(final AuftragDO obj)
   {
-    final XmlObjectReader reader = new XmlObjectReader();
+    final XmlObjectReader reader = new XmlObjectReader().setStreamingMode(true);
     reader.initialize(AuftragUIStatus.class);
     final String styleAsXml = obj.getUiStatusAsXml();
     final AuftragUIStatus status;
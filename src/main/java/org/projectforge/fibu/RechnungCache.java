@@ -23,7 +23,9 @@
 
 package org.projectforge.fibu;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -35,20 +37,27 @@ import org.springframework.orm.hibernate3.HibernateTemplate;
 
 
 /**
- * Caches the order positions assigned to invoice positions.
+ * Caches the order positions assigned to invoice positions. Modifications of invoices are applied incrementally by
+ * {@link #applyUpdate(InvoicePositionsUpdate)}, so this cache is the link index between orders and invoices.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
 public class RechnungCache extends AbstractCache
 {
   private static Logger log = Logger.getLogger(RechnungCache.class);
 
+  private static final String QUERY = "from RechnungsPositionDO t left join fetch t.auftragsPosition"
+      + " left join fetch t.auftragsPosition.auftrag where t.auftragsPosition is not null";
+
   private HibernateTemplate hibernateTemplate;
 
   /** The key is the order id. */
-  private Map<Integer, Set<RechnungsPositionVO>> invoicePositionMapByAuftragId;
+  private volatile Map<Integer, Set<RechnungsPositionVO>> invoicePositionMapByAuftragId;
 
   /** The key is the order position id. */
-  private Map<Integer, Set<RechnungsPositionVO>> invoicePositionMapByAuftragsPositionId;
+  private volatile Map<Integer, Set<RechnungsPositionVO>> invoicePositionMapByAuftragsPositionId;
+
+  /** The key is the invoice id. */
+  private volatile Map<Integer, Set<RechnungsPositionVO>> invoicePositionMapByRechnungId;
 
   public Set<RechnungsPositionVO> getRechnungsPositionVOSetByAuftragId(final Integer auftragId)
   {
@@ -62,6 +71,145 @@ public class RechnungCache extends AbstractCache
     return invoicePositionMapByAuftragsPositionId.get(auftragsPositionId);
   }
 
+  /**
+   * The invoice positions of one modified invoice read from the data base inside the modifying transaction, but not yet published to the
+   * cache (see {@link RechnungCache#readUpdate(Integer)} and {@link RechnungCache#applyUpdate(InvoicePositionsUpdate)}).
+   */
+  public class InvoicePositionsUpdate
+  {
+    private final Integer rechnungId;
+
+    private final List<RechnungsPositionVO> voList;
+
+    private final Set<Integer> auftragIds = new HashSet<Integer>();
+
+    private InvoicePositionsUpdate(final Integer rechnungId, final List<RechnungsPositionVO> voList)
+    {
+      this.rechnungId = rechnungId;
+      this.voList = voList;
+      final Set<RechnungsPositionVO> oldSet = invoicePositionMapByRechnungId.get(rechnungId);
+      if (oldSet != null) {
+        for (final RechnungsPositionVO vo : oldSet) {
+          auftragIds.add(vo.getAuftragsId());
+        }
+      }
+      for (final RechnungsPositionVO vo : voList) {
+        auftragIds.add(vo.getAuftragsId());
+      }
+    }
+
+    /**
+     * @return The ids of all orders assigned to the invoice before or after the modification.
+     */
+    public Set<Integer> getAuftragIds()
+    {
+      return auftragIds;
+    }
+
+    /**
+     * @return The invoice positions of the given order position as they will be after publishing this update.
+     */
+    public Set<RechnungsPositionVO> getRechnungsPositionVOSetByAuftragsPositionId(final Integer auftragsPositionId)
+    {
+      final Set<RechnungsPositionVO> result = new TreeSet<RechnungsPositionVO>();
+      final Set<RechnungsPositionVO> set = RechnungCache.this.getRechnungsPositionVOSetByAuftragsPositionId(auftragsPositionId);
+      if (set != null) {
+        for (final RechnungsPositionVO vo : set) {
+          if (rechnungId.equals(vo.getRechnungId()) == false) {
+            result.add(vo);
+          }
+        }
+      }
+      for (final RechnungsPositionVO vo : voList) {
+        if (auftragsPositionId.equals(vo.getAuftragsPositionId()) == true) {
+          result.add(vo);
+        }
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Reads the invoice positions of the given invoice from the data base (the modifications of the invoice have to be flushed before). The
+   * cache isn't modified, the update should be published by {@link #applyUpdate(InvoicePositionsUpdate)} after the commit of the
+   * modifying transaction.
+   * @param rechnungId
+   * @return The update or null, if no invoice id is given.
+   */
+  @SuppressWarnings("unchecked")
+  public InvoicePositionsUpdate readUpdate(final Integer rechnungId)
+  {
+    if (rechnungId == null) {
+      return null;
+    }
+    checkRefresh();
+    // The data base is queried without holding the lock of this cache:
+    final List<RechnungsPositionVO> voList = new ArrayList<RechnungsPositionVO>();
+    final List<RechnungsPositionDO> list = hibernateTemplate.find(QUERY + " and t.rechnung.id = ?", rechnungId);
+    for (final RechnungsPositionDO pos : list) {
+      final RechnungsPositionVO vo = createVO(pos);
+      if (vo != null) {
+        voList.add(vo);
+      }
+    }
+    return new InvoicePositionsUpdate(rechnungId, voList);
+  }
+
+  /**
+   * Replaces all entries of the invoice of the given update, so the whole cache hasn't to be refreshed after saving, modifying, deleting
+   * or undeleting an invoice.
+   * @param update
+   */
+  public void applyUpdate(final InvoicePositionsUpdate update)
+  {
+    checkRefresh();
+    synchronized (this) {
+      setInvoicePositions(update.rechnungId, update.voList);
+      // A running refresh may have read the data base before this modification:
+      afterModification(new Runnable() {
+        @Override
+        public void run()
+        {
+          setInvoicePositions(update.rechnungId, update.voList);
+        }
+      });
+    }
+  }
+
+  /**
+   * Replaces all entries of the given invoice by the given invoice positions. Must be called synchronized on this cache.
+   * @return The ids of all orders assigned to the given invoice before or after the modification.
+   */
+  private Set<Integer> setInvoicePositions(final Integer rechnungId, final List<RechnungsPositionVO> voList)
+  {
+    final Set<Integer> auftragIds = new HashSet<Integer>();
+    // Copy on write, the maps and sets of the readers are left untouched.
+    final Map<Integer, Set<RechnungsPositionVO>> mapByAuftragId = new HashMap<Integer, Set<RechnungsPositionVO>>(
+        invoicePositionMapByAuftragId);
+    final Map<Integer, Set<RechnungsPositionVO>> mapByAuftragsPositionId = new HashMap<Integer, Set<RechnungsPositionVO>>(
+        invoicePositionMapByAuftragsPositionId);
+    final Map<Integer, Set<RechnungsPositionVO>> mapByRechnungId = new HashMap<Integer, Set<RechnungsPositionVO>>(
+        invoicePositionMapByRechnungId);
+    final Set<RechnungsPositionVO> oldSet = mapByRechnungId.remove(rechnungId);
+    if (oldSet != null) {
+      for (final RechnungsPositionVO vo : oldSet) {
+        auftragIds.add(vo.getAuftragsId());
+        remove(mapByAuftragId, vo.getAuftragsId(), vo);
+        remove(mapByAuftragsPositionId, vo.getAuftragsPositionId(), vo);
+      }
+    }
+    for (final RechnungsPositionVO vo : voList) {
+      auftragIds.add(vo.getAuftragsId());
+      add(mapByAuftragId, vo.getAuftragsId(), vo, true);
+      add(mapByAuftragsPositionId, vo.getAuftragsPositionId(), vo, true);
+      add(mapByRechnungId, vo.getRechnungId(), vo, false);
+    }
+    this.invoicePositionMapByAuftragId = mapByAuftragId;
+    this.invoicePositionMapByAuftragsPositionId = mapByAuftragsPositionId;
+    this.invoicePositionMapByRechnungId = mapByRechnungId;
+    return auftragIds;
+  }
+
   /**
    * This method will be called by CacheHelper and is synchronized via getData();
    */
@@ -73,40 +221,70 @@ public class RechnungCache extends AbstractCache
     // This method must not be synchronized because it works with a new copy of maps.
     final Map<Integer, Set<RechnungsPositionVO>> mapByAuftragId = new HashMap<Integer, Set<RechnungsPositionVO>>();
     final Map<Integer, Set<RechnungsPositionVO>> mapByAuftragsPositionId = new HashMap<Integer, Set<RechnungsPositionVO>>();
-    final List<RechnungsPositionDO> list = hibernateTemplate.find("from RechnungsPositionDO t left join fetch t.auftragsPosition left join fetch t.auftragsPosition.auftrag where t.auftragsPosition is not null");
+    final Map<Integer, Set<RechnungsPositionVO>> mapByRechnungId = new HashMap<Integer, Set<RechnungsPositionVO>>();
+    final List<RechnungsPositionDO> list = hibernateTemplate.find(QUERY);
     for (final RechnungsPositionDO pos : list) {
-      if (pos.getAuftragsPosition() == null || pos.getAuftragsPosition().getAuftrag() == null) {
-        log.error("Assigned order position expected: " + pos);
+      final RechnungsPositionVO vo = createVO(pos);
+      if (vo == null) {
         continue;
-      } else if (pos.isDeleted() == true || pos.getRechnung() == null || pos.getRechnung().isDeleted() == true || pos.getRechnung().getNummer() == null) {
-        // Invoice position or invoice is deleted.
-        continue;
-      }
-      final AuftragsPositionDO auftragsPosition = pos.getAuftragsPosition();
-      final AuftragDO auftrag = auftragsPosition.getAuftrag();
-      Set<RechnungsPositionVO> setByAuftragId = mapByAuftragId.get(auftrag.getId());
-      if (setByAuftragId == null) {
-        setByAuftragId = new TreeSet<RechnungsPositionVO>();
-        mapByAuftragId.put(auftrag.getId(), setByAuftragId);
-      }
-      Set<RechnungsPositionVO> setByAuftragsPositionId = mapByAuftragsPositionId.get(auftragsPosition.getId());
-      if (setByAuftragsPositionId == null) {
-        setByAuftragsPositionId = new TreeSet<RechnungsPositionVO>();
-        mapByAuftragsPositionId.put(auftragsPosition.getId(), setByAuftragsPositionId);
-      }
-      final RechnungsPositionVO vo = new RechnungsPositionVO(pos);
-      if (setByAuftragId.contains(vo) == false) {
-        setByAuftragId.add(vo);
-      }
-      if (setByAuftragsPositionId.contains(vo) == false) {
-        setByAuftragsPositionId.add(vo);
       }
+      add(mapByAuftragId, vo.getAuftragsId(), vo, false);
+      add(mapByAuftragsPositionId, vo.getAuftragsPositionId(), vo, false);
+      add(mapByRechnungId, vo.getRechnungId(), vo, false);
+    }
+    synchronized (this) {
+      this.invoicePositionMapByAuftragId = mapByAuftragId;
+      this.invoicePositionMapByAuftragsPositionId = mapByAuftragsPositionId;
+      this.invoicePositionMapByRechnungId = mapByRechnungId;
     }
-    this.invoicePositionMapByAuftragId = mapByAuftragId;
-    this.invoicePositionMapByAuftragsPositionId = mapByAuftragsPositionId;
     log.info("Initializing of RechnungCache done.");
   }
 
+  /**
+   * @return The value object or null if the invoice position or the invoice is deleted.
+   */
+  private RechnungsPositionVO createVO(final RechnungsPositionDO pos)
+  {
+    if (pos.getAuftragsPosition() == null || pos.getAuftragsPosition().getAuftrag() == null) {
+      log.error("Assigned order position expected: " + pos);
+      return null;
+    } else if (pos.isDeleted() == true || pos.getRechnung() == null || pos.getRechnung().isDeleted() == true || pos.getRechnung().getNummer() == null) {
+      // Invoice position or invoice is deleted.
+      return null;
+    }
+    return new RechnungsPositionVO(pos);
+  }
+
+  private void add(final Map<Integer, Set<RechnungsPositionVO>> map, final Integer key, final RechnungsPositionVO vo,
+      final boolean copyOnWrite)
+  {
+    Set<RechnungsPositionVO> set = map.get(key);
+    if (set == null) {
+      set = new TreeSet<RechnungsPositionVO>();
+    } else if (set.contains(vo) == true) {
+      return;
+    } else if (copyOnWrite == true) {
+      set = new TreeSet<RechnungsPositionVO>(set);
+    }
+    set.add(vo);
+    map.put(key, set);
+  }
+
+  private void remove(final Map<Integer, Set<RechnungsPositionVO>> map, final Integer key, final RechnungsPositionVO vo)
+  {
+    final Set<RechnungsPositionVO> set = map.get(key);
+    if (set == null || set.contains(vo) == false) {
+      return;
+    }
+    final Set<RechnungsPositionVO> copy = new TreeSet<RechnungsPositionVO>(set);
+    copy.remove(vo);
+    if (copy.isEmpty() == true) {
+      map.remove(key);
+    } else {
+      map.put(key, copy);
+    }
+  }
+
   public void setHibernateTemplate(final HibernateTemplate hibernateTemplate)
   {
     this.hibernateTemplate = hibernateTemplate;
@@ -82,6 +82,8 @@ public class RechnungDao extends BaseDao<RechnungDO>
 
   private RechnungCache rechnungCache;
 
+  private AuftragDao auftragDao;
+
   public static BigDecimal getNettoSumme(final Collection<RechnungsPositionVO> col)
   {
     BigDecimal nettoSumme = BigDecimal.ZERO;
@@ -95,7 +97,7 @@ public class RechnungDao extends BaseDao<RechnungDO>
 
   static void readUiStatusFromXml(final AbstractRechnungDO< ? > rechnung)
   {
-    final XmlObjectReader reader = new XmlObjectReader();
+    final XmlObjectReader reader = new XmlObjectReader().setStreamingMode(true);
     reader.initialize(RechnungUIStatus.class);
     final String styleAsXml = rechnung.getUiStatusAsXml();
     final RechnungUIStatus status;
@@ -128,6 +130,11 @@ public class RechnungDao extends BaseDao<RechnungDO>
     this.rechnungCache = rechnungCache;
   }
 
+  public void setAuftragDao(final AuftragDao auftragDao)
+  {
+    this.auftragDao = auftragDao;
+  }
+
   /**
    * @return the rechnungCache
    */
@@ -264,7 +271,9 @@ public class RechnungDao extends BaseDao<RechnungDO>
   @Override
   protected void afterSaveOrModify(final RechnungDO obj)
   {
-    rechnungCache.setExpired(); // Expire the cache because assignments to order position may be changed.
+    // Assignments to order positions may be changed, so update the invoice status of the assigned orders (the cache is updated after the
+    // commit):
+    auftragDao.updateInvoiceStatus(rechnungCache.readUpdate(obj.getId()));
   }
 
   /**
@@ -51,14 +51,14 @@ public class KostCache extends AbstractCache
   private HibernateTemplate hibernateTemplate;
 
   /** The key is the kost2-id. */
-  private Map<Integer, Kost2DO> kost2Map;
+  private volatile Map<Integer, Kost2DO> kost2Map;
 
   /** The key is the kost2-id. */
-  private Map<Integer, Kost1DO> kost1Map;
+  private volatile Map<Integer, Kost1DO> kost1Map;
 
-  private List<Kost2Art> allKost2Arts;
+  private volatile List<Kost2Art> allKost2Arts;
   
-  private boolean kost2EntriesExists = false;
+  private volatile boolean kost2EntriesExists = false;
 
   public Kost2DO getKost2(final Integer kost2Id)
   {
@@ -195,7 +195,17 @@ public class KostCache extends AbstractCache
    */
   void updateKost2(final Kost2DO kost2)
   {
-    getKost2Map().put(kost2.getId(), kost2);
+    checkRefresh();
+    synchronized (this) {
+      putKost2(kost2);
+      afterModification(new Runnable() {
+        @Override
+        public void run()
+        {
+          putKost2(kost2);
+        }
+      });
+    }
   }
 
   /**
@@ -204,7 +214,40 @@ public class KostCache extends AbstractCache
    */
   void updateKost1(final Kost1DO kost1)
   {
-    getKost1Map().put(kost1.getId(), kost1);
+    checkRefresh();
+    synchronized (this) {
+      putKost1(kost1);
+      afterModification(new Runnable() {
+        @Override
+        public void run()
+        {
+          putKost1(kost1);
+        }
+      });
+    }
+  }
+
+  /**
+   * Copy on write, the readers iterate over the current map unsynchronized.
+   */
+  private void putKost2(final Kost2DO kost2)
+  {
+    final Map<Integer, Kost2DO> map2 = new HashMap<Integer, Kost2DO>(kost2Map);
+    map2.put(kost2.getId(), kost2);
+    this.kost2Map = map2;
+    if (kost2.isDeleted() == false) {
+      this.kost2EntriesExists = true;
+    }
+  }
+
+  /**
+   * Copy on write, the readers iterate over the current map unsynchronized.
+   */
+  private void putKost1(final Kost1DO kost1)
+  {
+    final Map<Integer, Kost1DO> map1 = new HashMap<Integer, Kost1DO>(kost1Map);
+    map1.put(kost1.getId(), kost1);
+    this.kost1Map = map1;
   }
 
   @SuppressWarnings("unchecked")
@@ -248,14 +291,16 @@ public class KostCache extends AbstractCache
     this.kost1Map = map1;
     final Map<Integer, Kost2DO> map2 = new HashMap<Integer, Kost2DO>();
     final List<Kost2DO> list2 = hibernateTemplate.find("from Kost2DO t");
-    kost2EntriesExists = false;
+    boolean entriesExists = false;
     for (Kost2DO kost2 : list2) {
-      if (kost2EntriesExists == false && kost2.isDeleted() == false) {
-        kost2EntriesExists = true;
+      if (entriesExists == false && kost2.isDeleted() == false) {
+        entriesExists = true;
       }
       map2.put(kost2.getId(), kost2);
     }
     this.kost2Map = map2;
+    // Publish the flag at once, readers mustn't see an intermediate value while refreshing in background:
+    this.kost2EntriesExists = entriesExists;
     updateKost2Arts();
     log.info("Initializing of KostCache done.");
   }
@@ -320,7 +320,7 @@ public class GanttChart
    */
   public Collection<GanttTask> recalculate()
   {
-    rootNode.recalculate();
+    new GanttScheduler(rootNode).calculate();
     fromDate = toDate = null;
     final Collection<GanttTask> allVisibleGanttObjects = getAllVisibleGanttObjects(new ArrayList<GanttTask>(), rootNode);
     for (final GanttTask node : allVisibleGanttObjects) {
@@ -300,7 +300,7 @@ public class GanttChartDao extends BaseDao<GanttChartDO>
   @Override
   protected void afterLoad(final GanttChartDO obj)
   {
-    final XmlObjectReader reader = new XmlObjectReader();
+    final XmlObjectReader reader = new XmlObjectReader().setStreamingMode(true);
     reader.initialize(GanttChartStyle.class);
     reader.initialize(GanttChartSettings.class);
     final String styleAsXml = obj.getStyleAsXml();
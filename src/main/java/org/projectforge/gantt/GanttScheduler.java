@@ -0,0 +1,319 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.gantt;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Calculates the start and end dates of all Gantt tasks of a tree. The dependency graph (a task depends on its predecessor and on its
+ * children) is built once and the dates are calculated in topological order, so every task is calculated exactly once without any
+ * recursion. If a task is modified only this task and the tasks depending on it (directly or transitive) are recalculated.<br/>
+ * Circular dependencies are detected as strongly connected components of the dependency graph and are reported by {@link #getCycles()}.
+ * The dates of the tasks of a cycle are calculated as before by {@link GanttUtils#getCalculatedStartDate(GanttTask)} (which detects the
+ * circular reference and results in null dates).
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * 
+ */
+public class GanttScheduler
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(GanttScheduler.class);
+
+  private static class Node
+  {
+    final GanttTask task;
+
+    /**
+     * The nodes this node depends on (predecessor and children, if needed for the date calculation).
+     */
+    final List<Node> dependencies = new ArrayList<Node>();
+
+    /**
+     * The nodes depending on this node.
+     */
+    final List<Node> dependents = new ArrayList<Node>();
+
+    // Used by Tarjan's algorithm:
+    int index;
+
+    int lowLink;
+
+    boolean onStack;
+
+    Node(final GanttTask task)
+    {
+      this.task = task;
+    }
+  }
+
+  private final GanttTask rootNode;
+
+  private final Map<GanttTask, Node> nodes = new LinkedHashMap<GanttTask, Node>();
+
+  private final List<List<GanttTask>> cycles = new ArrayList<List<GanttTask>>();
+
+  /**
+   * Builds the dependency graph of all tasks of the given tree (including predecessors outside the tree).
+   * @param rootNode
+   */
+  public GanttScheduler(final GanttTask rootNode)
+  {
+    this.rootNode = rootNode;
+    rebuild();
+  }
+
+  /**
+   * Rebuilds the dependency graph. Must be called after adding or removing tasks (children) of the tree.
+   */
+  public GanttScheduler rebuild()
+  {
+    nodes.clear();
+    final LinkedList<GanttTask> queue = new LinkedList<GanttTask>();
+    if (rootNode != null) {
+      queue.add(rootNode);
+    }
+    while (queue.isEmpty() == false) {
+      final GanttTask task = queue.removeFirst();
+      if (nodes.containsKey(task) == true) {
+        continue;
+      }
+      nodes.put(task, new Node(task));
+      if (task.getPredecessor() != null) {
+        queue.add(task.getPredecessor());
+      }
+      if (task.getChildren() != null) {
+        queue.addAll(task.getChildren());
+      }
+    }
+    for (final Node node : nodes.values()) {
+      updateDependencies(node);
+    }
+    return this;
+  }
+
+  /**
+   * Calculates the start and end dates of all tasks.
+   */
+  public GanttScheduler calculate()
+  {
+    calculate(nodes.values());
+    return this;
+  }
+
+  /**
+   * Recalculates the start and end dates of the given modified task and of all tasks depending on it. Modifications of the dates, duration,
+   * predecessor, predecessor offset and relation type of the task are supported. For any other structural change (new or removed children)
+   * call {@link #rebuild()} and {@link #calculate()} instead.
+   * @param task The modified task.
+   */
+  public GanttScheduler recalculate(final GanttTask task)
+  {
+    Node node = nodes.get(task);
+    if (node == null) {
+      log.warn("Task not part of the Gantt tree, recalculating all tasks: " + task);
+      return rebuild().calculate();
+    }
+    if (task.getPredecessor() != null && nodes.containsKey(task.getPredecessor()) == false) {
+      // New predecessor outside the known graph:
+      return rebuild().calculate();
+    }
+    updateDependencies(node);
+    // Collect the modified task and all tasks depending on it:
+    final Map<GanttTask, Node> affected = new LinkedHashMap<GanttTask, Node>();
+    final LinkedList<Node> queue = new LinkedList<Node>();
+    queue.add(node);
+    while (queue.isEmpty() == false) {
+      node = queue.removeFirst();
+      if (affected.containsKey(node.task) == true) {
+        continue;
+      }
+      affected.put(node.task, node);
+      queue.addAll(node.dependents);
+    }
+    if (log.isDebugEnabled() == true) {
+      log.debug("Recalculating " + affected.size() + " of " + nodes.size() + " Gantt tasks.");
+    }
+    calculate(affected.values());
+    return this;
+  }
+
+  /**
+   * @return The circular dependencies found by the last calculation, every cycle as list of the tasks involved.
+   */
+  public List<List<GanttTask>> getCycles()
+  {
+    return Collections.unmodifiableList(cycles);
+  }
+
+  /**
+   * @return The number of tasks of the dependency graph.
+   */
+  public int size()
+  {
+    return nodes.size();
+  }
+
+  private void updateDependencies(final Node node)
+  {
+    for (final Node dependency : node.dependencies) {
+      dependency.dependents.remove(node);
+    }
+    node.dependencies.clear();
+    final GanttTask task = node.task;
+    final boolean needStartDate = GanttUtils.isStartDateFixed(task) == false;
+    final boolean needEndDate = GanttUtils.isEndDateFixed(task) == false;
+    if (needStartDate == false && needEndDate == false) {
+      return;
+    }
+    final GanttTask predecessor = task.getPredecessor();
+    if (predecessor != null) {
+      addDependency(node, predecessor);
+    }
+    if (task.getChildren() == null) {
+      return;
+    }
+    final boolean finishRelation = task.getRelationType() != null
+        && task.getRelationType().isIn(GanttRelationType.FINISH_FINISH, GanttRelationType.START_FINISH) == true;
+    if ((needStartDate == true && (predecessor == null || finishRelation == true))
+        || (needEndDate == true && (predecessor == null || finishRelation == false) && task.getDuration() == null)) {
+      for (final GanttTask child : task.getChildren()) {
+        addDependency(node, child);
+      }
+    }
+  }
+
+  private void addDependency(final Node node, final GanttTask task)
+  {
+    final Node dependency = nodes.get(task);
+    if (dependency == null) {
+      log.error("Task isn't part of the dependency graph (should only occur if children were added without rebuild): " + task);
+      return;
+    }
+    node.dependencies.add(dependency);
+    dependency.dependents.add(node);
+  }
+
+  /**
+   * Calculates the given nodes in topological order. The strongly connected components (Tarjan) are built by following the dependencies
+   * inside the given set, so every component is completed after all components it depends on (nodes outside the set are already
+   * calculated).
+   */
+  private void calculate(final Collection<Node> nodesToCalculate)
+  {
+    cycles.clear();
+    final Set<GanttTask> scope = new HashSet<GanttTask>();
+    for (final Node node : nodesToCalculate) {
+      scope.add(node.task);
+      node.index = -1;
+      node.onStack = false;
+      node.task.setCalculatedStartDate(null).setStartDateCalculated(false);
+      node.task.setCalculatedEndDate(null).setEndDateCalculated(false);
+    }
+    int index = 0;
+    final LinkedList<Node> stack = new LinkedList<Node>();
+    // Iterative implementation of Tarjan's algorithm (avoids stack overflows for long predecessor chains):
+    final LinkedList<Node> callStack = new LinkedList<Node>();
+    final Map<Node, Integer> nextDependency = new HashMap<Node, Integer>();
+    for (final Node start : nodesToCalculate) {
+      if (start.index >= 0) {
+        continue;
+      }
+      callStack.add(start);
+      while (callStack.isEmpty() == false) {
+        final Node node = callStack.getLast();
+        Integer next = nextDependency.get(node);
+        if (next == null) {
+          // First visit:
+          node.index = node.lowLink = index++;
+          stack.add(node);
+          node.onStack = true;
+          next = 0;
+        }
+        boolean descended = false;
+        while (next < node.dependencies.size()) {
+          final Node dependency = node.dependencies.get(next++);
+          if (scope.contains(dependency.task) == false) {
+            continue;
+          }
+          if (dependency.index < 0) {
+            nextDependency.put(node, next);
+            callStack.add(dependency);
+            descended = true;
+            break;
+          } else if (dependency.onStack == true && dependency.index < node.lowLink) {
+            node.lowLink = dependency.index;
+          }
+        }
+        if (descended == true) {
+          continue;
+        }
+        nextDependency.put(node, next);
+        callStack.removeLast();
+        if (callStack.isEmpty() == false) {
+          final Node caller = callStack.getLast();
+          if (node.lowLink < caller.lowLink) {
+            caller.lowLink = node.lowLink;
+          }
+        }
+        if (node.lowLink == node.index) {
+          // Root of a strongly connected component:
+          final List<Node> component = new ArrayList<Node>();
+          Node member;
+          do {
+            member = stack.removeLast();
+            member.onStack = false;
+            component.add(member);
+          } while (member != node);
+          calculateComponent(component);
+        }
+      }
+    }
+  }
+
+  private void calculateComponent(final List<Node> component)
+  {
+    if (component.size() == 1 && component.get(0).dependencies.contains(component.get(0)) == false) {
+      GanttUtils.calculateDates(component.get(0).task);
+      return;
+    }
+    final List<GanttTask> cycle = new ArrayList<GanttTask>();
+    for (final Node node : component) {
+      cycle.add(node.task);
+    }
+    cycles.add(cycle);
+    log.error("Circular reference detected (couldn't calculate start and end dates): " + cycle);
+    for (final GanttTask task : cycle) {
+      task.setCalculatedStartDate(GanttUtils.getCalculatedStartDate(task)).setStartDateCalculated(true);
+      task.setCalculatedEndDate(GanttUtils.getCalculatedEndDate(task)).setEndDateCalculated(true);
+    }
+  }
+}
@@ -256,6 +256,112 @@ public class GanttUtils
     return endDate;
   }
 
+  /**
+   * Calculates the start and end date of the given node without any recursion and stores them as calculated dates of the node. The results
+   * are the same as of {@link #getCalculatedStartDate(GanttTask)} and {@link #getCalculatedEndDate(GanttTask)}, but the calculated dates
+   * of the predecessor and the children must be already up-to-date. Used by {@link GanttScheduler} which calculates the nodes in
+   * topological order.
+   * @param node
+   */
+  static void calculateDates(final GanttTask node)
+  {
+    final int durationDays = node.getDuration() != null ? node.getDuration().setScale(0, RoundingMode.HALF_UP).intValue() : 0;
+    final GanttTask predecessor = node.getPredecessor();
+    final GanttRelationType relationType = node.getRelationType();
+    final boolean finishRelation = relationType != null
+        && relationType.isIn(GanttRelationType.FINISH_FINISH, GanttRelationType.START_FINISH) == true;
+    Date startDate = node.getStartDate();
+    final boolean startDateFixed = isStartDateFixed(node);
+    if (startDate == null && startDateFixed == true) {
+      startDate = calculateDate(node.getEndDate(), -durationDays);
+    }
+    Date endDate = node.getEndDate();
+    final boolean endDateFixed = isEndDateFixed(node);
+    if (endDate == null && endDateFixed == true) {
+      endDate = calculateDate(node.getStartDate(), durationDays);
+    }
+    if (startDateFixed == false) {
+      if (predecessor != null) {
+        startDate = getPredecessorRelDate(relationType, predecessor);
+        if (startDate != null) {
+          if (NumberHelper.isNotZero(node.getPredecessorOffset()) == true) {
+            startDate = calculateDate(startDate, node.getPredecessorOffset());
+          }
+          if (finishRelation == true && durationDays > 0) {
+            startDate = calculateDate(startDate, -durationDays);
+          }
+        }
+      }
+      if ((predecessor == null || finishRelation == true) && node.getChildren() != null) {
+        // Calculate start date from the earliest child.
+        for (final GanttTask child : node.getChildren()) {
+          final Date date = child.getCalculatedStartDate();
+          if (startDate == null || (date != null && date.before(startDate) == true)) {
+            startDate = date;
+          }
+        }
+      }
+    }
+    if (endDateFixed == false) {
+      if (predecessor != null) {
+        endDate = getPredecessorRelDate(relationType, predecessor);
+        if (endDate != null) {
+          if (NumberHelper.isNotZero(node.getPredecessorOffset()) == true) {
+            endDate = calculateDate(endDate, node.getPredecessorOffset());
+          }
+          if (finishRelation == false && durationDays > 0) {
+            endDate = calculateDate(endDate, durationDays);
+          }
+        }
+      }
+      if ((predecessor == null || finishRelation == false) && node.getChildren() != null && node.getDuration() == null) {
+        // There are children and the end date is not fix defined by a predecessor.
+        for (final GanttTask child : node.getChildren()) {
+          final Date date = child.getCalculatedEndDate();
+          if (date != null && (endDate == null || date.after(endDate)) == true) {
+            endDate = date;
+          }
+        }
+      }
+    }
+    // The start and end date are calculated from each other by the duration, if not otherwise given:
+    if (startDate == null && endDate != null && node.getDuration() != null) {
+      startDate = calculateDate(endDate, -durationDays);
+    } else if (endDate == null && startDate != null && node.getDuration() != null) {
+      endDate = calculateDate(startDate, durationDays);
+    }
+    node.setCalculatedStartDate(startDate).setStartDateCalculated(true);
+    node.setCalculatedEndDate(endDate).setEndDateCalculated(true);
+    if (log.isDebugEnabled() == true) {
+      log.debug("calculated start date=" + startDate + " and end date=" + endDate + " for: " + node);
+    }
+  }
+
+  /**
+   * @return true if the start date is given or calculated by the given end date and duration.
+   */
+  static boolean isStartDateFixed(final GanttTask node)
+  {
+    return node.getStartDate() != null || (node.getDuration() != null && node.getEndDate() != null);
+  }
+
+  /**
+   * @return true if the end date is given or calculated by the given start date and duration.
+   */
+  static boolean isEndDateFixed(final GanttTask node)
+  {
+    return node.getEndDate() != null || (node.getDuration() != null && node.getStartDate() != null);
+  }
+
+  private static Date getPredecessorRelDate(final GanttRelationType relationType, final GanttTask predecessor)
+  {
+    if (relationType == GanttRelationType.START_START || relationType == GanttRelationType.START_FINISH) {
+      return predecessor.getCalculatedStartDate();
+    } else {
+      return predecessor.getCalculatedEndDate();
+    }
+  }
+
   private static Date calculateDate(final Date date, final int workingDayOffset)
   {
     final DateHolder dh = new DateHolder(date);
@@ -33,6 +33,7 @@ import org.projectforge.common.DateHolder;
 import org.projectforge.common.NumberHelper;
 import org.projectforge.core.BaseSearchFilter;
 import org.projectforge.core.IDao;
+import org.projectforge.core.ListEntryHandler;
 import org.projectforge.core.QueryFilter;
 import org.projectforge.fibu.KundeDO;
 import org.projectforge.fibu.ProjektDO;
@@ -89,26 +90,14 @@ public class HRDao extends HibernateDaoSupport implements IDao<HRViewData>
       final TimesheetFilter tsFilter = new TimesheetFilter();
       tsFilter.setStartTime(filter.getStartTime());
       tsFilter.setStopTime(filter.getStopTime());
-      final List<TimesheetDO> sheets = timesheetDao.getList(tsFilter);
-      for (final TimesheetDO sheet : sheets) {
-        final PFUserDO user = userGroupCache.getUser(sheet.getUserId());
-        if (user == null) {
-          log.error("Oups, user of time sheet is null or unknown? Ignoring entry: " + sheet);
-          continue;
-        }
-        final ProjektDO projekt = taskTree.getProjekt(sheet.getTaskId());
-        final Object targetObject = getTargetObject(filter, projekt);
-        if (targetObject == null) {
-          data.addTimesheet(sheet, user);
-        } else if (targetObject instanceof ProjektDO) {
-          data.addTimesheet(sheet, user, (ProjektDO) targetObject);
-        } else if (targetObject instanceof KundeDO) {
-          data.addTimesheet(sheet, user, (KundeDO) targetObject);
-        } else {
-          log.error("Target object of type " + targetObject + " not supported.");
-          data.addTimesheet(sheet, user);
+      timesheetDao.processList(tsFilter, new ListEntryHandler<TimesheetDO>() {
+        @Override
+        public boolean handle(final TimesheetDO sheet)
+        {
+          addTimesheet(data, filter, sheet);
+          return true;
         }
-      }
+      });
     }
     if (filter.isShowPlanning() == true) {
       final HRPlanningFilter hrFilter = new HRPlanningFilter();
@@ -166,6 +155,27 @@ public class HRDao extends HibernateDaoSupport implements IDao<HRViewData>
     return data;
   }
 
+  private void addTimesheet(final HRViewData data, final HRFilter filter, final TimesheetDO sheet)
+  {
+    final PFUserDO user = userGroupCache.getUser(sheet.getUserId());
+    if (user == null) {
+      log.error("Oups, user of time sheet is null or unknown? Ignoring entry: " + sheet);
+      return;
+    }
+    final ProjektDO projekt = taskTree.getProjekt(sheet.getTaskId());
+    final Object targetObject = getTargetObject(filter, projekt);
+    if (targetObject == null) {
+      data.addTimesheet(sheet, user);
+    } else if (targetObject instanceof ProjektDO) {
+      data.addTimesheet(sheet, user, (ProjektDO) targetObject);
+    } else if (targetObject instanceof KundeDO) {
+      data.addTimesheet(sheet, user, (KundeDO) targetObject);
+    } else {
+      log.error("Target object of type " + targetObject + " not supported.");
+      data.addTimesheet(sheet, user);
+    }
+  }
+
   /**
    * Returns a list of all users which are accessible by the current logged in user and not planned in the given HRViewData object.
    * @return Result list (may be empty but never null).
@@ -53,6 +53,12 @@ public class LdapConfig
 
   private boolean storePasswords = true;
 
+  private boolean connectionPool = true;
+
+  private int pageSize = 500;
+
+  private int cacheTimeToLive = 0;
+
   @XmlField(alias = "posixAccounts")
   private LdapPosixAccountsConfig posixAccountsConfig;
 
@@ -301,6 +307,66 @@ public class LdapConfig
     return this;
   }
 
+  /**
+   * @return true (default) if the connections of the manager user should be pooled (re-used) by the JNDI LDAP provider. Connections for
+   *         authenticating users are never pooled.
+   */
+  public boolean isConnectionPool()
+  {
+    return connectionPool;
+  }
+
+  /**
+   * @param connectionPool the connectionPool to set
+   * @return this for chaining.
+   */
+  public LdapConfig setConnectionPool(final boolean connectionPool)
+  {
+    this.connectionPool = connectionPool;
+    return this;
+  }
+
+  /**
+   * Searches for all entries (users, groups etc.) are done page by page (paged results control, RFC 2696) for avoiding the size limits of
+   * the LDAP server. If the LDAP server doesn't support paged results, all entries are returned at once.
+   * @return The number of entries per page (default is 500). 0 means no paging.
+   */
+  public int getPageSize()
+  {
+    return pageSize;
+  }
+
+  /**
+   * @param pageSize the pageSize to set
+   * @return this for chaining.
+   */
+  public LdapConfig setPageSize(final int pageSize)
+  {
+    this.pageSize = pageSize;
+    return this;
+  }
+
+  /**
+   * The results of user look-ups (dn of the user to authenticate) are cached for the given time. Any modification of an user by
+   * ProjectForge clears the cache, modifications made directly in the LDAP system are detected after this time. The credentials are never
+   * cached.
+   * @return The time to live of cached look-ups in seconds (default is 0, no caching).
+   */
+  public int getCacheTimeToLive()
+  {
+    return cacheTimeToLive;
+  }
+
+  /**
+   * @param cacheTimeToLive the cacheTimeToLive in seconds to set
+   * @return this for chaining.
+   */
+  public LdapConfig setCacheTimeToLive(final int cacheTimeToLive)
+  {
+    this.cacheTimeToLive = cacheTimeToLive;
+    return this;
+  }
+
   /**
    * @see ConfigXml#toString(Object)
    */
@@ -44,6 +44,15 @@ public class LdapConnector implements ConfigurationListener
 {
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(LdapConnector.class);
 
+  private static final String POOL_PROTOCOL_PROPERTY = "com.sun.jndi.ldap.connect.pool.protocol";
+
+  private static final String POOL_TIMEOUT_PROPERTY = "com.sun.jndi.ldap.connect.pool.timeout";
+
+  /**
+   * Idle pooled connections are closed after 5 minutes (if not configured otherwise by the system property).
+   */
+  private static final String POOL_TIMEOUT = "300000";
+
   private LdapConfig ldapConfig;
 
   private boolean initialized;
@@ -68,6 +77,21 @@ public class LdapConnector implements ConfigurationListener
     }
   }
 
+  /**
+   * The system properties of the JNDI LDAP connection pool are read only once, so they have to be set before the first connection is
+   * created. Already given system properties aren't overwritten.
+   */
+  private static void initPoolProperties()
+  {
+    if (System.getProperty(POOL_PROTOCOL_PROPERTY) == null) {
+      // Otherwise ldaps connections aren't pooled:
+      System.setProperty(POOL_PROTOCOL_PROPERTY, "plain ssl");
+    }
+    if (System.getProperty(POOL_TIMEOUT_PROPERTY) == null) {
+      System.setProperty(POOL_TIMEOUT_PROPERTY, POOL_TIMEOUT);
+    }
+  }
+
   private Hashtable<String, String> createEnv(final String user, final String password)
   {
     // Set up the environment for creating the initial context
@@ -111,6 +135,11 @@ public class LdapConnector implements ConfigurationListener
     } else {
       env = createEnv(null, null);
     }
+    if (ldapConfig.isConnectionPool() == true) {
+      // Pooled only for the manager user, because the pool holds connections per principal and credentials:
+      initPoolProperties();
+      env.put("com.sun.jndi.ldap.connect.pool", "true");
+    }
     try {
       final LdapContext ctx = new InitialLdapContext(env, null);
       return ctx;
@@ -128,6 +157,24 @@ public class LdapConnector implements ConfigurationListener
     return ctx;
   }
 
+  /**
+   * @return The page size of searches, see {@link LdapConfig#getPageSize()}.
+   */
+  public int getPageSize()
+  {
+    init();
+    return ldapConfig != null ? ldapConfig.getPageSize() : 0;
+  }
+
+  /**
+   * @return The time to live of cached look-ups in milli seconds, see {@link LdapConfig#getCacheTimeToLive()}.
+   */
+  public long getCacheTimeToLive()
+  {
+    init();
+    return ldapConfig != null ? ldapConfig.getCacheTimeToLive() * 1000L : 0;
+  }
+
   /**
    * Used by test class.
    * @param ldapConfig
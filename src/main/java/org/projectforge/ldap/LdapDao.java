@@ -23,6 +23,7 @@
 
 package org.projectforge.ldap;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.LinkedList;
@@ -40,10 +41,15 @@ import javax.naming.directory.DirContext;
 import javax.naming.directory.ModificationItem;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
 
 import org.apache.commons.lang.StringUtils;
 import org.projectforge.common.StringHelper;
 import org.projectforge.core.Configuration;
+import org.projectforge.core.ListEntryHandler;
 
 /**
  * @author Kai Reinhard (k.reinhard@micromata.de)
@@ -52,6 +58,11 @@ public abstract class LdapDao<I extends Serializable, T extends LdapObject<I>>
 {
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(LdapDao.class);
 
+  /**
+   * The attributes needed for building dn and id of the LDAP objects.
+   */
+  private static final String[] IDENTIFYING_ATTRIBUTES = { "cn", "uid", "objectClass"};
+
   protected LdapConnector ldapConnector;
 
   protected LdapConfig ldapConfig;
@@ -109,6 +120,7 @@ public abstract class LdapDao<I extends Serializable, T extends LdapObject<I>>
     LdapUtils.putAttribute(attrs, "cn", LdapUtils.escapeCommonName(obj.getCommonName()));
     onBeforeBind(dn, attrs, args);
     ctx.bind(dn, null, attrs);
+    onModification(obj);
   }
 
   protected void onBeforeBind(final String dn, final Attributes attrs, final Object... args)
@@ -116,6 +128,15 @@ public abstract class LdapDao<I extends Serializable, T extends LdapObject<I>>
     // Do nothing at default.
   }
 
+  /**
+   * Called after the given object was created, modified, moved, renamed or deleted in the LDAP system, e. g. for clearing caches.
+   * @param obj
+   */
+  protected void onModification(final T obj)
+  {
+    // Do nothing at default.
+  }
+
   /**
    * Please do not use this method for bulk updates, use {@link #createOrUpdate(Set, Object, Object...)} instead! Calls
    * {@link #getSetOfAllObjects()} before creation or update.
@@ -298,6 +319,7 @@ public abstract class LdapDao<I extends Serializable, T extends LdapObject<I>>
     log.info("Modify attributes of " + getObjectClass() + ": " + dn + ": " + getLogInfo(obj));
     final ModificationItem[] items = modificationItems.toArray(new ModificationItem[modificationItems.size()]);
     ctx.modifyAttributes(dn, items);
+    onModification(obj);
     // Don't move object.
     // if (obj.getDn() != null && StringUtils.equals(dn, obj.getDn()) == false) {
     // log.info("DN of object is changed from '" + dn + "' to '" + obj.getDn());
@@ -321,7 +343,7 @@ public abstract class LdapDao<I extends Serializable, T extends LdapObject<I>>
   {
     final Object id = getId(obj);
     // The dn is may-be changed, so find the original dn by id:
-    final T origObject = findById(id, obj.getOrganizationalUnit());
+    final T origObject = findById(ctx, id, obj.getOrganizationalUnit());
     if (origObject == null) {
       throw new RuntimeException("Object with id "
           + id
@@ -336,6 +358,7 @@ public abstract class LdapDao<I extends Serializable, T extends LdapObject<I>>
       log.info("Move object with id '" + obj.getId() + "' from '" + origOu + "' to '" + ou);
       final String dnIdentifier = buildDnIdentifier(obj);
       ctx.rename(dnIdentifier + "," + origOu, dnIdentifier + "," + ou);
+      onModification(obj);
     }
   }
 
@@ -349,7 +372,7 @@ public abstract class LdapDao<I extends Serializable, T extends LdapObject<I>>
     }
     final Object id = getId(obj);
     // The dn is may-be changed, so find the original dn by id:
-    final T origObject = findById(id, obj.getOrganizationalUnit());
+    final T origObject = findById(ctx, id, obj.getOrganizationalUnit());
     if (origObject == null) {
       throw new RuntimeException("Object with id "
           + id
@@ -361,6 +384,7 @@ public abstract class LdapDao<I extends Serializable, T extends LdapObject<I>>
     final String ou = LdapUtils.getOu(origObject.getOrganizationalUnit());
     log.info("Rename object with id '" + obj.getId() + "' from '" + oldDnIdentifier + "' to '" + newDnIdentifier);
     ctx.rename(oldDnIdentifier + "," + ou, newDnIdentifier + "," + ou);
+    onModification(obj);
   }
 
   protected String getLogInfo(final T obj)
@@ -390,6 +414,7 @@ public abstract class LdapDao<I extends Serializable, T extends LdapObject<I>>
     final String dn = buildDn(null, obj);
     log.info("Delete " + getObjectClass() + ": " + dn + ": " + getLogInfo(obj));
     ctx.unbind(dn);
+    onModification(obj);
   }
 
   @SuppressWarnings("unchecked")
@@ -407,18 +432,90 @@ public abstract class LdapDao<I extends Serializable, T extends LdapObject<I>>
   public List<T> findAll(final DirContext ctx, final String organizationalUnit) throws NamingException
   {
     final LinkedList<T> list = new LinkedList<T>();
-    NamingEnumeration< ? > results = null;
+    findAll(ctx, organizationalUnit, new ListEntryHandler<T>() {
+      @Override
+      public boolean handle(final T obj)
+      {
+        list.add(obj);
+        return true;
+      }
+    });
+    return list;
+  }
+
+  /**
+   * Passes all objects of the given organizational unit one by one to the given handler. The objects are searched page by page (if
+   * supported by the LDAP server, see {@link LdapConfig#getPageSize()}), so the size limit of the LDAP server doesn't matter and not all
+   * objects have to be held in memory.
+   * @param ctx
+   * @param organizationalUnit
+   * @param handler
+   * @param returningAttributes The attributes to read, if not given all attributes are read. The fields of the objects of non-returned
+   *          attributes are null.
+   * @throws NamingException
+   */
+  public void findAll(final DirContext ctx, final String organizationalUnit, final ListEntryHandler<T> handler,
+      final String... returningAttributes) throws NamingException
+  {
     final SearchControls controls = new SearchControls();
     controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+    if (returningAttributes != null && returningAttributes.length > 0) {
+      controls.setReturningAttributes(returningAttributes);
+    }
     final String searchBase = getSearchBase(organizationalUnit);
-    results = ctx.search(searchBase, "(objectclass=" + getObjectClass() + ")", controls);
-    while (results.hasMore()) {
-      final SearchResult searchResult = (SearchResult) results.next();
-      final String dn = searchResult.getName();
-      final Attributes attributes = searchResult.getAttributes();
-      list.add(mapToObject(dn, searchBase, attributes));
+    final int pageSize = ldapConnector.getPageSize();
+    final LdapContext pagedCtx = pageSize > 0 && ctx instanceof LdapContext ? (LdapContext) ctx : null;
+    byte[] cookie = null;
+    try {
+      do {
+        if (pagedCtx != null) {
+          pagedCtx.setRequestControls(new Control[] { createPagedResultsControl(pageSize, cookie)});
+        }
+        final NamingEnumeration<SearchResult> results = ctx.search(searchBase, "(objectclass=" + getObjectClass() + ")", controls);
+        try {
+          while (results.hasMore()) {
+            final SearchResult searchResult = results.next();
+            if (handler.handle(mapToObject(searchResult.getName(), searchBase, searchResult.getAttributes())) == false) {
+              return;
+            }
+          }
+        } finally {
+          results.close();
+        }
+        cookie = pagedCtx != null ? getPagedResultsCookie(pagedCtx) : null;
+      } while (cookie != null && cookie.length > 0);
+    } finally {
+      if (pagedCtx != null) {
+        // The context (pooled connection) may be used for further operations:
+        pagedCtx.setRequestControls(null);
+      }
+    }
+  }
+
+  private PagedResultsControl createPagedResultsControl(final int pageSize, final byte[] cookie) throws NamingException
+  {
+    try {
+      // Not critical: servers without support of paged results return all entries at once.
+      return new PagedResultsControl(pageSize, cookie, Control.NONCRITICAL);
+    } catch (final IOException ex) {
+      final NamingException namingException = new NamingException("Can't create paged results control: " + ex.getMessage());
+      namingException.setRootCause(ex);
+      throw namingException;
     }
-    return list;
+  }
+
+  private byte[] getPagedResultsCookie(final LdapContext ctx) throws NamingException
+  {
+    final Control[] controls = ctx.getResponseControls();
+    if (controls == null) {
+      return null;
+    }
+    for (final Control control : controls) {
+      if (control instanceof PagedResultsResponseControl) {
+        return ((PagedResultsResponseControl) control).getCookie();
+      }
+    }
+    return null;
   }
 
   @SuppressWarnings("unchecked")
@@ -468,15 +565,13 @@ public abstract class LdapDao<I extends Serializable, T extends LdapObject<I>>
    */
   public SetOfAllLdapObjects getSetOfAllObjects(final String organizationalUnit)
   {
-    final SetOfAllLdapObjects set = new SetOfAllLdapObjects();
-    final List<T> all = findAll(organizationalUnit);
-    for (final T obj : all) {
-      if (log.isDebugEnabled() == true) {
-        log.debug("Adding: " + obj.getDn());
+    return (SetOfAllLdapObjects) new LdapTemplate(ldapConnector) {
+      @Override
+      protected Object call() throws NameNotFoundException, Exception
+      {
+        return getSetOfAllObjects(ctx, organizationalUnit);
       }
-      set.add(obj);
-    }
-    return set;
+    }.excecute();
   }
 
   /**
@@ -486,13 +581,18 @@ public abstract class LdapDao<I extends Serializable, T extends LdapObject<I>>
   public SetOfAllLdapObjects getSetOfAllObjects(final DirContext ctx, final String organizationalUnit) throws NamingException
   {
     final SetOfAllLdapObjects set = new SetOfAllLdapObjects();
-    final List<T> all = findAll(ctx, organizationalUnit);
-    for (final T obj : all) {
-      if (log.isDebugEnabled() == true) {
-        log.debug("Adding: " + obj.getDn());
+    // Only dn and id are needed:
+    findAll(ctx, organizationalUnit, new ListEntryHandler<T>() {
+      @Override
+      public boolean handle(final T obj)
+      {
+        if (log.isDebugEnabled() == true) {
+          log.debug("Adding: " + obj.getDn());
+        }
+        set.add(obj);
+        return true;
       }
-      set.add(obj);
-    }
+    }, IDENTIFYING_ATTRIBUTES);
     return set;
   }
 
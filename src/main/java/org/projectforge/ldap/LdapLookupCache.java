@@ -0,0 +1,123 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.ldap;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Simple thread-safe cache of LDAP look-up results with a short time to live. Used by {@link LdapUserDao} for avoiding repeated searches
+ * and binds of the same user within a short time.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * 
+ */
+class LdapLookupCache<V>
+{
+  /**
+   * If reached, the expired entries are removed. If there are no expired entries, the whole cache is cleared.
+   */
+  static final int MAX_SIZE = 10000;
+
+  private static class Entry<V>
+  {
+    private final V value;
+
+    private final long expireTime;
+
+    private Entry(final V value, final long expireTime)
+    {
+      this.value = value;
+      this.expireTime = expireTime;
+    }
+  }
+
+  private final Map<String, Entry<V>> map = new ConcurrentHashMap<String, Entry<V>>();
+
+  /**
+   * @return The cached value or null if not cached or expired.
+   */
+  V get(final String key)
+  {
+    if (key == null) {
+      return null;
+    }
+    final Entry<V> entry = map.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.expireTime <= System.currentTimeMillis()) {
+      map.remove(key);
+      return null;
+    }
+    return entry.value;
+  }
+
+  /**
+   * @param key
+   * @param value
+   * @param timeToLive in milli seconds. If 0 or less the value isn't cached.
+   */
+  void put(final String key, final V value, final long timeToLive)
+  {
+    if (key == null || value == null || timeToLive <= 0) {
+      return;
+    }
+    if (map.size() >= MAX_SIZE) {
+      removeExpiredEntries();
+      if (map.size() >= MAX_SIZE) {
+        map.clear();
+      }
+    }
+    map.put(key, new Entry<V>(value, System.currentTimeMillis() + timeToLive));
+  }
+
+  void remove(final String key)
+  {
+    if (key != null) {
+      map.remove(key);
+    }
+  }
+
+  void clear()
+  {
+    map.clear();
+  }
+
+  int size()
+  {
+    return map.size();
+  }
+
+  private void removeExpiredEntries()
+  {
+    final long now = System.currentTimeMillis();
+    final Iterator<Entry<V>> it = map.values().iterator();
+    while (it.hasNext() == true) {
+      if (it.next().expireTime <= now) {
+        it.remove();
+      }
+    }
+  }
+}
@@ -23,15 +23,20 @@
 
 package org.projectforge.ldap;
 
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
 
 import org.apache.commons.lang.StringUtils;
 import org.projectforge.registry.Registry;
@@ -58,7 +63,9 @@ import arlut.csd.crypto.SmbEncrypt;
  * password of the user isn't set (is null). Any existing LDAP password doesn't interrupt the normal stay-logged-in mechanism. <h1>New users
  * </h1> New users (created with ProjectForge's UserEditPage) will be created first without password in the LDAP system directly. Such users
  * need to log-in first at ProjectForge, otherwise their LDAP passwords aren't set (no log-in at any other system connecting to the LDAP is
- * possible until the first log-in at ProjectForge).
+ * possible until the first log-in at ProjectForge). <h1>Synchronization</h1> After each modification of users or groups only the users and
+ * groups modified since the last successful synchronization are written to the LDAP system (see {@link LdapSyncTracker}). All users and
+ * groups are written once a day for overwriting changes made directly in the LDAP system.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  * 
  */
@@ -66,16 +73,42 @@ public class LdapMasterLoginHandler extends LdapLoginHandler
 {
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(LdapMasterLoginHandler.class);
 
+  /**
+   * If more users or groups are dirty, all LDAP users or groups are read at once instead of searching them one by one.
+   */
+  private static final int MAX_SINGLE_LOOKUPS = 50;
+
   /**
    * For users of this list, the stay-logged-in mechanism interrupts, the user has to re-login via LoginForm to update the correct password
    * in the LDAP system.
    */
-  private Set<Integer> usersWithoutLdapPasswords = new HashSet<Integer>();
+  private volatile Set<Integer> usersWithoutLdapPasswords = newConcurrentSet();
 
   // Caches all Samba NT password of the LDAP users by user id.
-  private Map<Integer, String> sambaNTPasswords = new HashMap<Integer, String>();
+  private volatile Map<Integer, String> sambaNTPasswords = new ConcurrentHashMap<Integer, String>();
+
+  /**
+   * The LDAP users (with dn) of all synchronized users by user id, needed for the group members.
+   */
+  private Map<Integer, LdapUser> ldapUserMap = new HashMap<Integer, LdapUser>();
+
+  private final LdapSyncTracker syncTracker = new LdapSyncTracker();
 
-  private boolean refreshInProgress;
+  private final Object syncLock = new Object();
+
+  // Newest users and groups to synchronize, guarded by syncLock:
+  private Collection<PFUserDO> pendingUsers;
+
+  private Collection<GroupDO> pendingGroups;
+
+  // Guarded by syncLock:
+  private boolean syncThreadRunning;
+
+  private volatile boolean refreshInProgress;
+
+  private volatile LdapSyncStatus lastSyncStatus;
+
+  private final AtomicInteger coalescedSyncRequests = new AtomicInteger();
 
   /**
    * @see org.projectforge.ldap.LdapLoginHandler#initialize()
@@ -112,16 +145,19 @@ public class LdapMasterLoginHandler extends LdapLoginHandler
         log.info("User's credentials in LDAP not up-to-date: " + username + ". Updating LDAP entry...");
         ldapUserDao.createOrUpdate(userBase, ldapUser);
         ldapUserDao.changePassword(ldapUser, null, password);
+        passwordsUpdated(user);
       } else {
         final String sambaNTPassword = sambaNTPasswords.get(loginResult.getUser().getId());
         if (sambaNTPassword != null) {
           if ("".equals(sambaNTPassword) == true) {
             // sambaNTPassword needed to be set (isn't yet set):
             ldapUserDao.changePassword(ldapUser, null, password);
+            passwordsUpdated(user);
           } else {
             if (sambaNTPassword.equals(SmbEncrypt.NTUNICODEHash(password)) == false) {
               // sambaNTPassword needed to be updated:
               ldapUserDao.changePassword(ldapUser, null, password);
+              passwordsUpdated(user);
             }
           }
         }
@@ -132,6 +168,20 @@ public class LdapMasterLoginHandler extends LdapLoginHandler
     return loginResult;
   }
 
+
+  /**
+   * The LDAP passwords of the given user are up-to-date now, so the stay-logged-in mechanism works again. The synchronization doesn't need
+   * to wait for the next full synchronization for detecting this.
+   */
+  private void passwordsUpdated(final PFUserDO user)
+  {
+    if (user.isDeactivated() == true) {
+      return;
+    }
+    usersWithoutLdapPasswords.remove(user.getId());
+    sambaNTPasswords.remove(user.getId());
+  }
+
   /**
    * @see org.projectforge.user.LoginHandler#getAllGroups()
    */
@@ -153,26 +203,60 @@ public class LdapMasterLoginHandler extends LdapLoginHandler
   }
 
   /**
-   * Refreshes the LDAP.
+   * Refreshes the LDAP. Only the users and groups modified since the last successful synchronization are written (all users and groups
+   * once a day). The synchronization is done asynchronously by one thread: calls while a synchronization is running aren't queued, the
+   * thread synchronizes only the newest given users and groups afterwards.
    * @see org.projectforge.user.LoginHandler#afterUserGroupCacheRefresh(java.util.List, java.util.List)
    */
   @Override
   public void afterUserGroupCacheRefresh(final Collection<PFUserDO> users, final Collection<GroupDO> groups)
   {
-    new Thread() {
+    synchronized (syncLock) {
+      if (pendingUsers != null) {
+        coalescedSyncRequests.incrementAndGet();
+      }
+      pendingUsers = users;
+      pendingGroups = groups;
+      refreshInProgress = true;
+      if (syncThreadRunning == true) {
+        // The running thread will process the given users and groups after finishing the current synchronization.
+        return;
+      }
+      syncThreadRunning = true;
+    }
+    final Thread thread = new Thread("LdapMasterSync") {
       @Override
       public void run()
       {
-        synchronized (LdapMasterLoginHandler.this) {
-          try {
-            refreshInProgress = true;
-            updateLdap(users, groups);
-          } finally {
-            refreshInProgress = false;
-          }
+        processPendingSyncs();
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void processPendingSyncs()
+  {
+    while (true) {
+      final Collection<PFUserDO> users;
+      final Collection<GroupDO> groups;
+      synchronized (syncLock) {
+        if (pendingUsers == null) {
+          syncThreadRunning = false;
+          refreshInProgress = false;
+          return;
         }
+        users = pendingUsers;
+        groups = pendingGroups;
+        pendingUsers = null;
+        pendingGroups = null;
+      }
+      try {
+        updateLdap(users, groups);
+      } catch (final Throwable ex) {
+        log.error("Error while updating LDAP: " + ex.getMessage(), ex);
       }
-    }.start();
+    }
   }
 
   /**
@@ -183,177 +267,293 @@ public class LdapMasterLoginHandler extends LdapLoginHandler
     return refreshInProgress;
   }
 
+  /**
+   * The next synchronization writes all users and groups (e. g. after modifying the LDAP system directly).
+   */
+  public void requestFullSync()
+  {
+    syncTracker.requestFullSync();
+  }
+
+  /**
+   * @return The status of the last (or currently running) synchronization which had to write anything or null if no such synchronization
+   *         was started yet.
+   */
+  public LdapSyncStatus getLastSyncStatus()
+  {
+    return lastSyncStatus;
+  }
+
+  /**
+   * @return The number of synchronization requests superseded by a newer request before they were started.
+   */
+  public int getCoalescedSyncRequests()
+  {
+    return coalescedSyncRequests.get();
+  }
+
   private void updateLdap(final Collection<PFUserDO> users, final Collection<GroupDO> groups)
   {
-    new LdapTemplate(ldapConnector) {
-      @Override
-      protected Object call() throws NameNotFoundException, Exception
-      {
-        log.info("Updating LDAP...");
+    final long now = System.currentTimeMillis();
+    final boolean fullSync = syncTracker.isFullSyncRequired(now);
+    if (fullSync == true) {
+      syncTracker.startFullSync(now);
+    }
+    final List<PFUserDO> dirtyUsers = syncTracker.getDirtyUsers(users);
+    final Set<Integer> dirtyUserIds = new HashSet<Integer>();
+    for (final PFUserDO user : dirtyUsers) {
+      dirtyUserIds.add(user.getId());
+    }
+    final List<GroupDO> dirtyGroups = syncTracker.getDirtyGroups(groups, dirtyUserIds);
+    final LdapSyncStatus status = new LdapSyncStatus(fullSync, users.size(), groups.size());
+    status.setDirtyUsers(dirtyUsers.size());
+    status.setDirtyGroups(dirtyGroups.size());
+    if (dirtyUsers.isEmpty() == true && dirtyGroups.isEmpty() == true) {
+      log.debug("LDAP is up-to-date, nothing to update.");
+      return;
+    }
+    lastSyncStatus = status;
+    try {
+      new LdapTemplate(ldapConnector) {
+        @Override
+        protected Object call() throws NameNotFoundException, Exception
+        {
+          updateLdap(ctx, status, dirtyUsers, dirtyGroups);
+          return null;
+        }
+      }.excecute();
+    } catch (final RuntimeException ex) {
+      // Already logged by LdapTemplate.
+      status.setErrorMessage(ex.getMessage());
+      // The whole run failed, so the next run has to write all users and groups of this run:
+      for (final PFUserDO user : dirtyUsers) {
+        syncTracker.userFailed(user);
+      }
+      for (final GroupDO group : dirtyGroups) {
+        syncTracker.groupFailed(group);
+      }
+      if (fullSync == true) {
+        syncTracker.requestFullSync();
+      }
+    } finally {
+      status.setEndTime(new Date());
+    }
+  }
+
+  private void updateLdap(final DirContext ctx, final LdapSyncStatus status, final List<PFUserDO> dirtyUsers,
+      final List<GroupDO> dirtyGroups) throws NamingException
+  {
+    final boolean fullSync = status.isFullSync();
+    log.info("Updating LDAP ("
+        + (fullSync == true ? "full" : "incremental")
+        + "): "
+        + dirtyUsers.size()
+        + " of "
+        + status.getNumberOfUsers()
+        + " users and "
+        + dirtyGroups.size()
+        + " of "
+        + status.getNumberOfGroups()
+        + " groups...");
+    // Full synchronization: build new password states and LDAP user map, otherwise update the current ones.
+    final Set<Integer> shadowUsersWithoutLdapPasswords = fullSync == true ? newConcurrentSet() : usersWithoutLdapPasswords;
+    final Map<Integer, String> shadowSambaNTPasswords = fullSync == true ? new ConcurrentHashMap<Integer, String>() : sambaNTPasswords;
+    final Map<Integer, LdapUser> shadowLdapUserMap = fullSync == true ? new HashMap<Integer, LdapUser>()
+        : new HashMap<Integer, LdapUser>(ldapUserMap);
+    if (dirtyUsers.isEmpty() == false) {
+      Map<String, LdapUser> ldapUsersByEmployeeNumber = null, ldapUsersByUid = null;
+      if (dirtyUsers.size() > MAX_SINGLE_LOOKUPS) {
         // First, get set of all ldap entries:
-        final List<LdapUser> ldapUsers = getAllLdapUsers(ctx);
-        final List<LdapUser> updatedLdapUsers = new ArrayList<LdapUser>();
-        int error = 0, unmodified = 0, created = 0, updated = 0, deleted = 0, renamed = 0;
-        final Set<Integer> shadowUsersWithoutLdapPasswords = new HashSet<Integer>();
-        final Map<Integer, String> shadowSambaNTPasswords = new HashMap<Integer, String>();
-        final boolean sambaConfigured = ldapConfig.getSambaAccountsConfig() != null;
-        for (final PFUserDO user : users) {
-          final LdapUser updatedLdapUser = PFUserDOConverter.convert(user);
-          try {
-            final LdapUser ldapUser = getLdapUser(ldapUsers, user);
-            if (ldapUser == null) {
-              updatedLdapUser.setOrganizationalUnit(userBase);
-              if (user.isDeleted() == false && user.isLocalUser() == false) {
-                // Do not add deleted or local users.
-                // TODO: if (ldapConfig.isSupportPosixAccounts() == true &&) {
-                // updatedLdapUser.addObjectClass(LdapUserDao.OBJECT_CLASS_POSIX_ACCOUNT);
-                // }
-                ldapUserDao.create(ctx, userBase, updatedLdapUser);
-                shadowUsersWithoutLdapPasswords.add(user.getId()); // User can't be valid for created users.
-                created++;
-              }
-            } else {
-              // Need to set organizational unit for detecting the change of deactivated flag. The updateLdapUser needs the organizational
-              // unit of the original ldap object:
-              updatedLdapUser.setOrganizationalUnit(ldapUser.getOrganizationalUnit());
-              // Otherwise the NT password will be deleted in copy function below:
-              updatedLdapUser.setSambaNTPassword(ldapUser.getSambaNTPassword());
-              if (user.isDeleted() == true || user.isLocalUser() == true) {
-                // Deleted and local users shouldn't be synchronized with LDAP:
-                ldapUserDao.delete(ctx, updatedLdapUser);
-                shadowUsersWithoutLdapPasswords.add(user.getId()); // Paranoia code, stay-logged-in shouldn't work with deleted users.
-                deleted++;
-              } else {
-                final boolean modified = PFUserDOConverter.copyUserFields(updatedLdapUser, ldapUser);
-                if (StringUtils.equals(updatedLdapUser.getUid(), ldapUser.getUid()) == false) {
-                  // uid (dn) changed.
-                  ldapUserDao.rename(ctx, updatedLdapUser, ldapUser);
-                  renamed++;
-                }
-                if (modified == true) {
-                  updatedLdapUser.setObjectClasses(ldapUser.getObjectClasses());
-                  ldapUserDao.update(ctx, userBase, updatedLdapUser);
-                  updated++;
-                } else {
-                  unmodified++;
-                }
-                boolean passwordsGiven = false;
-                if (ldapUser.isPasswordGiven() == true) {
-                  // If the user has a Samba SID then the Samba NT password mustn't be blank:
-                  if (sambaConfigured == false
-                      || ldapUser.getSambaSIDNumber() == null
-                      || StringUtils.isNotBlank(ldapUser.getSambaNTPassword()) == true) {
-                    passwordsGiven = true;
-                  }
-                }
-                if (passwordsGiven == true) {
-                  if (updatedLdapUser.isDeactivated()) {
-                    log.warn("User password for deactivated user is set: " + ldapUser);
-                    ldapUserDao.deactivateUser(ctx, updatedLdapUser);
-                    shadowUsersWithoutLdapPasswords.add(user.getId()); // Paranoia code, stay-logged-in shouldn't work with deleted or
-                    // deactivated users.
-                  } else {
-                    shadowUsersWithoutLdapPasswords.remove(user.getId()); // Remove if exists because password is given.
-                  }
-                } else {
-                  shadowUsersWithoutLdapPasswords.add(user.getId()); // Password isn't given for the current user.
-                  if (ldapUser.getSambaSIDNumber() != null) {
-                    final String sambaNTPassword = ldapUser.getSambaNTPassword();
-                    if (StringUtils.isNotBlank(sambaNTPassword) == true) {
-                      shadowSambaNTPasswords.put(user.getId(), sambaNTPassword);
-                    } else {
-                      shadowSambaNTPasswords.put(user.getId(), ""); // Empty password
-                    }
-                  }
-                }
-              }
-            }
-            ldapUserDao.buildDn(userBase, updatedLdapUser);
-            updatedLdapUsers.add(updatedLdapUser);
-          } catch (final Exception ex) {
-            ldapUserDao.buildDn(userBase, updatedLdapUser);
-            updatedLdapUsers.add(updatedLdapUser);
-            log.error("Error while proceeding user '" + user.getUsername() + "'. Continuing with next user.", ex);
-            error++;
+        ldapUsersByEmployeeNumber = new HashMap<String, LdapUser>();
+        ldapUsersByUid = new HashMap<String, LdapUser>();
+        for (final LdapUser ldapUser : getAllLdapUsers(ctx)) {
+          if (ldapUser.getEmployeeNumber() != null) {
+            ldapUsersByEmployeeNumber.put(ldapUser.getEmployeeNumber(), ldapUser);
+          }
+          if (ldapUser.getUid() != null) {
+            ldapUsersByUid.put(ldapUser.getUid(), ldapUser);
           }
         }
-        usersWithoutLdapPasswords = shadowUsersWithoutLdapPasswords;
-        sambaNTPasswords = shadowSambaNTPasswords;
-        log.info(""
-            + shadowUsersWithoutLdapPasswords.size()
-            + " users without password in the LDAP system (login required for these users for updating the LDAP password).");
-        log.info("Update of LDAP users: "
-            + (error > 0 ? "*** " + error + " errors ***, " : "")
-            + unmodified
-            + " unmodified, "
-            + created
-            + " created, "
-            + updated
-            + " updated, "
-            + renamed
-            + " renamed, "
-            + deleted
-            + " deleted.");
+      }
+      final LdapSyncStatus.Counter counter = status.getUserCounter();
+      final boolean sambaConfigured = ldapConfig.getSambaAccountsConfig() != null;
+      for (final PFUserDO user : dirtyUsers) {
+        final LdapUser updatedLdapUser = PFUserDOConverter.convert(user);
+        try {
+          final LdapUser ldapUser;
+          if (ldapUsersByUid != null) {
+            ldapUser = getLdapUser(ldapUsersByEmployeeNumber, ldapUsersByUid, user);
+          } else {
+            ldapUser = findLdapUser(ctx, user);
+          }
+          updateLdapUser(ctx, user, updatedLdapUser, ldapUser, sambaConfigured, counter, shadowUsersWithoutLdapPasswords,
+              shadowSambaNTPasswords);
+          syncTracker.userSynchronized(user);
+        } catch (final Exception ex) {
+          log.error("Error while proceeding user '" + user.getUsername() + "'. Continuing with next user.", ex);
+          counter.errors++;
+          syncTracker.userFailed(user);
+        }
+        ldapUserDao.buildDn(userBase, updatedLdapUser);
+        shadowLdapUserMap.put(user.getId(), updatedLdapUser);
+      }
+      usersWithoutLdapPasswords = shadowUsersWithoutLdapPasswords;
+      sambaNTPasswords = shadowSambaNTPasswords;
+      log.info(""
+          + shadowUsersWithoutLdapPasswords.size()
+          + " users without password in the LDAP system (login required for these users for updating the LDAP password).");
+      log.info("Update of LDAP users: " + counter);
+    }
+    ldapUserMap = shadowLdapUserMap;
+    if (dirtyGroups.isEmpty() == false) {
+      Map<String, LdapGroup> ldapGroupsByBusinessCategory = null;
+      if (dirtyGroups.size() > MAX_SINGLE_LOOKUPS) {
         // Now get all groups:
-        final List<LdapGroup> ldapGroups = getAllLdapGroups(ctx);
-        final Map<Integer, LdapUser> ldapUserMap = getUserMap(updatedLdapUsers);
-        error = unmodified = created = updated = renamed = deleted = 0;
-        for (final GroupDO group : groups) {
-          try {
-            final LdapGroup updatedLdapGroup = GroupDOConverter.convert(group, baseDN, ldapUserMap);
-            final LdapGroup ldapGroup = getLdapGroup(ldapGroups, group);
-            if (ldapGroup == null) {
-              updatedLdapGroup.setOrganizationalUnit(groupBase);
-              if (group.isDeleted() == false && group.isLocalGroup() == false) {
-                // Do not add deleted or local groups.
-                setMembers(updatedLdapGroup, group.getAssignedUsers(), ldapUserMap);
-                ldapGroupDao.create(ctx, groupBase, updatedLdapGroup);
-                created++;
-              }
+        ldapGroupsByBusinessCategory = new HashMap<String, LdapGroup>();
+        for (final LdapGroup ldapGroup : getAllLdapGroups(ctx)) {
+          if (ldapGroup.getBusinessCategory() != null) {
+            ldapGroupsByBusinessCategory.put(ldapGroup.getBusinessCategory(), ldapGroup);
+          }
+        }
+      }
+      final LdapSyncStatus.Counter counter = status.getGroupCounter();
+      for (final GroupDO group : dirtyGroups) {
+        try {
+          final LdapGroup ldapGroup;
+          if (ldapGroupsByBusinessCategory != null) {
+            ldapGroup = ldapGroupsByBusinessCategory.get(GroupDOConverter.buildBusinessCategory(group));
+          } else {
+            ldapGroup = ldapGroupDao.findById(ctx, group.getId(), groupBase);
+          }
+          updateLdapGroup(ctx, group, ldapGroup, shadowLdapUserMap, counter);
+          syncTracker.groupSynchronized(group);
+        } catch (final Exception ex) {
+          log.error("Error while proceeding group '" + group.getName() + "'. Continuing with next group.", ex);
+          counter.errors++;
+          syncTracker.groupFailed(group);
+        }
+      }
+      log.info("Update of LDAP groups: " + counter);
+    }
+    log.info("LDAP update done.");
+  }
+
+  private void updateLdapUser(final DirContext ctx, final PFUserDO user, final LdapUser updatedLdapUser, final LdapUser ldapUser,
+      final boolean sambaConfigured, final LdapSyncStatus.Counter counter, final Set<Integer> shadowUsersWithoutLdapPasswords,
+      final Map<Integer, String> shadowSambaNTPasswords) throws NamingException
+  {
+    boolean withoutLdapPassword = false;
+    String sambaNTPassword = null;
+    if (ldapUser == null) {
+      updatedLdapUser.setOrganizationalUnit(userBase);
+      if (user.isDeleted() == false && user.isLocalUser() == false) {
+        // Do not add deleted or local users.
+        // TODO: if (ldapConfig.isSupportPosixAccounts() == true &&) {
+        // updatedLdapUser.addObjectClass(LdapUserDao.OBJECT_CLASS_POSIX_ACCOUNT);
+        // }
+        ldapUserDao.create(ctx, userBase, updatedLdapUser);
+        withoutLdapPassword = true; // User can't be valid for created users.
+        counter.created++;
+      }
+    } else {
+      // Need to set organizational unit for detecting the change of deactivated flag. The updateLdapUser needs the organizational
+      // unit of the original ldap object:
+      updatedLdapUser.setOrganizationalUnit(ldapUser.getOrganizationalUnit());
+      // Otherwise the NT password will be deleted in copy function below:
+      updatedLdapUser.setSambaNTPassword(ldapUser.getSambaNTPassword());
+      if (user.isDeleted() == true || user.isLocalUser() == true) {
+        // Deleted and local users shouldn't be synchronized with LDAP:
+        ldapUserDao.delete(ctx, updatedLdapUser);
+        withoutLdapPassword = true; // Paranoia code, stay-logged-in shouldn't work with deleted users.
+        counter.deleted++;
+      } else {
+        final boolean modified = PFUserDOConverter.copyUserFields(updatedLdapUser, ldapUser);
+        if (StringUtils.equals(updatedLdapUser.getUid(), ldapUser.getUid()) == false) {
+          // uid (dn) changed.
+          ldapUserDao.rename(ctx, updatedLdapUser, ldapUser);
+          counter.renamed++;
+        }
+        if (modified == true) {
+          updatedLdapUser.setObjectClasses(ldapUser.getObjectClasses());
+          ldapUserDao.update(ctx, userBase, updatedLdapUser);
+          counter.updated++;
+        } else {
+          counter.unmodified++;
+        }
+        boolean passwordsGiven = false;
+        if (ldapUser.isPasswordGiven() == true) {
+          // If the user has a Samba SID then the Samba NT password mustn't be blank:
+          if (sambaConfigured == false
+              || ldapUser.getSambaSIDNumber() == null
+              || StringUtils.isNotBlank(ldapUser.getSambaNTPassword()) == true) {
+            passwordsGiven = true;
+          }
+        }
+        if (passwordsGiven == true) {
+          if (updatedLdapUser.isDeactivated()) {
+            log.warn("User password for deactivated user is set: " + ldapUser);
+            ldapUserDao.deactivateUser(ctx, updatedLdapUser);
+            withoutLdapPassword = true; // Paranoia code, stay-logged-in shouldn't work with deleted or deactivated users.
+          }
+        } else {
+          withoutLdapPassword = true; // Password isn't given for the current user.
+          if (ldapUser.getSambaSIDNumber() != null) {
+            if (StringUtils.isNotBlank(ldapUser.getSambaNTPassword()) == true) {
+              sambaNTPassword = ldapUser.getSambaNTPassword();
             } else {
-              updatedLdapGroup.setOrganizationalUnit(ldapGroup.getOrganizationalUnit());
-              if (group.isDeleted() == true || group.isLocalGroup() == true) {
-                // Deleted and local users shouldn't be synchronized with LDAP:
-                ldapGroupDao.delete(ctx, updatedLdapGroup);
-                deleted++;
-              } else {
-                final boolean modified = GroupDOConverter.copyGroupFields(updatedLdapGroup, ldapGroup);
-                if (modified == true) {
-                  updatedLdapGroup.setObjectClasses(ldapGroup.getObjectClasses());
-                  setMembers(updatedLdapGroup, group.getAssignedUsers(), ldapUserMap);
-                  ldapGroupDao.update(ctx, groupBase, updatedLdapGroup);
-                  updated++;
-                } else {
-                  unmodified++;
-                }
-                if (StringUtils.equals(updatedLdapGroup.getCommonName(), ldapGroup.getCommonName()) == false) {
-                  // CommonName (cn) and therefor dn changed.
-                  ldapGroupDao.rename(ctx, updatedLdapGroup, ldapGroup);
-                  renamed++;
-                }
-              }
+              sambaNTPassword = ""; // Empty password
             }
-          } catch (final Exception ex) {
-            log.error("Error while proceeding group '" + group.getName() + "'. Continuing with next group.", ex);
-            error++;
           }
         }
-        log.info("Update of LDAP groups: "
-            + (error > 0 ? "*** " + error + " errors ***, " : "")
-            + unmodified
-            + " unmodified, "
-            + created
-            + " created, "
-            + updated
-            + " updated, "
-            + renamed
-            + " renamed, "
-            + deleted
-            + " deleted.");
-        log.info("LDAP update done.");
-        return null;
       }
-    }.excecute();
+    }
+    if (withoutLdapPassword == true) {
+      shadowUsersWithoutLdapPasswords.add(user.getId());
+    } else {
+      shadowUsersWithoutLdapPasswords.remove(user.getId());
+    }
+    if (sambaNTPassword != null) {
+      shadowSambaNTPasswords.put(user.getId(), sambaNTPassword);
+    } else {
+      shadowSambaNTPasswords.remove(user.getId());
+    }
+  }
+
+  private void updateLdapGroup(final DirContext ctx, final GroupDO group, final LdapGroup ldapGroup,
+      final Map<Integer, LdapUser> ldapUserMap, final LdapSyncStatus.Counter counter) throws NamingException
+  {
+    final LdapGroup updatedLdapGroup = GroupDOConverter.convert(group, baseDN, ldapUserMap);
+    if (ldapGroup == null) {
+      updatedLdapGroup.setOrganizationalUnit(groupBase);
+      if (group.isDeleted() == false && group.isLocalGroup() == false) {
+        // Do not add deleted or local groups.
+        setMembers(updatedLdapGroup, group.getAssignedUsers(), ldapUserMap);
+        ldapGroupDao.create(ctx, groupBase, updatedLdapGroup);
+        counter.created++;
+      }
+    } else {
+      updatedLdapGroup.setOrganizationalUnit(ldapGroup.getOrganizationalUnit());
+      if (group.isDeleted() == true || group.isLocalGroup() == true) {
+        // Deleted and local users shouldn't be synchronized with LDAP:
+        ldapGroupDao.delete(ctx, updatedLdapGroup);
+        counter.deleted++;
+      } else {
+        final boolean modified = GroupDOConverter.copyGroupFields(updatedLdapGroup, ldapGroup);
+        if (modified == true) {
+          updatedLdapGroup.setObjectClasses(ldapGroup.getObjectClasses());
+          setMembers(updatedLdapGroup, group.getAssignedUsers(), ldapUserMap);
+          ldapGroupDao.update(ctx, groupBase, updatedLdapGroup);
+          counter.updated++;
+        } else {
+          counter.unmodified++;
+        }
+        if (StringUtils.equals(updatedLdapGroup.getCommonName(), ldapGroup.getCommonName()) == false) {
+          // CommonName (cn) and therefor dn changed.
+          ldapGroupDao.rename(ctx, updatedLdapGroup, ldapGroup);
+          counter.renamed++;
+        }
+      }
+    }
   }
 
   /**
@@ -385,6 +585,7 @@ public class LdapMasterLoginHandler extends LdapLoginHandler
     }
     if (ldapUser != null) {
       ldapUserDao.changePassword(ldapUser, null, newPassword);
+      passwordsUpdated(user);
       final LdapUser authenticatedUser = ldapUserDao.authenticate(user.getUsername(), newPassword);
       log.info("Password changed successfully for : " + authenticatedUser);
     } else {
@@ -434,41 +635,27 @@ public class LdapMasterLoginHandler extends LdapLoginHandler
     }
   }
 
-  private Map<Integer, LdapUser> getUserMap(final Collection<LdapUser> users)
+  private LdapUser getLdapUser(final Map<String, LdapUser> ldapUsersByEmployeeNumber, final Map<String, LdapUser> ldapUsersByUid,
+      final PFUserDO user)
   {
-    final Map<Integer, LdapUser> map = new HashMap<Integer, LdapUser>();
-    if (users == null) {
-      return map;
-    }
-    for (final LdapUser user : users) {
-      final Integer id = PFUserDOConverter.getId(user);
-      if (id != null) {
-        map.put(id, user);
-      } else {
-        log.warn("Given ldap user has no id (employee number), ignoring user for group assignments: " + user);
-      }
+    final LdapUser ldapUser = ldapUsersByEmployeeNumber.get(PFUserDOConverter.buildEmployeeNumber(user));
+    if (ldapUser != null) {
+      return ldapUser;
     }
-    return map;
+    return ldapUsersByUid.get(user.getUsername());
   }
 
-  private LdapUser getLdapUser(final List<LdapUser> ldapUsers, final PFUserDO user)
+  private LdapUser findLdapUser(final DirContext ctx, final PFUserDO user) throws NamingException
   {
-    for (final LdapUser ldapUser : ldapUsers) {
-      if (StringUtils.equals(ldapUser.getUid(), user.getUsername()) == true
-          || StringUtils.equals(ldapUser.getEmployeeNumber(), PFUserDOConverter.buildEmployeeNumber(user)) == true) {
-        return ldapUser;
-      }
+    final LdapUser ldapUser = ldapUserDao.findById(ctx, user.getId(), userBase);
+    if (ldapUser != null) {
+      return ldapUser;
     }
-    return null;
+    return ldapUserDao.findByUsername(ctx, user.getUsername(), userBase);
   }
 
-  private LdapGroup getLdapGroup(final List<LdapGroup> ldapGroups, final GroupDO group)
+  private static Set<Integer> newConcurrentSet()
   {
-    for (final LdapGroup ldapGroup : ldapGroups) {
-      if (StringUtils.equals(ldapGroup.getBusinessCategory(), GroupDOConverter.buildBusinessCategory(group)) == true) {
-        return ldapGroup;
-      }
-    }
-    return null;
+    return Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
   }
 }
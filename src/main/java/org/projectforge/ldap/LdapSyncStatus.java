@@ -0,0 +1,234 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.ldap;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Result and metrics of one synchronization run of the {@link LdapMasterLoginHandler}.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * 
+ */
+public class LdapSyncStatus implements Serializable
+{
+  private static final long serialVersionUID = -2360447785924398441L;
+
+  /**
+   * Counters of the processed LDAP entries (users or groups) of one synchronization run.
+   */
+  public static class Counter implements Serializable
+  {
+    private static final long serialVersionUID = 8018937453722264553L;
+
+    int unmodified, created, updated, renamed, deleted, errors;
+
+    public int getUnmodified()
+    {
+      return unmodified;
+    }
+
+    public int getCreated()
+    {
+      return created;
+    }
+
+    public int getUpdated()
+    {
+      return updated;
+    }
+
+    public int getRenamed()
+    {
+      return renamed;
+    }
+
+    public int getDeleted()
+    {
+      return deleted;
+    }
+
+    public int getErrors()
+    {
+      return errors;
+    }
+
+    @Override
+    public String toString()
+    {
+      return (errors > 0 ? "*** " + errors + " errors ***, " : "")
+          + unmodified
+          + " unmodified, "
+          + created
+          + " created, "
+          + updated
+          + " updated, "
+          + renamed
+          + " renamed, "
+          + deleted
+          + " deleted.";
+    }
+  }
+
+  private final Date startTime;
+
+  private Date endTime;
+
+  private final boolean fullSync;
+
+  private final int numberOfUsers;
+
+  private final int numberOfGroups;
+
+  private int dirtyUsers;
+
+  private int dirtyGroups;
+
+  private final Counter userCounter = new Counter();
+
+  private final Counter groupCounter = new Counter();
+
+  private String errorMessage;
+
+  LdapSyncStatus(final boolean fullSync, final int numberOfUsers, final int numberOfGroups)
+  {
+    this.startTime = new Date();
+    this.fullSync = fullSync;
+    this.numberOfUsers = numberOfUsers;
+    this.numberOfGroups = numberOfGroups;
+  }
+
+  /**
+   * @return The start of this run.
+   */
+  public Date getStartTime()
+  {
+    return startTime;
+  }
+
+  /**
+   * @return The end of this run or null if the run is still in progress.
+   */
+  public Date getEndTime()
+  {
+    return endTime;
+  }
+
+  void setEndTime(final Date endTime)
+  {
+    this.endTime = endTime;
+  }
+
+  /**
+   * @return The duration of this run in milli seconds or -1 if the run is still in progress.
+   */
+  public long getDuration()
+  {
+    if (endTime == null) {
+      return -1;
+    }
+    return endTime.getTime() - startTime.getTime();
+  }
+
+  /**
+   * @return true if all users and groups were synchronized, false if only the modified users and groups were synchronized.
+   */
+  public boolean isFullSync()
+  {
+    return fullSync;
+  }
+
+  /**
+   * @return The number of all ProjectForge users.
+   */
+  public int getNumberOfUsers()
+  {
+    return numberOfUsers;
+  }
+
+  /**
+   * @return The number of all ProjectForge groups.
+   */
+  public int getNumberOfGroups()
+  {
+    return numberOfGroups;
+  }
+
+  /**
+   * @return The number of users processed by this run.
+   */
+  public int getDirtyUsers()
+  {
+    return dirtyUsers;
+  }
+
+  void setDirtyUsers(final int dirtyUsers)
+  {
+    this.dirtyUsers = dirtyUsers;
+  }
+
+  /**
+   * @return The number of groups processed by this run.
+   */
+  public int getDirtyGroups()
+  {
+    return dirtyGroups;
+  }
+
+  void setDirtyGroups(final int dirtyGroups)
+  {
+    this.dirtyGroups = dirtyGroups;
+  }
+
+  public Counter getUserCounter()
+  {
+    return userCounter;
+  }
+
+  public Counter getGroupCounter()
+  {
+    return groupCounter;
+  }
+
+  /**
+   * @return The message of the exception which aborted this run or null if the run wasn't aborted.
+   */
+  public String getErrorMessage()
+  {
+    return errorMessage;
+  }
+
+  void setErrorMessage(final String errorMessage)
+  {
+    this.errorMessage = errorMessage;
+  }
+
+  /**
+   * @return true if the run wasn't aborted and no user or group failed.
+   */
+  public boolean isSuccessful()
+  {
+    return errorMessage == null && userCounter.errors == 0 && groupCounter.errors == 0;
+  }
+}
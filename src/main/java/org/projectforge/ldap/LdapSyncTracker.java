@@ -0,0 +1,194 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.ldap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.projectforge.common.DateHelper;
+import org.projectforge.user.GroupDO;
+import org.projectforge.user.PFUserDO;
+
+/**
+ * Tracks the version of every user and group written successfully to the LDAP system by the {@link LdapMasterLoginHandler}. A user or
+ * group is dirty (has to be written to LDAP) if its version was changed since the last successful synchronization or the last
+ * synchronization of this user or group failed. A group is also dirty if any assigned user is dirty (member dn and system access may be
+ * changed).<br/>
+ * The version is built from the time stamp of the last modification and the fields which don't modify this time stamp. Changes made
+ * directly in the LDAP system aren't detected, therefore a full synchronization is required once a day.<br/>
+ * Not thread-safe, used only by the synchronization thread of the {@link LdapMasterLoginHandler}.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * 
+ */
+class LdapSyncTracker
+{
+  static final long FULL_SYNC_INTERVAL = DateHelper.MILLIS_DAY;
+
+  private final Map<Integer, String> userVersions = new HashMap<Integer, String>();
+
+  private final Map<Integer, String> groupVersions = new HashMap<Integer, String>();
+
+  private long lastFullSync;
+
+  private volatile boolean fullSyncRequested;
+
+  /**
+   * @param now Current time in millis.
+   * @return true for the first synchronization, if a full synchronization was requested or if the last full synchronization is older
+   *         than {@link #FULL_SYNC_INTERVAL}.
+   */
+  boolean isFullSyncRequired(final long now)
+  {
+    return fullSyncRequested == true || lastFullSync == 0 || now - lastFullSync >= FULL_SYNC_INTERVAL;
+  }
+
+  /**
+   * The next synchronization will write all users and groups.
+   */
+  void requestFullSync()
+  {
+    fullSyncRequested = true;
+  }
+
+  /**
+   * Forgets all versions. Should be called before a full synchronization, so versions of users and groups not existing anymore are
+   * removed.
+   * @param now Start time of the full synchronization.
+   */
+  void startFullSync(final long now)
+  {
+    userVersions.clear();
+    groupVersions.clear();
+    fullSyncRequested = false;
+    lastFullSync = now;
+  }
+
+  List<PFUserDO> getDirtyUsers(final Collection<PFUserDO> users)
+  {
+    final List<PFUserDO> result = new ArrayList<PFUserDO>();
+    for (final PFUserDO user : users) {
+      final String version = getVersion(user);
+      if (version == null || version.equals(userVersions.get(user.getId())) == false) {
+        result.add(user);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param groups
+   * @param dirtyUserIds Ids of the dirty users, see {@link #getDirtyUsers(Collection)}.
+   */
+  List<GroupDO> getDirtyGroups(final Collection<GroupDO> groups, final Set<Integer> dirtyUserIds)
+  {
+    final List<GroupDO> result = new ArrayList<GroupDO>();
+    for (final GroupDO group : groups) {
+      final String version = getVersion(group);
+      if (version == null || version.equals(groupVersions.get(group.getId())) == false || hasDirtyUser(group, dirtyUserIds) == true) {
+        result.add(group);
+      }
+    }
+    return result;
+  }
+
+  void userSynchronized(final PFUserDO user)
+  {
+    final String version = getVersion(user);
+    if (version != null) {
+      userVersions.put(user.getId(), version);
+    }
+  }
+
+  void userFailed(final PFUserDO user)
+  {
+    userVersions.remove(user.getId());
+  }
+
+  void groupSynchronized(final GroupDO group)
+  {
+    final String version = getVersion(group);
+    if (version != null) {
+      groupVersions.put(group.getId(), version);
+    }
+  }
+
+  void groupFailed(final GroupDO group)
+  {
+    groupVersions.remove(group.getId());
+  }
+
+  /**
+   * @return The version or null if the user has no id or time stamp of last modification (always dirty).
+   */
+  static String getVersion(final PFUserDO user)
+  {
+    if (user.getId() == null || user.getLastUpdate() == null) {
+      return null;
+    }
+    return user.getLastUpdate().getTime() + ":" + user.isDeleted() + ":" + user.isLocalUser() + ":" + user.getUsername();
+  }
+
+  /**
+   * The ids of the assigned users are part of the version, because the assignment of users is done without modifying the group itself in
+   * some cases.
+   * @return The version or null if the group has no id or time stamp of last modification (always dirty).
+   */
+  static String getVersion(final GroupDO group)
+  {
+    if (group.getId() == null || group.getLastUpdate() == null) {
+      return null;
+    }
+    final StringBuffer buf = new StringBuffer();
+    buf.append(group.getLastUpdate().getTime()).append(":").append(group.isDeleted()).append(":").append(group.isLocalGroup()).append(":")
+        .append(group.getName()).append(":");
+    if (group.getAssignedUsers() != null) {
+      final Set<Integer> userIds = new TreeSet<Integer>();
+      for (final PFUserDO user : group.getAssignedUsers()) {
+        if (user.getId() != null) {
+          userIds.add(user.getId());
+        }
+      }
+      buf.append(userIds);
+    }
+    return buf.toString();
+  }
+
+  private static boolean hasDirtyUser(final GroupDO group, final Set<Integer> dirtyUserIds)
+  {
+    if (group.getAssignedUsers() == null || dirtyUserIds.isEmpty() == true) {
+      return false;
+    }
+    for (final PFUserDO user : group.getAssignedUsers()) {
+      if (dirtyUserIds.contains(user.getId()) == true) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
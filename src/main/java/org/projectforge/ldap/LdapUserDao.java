@@ -70,6 +70,9 @@ public class LdapUserDao extends LdapDao<String, LdapUser>
 
   private LdapPersonDao ldapPersonDao;
 
+  // Cached look-ups of users by search base and username:
+  private final LdapLookupCache<LdapUser> usernameCache = new LdapLookupCache<LdapUser>();
+
   static String[] ALL_OBJECT_CLASSES;
 
   static String[] ALL_OBJECT_CLASSES_WITH_POSIX_ACCOUNT;
@@ -452,32 +455,51 @@ public class LdapUserDao extends LdapDao<String, LdapUser>
       @Override
       protected Object call() throws NameNotFoundException, Exception
       {
-        NamingEnumeration< ? > results = null;
-        final SearchControls controls = new SearchControls();
-        controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
-        final String searchBase = getSearchBase(organizationalUnits);
-        results = ctx.search(searchBase, "(&(objectClass=" + getObjectClass() + ")(uid=" + username + "))", controls);
-        if (results.hasMore() == false) {
-          return null;
-        }
-        final SearchResult searchResult = (SearchResult) results.next();
-        final String dn = searchResult.getName();
-        final Attributes attributes = searchResult.getAttributes();
-        if (results.hasMore() == true) {
-          log.error("Oups, found entries with multiple id's: " + getObjectClass() + "." + username);
-        }
-        return mapToObject(dn, searchBase, attributes);
+        return findByUsername(ctx, username, organizationalUnits);
       }
     }.excecute();
   }
 
+  public LdapUser findByUsername(final DirContext ctx, final Object username, final String... organizationalUnits) throws NamingException
+  {
+    NamingEnumeration< ? > results = null;
+    final SearchControls controls = new SearchControls();
+    controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+    final String searchBase = getSearchBase(organizationalUnits);
+    results = ctx.search(searchBase, "(&(objectClass=" + getObjectClass() + ")(uid=" + username + "))", controls);
+    if (results.hasMore() == false) {
+      return null;
+    }
+    final SearchResult searchResult = (SearchResult) results.next();
+    final String dn = searchResult.getName();
+    final Attributes attributes = searchResult.getAttributes();
+    if (results.hasMore() == true) {
+      log.error("Oups, found entries with multiple id's: " + getObjectClass() + "." + username);
+    }
+    return mapToObject(dn, searchBase, attributes);
+  }
+
+  /**
+   * The look-up of the user (dn) may be cached for a short time (see {@link LdapConfig#getCacheTimeToLive()}), the credentials are always
+   * checked by the LDAP server, so password changes and locked accounts are effective immediately.
+   * @param username
+   * @param userPassword
+   * @param organizationalUnits
+   * @return The authenticated user (only if a manager user is configured) or null.
+   */
   public LdapUser authenticate(final String username, final String userPassword, final String... organizationalUnits)
   {
     String dn;
     LdapUser user = null;
     final String searchBase = getSearchBase(organizationalUnits);
+    final long timeToLive = ldapConnector.getCacheTimeToLive();
     if (StringUtils.isNotBlank(ldapConfig.getManagerUser()) == true && StringUtils.isNotBlank(ldapConfig.getManagerPassword()) == true) {
-      user = findByUsername(username, searchBase);
+      final String cacheKey = searchBase + ":" + username;
+      user = usernameCache.get(cacheKey);
+      if (user == null) {
+        user = findByUsername(username, searchBase);
+        usernameCache.put(cacheKey, user, timeToLive);
+      }
       if (user == null || StringUtils.equals(username, user.getId()) == false) {
         log.info("User with id '" + username + "' not found.");
         return null;
@@ -486,16 +508,36 @@ public class LdapUserDao extends LdapDao<String, LdapUser>
     } else {
       dn = "uid=" + username + "," + searchBase + "," + ldapConnector.getBase();
     }
+    DirContext ctx = null;
     try {
-      ldapConnector.createContext(dn, userPassword);
+      ctx = ldapConnector.createContext(dn, userPassword);
       log.info("User '" + username + "' (" + dn + ") successfully authenticated.");
       return user;
     } catch (final Exception ex) {
       log.error("User '" + username + "' (" + dn + ") with invalid credentials.");
       return null;
+    } finally {
+      if (ctx != null) {
+        try {
+          ctx.close();
+        } catch (final NamingException ex) {
+          log.error(ex.getMessage(), ex);
+          // Never mind this.
+        }
+      }
     }
   }
 
+  /**
+   * Clears the cached look-ups.
+   * @see org.projectforge.ldap.LdapDao#onModification(org.projectforge.ldap.LdapObject)
+   */
+  @Override
+  protected void onModification(final LdapUser obj)
+  {
+    usernameCache.clear();
+  }
+
   /**
    * @see org.projectforge.ldap.LdapDao#createAndAddModificationItems(java.util.List, java.lang.String, java.lang.String[])
    */
@@ -32,6 +32,7 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.cert.CertificateException;
+import java.util.Comparator;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
@@ -39,9 +40,11 @@ import javax.net.ssl.SSLSocketFactory;
 /**
  * http://docs.oracle.com/javase/6/docs/technotes/guides/security/jsse/JSSERefGuide.html
  * http://stackoverflow.com/questions/3964703/can-i-add-a-new-certificate-to-the-keystore-without-restarting-the-jvm
+ * The JNDI LDAP connection pool pools connections with a custom socket factory only if the socket factory implements {@link Comparator}
+ * (for comparing the class names of the socket factories).
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
-public class MySSLSocketFactory
+public class MySSLSocketFactory implements Comparator<Object>
 {
   private final SSLSocketFactory sf;
 
@@ -102,6 +105,16 @@ public class MySSLSocketFactory
     return sf.equals(obj);
   }
 
+  /**
+   * Used by the JNDI LDAP connection pool for comparing the class names of socket factories.
+   * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+   */
+  @Override
+  public int compare(final Object o1, final Object o2)
+  {
+    return String.valueOf(o1).compareTo(String.valueOf(o2));
+  }
+
   public String[] getDefaultCipherSuites()
   {
     return sf.getDefaultCipherSuites();
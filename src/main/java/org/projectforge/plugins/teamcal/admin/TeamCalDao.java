@@ -36,11 +36,13 @@ import org.projectforge.core.DisplayHistoryEntry;
 import org.projectforge.core.QueryFilter;
 import org.projectforge.plugins.teamcal.admin.TeamCalFilter.OwnerType;
 import org.projectforge.plugins.teamcal.externalsubscription.TeamEventExternalSubscriptionCache;
+import org.projectforge.plugins.teamcal.integration.TeamCalCalendarFeedHook;
 import org.projectforge.user.GroupDO;
 import org.projectforge.user.PFUserContext;
 import org.projectforge.user.PFUserDO;
 import org.projectforge.user.UserDao;
 import org.projectforge.user.UserRightId;
+import org.projectforge.web.calendar.CalendarFeedCache;
 import org.projectforge.web.user.GroupsProvider;
 import org.projectforge.web.user.UsersProvider;
 import org.springframework.transaction.annotation.Propagation;
@@ -289,7 +291,7 @@ public class TeamCalDao extends BaseDao<TeamCalDO>
   }
 
   /**
-   * Calls {@link TeamCalCache#setExpired()}.
+   * Calls {@link TeamCalCache#setExpired()} and removes the feeds of this calendar from the {@link CalendarFeedCache}.
    * @see org.projectforge.core.BaseDao#afterSaveOrModify(org.projectforge.core.ExtendedBaseDO)
    */
   @Override
@@ -297,6 +299,9 @@ public class TeamCalDao extends BaseDao<TeamCalDO>
   {
     super.afterSaveOrModify(obj);
     TeamCalCache.getInstance().setExpired();
+    if (obj.getId() != null) {
+      CalendarFeedCache.getInstance().invalidate(TeamCalCalendarFeedHook.PARAM_NAME_TEAM_CALS, obj.getId().toString());
+    }
   }
 
   /**
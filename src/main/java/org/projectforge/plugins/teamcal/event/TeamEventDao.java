@@ -34,6 +34,7 @@ import java.util.Set;
 import java.util.TimeZone;
 
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
 import org.apache.commons.lang.builder.ToStringBuilder;
@@ -55,8 +56,10 @@ import org.projectforge.plugins.teamcal.admin.TeamCalDO;
 import org.projectforge.plugins.teamcal.admin.TeamCalDao;
 import org.projectforge.plugins.teamcal.admin.TeamCalsProvider;
 import org.projectforge.plugins.teamcal.externalsubscription.TeamEventExternalSubscriptionCache;
+import org.projectforge.plugins.teamcal.integration.TeamCalCalendarFeedHook;
 import org.projectforge.user.PFUserContext;
 import org.projectforge.user.UserRightId;
+import org.projectforge.web.calendar.CalendarFeedCache;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -170,6 +173,40 @@ public class TeamEventDao extends BaseDao<TeamEventDO>
     event.setRecurrenceUntil(recurrenceUntil);
   }
 
+  /**
+   * Removes the calculated recurrence events of the event and the feeds of its calendar from the caches (also called on delete and
+   * undelete).
+   * @see org.projectforge.core.BaseDao#afterSaveOrModify(org.projectforge.core.ExtendedBaseDO)
+   * @see TeamRecurrenceEventCache#invalidate(Integer)
+   */
+  @Override
+  protected void afterSaveOrModify(final TeamEventDO event)
+  {
+    super.afterSaveOrModify(event);
+    TeamRecurrenceEventCache.getInstance().invalidate(event.getId());
+    invalidateCalendarFeeds(event.getCalendarId());
+  }
+
+  /**
+   * Removes the feeds of the old calendar if the event is moved to another calendar.
+   * @see org.projectforge.core.BaseDao#onChange(org.projectforge.core.ExtendedBaseDO, org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void onChange(final TeamEventDO obj, final TeamEventDO dbObj)
+  {
+    super.onChange(obj, dbObj);
+    if (ObjectUtils.equals(obj.getCalendarId(), dbObj.getCalendarId()) == false) {
+      invalidateCalendarFeeds(dbObj.getCalendarId());
+    }
+  }
+
+  private void invalidateCalendarFeeds(final Integer calendarId)
+  {
+    if (calendarId != null) {
+      CalendarFeedCache.getInstance().invalidate(TeamCalCalendarFeedHook.PARAM_NAME_TEAM_CALS, calendarId.toString());
+    }
+  }
+
   /**
    * This method also returns recurrence events outside the time period of the given filter but affecting the time-period (e. g. older
    * recurrence events without end date or end date inside or after the given time period). If calculateRecurrenceEvents is true, only the
@@ -198,12 +235,19 @@ public class TeamEventDao extends BaseDao<TeamEventDO>
     qFilter.add(Restrictions.isNotNull("recurrenceRule"));
     list = getList(qFilter);
     list = selectUnique(list);
+    final TimeZone timeZone = PFUserContext.getTimeZone();
     // add all abo events
-    final List<TeamEventDO> recurrenceEvents = TeamEventExternalSubscriptionCache.instance().getRecurrenceEvents(teamEventFilter);
-    if (recurrenceEvents != null && recurrenceEvents.size() > 0) {
-      list.addAll(recurrenceEvents);
+    List<TeamEvent> calculatedAboEvents = null;
+    if (calculateRecurrenceEvents == true && teamEventFilter.getStartDate() != null && teamEventFilter.getEndDate() != null) {
+      // The calculated recurrence events of the subscriptions are cached by the subscriptions itself.
+      calculatedAboEvents = TeamEventExternalSubscriptionCache.instance().getRecurrenceEvents(teamEventFilter,
+          teamEventFilter.getStartDate(), teamEventFilter.getEndDate(), timeZone);
+    } else {
+      final List<TeamEventDO> recurrenceEvents = TeamEventExternalSubscriptionCache.instance().getRecurrenceEvents(teamEventFilter);
+      if (recurrenceEvents != null && recurrenceEvents.size() > 0) {
+        list.addAll(recurrenceEvents);
+      }
     }
-    final TimeZone timeZone = PFUserContext.getTimeZone();
     if (list != null) {
       for (final TeamEventDO eventDO : list) {
         if (eventDO.hasRecurrence() == false) {
@@ -215,7 +259,7 @@ public class TeamEventDao extends BaseDao<TeamEventDO>
           result.add(eventDO);
           continue;
         }
-        final Collection<TeamEvent> events = TeamEventUtils.getRecurrenceEvents(teamEventFilter.getStartDate(),
+        final Collection<TeamEvent> events = TeamRecurrenceEventCache.getInstance().getRecurrenceEvents(teamEventFilter.getStartDate(),
             teamEventFilter.getEndDate(), eventDO, timeZone);
         if (events == null) {
           continue;
@@ -228,6 +272,13 @@ public class TeamEventDao extends BaseDao<TeamEventDO>
         }
       }
     }
+    if (calculatedAboEvents != null) {
+      for (final TeamEvent event : calculatedAboEvents) {
+        if (matches(event.getStartDate(), event.getEndDate(), event.isAllDay(), teamEventFilter) == true) {
+          result.add(event);
+        }
+      }
+    }
     return result;
   }
 
@@ -97,6 +97,38 @@ public class TeamEventUtils
   public static Collection<TeamEvent> getRecurrenceEvents(final Date startDate, final Date endDate, final TeamEventDO event,
       final java.util.TimeZone timeZone)
       {
+    final List<Date> dates = getRecurrenceDates(startDate, endDate, event, timeZone);
+    if (dates == null) {
+      return null;
+    }
+    final String eventStartDateString = getEventStartDateString(event, timeZone);
+    final Collection<TeamEvent> col = new ArrayList<TeamEvent>();
+    for (final Date date : dates) {
+      col.add(createRecurrenceEvent(event, date, isEventStartDate(event, date, eventStartDateString, timeZone), timeZone));
+    }
+    if (log.isDebugEnabled() == true) {
+      for (final TeamEvent ev : col) {
+        log.debug("startDate="
+            + DateHelper.formatIsoTimestamp(ev.getStartDate(), timeZone)
+            + "; "
+            + DateHelper.formatAsUTC(ev.getStartDate())
+            + ", endDate="
+            + DateHelper.formatIsoTimestamp(ev.getStartDate(), timeZone)
+            + "; "
+            + DateHelper.formatAsUTC(ev.getEndDate()));
+      }
+    }
+    return col;
+      }
+
+  /**
+   * Calculates the start dates of the recurrence events (without the ex-dates) of the given event in the given time period (start and end
+   * date inclusive).
+   * @return The sorted start dates or null if the given event has no recurrence.
+   * @see #getRecurrenceEvents(Date, Date, TeamEventDO, java.util.TimeZone)
+   */
+  static List<Date> getRecurrenceDates(final Date startDate, final Date endDate, final TeamEventDO event, final java.util.TimeZone timeZone)
+  {
     if (event.hasRecurrence() == false) {
       return null;
     }
@@ -106,8 +138,7 @@ public class TeamEventUtils
       return null;
     }
     final java.util.TimeZone timeZone4Calc = timeZone;
-    final String eventStartDateString = event.isAllDay() == true ? DateHelper.formatIsoDate(event.getStartDate(), timeZone) : DateHelper
-        .formatIsoTimestamp(event.getStartDate(), DateHelper.UTC);
+    final String eventStartDateString = getEventStartDateString(event, timeZone);
     Date eventStartDate = event.getStartDate();
     if (event.isAllDay() == true) {
       // eventStartDate should be midnight in user's time zone.
@@ -137,7 +168,7 @@ public class TeamEventUtils
     final List<net.fortuna.ical4j.model.Date> exDates = ICal4JUtils.parseISODateStringsAsICal4jDates(event.getRecurrenceExDate(),
         ical4jTimeZone);
     final DateList dateList = recur.getDates(seedDate, ical4jStartDate, ical4jEndDate, Value.DATE_TIME);
-    final Collection<TeamEvent> col = new ArrayList<TeamEvent>();
+    final List<Date> result = new ArrayList<Date>();
     if (dateList != null) {
       OuterLoop: for (final Object obj : dateList) {
         final net.fortuna.ical4j.model.DateTime dateTime = (net.fortuna.ical4j.model.DateTime) obj;
@@ -169,32 +200,50 @@ public class TeamEventUtils
             }
           }
         }
-        if (isoDateString.equals(eventStartDateString) == true) {
-          // Put event itself to the list.
-          col.add(event);
-        } else {
-          // Now we need this event as date with the user's time-zone.
-          final Calendar userCal = Calendar.getInstance(timeZone);
-          userCal.setTime(dateTime);
-          final TeamRecurrenceEvent recurEvent = new TeamRecurrenceEvent(event, userCal);
-          col.add(recurEvent);
-        }
+        result.add(new Date(dateTime.getTime()));
       }
     }
-    if (log.isDebugEnabled() == true) {
-      for (final TeamEvent ev : col) {
-        log.debug("startDate="
-            + DateHelper.formatIsoTimestamp(ev.getStartDate(), timeZone)
-            + "; "
-            + DateHelper.formatAsUTC(ev.getStartDate())
-            + ", endDate="
-            + DateHelper.formatIsoTimestamp(ev.getStartDate(), timeZone)
-            + "; "
-            + DateHelper.formatAsUTC(ev.getEndDate()));
-      }
+    return result;
+  }
+
+  /**
+   * @return The start date of the event as iso date (all day events in the given time zone) or as iso time stamp (in UTC).
+   */
+  static String getEventStartDateString(final TeamEventDO event, final java.util.TimeZone timeZone)
+  {
+    return event.isAllDay() == true ? DateHelper.formatIsoDate(event.getStartDate(), timeZone) : DateHelper.formatIsoTimestamp(
+        event.getStartDate(), DateHelper.UTC);
+  }
+
+  /**
+   * @param date A start date of a recurrence event.
+   * @param eventStartDateString See {@link #getEventStartDateString(TeamEventDO, java.util.TimeZone)}.
+   * @return true, if the given recurrence date is the start date of the (master) event itself.
+   */
+  static boolean isEventStartDate(final TeamEventDO event, final Date date, final String eventStartDateString,
+      final java.util.TimeZone timeZone)
+  {
+    final String isoDateString = event.isAllDay() == true ? DateHelper.formatIsoDate(date, timeZone) : DateHelper.formatIsoTimestamp(date,
+        DateHelper.UTC);
+    return isoDateString.equals(eventStartDateString);
+  }
+
+  /**
+   * @param eventStartDate If true, the event itself is returned.
+   * @return The event itself or a new {@link TeamRecurrenceEvent} starting at the given date.
+   */
+  static TeamEvent createRecurrenceEvent(final TeamEventDO event, final Date date, final boolean eventStartDate,
+      final java.util.TimeZone timeZone)
+  {
+    if (eventStartDate == true) {
+      // Put event itself to the list.
+      return event;
     }
-    return col;
-      }
+    // Now we need this event as date with the user's time-zone.
+    final Calendar userCal = Calendar.getInstance(timeZone);
+    userCal.setTime(date);
+    return new TeamRecurrenceEvent(event, userCal);
+  }
 
   public static TeamEventDO createTeamEventDO(final VEvent event)
   {
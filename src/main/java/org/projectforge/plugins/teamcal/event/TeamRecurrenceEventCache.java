@@ -0,0 +1,253 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.plugins.teamcal.event;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Caches the calculated start dates of the recurrence events of the team events (data base entries). The recurrence events are calculated
+ * in fixed time buckets, so different but overlapping time periods requested by the calendar views (day, week, month, scrolling) share the
+ * same cache entries. The entries are keyed by the event id, the last update of the event, the time zone and the bucket, so a modified
+ * event never hits outdated entries. The entries of an event are also removed by the TeamEventDao on every save, update, delete and
+ * undelete.<br/>
+ * Only the dates are cached, the returned events are created on every request from the given event object.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * 
+ */
+public class TeamRecurrenceEventCache
+{
+  private static final Logger log = Logger.getLogger(TeamRecurrenceEventCache.class);
+
+  private static final TeamRecurrenceEventCache instance = new TeamRecurrenceEventCache();
+
+  static final long BUCKET_SIZE = 28L * 24 * 60 * 60 * 1000;
+
+  /**
+   * Time periods with more buckets are calculated without the cache.
+   */
+  private static final int MAX_BUCKETS_PER_REQUEST = 100;
+
+  private static final int MAX_SIZE = 10000;
+
+  private static class Key
+  {
+    private final Integer eventId;
+
+    private final long lastUpdate;
+
+    private final String timeZoneId;
+
+    private final long bucket;
+
+    private Key(final Integer eventId, final long lastUpdate, final String timeZoneId, final long bucket)
+    {
+      this.eventId = eventId;
+      this.lastUpdate = lastUpdate;
+      this.timeZoneId = timeZoneId;
+      this.bucket = bucket;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      int result = eventId.hashCode();
+      result = 31 * result + (int) (lastUpdate ^ (lastUpdate >>> 32));
+      result = 31 * result + timeZoneId.hashCode();
+      return 31 * result + (int) (bucket ^ (bucket >>> 32));
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+      if (obj instanceof Key == false) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return bucket == other.bucket
+          && lastUpdate == other.lastUpdate
+          && eventId.equals(other.eventId) == true
+          && timeZoneId.equals(other.timeZoneId) == true;
+    }
+  }
+
+  /**
+   * The recurrence dates of one bucket (ex-dates already removed).
+   */
+  private static class Entry
+  {
+    private final long[] dates;
+
+    /**
+     * True for the date of the event itself (the event object is returned instead of a {@link TeamRecurrenceEvent}).
+     */
+    private final boolean[] eventStartDates;
+
+    private Entry(final long[] dates, final boolean[] eventStartDates)
+    {
+      this.dates = dates;
+      this.eventStartDates = eventStartDates;
+    }
+  }
+
+  private final Map<Key, Entry> cache = new LinkedHashMap<Key, Entry>(256, 0.75f, true) {
+    private static final long serialVersionUID = 6213904585306373744L;
+
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<Key, Entry> eldest)
+    {
+      return size() > MAX_SIZE;
+    }
+  };
+
+  public static TeamRecurrenceEventCache getInstance()
+  {
+    return instance;
+  }
+
+  /**
+   * Same result as {@link TeamEventUtils#getRecurrenceEvents(Date, Date, TeamEventDO, TimeZone)}, but the recurrence dates are taken from
+   * the cache if available. Events without id or last update (not yet saved) are calculated without the cache.
+   * @param startDate Start of the time period (inclusive).
+   * @param endDate End of the time period (inclusive).
+   * @return The recurrence events of the given event inside the given time period or null if the event has no recurrence.
+   */
+  public Collection<TeamEvent> getRecurrenceEvents(final Date startDate, final Date endDate, final TeamEventDO event,
+      final TimeZone timeZone)
+  {
+    if (event.getId() == null || event.getLastUpdate() == null || startDate == null || endDate == null) {
+      return TeamEventUtils.getRecurrenceEvents(startDate, endDate, event, timeZone);
+    }
+    final long start = startDate.getTime();
+    final long end = endDate.getTime();
+    final long firstBucket = getBucket(start);
+    final long lastBucket = getBucket(end);
+    if (lastBucket - firstBucket >= MAX_BUCKETS_PER_REQUEST) {
+      return TeamEventUtils.getRecurrenceEvents(startDate, endDate, event, timeZone);
+    }
+    if (event.hasRecurrence() == false || event.getRecurrenceObject() == null) {
+      return null;
+    }
+    final Collection<TeamEvent> col = new ArrayList<TeamEvent>();
+    for (long bucket = firstBucket; bucket <= lastBucket; bucket++) {
+      final Entry entry = getEntry(event, timeZone, bucket);
+      if (entry == null) {
+        return null;
+      }
+      for (int i = 0; i < entry.dates.length; i++) {
+        final long date = entry.dates[i];
+        if (date < start || date > end) {
+          continue;
+        }
+        col.add(TeamEventUtils.createRecurrenceEvent(event, new Date(date), entry.eventStartDates[i], timeZone));
+      }
+    }
+    return col;
+  }
+
+  /**
+   * Removes all cached recurrence dates of the given event.
+   */
+  public void invalidate(final Integer eventId)
+  {
+    if (eventId == null) {
+      return;
+    }
+    synchronized (cache) {
+      final Iterator<Key> it = cache.keySet().iterator();
+      while (it.hasNext() == true) {
+        if (eventId.equals(it.next().eventId) == true) {
+          it.remove();
+        }
+      }
+    }
+  }
+
+  public void clear()
+  {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+
+  int size()
+  {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  /**
+   * Floor division (also for dates before 1970).
+   */
+  static long getBucket(final long time)
+  {
+    final long bucket = time / BUCKET_SIZE;
+    return time < 0 && bucket * BUCKET_SIZE != time ? bucket - 1 : bucket;
+  }
+
+  private Entry getEntry(final TeamEventDO event, final TimeZone timeZone, final long bucket)
+  {
+    final Key key = new Key(event.getId(), event.getLastUpdate().getTime(), timeZone.getID(), bucket);
+    Entry entry;
+    synchronized (cache) {
+      entry = cache.get(key);
+    }
+    if (entry != null) {
+      return entry;
+    }
+    // Calculate outside the lock, the result is the same if calculated twice by concurrent requests.
+    final Date bucketStart = new Date(bucket * BUCKET_SIZE);
+    final Date bucketEnd = new Date((bucket + 1) * BUCKET_SIZE - 1);
+    final List<Date> dates = TeamEventUtils.getRecurrenceDates(bucketStart, bucketEnd, event, timeZone);
+    if (dates == null) {
+      return null;
+    }
+    final String eventStartDateString = TeamEventUtils.getEventStartDateString(event, timeZone);
+    final long[] times = new long[dates.size()];
+    final boolean[] eventStartDates = new boolean[dates.size()];
+    for (int i = 0; i < times.length; i++) {
+      final Date date = dates.get(i);
+      times[i] = date.getTime();
+      eventStartDates[i] = TeamEventUtils.isEventStartDate(event, date, eventStartDateString, timeZone);
+    }
+    entry = new Entry(times, eventStartDates);
+    synchronized (cache) {
+      cache.put(key, entry);
+    }
+    if (log.isDebugEnabled() == true) {
+      log.debug("Recurrence dates of event #" + event.getId() + " calculated for bucket " + bucket + ": " + times.length);
+    }
+    return entry;
+  }
+}
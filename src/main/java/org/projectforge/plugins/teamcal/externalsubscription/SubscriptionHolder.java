@@ -25,6 +25,7 @@ package org.projectforge.plugins.teamcal.externalsubscription;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -33,7 +34,10 @@ import org.projectforge.plugins.teamcal.event.TeamEventDO;
 import org.projectforge.plugins.teamcal.event.TeamEventDao;
 
 /**
- * Own abstraction of a RangeMap. You can add TeamEvents and access them through their start and end date.
+ * Own abstraction of a RangeMap. You can add TeamEvents and access them through their start and end date.<br/>
+ * On first access (or by calling {@link #sort()}) an interval index is built: The events are sorted by start date and a tree of the
+ * maximum end dates of the sorted events (segment tree) is built, so a time period query needs O(log n + k) instead of scanning all
+ * events starting before the end of the time period. The index is immutable and will be rebuilt after adding further events.
  * 
  * @author Johannes Unterstein (j.unterstein@micromata.de)
  */
@@ -44,31 +48,108 @@ public class SubscriptionHolder implements Serializable
   // one day in milliseconds
   private static final int ONE_DAY = 86400000; // 60*60*24*1000
 
-  // private static final long MIN_DATE_1800 = lendar
+  /**
+   * Immutable interval index of the events.
+   */
+  private static class Index implements Serializable
+  {
+    private static final long serialVersionUID = 5474372066233425745L;
+
+    private final TeamEventDO[] events;
+
+    private final long[] startTimes;
+
+    /**
+     * Segment tree of the maximum end times: the leaves (at offset {@link #leafOffset}) are the end times of the sorted events, every
+     * other node holds the maximum of its both children.
+     */
+    private final long[] maxEndTimes;
+
+    private final int leafOffset;
+
+    private Index(final List<TeamEventDO> sortedEvents)
+    {
+      final int size = sortedEvents.size();
+      events = sortedEvents.toArray(new TeamEventDO[size]);
+      startTimes = new long[size];
+      int offset = 1;
+      while (offset < size) {
+        offset <<= 1;
+      }
+      leafOffset = offset;
+      maxEndTimes = new long[2 * offset];
+      Arrays.fill(maxEndTimes, Long.MIN_VALUE);
+      for (int i = 0; i < size; i++) {
+        startTimes[i] = getStartTime(events[i]);
+        // Use the maximum of start and end for events with an end before their start.
+        maxEndTimes[offset + i] = Math.max(startTimes[i], getEndTime(events[i]));
+      }
+      for (int i = offset - 1; i > 0; i--) {
+        maxEndTimes[i] = Math.max(maxEndTimes[2 * i], maxEndTimes[2 * i + 1]);
+      }
+    }
+
+    /**
+     * @return The number of events starting at or before the given time (the events are sorted by start date).
+     */
+    private int countStartingUntil(final long time)
+    {
+      int low = 0, high = startTimes.length;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (startTimes[mid] <= time) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * Collects all events of the range [0, limit) ending at or after the given time, ordered by start date.
+     */
+    private void collect(final int node, final int nodeFrom, final int nodeTo, final int limit, final long minEndTime,
+        final List<TeamEventDO> result)
+    {
+      if (nodeFrom >= limit || maxEndTimes[node] < minEndTime) {
+        return;
+      }
+      if (node >= leafOffset) {
+        result.add(events[node - leafOffset]);
+        return;
+      }
+      final int mid = (nodeFrom + nodeTo) >>> 1;
+      collect(2 * node, nodeFrom, mid, limit, minEndTime, result);
+      collect(2 * node + 1, mid, nodeTo, limit, minEndTime, result);
+    }
+  }
 
   private final List<TeamEventDO> eventList;
 
-  private boolean sorted;
+  private volatile Index index;
 
   public SubscriptionHolder()
   {
     eventList = new ArrayList<TeamEventDO>();
-    sorted = false;
   }
 
-  public void clear()
+  public synchronized void clear()
   {
     eventList.clear();
-    sorted = false;
+    index = null;
   }
 
-  public void add(final TeamEventDO value)
+  public synchronized void add(final TeamEventDO value)
   {
     eventList.add(value);
-    sorted = false;
+    index = null;
   }
 
-  public void sort()
+  /**
+   * Sorts the events by start date and builds the interval index.
+   */
+  public synchronized void sort()
   {
     // the following comparator compares by startDate
     final Comparator<TeamEventDO> comparator = new Comparator<TeamEventDO>() {
@@ -89,24 +170,28 @@ public class SubscriptionHolder implements Serializable
       }
     };
     Collections.sort(eventList, comparator);
-    sorted = true;
+    index = new Index(eventList);
   }
 
   public List<TeamEventDO> getResultList(final Long startTime, final Long endTime, final boolean minimalAccess)
   {
-    // sorting should by synchronized
-    synchronized (this) {
-      if (sorted == false) {
-        sort();
+    Index current = index;
+    if (current == null) {
+      // sorting should by synchronized
+      synchronized (this) {
+        if (index == null) {
+          sort();
+        }
+        current = index;
       }
     }
+    final List<TeamEventDO> candidates = new ArrayList<TeamEventDO>();
+    // all our events are sorted, events starting after the end date are ignored. Of the other ones only the events ending after the
+    // (extended) start date are collected.
+    final int limit = current.countStartingUntil(endTime);
+    current.collect(1, 0, current.leafOffset, limit, startTime - ONE_DAY, candidates);
     final List<TeamEventDO> result = new ArrayList<TeamEventDO>();
-    for (final TeamEventDO teamEventDo : eventList) {
-      // all our events are sorted, if we find a event which starts
-      // after the end date, we can break this iteration
-      if (teamEventDo.getStartDate().getTime() > endTime) {
-        break;
-      }
+    for (final TeamEventDO teamEventDo : candidates) {
       if (matches(teamEventDo, startTime, endTime) == true) {
         if (minimalAccess == true) {
           result.add(teamEventDo.createMinimalCopy());
@@ -119,11 +204,21 @@ public class SubscriptionHolder implements Serializable
     return result;
   }
 
-  public int size()
+  public synchronized int size()
   {
     return eventList.size();
   }
 
+  private static long getStartTime(final TeamEventDO teamEventDo)
+  {
+    return teamEventDo.getStartDate() != null ? teamEventDo.getStartDate().getTime() : TeamEventDao.MIN_DATE_1800;
+  }
+
+  private static long getEndTime(final TeamEventDO teamEventDo)
+  {
+    return teamEventDo.getEndDate() != null ? teamEventDo.getEndDate().getTime() : TeamEventDao.MAX_DATE_3000;
+  }
+
   private boolean matches(final TeamEventDO teamEventDo, Long startTime, Long endTime)
   {
     // Following period extension is needed due to all day events which are stored in UTC. The additional events in the result list not
@@ -138,8 +233,8 @@ public class SubscriptionHolder implements Serializable
     // // get events whose duration overlap with chosen duration.
     // (Restrictions.and(Restrictions.le("startDate", startDate), Restrictions.ge("endDate", endDate)))));
 
-    final Long eventStartTime = teamEventDo.getStartDate() != null ? teamEventDo.getStartDate().getTime() : TeamEventDao.MIN_DATE_1800;
-    final Long eventEndTime = teamEventDo.getEndDate() != null ? teamEventDo.getEndDate().getTime() : TeamEventDao.MAX_DATE_3000;
+    final Long eventStartTime = getStartTime(teamEventDo);
+    final Long eventEndTime = getEndTime(teamEventDo);
     if (between(eventStartTime, startTime, endTime) || between(eventEndTime, startTime, endTime)) {
       return true;
     }
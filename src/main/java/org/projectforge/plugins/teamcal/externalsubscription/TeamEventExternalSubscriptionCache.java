@@ -25,10 +25,19 @@ package org.projectforge.plugins.teamcal.externalsubscription;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.hibernate.criterion.Restrictions;
@@ -38,27 +47,42 @@ import org.projectforge.plugins.teamcal.admin.TeamCalCache;
 import org.projectforge.plugins.teamcal.admin.TeamCalDO;
 import org.projectforge.plugins.teamcal.admin.TeamCalDao;
 import org.projectforge.plugins.teamcal.admin.TeamCalRight;
+import org.projectforge.plugins.teamcal.event.TeamEvent;
 import org.projectforge.plugins.teamcal.event.TeamEventDO;
 import org.projectforge.plugins.teamcal.event.TeamEventFilter;
+import org.projectforge.plugins.teamcal.integration.TeamCalCalendarFeedHook;
 import org.projectforge.user.PFUserContext;
 import org.projectforge.user.UserRights;
+import org.projectforge.web.calendar.CalendarFeedCache;
 
 /**
+ * Cache of all subscribed calendars. The calendars are refreshed in parallel (one slow calendar server doesn't delay the others), the
+ * subscriptions are replaced as a whole after a refresh.
  * @author Johannes Unterstein (j.unterstein@micromata.de)
  */
 public class TeamEventExternalSubscriptionCache
 {
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(TeamEventExternalSubscriptionCache.class);
+
   private static final TeamEventExternalSubscriptionCache instance = new TeamEventExternalSubscriptionCache();
 
   private final Map<Integer, TeamEventSubscription> subscriptions;
 
   private static final Long SUBSCRIPTION_UPDATE_TIME = 5L * 60 * 1000; // 5 min
 
+  private static final int NUMBER_OF_THREADS = 4;
+
+  /**
+   * Maximum time of a refresh of all calendars, refreshes not finished in time are cancelled (and tried again next time). The time of a
+   * single calendar is limited by the connection and socket timeouts of {@link TeamEventSubscription}.
+   */
+  private static final long REFRESH_TIMEOUT = 3L * 60 * 1000; // 3 min
+
   private transient TeamCalRight teamCalRight;
 
   private TeamEventExternalSubscriptionCache()
   {
-    subscriptions = new HashMap<Integer, TeamEventSubscription>();
+    subscriptions = new ConcurrentHashMap<Integer, TeamEventSubscription>();
   }
 
   public static TeamEventExternalSubscriptionCache instance()
@@ -73,9 +97,7 @@ public class TeamEventExternalSubscriptionCache
     // internalGetList is valid at this point, because we are calling this method in an asyn thread
     final List<TeamCalDO> subscribedCalendars = dao.internalGetList(filter);
 
-    for (final TeamCalDO calendar : subscribedCalendars) {
-      updateCache(dao, calendar);
-    }
+    updateCache(dao, subscribedCalendars, false);
 
     final List<Integer> idsToRemove = new ArrayList<Integer>();
     for (final Integer calendarId : subscriptions.keySet()) {
@@ -115,21 +137,84 @@ public class TeamEventExternalSubscriptionCache
    * @param force If true then update is forced (independent of last update time and refresh interval).
    */
   public void updateCache(final TeamCalDao dao, final TeamCalDO calendar, final boolean force)
+  {
+    if (isUpdateNeeded(calendar, force) == true) {
+      update(dao, calendar);
+    }
+  }
+
+  /**
+   * Updates the given calendars in parallel.
+   * @param dao
+   * @param calendars
+   * @param force If true then update is forced (independent of last update time and refresh interval).
+   */
+  public void updateCache(final TeamCalDao dao, final Collection<TeamCalDO> calendars, final boolean force)
+  {
+    final List<Callable<Object>> jobs = new ArrayList<Callable<Object>>();
+    for (final TeamCalDO calendar : calendars) {
+      if (isUpdateNeeded(calendar, force) == false) {
+        continue;
+      }
+      jobs.add(new Callable<Object>() {
+        @Override
+        public Object call() throws Exception
+        {
+          update(dao, calendar);
+          return null;
+        }
+      });
+    }
+    if (jobs.isEmpty() == true) {
+      return;
+    }
+    if (jobs.size() == 1) {
+      try {
+        jobs.get(0).call();
+      } catch (final Exception ex) {
+        log.error("Error while updating subscribed calendar: " + ex.getMessage(), ex);
+      }
+      return;
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.min(NUMBER_OF_THREADS, jobs.size()));
+    try {
+      final List<Future<Object>> futures = executor.invokeAll(jobs, REFRESH_TIMEOUT, TimeUnit.MILLISECONDS);
+      for (final Future<Object> future : futures) {
+        try {
+          future.get();
+        } catch (final CancellationException ex) {
+          log.error("Update of subscribed calendar cancelled (timeout of " + REFRESH_TIMEOUT / 1000 + "s exceeded).");
+        } catch (final ExecutionException ex) {
+          log.error("Error while updating subscribed calendar: " + ex.getCause().getMessage(), ex.getCause());
+        }
+      }
+    } catch (final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      log.warn("Update of subscribed calendars interrupted.");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private boolean isUpdateNeeded(final TeamCalDO calendar, final boolean force)
   {
     final TeamEventSubscription compareSubscription = subscriptions.get(calendar.getId());
-    final Long now = System.currentTimeMillis();
+    if (compareSubscription == null || force == true || compareSubscription.getLastUpdated() == null) {
+      return true;
+    }
     final Long addedTime = calendar.getExternalSubscriptionUpdateInterval() == null ? SUBSCRIPTION_UPDATE_TIME : 1000L * calendar
         .getExternalSubscriptionUpdateInterval();
-    if (compareSubscription == null) {
-      // create the calendar
-      final TeamEventSubscription teamEventSubscription = new TeamEventSubscription(dao, calendar);
-      subscriptions.put(calendar.getId(), teamEventSubscription);
-    } else if (force == true || compareSubscription.getLastUpdated() == null || compareSubscription.getLastUpdated() + addedTime <= now) {
-      // update the calendar
-      // we update the cache softly, therefore we create a new instance and replace the old instance in the cached map then
-      // creation and update is therefore the same two lines of code, but semantically different things
-      final TeamEventSubscription teamEventSubscription = new TeamEventSubscription(dao, calendar);
-      subscriptions.put(calendar.getId(), teamEventSubscription);
+    return compareSubscription.getLastUpdated() + addedTime <= System.currentTimeMillis();
+  }
+
+  private void update(final TeamCalDao dao, final TeamCalDO calendar)
+  {
+    // we update the cache softly, therefore we create a new instance and replace the old instance in the cached map then. The events of
+    // the old instance are re-used if the calendar wasn't modified.
+    final TeamEventSubscription teamEventSubscription = new TeamEventSubscription(dao, calendar, subscriptions.get(calendar.getId()));
+    subscriptions.put(calendar.getId(), teamEventSubscription);
+    if (teamEventSubscription.isEventsReplaced() == true) {
+      CalendarFeedCache.getInstance().invalidate(TeamCalCalendarFeedHook.PARAM_NAME_TEAM_CALS, calendar.getId().toString());
     }
   }
 
@@ -155,6 +240,52 @@ public class TeamEventExternalSubscriptionCache
   public List<TeamEventDO> getRecurrenceEvents(final TeamEventFilter filter)
   {
     final List<TeamEventDO> result = new ArrayList<TeamEventDO>();
+    final Integer userId = PFUserContext.getUserId();
+    for (final Integer calendarId : getReadableSubscribedCalendars(filter)) {
+      final TeamEventSubscription eventSubscription = subscriptions.get(calendarId);
+      if (eventSubscription != null) {
+        final List<TeamEventDO> recurrenceEvents = eventSubscription.getRecurrenceEvents();
+        if (recurrenceEvents != null && recurrenceEvents.size() > 0) {
+          for (final TeamEventDO event : recurrenceEvents) {
+            final TeamCalDO calendar = TeamCalCache.getInstance().getCalendar(calendarId);
+            if (getTeamCalRight().getAccessType(calendar, userId) == TeamCalAccessType.MINIMAL) {
+              result.add(event.createMinimalCopy());
+            } else {
+              result.add(event);
+            }
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param filter
+   * @param startDate
+   * @param endDate
+   * @param timeZone
+   * @return The calculated recurrence events of all subscribed calendars of the given filter (readable by the context user) in the given
+   *         time period.
+   * @see TeamEventSubscription#getRecurrenceEvents(Date, Date, TimeZone, boolean)
+   */
+  public List<TeamEvent> getRecurrenceEvents(final TeamEventFilter filter, final Date startDate, final Date endDate, final TimeZone timeZone)
+  {
+    final List<TeamEvent> result = new ArrayList<TeamEvent>();
+    final Integer userId = PFUserContext.getUserId();
+    for (final Integer calendarId : getReadableSubscribedCalendars(filter)) {
+      final TeamEventSubscription eventSubscription = subscriptions.get(calendarId);
+      if (eventSubscription != null) {
+        final TeamCalDO calendar = TeamCalCache.getInstance().getCalendar(calendarId);
+        final boolean minimalAccess = getTeamCalRight().getAccessType(calendar, userId) == TeamCalAccessType.MINIMAL;
+        result.addAll(eventSubscription.getRecurrenceEvents(startDate, endDate, timeZone, minimalAccess));
+      }
+    }
+    return result;
+  }
+
+  private Collection<Integer> getReadableSubscribedCalendars(final TeamEventFilter filter)
+  {
     // precondition: existing teamcals ins filter
     final Collection<Integer> teamCals = new LinkedList<Integer>();
     final Integer userId = PFUserContext.getUserId();
@@ -182,25 +313,7 @@ public class TeamEventExternalSubscriptionCache
         }
       }
     }
-    if (teamCals != null) {
-      for (final Integer calendarId : teamCals) {
-        final TeamEventSubscription eventSubscription = subscriptions.get(calendarId);
-        if (eventSubscription != null) {
-          final List<TeamEventDO> recurrenceEvents = eventSubscription.getRecurrenceEvents();
-          if (recurrenceEvents != null && recurrenceEvents.size() > 0) {
-            for (final TeamEventDO event : recurrenceEvents) {
-              final TeamCalDO calendar = TeamCalCache.getInstance().getCalendar(calendarId);
-              if (getTeamCalRight().getAccessType(calendar, userId) == TeamCalAccessType.MINIMAL) {
-                result.add(event.createMinimalCopy());
-              } else {
-                result.add(event);
-              }
-            }
-          }
-        }
-      }
-    }
-    return result;
+    return teamCals;
   }
 
   private TeamCalAccessType getAccessType(final Integer calendarId, final Integer userId)
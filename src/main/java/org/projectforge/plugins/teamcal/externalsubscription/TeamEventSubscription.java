@@ -27,10 +27,14 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.math.BigInteger;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import net.fortuna.ical4j.data.CalendarBuilder;
 import net.fortuna.ical4j.model.Calendar;
@@ -38,6 +42,7 @@ import net.fortuna.ical4j.model.Component;
 import net.fortuna.ical4j.model.Property;
 import net.fortuna.ical4j.model.component.VEvent;
 
+import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.httpclient.methods.GetMethod;
@@ -45,6 +50,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.projectforge.plugins.teamcal.admin.TeamCalDO;
 import org.projectforge.plugins.teamcal.admin.TeamCalDao;
+import org.projectforge.plugins.teamcal.event.TeamEvent;
 import org.projectforge.plugins.teamcal.event.TeamEventDO;
 import org.projectforge.plugins.teamcal.event.TeamEventUtils;
 import org.projectforge.web.calendar.CalendarFeed;
@@ -60,9 +66,23 @@ public class TeamEventSubscription implements Serializable
 
   private final Integer teamCalId;
 
-  private final SubscriptionHolder eventDurationAccess;
+  private volatile SubscriptionHolder eventDurationAccess;
 
-  private final List<TeamEventDO> recurrenceEvents;
+  private volatile List<TeamEventDO> recurrenceEvents;
+
+  /**
+   * The calculated recurrence events of the last requested time periods (the events of a subscription are replaced as a whole on every
+   * update, so the cache is cleared then).
+   */
+  private final Map<String, List<TeamEvent>> recurrenceEventsCache = new LinkedHashMap<String, List<TeamEvent>>(16, 0.75f, true) {
+    private static final long serialVersionUID = -3283926355599183224L;
+
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<String, List<TeamEvent>> eldest)
+    {
+      return size() > MAX_CACHED_RECURRENCE_PERIODS;
+    }
+  };
 
   private final TeamCalDao teamCalDao;
 
@@ -70,11 +90,43 @@ public class TeamEventSubscription implements Serializable
 
   private Long lastUpdated;
 
+  /**
+   * False if the events of the previous subscription were taken over (the calendar wasn't modified).
+   */
+  private boolean eventsReplaced = true;
+
+  /**
+   * The url of the last successful download (the validators below are only valid for this url).
+   */
+  private String url;
+
+  /**
+   * Validators of the last successful download used for conditional requests (If-None-Match, If-Modified-Since).
+   */
+  private String eTag, lastModified;
+
   private final HttpClient client;
 
+  private static final int MAX_CACHED_RECURRENCE_PERIODS = 50;
+
   private static final Long TIME_IN_THE_PAST = 60L * 24 * 60 * 60 * 1000; // 60 days in millis in the past to subscribe
 
+  private static final int CONNECTION_TIMEOUT = 10 * 1000; // 10 seconds
+
+  private static final int SOCKET_TIMEOUT = 60 * 1000; // 1 minute
+
   public TeamEventSubscription(final TeamCalDao teamCalDao, final TeamCalDO teamCalDo)
+  {
+    this(teamCalDao, teamCalDo, null);
+  }
+
+  /**
+   * @param teamCalDao
+   * @param teamCalDo
+   * @param previous The current subscription of this calendar (if any). Its validators are used for a conditional request and its events
+   *          are re-used if the calendar wasn't modified.
+   */
+  public TeamEventSubscription(final TeamCalDao teamCalDao, final TeamCalDO teamCalDo, final TeamEventSubscription previous)
   {
     this.teamCalDao = teamCalDao;
     this.teamCalId = teamCalDo.getId();
@@ -83,10 +135,12 @@ public class TeamEventSubscription implements Serializable
     currentInitializedHash = null;
     lastUpdated = null;
     client = new HttpClient();
-    init(teamCalDo);
+    client.getHttpConnectionManager().getParams().setConnectionTimeout(CONNECTION_TIMEOUT);
+    client.getHttpConnectionManager().getParams().setSoTimeout(SOCKET_TIMEOUT);
+    init(teamCalDo, previous);
   }
 
-  private void init(final TeamCalDO teamCalDo)
+  private void init(final TeamCalDO teamCalDo, TeamEventSubscription previous)
   {
     String url = teamCalDo.getExternalSubscriptionUrl();
     if (teamCalDo.isExternalSubscription() == false || StringUtils.isEmpty(url) == true) {
@@ -94,6 +148,10 @@ public class TeamEventSubscription implements Serializable
       return;
     }
     url = StringUtils.replace(url, "webcal", "http");
+    if (previous != null && (previous.currentInitializedHash == null || StringUtils.equals(url, previous.url) == false)) {
+      // Nothing to re-use.
+      previous = null;
+    }
     // Shorten the url or avoiding logging of user credentials as part of the url
     final StringBuffer buf = new StringBuffer();
     boolean dotRead = false;
@@ -115,13 +173,26 @@ public class TeamEventSubscription implements Serializable
     log.info("Getting subscribed calendar #" + teamCalDo.getId() + " from: " + displayUrl);
     final CalendarBuilder builder = new CalendarBuilder();
     byte[] bytes = null;
+    // Create a method instance.
+    final GetMethod method = new GetMethod(url);
     try {
-
-      // Create a method instance.
-      final GetMethod method = new GetMethod(url);
+      if (previous != null) {
+        // Conditional request, the server may answer with 304 (not modified) without any content:
+        if (previous.eTag != null) {
+          method.setRequestHeader("If-None-Match", previous.eTag);
+        }
+        if (previous.lastModified != null) {
+          method.setRequestHeader("If-Modified-Since", previous.lastModified);
+        }
+      }
 
       final int statusCode = client.executeMethod(method);
 
+      if (statusCode == HttpStatus.SC_NOT_MODIFIED && previous != null) {
+        log.info("No modification of subscribed calendar #" + teamCalDo.getId() + " found from: " + displayUrl + " (not modified).");
+        takeOver(previous);
+        return;
+      }
       if (statusCode != HttpStatus.SC_OK) {
         log.error("Unable to gather subscription calendar #"
             + teamCalDo.getId()
@@ -134,11 +205,14 @@ public class TeamEventSubscription implements Serializable
 
       final MessageDigest md = MessageDigest.getInstance("MD5");
 
-      // Read the response body.
+      // Read the response body (the md5 is calculated while reading).
       final InputStream stream = method.getResponseBodyAsStream();
-      bytes = IOUtils.toByteArray(stream);
+      bytes = IOUtils.toByteArray(new DigestInputStream(stream, md));
+      this.url = url;
+      this.eTag = getResponseHeader(method, "ETag");
+      this.lastModified = getResponseHeader(method, "Last-Modified");
 
-      final String md5 = calcHexHash(md.digest(bytes));
+      final String md5 = calcHexHash(md.digest());
       if (StringUtils.equals(md5, teamCalDo.getExternalSubscriptionHash()) == false) {
         teamCalDo.setExternalSubscriptionHash(md5);
         teamCalDo.setExternalSubscriptionCalendarBinary(bytes);
@@ -153,14 +227,17 @@ public class TeamEventSubscription implements Serializable
           + displayUrl
           + "': "
           + e.getMessage(), e);
+    } finally {
+      method.releaseConnection();
     }
     if (bytes == null) {
       log.error("Unable to use database subscription calendar #" + teamCalDo.getId() + " information, quit from url '" + displayUrl + "'.");
       return;
     }
-    if (currentInitializedHash != null && StringUtils.equals(currentInitializedHash, teamCalDo.getExternalSubscriptionHash()) == true) {
+    if (previous != null && StringUtils.equals(previous.currentInitializedHash, teamCalDo.getExternalSubscriptionHash()) == true) {
       // nothing to do here if the hashes are equal
       log.info("No modification of subscribed calendar #" + teamCalDo.getId() + " found from: " + displayUrl + " (OK, nothing to be done).");
+      takeOver(previous);
       return;
     }
     try {
@@ -181,9 +258,9 @@ public class TeamEventSubscription implements Serializable
         }
         vEvents.add(event);
       }
-      // clear
-      eventDurationAccess.clear();
-      recurrenceEvents.clear();
+      // the new events are collected in new instances which replace the current ones after the interval index is built.
+      final SubscriptionHolder newEventDurationAccess = new SubscriptionHolder();
+      final List<TeamEventDO> newRecurrenceEvents = new ArrayList<TeamEventDO>();
 
       // the event id must (!) be negative and decrementing (different on each event)
       Integer startId = -1;
@@ -194,13 +271,19 @@ public class TeamEventSubscription implements Serializable
 
         if (teamEvent.hasRecurrence() == true) {
           // special treatment for recurrence events ..
-          recurrenceEvents.add(teamEvent);
+          newRecurrenceEvents.add(teamEvent);
         } else {
-          eventDurationAccess.add(teamEvent);
+          newEventDurationAccess.add(teamEvent);
         }
 
         startId--;
       }
+      newEventDurationAccess.sort();
+      eventDurationAccess = newEventDurationAccess;
+      recurrenceEvents = newRecurrenceEvents;
+      synchronized (recurrenceEventsCache) {
+        recurrenceEventsCache.clear();
+      }
       lastUpdated = System.currentTimeMillis();
       currentInitializedHash = teamCalDo.getExternalSubscriptionHash();
       log.info("Subscribed calendar #" + teamCalDo.getId() + " successfully received from: " + displayUrl);
@@ -214,6 +297,29 @@ public class TeamEventSubscription implements Serializable
     }
   }
 
+  /**
+   * Re-uses the (immutable) events of the given subscription of the same and unmodified calendar.
+   */
+  private void takeOver(final TeamEventSubscription previous)
+  {
+    eventDurationAccess = previous.eventDurationAccess;
+    recurrenceEvents = previous.recurrenceEvents;
+    currentInitializedHash = previous.currentInitializedHash;
+    eventsReplaced = false;
+    if (url == null) {
+      url = previous.url;
+      eTag = previous.eTag;
+      lastModified = previous.lastModified;
+    }
+    lastUpdated = System.currentTimeMillis();
+  }
+
+  private String getResponseHeader(final GetMethod method, final String name)
+  {
+    final Header header = method.getResponseHeader(name);
+    return header != null ? header.getValue() : null;
+  }
+
   /**
    * calculates hexadecimal representation of
    * @param md5
@@ -230,9 +336,10 @@ public class TeamEventSubscription implements Serializable
   public List<TeamEventDO> getEvents(final Long startTime, final Long endTime, final boolean minimalAccess)
   {
     final Long perfStart = System.currentTimeMillis();
-    final List<TeamEventDO> result = eventDurationAccess.getResultList(startTime, endTime, minimalAccess);
+    final SubscriptionHolder holder = eventDurationAccess;
+    final List<TeamEventDO> result = holder.getResultList(startTime, endTime, minimalAccess);
     final Long perfDuration = System.currentTimeMillis() - perfStart;
-    log.info("calculation of team events took " + perfDuration + " ms for " + result.size() + " events of " +eventDurationAccess.size() + " in total from calendar #"+teamCalId+".");
+    log.info("calculation of team events took " + perfDuration + " ms for " + result.size() + " events of " +holder.size() + " in total from calendar #"+teamCalId+".");
     return result;
   }
 
@@ -241,6 +348,14 @@ public class TeamEventSubscription implements Serializable
     return teamCalId;
   }
 
+  /**
+   * @return false if the events of the previous subscription were re-used because the calendar wasn't modified, otherwise true.
+   */
+  public boolean isEventsReplaced()
+  {
+    return eventsReplaced;
+  }
+
   public Long getLastUpdated()
   {
     return lastUpdated;
@@ -250,4 +365,40 @@ public class TeamEventSubscription implements Serializable
   {
     return recurrenceEvents;
   }
+
+  /**
+   * The calculated recurrence events are cached for the last requested time periods.
+   * @param startDate
+   * @param endDate
+   * @param timeZone The time zone of the user (needed for calculating the recurrence events).
+   * @param minimalAccess If true, the recurrence events of minimal copies of the origin events are returned.
+   * @return All recurrence events of this subscription in the given time period (a new list, the events itself are shared).
+   * @see TeamEventUtils#getRecurrenceEvents(Date, Date, TeamEventDO, java.util.TimeZone)
+   */
+  public List<TeamEvent> getRecurrenceEvents(final Date startDate, final Date endDate, final java.util.TimeZone timeZone,
+      final boolean minimalAccess)
+  {
+    final List<TeamEventDO> masters = recurrenceEvents;
+    final String key = startDate.getTime() + "-" + endDate.getTime() + "-" + timeZone.getID() + "-" + minimalAccess;
+    List<TeamEvent> result;
+    synchronized (recurrenceEventsCache) {
+      result = recurrenceEventsCache.get(key);
+    }
+    if (result == null) {
+      result = new ArrayList<TeamEvent>();
+      for (final TeamEventDO master : masters) {
+        final Collection<TeamEvent> events = TeamEventUtils.getRecurrenceEvents(startDate, endDate,
+            minimalAccess == true ? master.createMinimalCopy() : master, timeZone);
+        if (events != null) {
+          result.addAll(events);
+        }
+      }
+      synchronized (recurrenceEventsCache) {
+        if (masters == recurrenceEvents) {
+          recurrenceEventsCache.put(key, result);
+        }
+      }
+    }
+    return new ArrayList<TeamEvent>(result);
+  }
 }
@@ -70,10 +70,15 @@ public class TeamCalCalendarFeedHook implements CalendarFeedHook
 
   public static final String PARAM_EXPORT_REMINDER = "exportReminders";
 
+  /**
+   * Ids of the team calendars separated by ';'.
+   */
+  public static final String PARAM_NAME_TEAM_CALS = "teamCals";
+
   public static final String getUrl(final String teamCalIds, final String additionalParameterString)
   {
     final StringBuffer buf = new StringBuffer();
-    buf.append("&teamCals=" + teamCalIds);
+    buf.append("&" + PARAM_NAME_TEAM_CALS + "=" + teamCalIds);
     if (additionalParameterString != null) {
       buf.append(additionalParameterString);
     }
@@ -91,7 +96,7 @@ public class TeamCalCalendarFeedHook implements CalendarFeedHook
   @Override
   public List<VEvent> getEvents(final Map<String, String> params, final TimeZone timeZone)
   {
-    final String teamCals = params.get("teamCals");
+    final String teamCals = params.get(PARAM_NAME_TEAM_CALS);
     if (teamCals == null) {
       return null;
     }
@@ -23,6 +23,8 @@
 
 package org.projectforge.plugins.teamcal.integration;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.wicket.request.mapper.parameter.PageParameters;
@@ -109,14 +111,17 @@ public class TeamCalCalendarPage extends CalendarPage
       // Nothing to do.
       return;
     }
+    final List<TeamCalDO> subscribedCalendars = new ArrayList<TeamCalDO>();
     for (final Integer calId : visibleCalendarIds) {
       final TeamCalDO teamCalDO = TeamCalCache.getInstance().getCalendar(calId);
       if (teamCalDO == null || teamCalDO.isExternalSubscription() == false) {
         // Nothing to do.
         continue;
       }
-      TeamEventExternalSubscriptionCache.instance().updateCache(teamCalDao, teamCalDO, true);
+      subscribedCalendars.add(teamCalDO);
     }
+    // The calendars are updated in parallel.
+    TeamEventExternalSubscriptionCache.instance().updateCache(teamCalDao, subscribedCalendars, true);
   }
 
   @Override
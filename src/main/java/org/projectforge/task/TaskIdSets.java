@@ -0,0 +1,75 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.task;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The ids of all tasks of the task tree partitioned into allowed and denied ones, e. g. for the select access restrictions of data base
+ * queries.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * @see TaskTree#getTaskIdSets(String, Object, Builder)
+ */
+public class TaskIdSets
+{
+  private final Set<Integer> allowedIds = new HashSet<Integer>();
+
+  private final Set<Integer> deniedIds = new HashSet<Integer>();
+
+  /**
+   * Builds the id sets. Will be called by the task tree if the id sets aren't cached or outdated.
+   */
+  public interface Builder
+  {
+    public void build(TaskNode rootNode, TaskIdSets idSets);
+  }
+
+  public void addAllowedId(final Integer taskId)
+  {
+    allowedIds.add(taskId);
+  }
+
+  public void addDeniedId(final Integer taskId)
+  {
+    deniedIds.add(taskId);
+  }
+
+  /**
+   * @return The ids of the allowed tasks (unmodifiable).
+   */
+  public Set<Integer> getAllowedIds()
+  {
+    return Collections.unmodifiableSet(allowedIds);
+  }
+
+  /**
+   * @return The ids of the denied tasks (unmodifiable).
+   */
+  public Set<Integer> getDeniedIds()
+  {
+    return Collections.unmodifiableSet(deniedIds);
+  }
+}
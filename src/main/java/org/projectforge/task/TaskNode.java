@@ -28,6 +28,7 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
@@ -36,6 +37,7 @@ import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.log4j.Logger;
 import org.dom4j.Element;
+import org.projectforge.access.AccessEntryDO;
 import org.projectforge.access.AccessType;
 import org.projectforge.access.GroupTaskAccessDO;
 import org.projectforge.access.OperationType;
@@ -60,7 +62,10 @@ public class TaskNode implements IdObject<Integer>, Serializable
   ProjektDO projekt;
 
   /** Total duration of all time sheets of this task (excluding the child tasks) in seconds. */
-  long totalDuration = 0;
+  volatile long totalDuration = 0;
+
+  /** Total duration of all time sheets of this task and all descendant tasks in seconds. Maintained by the task tree. */
+  volatile long recursiveDuration = 0;
 
   /**
    * Sum of all ordered person days excluding descendant nodes. Ordered person days are defined by the sum of all assigned order position's
@@ -83,6 +88,20 @@ public class TaskNode implements IdObject<Integer>, Serializable
    */
   private final List<GroupTaskAccessDO> groupTaskAccessList = new ArrayList<GroupTaskAccessDO>();
 
+  /**
+   * The effective permissions of this node calculated by the task tree. Indexed by the group index of the task tree, every element is a bit
+   * set of all permissions (access type x operation type) of the group. Null, if not calculated.
+   * @see #getPermissionBit(AccessType, OperationType)
+   * @see TaskTree#hasPermission(TaskNode, java.util.Collection, AccessType, OperationType)
+   */
+  int[] permissions;
+
+  /**
+   * The permissions inherited by the child nodes (same as permissions, but without the permissions of non-recursive group task accesses of
+   * this node). Nodes without own group task accesses share the array of their parent.
+   */
+  int[] inheritedPermissions;
+
   public TaskNode()
   {
   }
@@ -378,6 +397,80 @@ public class TaskNode implements IdObject<Integer>, Serializable
     return groupAccess == null || groupAccess.isRecursive() == true;
   }
 
+  /**
+   * @return The bit of the given permission used in {@link #permissions}.
+   */
+  static int getPermissionBit(final AccessType accessType, final OperationType opType)
+  {
+    return 1 << (accessType.ordinal() * OperationType.values().length + opType.ordinal());
+  }
+
+  /**
+   * Calculates the effective permissions of this node and all descendant nodes (same result as {@link #hasPermission(Integer, AccessType,
+   * OperationType)} but without walking the tree for every check). Should only be called by TaskTree.
+   * @param groupIndexMap The index of every group with group task accesses (key is the group id).
+   * @param parentPermissions The permissions inherited from the parent node (empty array for the root node).
+   */
+  void calculatePermissions(final Map<Integer, Integer> groupIndexMap, final int[] parentPermissions)
+  {
+    if (parentPermissions == null) {
+      // Ancestor's permissions not calculated.
+      this.permissions = this.inheritedPermissions = null;
+    } else {
+      synchronized (groupTaskAccessList) {
+        if (groupTaskAccessList.isEmpty() == true) {
+          this.permissions = this.inheritedPermissions = parentPermissions;
+        } else {
+          final int[] perms = new int[groupIndexMap.size()];
+          System.arraycopy(parentPermissions, 0, perms, 0, Math.min(parentPermissions.length, perms.length));
+          boolean valid = true;
+          for (final GroupTaskAccessDO access : groupTaskAccessList) {
+            final Integer index = groupIndexMap.get(access.getGroupId());
+            if (index == null || index >= perms.length) {
+              log.error("Oups, group " + access.getGroupId() + " not registered in task tree, can't calculate permissions.");
+              valid = false;
+              break;
+            }
+            int bits = 0;
+            if (access.getAccessEntries() != null) {
+              for (final AccessEntryDO entry : access.getAccessEntries()) {
+                if (entry.getAccessType() == null) {
+                  continue;
+                }
+                for (final OperationType opType : OperationType.values()) {
+                  if (entry.hasPermission(opType) == true) {
+                    bits |= getPermissionBit(entry.getAccessType(), opType);
+                  }
+                }
+              }
+            }
+            perms[index] = bits;
+          }
+          if (valid == false) {
+            this.permissions = this.inheritedPermissions = null;
+          } else {
+            int[] inherited = perms;
+            for (final GroupTaskAccessDO access : groupTaskAccessList) {
+              if (access.isRecursive() == false) {
+                if (inherited == perms) {
+                  inherited = perms.clone();
+                }
+                inherited[groupIndexMap.get(access.getGroupId())] = 0;
+              }
+            }
+            this.permissions = perms;
+            this.inheritedPermissions = inherited;
+          }
+        }
+      }
+    }
+    if (this.childs != null) {
+      for (final TaskNode child : this.childs) {
+        child.calculatePermissions(groupIndexMap, this.inheritedPermissions);
+      }
+    }
+  }
+
   /**
    * Gets the GroupTaskAccessDO for the given group.
    * @param groupId
@@ -442,16 +535,22 @@ public class TaskNode implements IdObject<Integer>, Serializable
    */
   public long getDuration(final TaskTree taskTree, final boolean recursive)
   {
-    if (totalDuration < 0) {
-      taskTree.readTotalDuration(this.getId());
-    }
-    if (recursive == false || childs == null) {
-      return totalDuration;
-    }
+    return recursive == true ? recursiveDuration : totalDuration;
+  }
+
+  /**
+   * Calculates the recursive durations of this node and all descendant nodes from the total durations. Should only be called by TaskTree.
+   * @return The recursive duration of this node.
+   */
+  long calculateRecursiveDuration()
+  {
     long duration = totalDuration;
-    for (final TaskNode child : childs) {
-      duration += child.getDuration(taskTree, true);
+    if (childs != null) {
+      for (final TaskNode child : childs) {
+        duration += child.calculateRecursiveDuration();
+      }
     }
+    this.recursiveDuration = duration;
     return duration;
   }
 
@@ -28,16 +28,25 @@ import java.io.Serializable;
 import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.MapUtils;
+import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.Validate;
 import org.apache.log4j.Logger;
 import org.apache.wicket.spring.injection.annot.SpringBean;
@@ -48,6 +57,7 @@ import org.dom4j.io.OutputFormat;
 import org.dom4j.io.XMLWriter;
 import org.hibernate.Hibernate;
 import org.projectforge.access.AccessDao;
+import org.projectforge.access.AccessType;
 import org.projectforge.access.GroupTaskAccessDO;
 import org.projectforge.access.OperationType;
 import org.projectforge.common.AbstractCache;
@@ -91,6 +101,10 @@ public class TaskTree extends AbstractCache implements Serializable
 
   private static final List<TaskNode> EMPTY_LIST = new ArrayList<TaskNode>();
 
+  private static final int[] EMPTY_PERMISSIONS = new int[0];
+
+  private static final int TASK_ID_SETS_CACHE_MAX_SIZE = 1000;
+
   /** For log messages. */
   private static final Logger log = Logger.getLogger(TaskTree.class);
 
@@ -98,10 +112,33 @@ public class TaskTree extends AbstractCache implements Serializable
   private long timeOfLastModification = 0;
 
   /** For faster searching of entries. */
-  private Map<Integer, TaskNode> taskMap;
+  private volatile Map<Integer, TaskNode> taskMap;
 
   /** The root node of all tasks. The only node with parent null. */
-  private TaskNode root = null;
+  private volatile TaskNode root = null;
+
+  /**
+   * Index of all groups with group task accesses (key is the group id) used by the calculated permissions of the task nodes. Entries are
+   * only added (copy on write), so the index of a group never changes.
+   */
+  private volatile Map<Integer, Integer> groupIndexMap = new HashMap<Integer, Integer>();
+
+  /**
+   * Cached task id sets by key (see {@link #getTaskIdSets(String, Object, TaskIdSets.Builder)}). Only entries of the current generation are
+   * valid, the generation is incremented on every modification of the tree or of the group task accesses. The keys are user specific, so
+   * the least recently used entries are removed if more than {@link #TASK_ID_SETS_CACHE_MAX_SIZE} entries are cached.
+   */
+  private final Map<String, CachedTaskIdSets> taskIdSetsCache = new LinkedHashMap<String, CachedTaskIdSets>(16, 0.75f, true) {
+    private static final long serialVersionUID = -3591390826432719651L;
+
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<String, CachedTaskIdSets> eldest)
+    {
+      return size() > TASK_ID_SETS_CACHE_MAX_SIZE;
+    }
+  };
+
+  private volatile long taskIdSetsGeneration = 0;
 
   private Map<Integer, Set<AuftragsPositionVO>> orderPositionReferences;
 
@@ -113,30 +150,37 @@ public class TaskTree extends AbstractCache implements Serializable
     return this.root;
   }
 
-  /** Adds the given node as child of the given parent. */
-  private synchronized TaskNode addTaskNode(final TaskNode node, final TaskNode parent)
+  /**
+   * Adds a new node with the given data. The given Task holds all data and the information (id) of the parent node of the node to add. Will
+   * be called by TaskDAO after inserting a new task.
+   */
+  TaskNode addTaskNode(final TaskDO task)
   {
     checkRefresh();
-    if (parent != null) {
-      node.setParent(parent);
-      parent.addChild(node);
+    synchronized (this) {
+      final TaskNode node = internalAddTaskNode(task);
+      afterModification(new Runnable() {
+        @Override
+        public void run()
+        {
+          internalAddOrUpdateTaskNode(task);
+        }
+      });
+      return node;
     }
-    updateTimeOfLastModification();
-    return node;
   }
 
   /**
-   * Adds a new node with the given data. The given Task holds all data and the information (id) of the parent node of the node to add. Will
-   * be called by TaskDAO after inserting a new task.
+   * Must be called synchronized on this tree.
    */
-  TaskNode addTaskNode(final TaskDO task)
+  private TaskNode internalAddTaskNode(final TaskDO task)
   {
-    checkRefresh();
     final TaskNode node = new TaskNode();
     node.setTask(task);
-    final TaskNode parent = getTaskNodeById(task.getParentTaskId());
+    final TaskNode parent = task.getParentTaskId() != null ? taskMap.get(task.getParentTaskId()) : null;
     if (parent != null) {
       node.setParent(parent);
+      parent.addChild(node);
     } else if (root == null) {
       // this is the root node:
       root = node;
@@ -149,7 +193,10 @@ public class TaskTree extends AbstractCache implements Serializable
     final TimesheetDO timesheet = new TimesheetDO().setTask(task);
     final boolean bookable = timesheetDao.checkTaskBookable(timesheet, null, OperationType.INSERT, false);
     node.bookableForTimesheets = bookable;
-    return addTaskNode(node, parent);
+    calculatePermissions(node);
+    invalidateTaskIdSets();
+    updateTimeOfLastModification();
+    return node;
   }
 
   /**
@@ -220,11 +267,24 @@ public class TaskTree extends AbstractCache implements Serializable
 
   public void internalSetProject(final Integer taskId, final ProjektDO projekt)
   {
-    final TaskNode node = getTaskNodeById(taskId);
-    if (node == null) {
-      throw new InternalErrorException("Could not found task with id " + taskId + " in internalSetProject");
+    checkRefresh();
+    synchronized (this) {
+      final TaskNode node = taskMap.get(taskId);
+      if (node == null) {
+        throw new InternalErrorException("Could not found task with id " + taskId + " in internalSetProject");
+      }
+      node.projekt = projekt;
+      afterModification(new Runnable() {
+        @Override
+        public void run()
+        {
+          final TaskNode newNode = taskMap.get(taskId);
+          if (newNode != null) {
+            newNode.projekt = projekt;
+          }
+        }
+      });
     }
-    node.projekt = projekt;
   }
 
   /**
@@ -342,17 +402,54 @@ public class TaskTree extends AbstractCache implements Serializable
   }
 
   /**
-   * Should be called after modification of a time sheet assigned to the given task id.
+   * Should be called after modification of a time sheet assigned to the given task id. The total duration of the task and the recursive
+   * durations of the task and all ancestor tasks will be updated (no data base access is needed).
    * @param taskId
+   * @param seconds The duration to add (negative for removing time sheet durations).
    */
-  public void resetTotalDuration(final Integer taskId)
+  public void addTotalDuration(final Integer taskId, final long seconds)
   {
-    final TaskNode node = getTaskNodeById(taskId);
-    if (node == null) {
-      log.error("Task id '" + taskId + "' not found.");
-      return;
+    checkRefresh();
+    synchronized (this) {
+      final TaskNode node = taskMap.get(taskId);
+      if (node == null) {
+        log.error("Task id '" + taskId + "' not found.");
+        return;
+      }
+      setTotalDuration(node, node.totalDuration + seconds);
+    }
+  }
+
+  /**
+   * Sets the total duration of the given node and updates the recursive durations of the node and all ancestor nodes. Must be called
+   * synchronized on this tree.
+   */
+  private void setTotalDuration(final TaskNode node, final long duration)
+  {
+    addRecursiveDuration(node, duration - node.totalDuration);
+    node.totalDuration = duration;
+    final Integer taskId = node.getId();
+    // The absolute duration is replayed, because the refreshed tree may contain the modification already:
+    afterModification(new Runnable() {
+      @Override
+      public void run()
+      {
+        final TaskNode newNode = taskMap.get(taskId);
+        if (newNode != null && newNode.totalDuration != duration) {
+          setTotalDuration(newNode, duration);
+        }
+      }
+    });
+  }
+
+  /**
+   * Adds the given duration to the recursive duration of the given node and all ancestor nodes.
+   */
+  private void addRecursiveDuration(final TaskNode node, final long seconds)
+  {
+    for (TaskNode n = node; n != null; n = n.parent) {
+      n.recursiveDuration += seconds;
     }
-    node.totalDuration = -1;
   }
 
   /**
@@ -364,9 +461,27 @@ public class TaskTree extends AbstractCache implements Serializable
     checkRefresh();
     Validate.notNull(task);
     Validate.notNull(task.getId());
-    final TaskNode node = getTaskNodeById(task.getId());
+    synchronized (this) {
+      final TaskNode node = internalAddOrUpdateTaskNode(task);
+      afterModification(new Runnable() {
+        @Override
+        public void run()
+        {
+          internalAddOrUpdateTaskNode(task);
+        }
+      });
+      return node;
+    }
+  }
+
+  /**
+   * Must be called synchronized on this tree.
+   */
+  private TaskNode internalAddOrUpdateTaskNode(final TaskDO task)
+  {
+    final TaskNode node = taskMap.get(task.getId());
     if (node == null) {
-      return addTaskNode(task);
+      return internalAddTaskNode(task);
     }
     node.setTask(task);
     if (task.getParentTaskId() != null && task.getParentTaskId().equals(node.getParent().getId()) == false) {
@@ -376,10 +491,15 @@ public class TaskTree extends AbstractCache implements Serializable
       final TaskNode oldParent = node.getParent();
       Validate.notNull(oldParent);
       oldParent.removeChild(node);
-      final TaskNode newParent = getTaskNodeById(task.getParentTaskId());
+      addRecursiveDuration(oldParent, -node.recursiveDuration);
+      final TaskNode newParent = taskMap.get(task.getParentTaskId());
       node.setParent(newParent);
       newParent.addChild(node);
+      addRecursiveDuration(newParent, node.recursiveDuration);
+      calculatePermissions(node);
     }
+    // E. g. the protection of privacy may be changed:
+    invalidateTaskIdSets();
     updateTimeOfLastModification();
     return node;
   }
@@ -392,9 +512,25 @@ public class TaskTree extends AbstractCache implements Serializable
   public void setGroupTaskAccess(final GroupTaskAccessDO groupTaskAccess)
   {
     checkRefresh();
-    final Integer taskId = groupTaskAccess.getTaskId();
-    final TaskNode node = taskMap.get(taskId);
+    synchronized (this) {
+      internalSetGroupTaskAccess(groupTaskAccess);
+      afterModification(new Runnable() {
+        @Override
+        public void run()
+        {
+          internalSetGroupTaskAccess(groupTaskAccess);
+        }
+      });
+    }
+  }
+
+  private void internalSetGroupTaskAccess(final GroupTaskAccessDO groupTaskAccess)
+  {
+    final TaskNode node = taskMap.get(groupTaskAccess.getTaskId());
+    ensureGroupIndexes(Collections.singleton(groupTaskAccess.getGroupId()));
     node.setGroupTaskAccess(groupTaskAccess);
+    calculatePermissions(node);
+    invalidateTaskIdSets();
   }
 
   /**
@@ -405,9 +541,144 @@ public class TaskTree extends AbstractCache implements Serializable
   public void removeGroupTaskAccess(final GroupTaskAccessDO groupTaskAccess)
   {
     checkRefresh();
-    final Integer taskId = groupTaskAccess.getTaskId();
-    final TaskNode node = taskMap.get(taskId);
+    synchronized (this) {
+      internalRemoveGroupTaskAccess(groupTaskAccess);
+      afterModification(new Runnable() {
+        @Override
+        public void run()
+        {
+          internalRemoveGroupTaskAccess(groupTaskAccess);
+        }
+      });
+    }
+  }
+
+  private void internalRemoveGroupTaskAccess(final GroupTaskAccessDO groupTaskAccess)
+  {
+    final TaskNode node = taskMap.get(groupTaskAccess.getTaskId());
     node.removeGroupTaskAccess(groupTaskAccess.getGroupId());
+    calculatePermissions(node);
+    invalidateTaskIdSets();
+  }
+
+  /**
+   * Checks the desired permission for the given groups to the given task by using the calculated permissions of the node (no walk through
+   * the ancestor nodes is needed).
+   * @param node
+   * @param groupIds The groups of the user.
+   * @param accessType
+   * @param opType
+   * @return true, if at least one of the given groups has the permission.
+   * @see TaskNode#hasPermission(Integer, AccessType, OperationType)
+   */
+  public boolean hasPermission(final TaskNode node, final Collection<Integer> groupIds, final AccessType accessType,
+      final OperationType opType)
+  {
+    final int[] permissions = node.permissions;
+    if (permissions == null) {
+      // Permissions not calculated (shouldn't occur), so check the slow way:
+      for (final Integer groupId : groupIds) {
+        if (node.hasPermission(groupId, accessType, opType) == true) {
+          return true;
+        }
+      }
+      return false;
+    }
+    final Map<Integer, Integer> indexMap = this.groupIndexMap;
+    final int bit = TaskNode.getPermissionBit(accessType, opType);
+    for (final Integer groupId : groupIds) {
+      final Integer index = indexMap.get(groupId);
+      if (index != null && index < permissions.length && (permissions[index] & bit) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gets the ids of all tasks partitioned into allowed and denied ones (e. g. the tasks with select access of a user for restricting data
+   * base queries). The id sets are cached until the task tree or any group task access is modified, so the walk through the whole tree
+   * isn't needed for every query.
+   * @param key The unique key of the id sets, e. g. the dao class and the user id.
+   * @param dependency Further state the id sets depend on (e. g. the group ids of the user). The id sets are rebuilt if the given dependency
+   *          isn't equal to the dependency of the cached id sets.
+   * @param builder Builds the id sets if not cached.
+   * @return The id sets, do not modify them.
+   */
+  public TaskIdSets getTaskIdSets(final String key, final Object dependency, final TaskIdSets.Builder builder)
+  {
+    checkRefresh();
+    final long generation = this.taskIdSetsGeneration;
+    final CachedTaskIdSets cached;
+    synchronized (taskIdSetsCache) {
+      cached = taskIdSetsCache.get(key);
+    }
+    if (cached != null && cached.generation == generation && ObjectUtils.equals(cached.dependency, dependency) == true) {
+      return cached.idSets;
+    }
+    final TaskIdSets idSets = new TaskIdSets();
+    builder.build(getRootTaskNode(), idSets);
+    if (generation == this.taskIdSetsGeneration) {
+      // Don't cache the id sets if the tree was modified meanwhile.
+      synchronized (taskIdSetsCache) {
+        taskIdSetsCache.put(key, new CachedTaskIdSets(generation, dependency, idSets));
+      }
+    }
+    return idSets;
+  }
+
+  private void invalidateTaskIdSets()
+  {
+    taskIdSetsGeneration++;
+    synchronized (taskIdSetsCache) {
+      taskIdSetsCache.clear();
+    }
+  }
+
+  private static class CachedTaskIdSets
+  {
+    private final long generation;
+
+    private final Object dependency;
+
+    private final TaskIdSets idSets;
+
+    private CachedTaskIdSets(final long generation, final Object dependency, final TaskIdSets idSets)
+    {
+      this.generation = generation;
+      this.dependency = dependency;
+      this.idSets = idSets;
+    }
+  }
+
+  /**
+   * Calculates the permissions of the given node and all its descendant nodes.
+   * @param node
+   */
+  private synchronized void calculatePermissions(final TaskNode node)
+  {
+    final int[] parentPermissions = node.parent != null ? node.parent.inheritedPermissions : EMPTY_PERMISSIONS;
+    node.calculatePermissions(groupIndexMap, parentPermissions);
+  }
+
+  /**
+   * Adds the missing groups to the group index (copy on write).
+   */
+  private synchronized void ensureGroupIndexes(final Collection<Integer> groupIds)
+  {
+    Map<Integer, Integer> map = null;
+    for (final Integer groupId : groupIds) {
+      if ((map != null ? map : groupIndexMap).containsKey(groupId) == true) {
+        continue;
+      }
+      if (map == null) {
+        map = new HashMap<Integer, Integer>(groupIndexMap);
+      }
+      map.put(groupId, map.size());
+    }
+    if (map != null) {
+      this.groupIndexMap = map;
+    }
   }
 
   public long getTimeOfLastModification()
@@ -524,6 +795,13 @@ public class TaskTree extends AbstractCache implements Serializable
   {
     synchronized (this) {
       this.orderPositionReferencesDirty = true;
+      afterModification(new Runnable() {
+        @Override
+        public void run()
+        {
+          orderPositionReferencesDirty = true;
+        }
+      });
     }
   }
 
@@ -541,30 +819,41 @@ public class TaskTree extends AbstractCache implements Serializable
     synchronized (this) {
       if (this.orderPositionReferencesDirty == true) {
         this.orderPositionReferences = auftragDao.getTaskReferences();
-        if (this.orderPositionReferences != null) {
-          resetOrderPersonDays(this.root);
-          for (final Map.Entry<Integer, Set<AuftragsPositionVO>> entry : this.orderPositionReferences.entrySet()) {
-            final TaskNode node = getTaskNodeById(entry.getKey());
-            node.orderedPersonDays = null;
-            if (CollectionUtils.isNotEmpty(entry.getValue()) == true) {
-              for (final AuftragsPositionVO pos : entry.getValue()) {
-                if (pos.getPersonDays() == null) {
-                  continue;
-                }
-                if (node.orderedPersonDays == null) {
-                  node.orderedPersonDays = BigDecimal.ZERO;
-                }
-                node.orderedPersonDays = node.orderedPersonDays.add(pos.getPersonDays());
-              }
-            }
-          }
-        }
+        setOrderedPersonDays(this.root, this.taskMap, this.orderPositionReferences);
         this.orderPositionReferencesDirty = false;
       }
       return this.orderPositionReferences;
     }
   }
 
+  private void setOrderedPersonDays(final TaskNode rootNode, final Map<Integer, TaskNode> nodeMap,
+      final Map<Integer, Set<AuftragsPositionVO>> orderPositions)
+  {
+    if (orderPositions == null) {
+      return;
+    }
+    resetOrderPersonDays(rootNode);
+    for (final Map.Entry<Integer, Set<AuftragsPositionVO>> entry : orderPositions.entrySet()) {
+      final TaskNode node = nodeMap.get(entry.getKey());
+      if (node == null) {
+        log.warn("Task not found: " + entry.getKey());
+        continue;
+      }
+      node.orderedPersonDays = null;
+      if (CollectionUtils.isNotEmpty(entry.getValue()) == true) {
+        for (final AuftragsPositionVO pos : entry.getValue()) {
+          if (pos.getPersonDays() == null) {
+            continue;
+          }
+          if (node.orderedPersonDays == null) {
+            node.orderedPersonDays = BigDecimal.ZERO;
+          }
+          node.orderedPersonDays = node.orderedPersonDays.add(pos.getPersonDays());
+        }
+      }
+    }
+  }
+
   private void resetOrderPersonDays(final TaskNode node)
   {
     node.orderedPersonDays = null;
@@ -738,12 +1027,12 @@ public class TaskTree extends AbstractCache implements Serializable
   /**
    * Reads the sum of all time sheet durations grouped by task id and set the total duration of found taskNodes.
    */
-  private void readTotalDurations()
+  private void readTotalDurations(final Map<Integer, TaskNode> nodeMap)
   {
     final List<Object[]> list = taskDao.readTotalDurations();
     for (final Object[] res : list) {
       final Integer taskId = (Integer) res[1];
-      final TaskNode node = getTaskNodeById(taskId);
+      final TaskNode node = nodeMap.get(taskId);
       if (node == null) {
         log.warn("Task not found: " + taskId);
       } else {
@@ -757,16 +1046,20 @@ public class TaskTree extends AbstractCache implements Serializable
   }
 
   /**
-   * Reads the sum of all time sheet durations grouped by task id and set the total duration of found taskNodes.
+   * Reads the sum of all time sheet durations of the given task from the data base and updates the total duration of the task node (and the
+   * recursive durations of the ancestor nodes).
    */
   public void readTotalDuration(final Integer taskId)
   {
     final long duration = taskDao.readTotalDuration(taskId);
-    final TaskNode node = getTaskNodeById(taskId);
-    if (node == null) {
-      log.warn("Task not found: " + taskId);
-    } else {
-      node.totalDuration = duration;
+    checkRefresh();
+    synchronized (this) {
+      final TaskNode node = taskMap.get(taskId);
+      if (node == null) {
+        log.warn("Task not found: " + taskId);
+      } else {
+        setTotalDuration(node, duration);
+      }
     }
   }
 
@@ -798,15 +1091,19 @@ public class TaskTree extends AbstractCache implements Serializable
       log.info(sth);
       return;
     }
+    final long start = System.currentTimeMillis();
+    final StringBuffer timings = new StringBuffer();
+    // The new tree is built in local variables without any lock, so the current tree is usable and modifiable until the new one is
+    // assigned (see asyncRefresh). Modifications of the current tree done meanwhile are replayed afterwards (see afterModification).
     TaskNode newRoot = null;
-    taskMap = new HashMap<Integer, TaskNode>();
+    final Map<Integer, TaskNode> newTaskMap = new HashMap<Integer, TaskNode>();
     final List<TaskDO> taskList = taskDao.internalLoadAll();
     TaskNode node;
     log.debug("Loading list of tasks ...");
     for (final TaskDO task : taskList) {
       node = new TaskNode();
       node.setTask(task);
-      taskMap.put(node.getTaskId(), node);
+      newTaskMap.put(node.getTaskId(), node);
       if (node.isRootNode() == true) {
         if (newRoot != null) {
           log.error("Duplicate root node found: " + newRoot.getId() + " and " + node.getId());
@@ -825,21 +1122,23 @@ public class TaskTree extends AbstractCache implements Serializable
       final TaskDO rootTask = new TaskDO();
       rootTask.setTitle("root");
       rootTask.setShortDescription("ProjectForge root task");
+      // Database is empty, so there is no old tree worth serving while the root task is saved:
+      this.taskMap = newTaskMap;
       taskDao.internalSave(rootTask);
       newRoot = new TaskNode();
       newRoot.setTask(rootTask);
-      taskMap.put(newRoot.getTaskId(), newRoot);
+      newTaskMap.put(newRoot.getTaskId(), newRoot);
     }
-    this.root = newRoot;
+    long lap = appendTiming(timings, "loading tasks", start);
     if (log.isDebugEnabled() == true) {
       log.debug("Creating tree for " + taskList.size() + " tasks ...");
     }
     for (final TaskDO task : taskList) {
       TaskNode parentNode = null;
-      node = taskMap.get(task.getId());
+      node = newTaskMap.get(task.getId());
       final Integer parentId = task.getParentTaskId();
       if (parentId != null) {
-        parentNode = taskMap.get(parentId);
+        parentNode = newTaskMap.get(parentId);
       }
       // log.debug("Processing node: " + node.getId() + ", parent: " + parentId);
       if (parentNode != null) {
@@ -852,18 +1151,25 @@ public class TaskTree extends AbstractCache implements Serializable
     }
 
     if (log.isDebugEnabled() == true) {
-      log.debug(this.root);
+      log.debug(newRoot);
     }
+    lap = appendTiming(timings, "building tree", lap);
 
     // Now read all explicit group task access' from the database:
     final List<GroupTaskAccessDO> accessList = accessDao.internalLoadAll();
+    final Set<Integer> groupIds = new HashSet<Integer>();
     for (final GroupTaskAccessDO access : accessList) {
-      node = taskMap.get(access.getTaskId());
+      node = newTaskMap.get(access.getTaskId());
       node.setGroupTaskAccess(access);
+      groupIds.add(access.getGroupId());
       if (log.isDebugEnabled() == true) {
         log.debug(access.toString());
       }
     }
+    // The index of a group has to be stable, because the old tree is still in use, so groups are only added:
+    ensureGroupIndexes(groupIds);
+    newRoot.calculatePermissions(this.groupIndexMap, EMPTY_PERMISSIONS);
+    lap = appendTiming(timings, "accesses", lap);
     // Now read all projects with their references to tasks:
     final List<ProjektDO> projects = projektDao.internalLoadAll();
     if (projects != null) {
@@ -871,7 +1177,7 @@ public class TaskTree extends AbstractCache implements Serializable
         if (project.isDeleted() == true || project.getTaskId() == null) {
           continue;
         }
-        node = taskMap.get(project.getTaskId());
+        node = newTaskMap.get(project.getTaskId());
         if (node == null) {
           log.error("Oups, should not occur: project references a non existing task: " + project);
         } else {
@@ -879,21 +1185,129 @@ public class TaskTree extends AbstractCache implements Serializable
         }
       }
     }
+    lap = appendTiming(timings, "projects", lap);
+    readTotalDurations(newTaskMap);
+    newRoot.calculateRecursiveDuration();
+    lap = appendTiming(timings, "durations", lap);
+    // Now update the ordered person days and the status: bookable for time sheets:
+    final Map<Integer, Set<AuftragsPositionVO>> orderPositions = auftragDao.getTaskReferences();
+    setOrderedPersonDays(newRoot, newTaskMap, orderPositions);
+    updateBookableForTimesheets(newRoot, orderPositions);
+    appendTiming(timings, "bookable status", lap);
+    // Now the new tree is complete, so assign it:
+    synchronized (this) {
+      this.taskMap = newTaskMap;
+      this.root = newRoot;
+      this.orderPositionReferences = orderPositions;
+      this.orderPositionReferencesDirty = false;
+      invalidateTaskIdSets();
+    }
     if (log.isDebugEnabled() == true) {
       log.debug(this.toString());
     }
-    readTotalDurations();
-    refreshOrderPositionReferences();
-    // Now update the status: bookable for time sheets:
-    final TimesheetDao timesheetDao = Registry.instance().getDao(TimesheetDao.class);
-    final TimesheetDO timesheet = new TimesheetDO();
-    for (final TaskDO task : taskList) {
-      node = taskMap.get(task.getId());
-      timesheet.setTask(task);
-      final boolean bookable = timesheetDao.checkTaskBookable(timesheet, null, OperationType.INSERT, false);
-      node.bookableForTimesheets = bookable;
+    log.info("Initializing task tree with " + taskList.size() + " tasks done in " + (System.currentTimeMillis() - start) + "ms (" + timings
+        + ").");
+  }
+
+  private static long appendTiming(final StringBuffer timings, final String phase, final long lap)
+  {
+    final long now = System.currentTimeMillis();
+    if (timings.length() > 0) {
+      timings.append(", ");
+    }
+    timings.append(phase).append(": ").append(now - lap).append("ms");
+    return now;
+  }
+
+  /**
+   * Calculates the status "bookable for time sheets" of the given root node and all descendant nodes in one top-down traversal instead of
+   * calling TimesheetDao#checkTaskBookable for every task (the result is the same as for inserting a new time sheet). The sub trees of the
+   * root's child nodes are independent, so they will be processed in parallel.
+   * @param rootNode
+   * @param orderPositions The order positions by task id.
+   * @see TimesheetDao#checkTaskBookable(TimesheetDO, TimesheetDO, OperationType, boolean)
+   */
+  private void updateBookableForTimesheets(final TaskNode rootNode, final Map<Integer, Set<AuftragsPositionVO>> orderPositions)
+  {
+    final TaskDO rootTask = rootNode.getTask();
+    final boolean closed = isClosedForBooking(rootTask);
+    final boolean onlyLeafs = rootTask.getTimesheetBookingStatus() == TimesheetBookingStatus.ONLY_LEAFS;
+    final TimesheetBookingStatus bookingStatus = rootTask.getTimesheetBookingStatus();
+    boolean orderPositionsInSubTasks = false;
+    if (rootNode.hasChilds() == true) {
+      final int numberOfThreads = Math.min(Runtime.getRuntime().availableProcessors(), rootNode.getChilds().size());
+      final ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+      try {
+        final List<Callable<Boolean>> jobs = new ArrayList<Callable<Boolean>>();
+        for (final TaskNode child : rootNode.getChilds()) {
+          jobs.add(new Callable<Boolean>() {
+            @Override
+            public Boolean call()
+            {
+              return updateBookableForTimesheets(child, closed, onlyLeafs, bookingStatus, orderPositions);
+            }
+          });
+        }
+        for (final Future<Boolean> future : executor.invokeAll(jobs)) {
+          if (future.get() == true) {
+            orderPositionsInSubTasks = true;
+          }
+        }
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new InternalErrorException("Interrupted while calculating the bookable status of tasks.");
+      } catch (final ExecutionException ex) {
+        throw new InternalErrorException("Error while calculating the bookable status of tasks: " + ex.getCause().getMessage());
+      } finally {
+        executor.shutdown();
+      }
+    }
+    rootNode.bookableForTimesheets = isBookable(rootNode, closed, onlyLeafs, bookingStatus, orderPositionsInSubTasks);
+  }
+
+  /**
+   * @return true, if the given node or any descendant node has order positions.
+   */
+  private static boolean updateBookableForTimesheets(final TaskNode node, final boolean ancestorClosed, final boolean ancestorOnlyLeafs,
+      final TimesheetBookingStatus ancestorBookingStatus, final Map<Integer, Set<AuftragsPositionVO>> orderPositions)
+  {
+    final TaskDO task = node.getTask();
+    final boolean closed = ancestorClosed == true || isClosedForBooking(task) == true;
+    final boolean onlyLeafs = ancestorOnlyLeafs == true || task.getTimesheetBookingStatus() == TimesheetBookingStatus.ONLY_LEAFS;
+    final TimesheetBookingStatus bookingStatus = task.getTimesheetBookingStatus() == TimesheetBookingStatus.INHERIT ? ancestorBookingStatus
+        : task.getTimesheetBookingStatus();
+    boolean orderPositionsInSubTasks = false;
+    if (node.hasChilds() == true) {
+      for (final TaskNode child : node.getChilds()) {
+        if (updateBookableForTimesheets(child, closed, onlyLeafs, bookingStatus, orderPositions) == true) {
+          orderPositionsInSubTasks = true;
+        }
+      }
     }
-    log.info("Initializing task tree done.");
+    node.bookableForTimesheets = isBookable(node, closed, onlyLeafs, bookingStatus, orderPositionsInSubTasks);
+    return orderPositionsInSubTasks == true || (orderPositions != null && CollectionUtils.isNotEmpty(orderPositions.get(node.getId())) == true);
+  }
+
+  private static boolean isBookable(final TaskNode node, final boolean closed, final boolean onlyLeafs,
+      final TimesheetBookingStatus bookingStatus, final boolean orderPositionsInSubTasks)
+  {
+    if (closed == true || bookingStatus == TimesheetBookingStatus.NO_BOOKING) {
+      return false;
+    }
+    if (node.hasChilds() == true && (onlyLeafs == true || orderPositionsInSubTasks == true)) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return true, if the task is deleted, not opened or has the booking status TREE_CLOSED.
+   */
+  private static boolean isClosedForBooking(final TaskDO task)
+  {
+    return task.isDeleted() == true
+        || task.getStatus().isIn(TaskStatus.O, TaskStatus.N) == false
+        || task.getTimesheetBookingStatus() == TimesheetBookingStatus.TREE_CLOSED;
   }
 
   private void updateTimeOfLastModification()
@@ -24,42 +24,56 @@
 package org.projectforge.timesheet;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.log4j.Logger;
+import org.hibernate.Criteria;
 import org.hibernate.Hibernate;
 import org.hibernate.Query;
+import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.type.StandardBasicTypes;
+import org.hibernate.type.Type;
 import org.projectforge.access.AccessException;
 import org.projectforge.access.AccessType;
 import org.projectforge.access.OperationType;
 import org.projectforge.common.DateHelper;
 import org.projectforge.common.DateHolder;
 import org.projectforge.common.NumberHelper;
+import org.projectforge.core.AutocompletionIndex;
 import org.projectforge.core.BaseDao;
 import org.projectforge.core.BaseSearchFilter;
+import org.projectforge.core.ListEntryHandler;
 import org.projectforge.core.MessageParam;
 import org.projectforge.core.OrderDirection;
+import org.projectforge.core.PageRequest;
 import org.projectforge.core.QueryFilter;
 import org.projectforge.core.UserException;
+import org.projectforge.database.HibernateUtils;
 import org.projectforge.database.SQLHelper;
 import org.projectforge.fibu.kost.Kost2DO;
 import org.projectforge.fibu.kost.Kost2Dao;
 import org.projectforge.task.TaskDO;
+import org.projectforge.task.TaskIdSets;
 import org.projectforge.task.TaskNode;
 import org.projectforge.task.TaskStatus;
 import org.projectforge.task.TaskTree;
@@ -68,9 +82,13 @@ import org.projectforge.user.PFUserContext;
 import org.projectforge.user.PFUserDO;
 import org.projectforge.user.ProjectForgeGroup;
 import org.projectforge.user.UserDao;
+import org.projectforge.web.calendar.CalendarFeed;
+import org.projectforge.web.calendar.CalendarFeedCache;
 import org.projectforge.web.timesheet.TimesheetListFilter;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * 
@@ -99,13 +117,44 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
 
   private static final Logger log = Logger.getLogger(TimesheetDao.class);
 
+  /**
+   * Sort properties supported by paged list queries.
+   */
+  private static final String[] PAGEABLE_SORT_PROPERTIES = { "startTime", "stopTime", "location", "description"};
+
   private TaskTree taskTree;
 
   private UserDao userDao;
 
   private Kost2Dao kost2Dao;
 
-  private final Map<Integer, Set<Integer>> timesheetsWithOverlapByUser = new HashMap<Integer, Set<Integer>>();
+  /**
+   * Time periods of the time sheets by user (loaded lazily). Each user's index has its own lock.
+   */
+  private final ConcurrentMap<Integer, UserTimesheetIntervals> timesheetIntervalsByUser = new ConcurrentHashMap<Integer, UserTimesheetIntervals>();
+
+  /**
+   * Number of not yet completed transactions modifying the time sheets of the user (by user). The user's index is updated after the commit,
+   * so it isn't used for the overlap detection while any modification is pending.
+   */
+  private final ConcurrentMap<Integer, AtomicInteger> pendingIntervalModificationsByUser = new ConcurrentHashMap<Integer, AtomicInteger>();
+
+  private static final int MAX_LOCATION_INDEXES = 100;
+
+  /**
+   * Locations of the time sheets by user for the autocompletion (loaded lazily). The indexes of the least recently used users are removed
+   * if more than {@link #MAX_LOCATION_INDEXES} users are indexed, expired indexes (see {@link AutocompletionIndex#isExpired()}) are
+   * removed on their next usage.
+   */
+  private final Map<Integer, AutocompletionIndex> locationIndexByUser = new LinkedHashMap<Integer, AutocompletionIndex>(16, 0.75f, true) {
+    private static final long serialVersionUID = 2520429484395767466L;
+
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<Integer, AutocompletionIndex> eldest)
+    {
+      return size() > MAX_LOCATION_INDEXES;
+    }
+  };
 
   public void setTaskTree(final TaskTree taskTree)
   {
@@ -252,17 +301,7 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
   @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
   public List<TimesheetDO> getList(final BaseSearchFilter filter) throws AccessException
   {
-    final TimesheetFilter myFilter;
-    if (filter instanceof TimesheetFilter) {
-      myFilter = (TimesheetFilter) filter;
-    } else {
-      myFilter = new TimesheetFilter(filter);
-    }
-    if (myFilter.getStopTime() != null) {
-      final DateHolder date = new DateHolder(myFilter.getStopTime());
-      date.setEndOfDay();
-      myFilter.setStopTime(date.getDate());
-    }
+    final TimesheetFilter myFilter = getTimesheetFilter(filter);
     final QueryFilter queryFilter = buildQueryFilter(myFilter);
     List<TimesheetDO> result = getList(queryFilter);
     if (result == null) {
@@ -293,6 +332,165 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
     return result;
   }
 
+  /**
+   * Processes the time sheets matching the given filter one by one without holding all of them in memory (e. g. for reports over a long
+   * time period). The time sheets aren't marked as overlapping and the marked flag of the filter is ignored.
+   * @param filter
+   * @param handler
+   * @return The number of processed time sheets.
+   * @see BaseDao#processList(QueryFilter, ListEntryHandler)
+   */
+  public int processList(final BaseSearchFilter filter, final ListEntryHandler<TimesheetDO> handler) throws AccessException
+  {
+    final QueryFilter queryFilter = buildQueryFilter(getTimesheetFilter(filter));
+    return processList(queryFilter, handler);
+  }
+
+  /**
+   * @see org.projectforge.core.BaseDao#createQueryFilter(org.projectforge.core.BaseSearchFilter)
+   */
+  @Override
+  public QueryFilter createQueryFilter(final BaseSearchFilter filter)
+  {
+    return buildQueryFilter(getTimesheetFilter(filter));
+  }
+
+  /**
+   * Paged list queries aren't supported for full text searches, if only time sheets with overlaps should be shown and if the select access
+   * restriction of the logged-in user is too large (see {@link #isIdRestrictionSupported(TaskIdSets)}).
+   * @see org.projectforge.core.BaseDao#isPageable(org.projectforge.core.BaseSearchFilter, java.lang.String)
+   */
+  @Override
+  public boolean isPageable(final BaseSearchFilter filter, final String sortProperty)
+  {
+    if (filter.isSearchNotEmpty() == true
+        || filter.isUseModificationFilter() == true
+        || (filter instanceof TimesheetFilter && ((TimesheetFilter) filter).isMarked() == true)) {
+      return false;
+    }
+    if (ArrayUtils.contains(PAGEABLE_SORT_PROPERTIES, sortProperty) == false) {
+      return false;
+    }
+    final PFUserDO user = PFUserContext.getUser();
+    return accessChecker.isUserMemberOfGroup(user, ProjectForgeGroup.FINANCE_GROUP) == true
+        || isIdRestrictionSupported(getSelectableTaskIds(user)) == true;
+  }
+
+  @Override
+  protected boolean isKeysetSortProperty(final String sortProperty)
+  {
+    return "startTime".equals(sortProperty) == true || "stopTime".equals(sortProperty) == true;
+  }
+
+  /**
+   * Marks the time sheets with time period overlaps.
+   * @see org.projectforge.core.BaseDao#getListPage(org.projectforge.core.BaseSearchFilter, org.projectforge.core.PageRequest)
+   */
+  @Override
+  public List<TimesheetDO> getListPage(final BaseSearchFilter filter, final PageRequest page) throws AccessException
+  {
+    final List<TimesheetDO> result = super.getListPage(filter, page);
+    if (result != null) {
+      for (final TimesheetDO entry : result) {
+        if (getTimesheetsWithTimeoverlap(entry.getUserId()).contains(entry.getId()) == true) {
+          entry.setMarked(true);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Sums the durations of all time sheets matching the given filter and visible for the logged-in user without loading the time sheets.
+   * @param filter
+   * @return The total duration in millis.
+   * @see #addSelectAccessRestrictions(QueryFilter)
+   */
+  public long getTotalDuration(final BaseSearchFilter filter)
+  {
+    checkLoggedInUserSelectAccess();
+    final QueryFilter queryFilter = createPageQueryFilter(filter);
+    final Criteria criteria = queryFilter.buildCriteria(getSession(), clazz);
+    final String durationSql = "sum(" + HibernateUtils.getIntervalInSecondsSql("{alias}.start_time", "{alias}.stop_time") + ") as duration";
+    criteria.setProjection(Projections.sqlProjection(durationSql, new String[] { "duration"}, new Type[] { StandardBasicTypes.DOUBLE}));
+    final Number seconds = (Number) criteria.uniqueResult();
+    if (seconds == null) {
+      // No time sheets found.
+      return 0;
+    }
+    return Math.round(seconds.doubleValue() * 1000);
+  }
+
+  /**
+   * Restricts the time sheets to the own time sheets of the logged-in user and to the foreign time sheets of all tasks the user has select
+   * access to. Members of the finance group see all time sheets.
+   * @see #hasSelectAccess(PFUserDO, TimesheetDO, boolean)
+   */
+  @Override
+  protected void addSelectAccessRestrictions(final QueryFilter queryFilter)
+  {
+    final PFUserDO user = PFUserContext.getUser();
+    if (accessChecker.isUserMemberOfGroup(user, ProjectForgeGroup.FINANCE_GROUP) == true) {
+      return;
+    }
+    final Criterion taskRestriction = createIdRestriction("task.id", getSelectableTaskIds(user));
+    if (taskRestriction != null) {
+      queryFilter.add(Restrictions.or(Restrictions.eq("user.id", user.getId()), taskRestriction));
+    }
+  }
+
+  /**
+   * @return The tasks with select access to foreign time sheets of the given user (cached by the task tree).
+   */
+  private TaskIdSets getSelectableTaskIds(final PFUserDO user)
+  {
+    final boolean projectManager = accessChecker.isUserMemberOfGroup(user, ProjectForgeGroup.PROJECT_MANAGER);
+    return taskTree.getTaskIdSets("TimesheetDao.select:" + user.getId(), userGroupCache.getUserGroups(user), new TaskIdSets.Builder() {
+      @Override
+      public void build(final TaskNode rootNode, final TaskIdSets idSets)
+      {
+        addSelectableTaskIds(user, projectManager, rootNode, false, idSets);
+      }
+    });
+  }
+
+  /**
+   * Same as {@link #hasSelectAccess(PFUserDO, TimesheetDO, boolean)} for foreign time sheets of the given task and all its descendants.
+   * @param protectionOfPrivacy true, if any ancestor task protects the privacy.
+   */
+  private void addSelectableTaskIds(final PFUserDO user, final boolean projectManager, final TaskNode node,
+      final boolean protectionOfPrivacy, final TaskIdSets idSets)
+  {
+    final boolean privacy = protectionOfPrivacy == true || node.getTask().isProtectionOfPrivacy() == true;
+    if ((projectManager == true && privacy == false)
+        || accessChecker.hasPermission(user, node.getId(), AccessType.TIMESHEETS, OperationType.SELECT, false) == true) {
+      idSets.addAllowedId(node.getId());
+    } else {
+      idSets.addDeniedId(node.getId());
+    }
+    if (node.hasChilds() == true) {
+      for (final TaskNode child : node.getChilds()) {
+        addSelectableTaskIds(user, projectManager, child, privacy, idSets);
+      }
+    }
+  }
+
+  private TimesheetFilter getTimesheetFilter(final BaseSearchFilter filter)
+  {
+    final TimesheetFilter myFilter;
+    if (filter instanceof TimesheetFilter) {
+      myFilter = (TimesheetFilter) filter;
+    } else {
+      myFilter = new TimesheetFilter(filter);
+    }
+    if (myFilter.getStopTime() != null) {
+      final DateHolder date = new DateHolder(myFilter.getStopTime());
+      date.setEndOfDay();
+      myFilter.setStopTime(date.getDate());
+    }
+    return myFilter;
+  }
+
   public List<TimesheetDO> getTimeperiodOverlapList(final TimesheetListFilter actionFilter)
   {
     if (actionFilter.getUserId() != null) {
@@ -314,7 +512,8 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
   }
 
   /**
-   * Rechecks the time sheet overlaps.
+   * Updates the time period index of the user used for the overlap detection (after commit) and removes the user's time sheet feeds from
+   * the {@link CalendarFeedCache}.
    * @see org.projectforge.core.BaseDao#afterSaveOrModify(org.projectforge.core.ExtendedBaseDO)
    */
   @Override
@@ -322,10 +521,40 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
   {
     super.afterSaveOrModify(obj);
     if (obj.getUser() != null) {
-      // Force re-analysis of time sheet overlaps after any modification of time sheets.
-      recheckTimesheetOverlap(obj.getUserId());
+      invalidateCalendarFeeds(obj.getUserId());
+      if (obj.isDeleted() == true) {
+        updateTimesheetIntervals(obj.getUserId(), obj.getId(), null, null);
+      } else {
+        updateTimesheetIntervals(obj.getUserId(), obj.getId(), obj.getStartTime(), obj.getStopTime());
+      }
+    }
+  }
+
+  /**
+   * Removes the time sheet from the time period index of the user (after commit).
+   * @see org.projectforge.core.BaseDao#afterDelete(org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void afterDelete(final TimesheetDO obj)
+  {
+    super.afterDelete(obj);
+    if (obj.getUser() != null) {
+      updateTimesheetIntervals(obj.getUserId(), obj.getId(), null, null);
+    }
+  }
+
+  /**
+   * Adds the duration of the new time sheet to the task tree (after commit).
+   * @see org.projectforge.core.BaseDao#afterSave(org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void afterSave(final TimesheetDO obj)
+  {
+    super.afterSave(obj);
+    if (obj.isDeleted() == false) {
+      addTotalDurationAfterCommit(obj.getTaskId(), obj.getDuration() / 1000);
+      addLocation(obj.getUserId(), obj.getLocation(), obj.getLastUpdate());
     }
-    taskTree.resetTotalDuration(obj.getTaskId());
   }
 
   /**
@@ -360,8 +589,105 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
   @Override
   protected void onChange(final TimesheetDO obj, final TimesheetDO dbObj)
   {
-    if (obj.getTaskId().compareTo(dbObj.getTaskId()) != 0) {
-      taskTree.resetTotalDuration(dbObj.getTaskId());
+    if (dbObj.getUserId() != null && ObjectUtils.equals(dbObj.getUserId(), obj.getUserId()) == false) {
+      // Time sheet is moved to another user:
+      updateTimesheetIntervals(dbObj.getUserId(), dbObj.getId(), null, null);
+      invalidateCalendarFeeds(dbObj.getUserId());
+    }
+    if (dbObj.isDeleted() == false) {
+      // Update doesn't modify the deleted flag, so replace the old duration by the new one:
+      addTotalDurationAfterCommit(dbObj.getTaskId(), -dbObj.getDuration() / 1000);
+      addTotalDurationAfterCommit(obj.getTaskId(), obj.getDuration() / 1000);
+      removeLocation(dbObj.getUserId(), dbObj.getLocation(), dbObj.getLastUpdate());
+      addLocation(obj.getUserId(), obj.getLocation(), new Date());
+    }
+  }
+
+  /**
+   * Removes the duration of the time sheet from the task tree (after commit).
+   * @see org.projectforge.core.BaseDao#onDelete(org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void onDelete(final TimesheetDO obj)
+  {
+    super.onDelete(obj);
+    final TimesheetDO dbObj = getHibernateTemplate().get(clazz, obj.getId());
+    if (dbObj != null && dbObj.isDeleted() == false) {
+      addTotalDurationAfterCommit(dbObj.getTaskId(), -dbObj.getDuration() / 1000);
+      removeLocation(dbObj.getUserId(), dbObj.getLocation(), dbObj.getLastUpdate());
+    }
+  }
+
+  /**
+   * Adds the duration of the time sheet to the task tree (after commit), if the time sheet is really deleted (otherwise the duration is
+   * already counted).
+   * @see org.projectforge.core.BaseDao#onUndelete(org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void onUndelete(final TimesheetDO obj)
+  {
+    super.onUndelete(obj);
+    final TimesheetDO dbObj = getHibernateTemplate().get(clazz, obj.getId());
+    if (dbObj != null && dbObj.isDeleted() == true) {
+      addTotalDurationAfterCommit(obj.getTaskId(), obj.getDuration() / 1000);
+      addLocation(obj.getUserId(), obj.getLocation(), new Date());
+    }
+  }
+
+  /**
+   * The aggregated durations of the task tree aren't re-read from the data base, so rolled back modifications must never reach the task
+   * tree.
+   * @param duration in seconds.
+   */
+  private void addTotalDurationAfterCommit(final Integer taskId, final long duration)
+  {
+    runAfterCommit(new Runnable() {
+      @Override
+      public void run()
+      {
+        taskTree.addTotalDuration(taskId, duration);
+      }
+    });
+  }
+
+  /**
+   * Adds the location to the user's location index, if already loaded.
+   */
+  private void addLocation(final Integer userId, final String location, final Date lastUpdate)
+  {
+    final AutocompletionIndex index = getLoadedLocationIndex(userId);
+    if (index != null) {
+      index.add(location, lastUpdate);
+    }
+  }
+
+  /**
+   * Removes the location from the user's location index, if already loaded.
+   * @param lastUpdate The modification date of the time sheet before the modification.
+   */
+  private void removeLocation(final Integer userId, final String location, final Date lastUpdate)
+  {
+    final AutocompletionIndex index = getLoadedLocationIndex(userId);
+    if (index != null) {
+      index.remove(location, lastUpdate);
+    }
+  }
+
+  /**
+   * @return The user's location index or null, if not loaded or expired (expired indexes are removed).
+   */
+  private AutocompletionIndex getLoadedLocationIndex(final Integer userId)
+  {
+    if (userId == null) {
+      return null;
+    }
+    synchronized (locationIndexByUser) {
+      final AutocompletionIndex index = locationIndexByUser.get(userId);
+      if (index != null && index.isExpired() == true) {
+        locationIndexByUser.remove(userId);
+        return null;
+      }
+      return index;
     }
   }
 
@@ -395,45 +721,15 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
   }
 
   /**
-   * Analyses all time sheets of the user and detects any collision (overlap) of the user's time sheets. The result will be cached and the
-   * duration of a new analysis is only a few milliseconds!
+   * Gets all time sheets of the user with a collision (overlap) with any other time sheet of the user. The time periods of the user's time
+   * sheets are loaded once and then updated on every modification of a time sheet, so no data base access is needed.
    * @param user
    * @return
    */
   public Set<Integer> getTimesheetsWithTimeoverlap(final Integer userId)
   {
     Validate.notNull(userId);
-    final PFUserDO user = userGroupCache.getUser(userId);
-    Validate.notNull(user);
-    synchronized (timesheetsWithOverlapByUser) {
-      if (timesheetsWithOverlapByUser.get(userId) != null) {
-        return timesheetsWithOverlapByUser.get((userId));
-      }
-      // log.info("Getting time sheet overlaps for user: " + user.getUsername());
-      final Set<Integer> result = new HashSet<Integer>();
-      final QueryFilter queryFilter = new QueryFilter();
-      queryFilter.add(Restrictions.eq("user", user));
-      queryFilter.addOrder(Order.asc("startTime"));
-      final List<TimesheetDO> list = getList(queryFilter);
-      long endTime = 0;
-      TimesheetDO lastEntry = null;
-      for (final TimesheetDO entry : list) {
-        if (entry.getStartTime().getTime() < endTime) {
-          // Time collision!
-          result.add(entry.getId());
-          if (lastEntry != null) { // Only for first iteration
-            result.add(lastEntry.getId()); // Also collision for last entry.
-          }
-        }
-        endTime = entry.getStopTime().getTime();
-        lastEntry = entry;
-      }
-      timesheetsWithOverlapByUser.put(user.getId(), result);
-      if (CollectionUtils.isNotEmpty(result) == true) {
-        log.info("Time sheet overlaps for user '" + user.getUsername() + "': " + result);
-      }
-      return result;
-    }
+    return getTimesheetIntervals(userId).getOverlaps();
   }
 
   /**
@@ -444,18 +740,28 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
   public void recheckTimesheetOverlap(final Integer userId)
   {
     Validate.notNull(userId);
-    timesheetsWithOverlapByUser.remove(userId);
+    timesheetIntervalsByUser.remove(userId);
   }
 
   /**
    * Checks if the time sheet overlaps with another time sheet of the same user. Should be checked on every insert or update (also
-   * undelete). For time collision detection deleted time sheets are ignored.
+   * undelete). For time collision detection deleted time sheets are ignored.<br/>
+   * The check is done by the time period index of the user. Only if a collision is detected the data base is queried for the colliding
+   * time sheet. The index contains only committed modifications, so the data base is queried as well while any transaction modifying the
+   * user's time sheets isn't completed.
    * @return The existing time sheet with the time period collision.
    */
   public boolean hasTimeOverlap(final TimesheetDO timesheet, final boolean throwException)
   {
     Validate.notNull(timesheet);
     Validate.notNull(timesheet.getUser());
+    final AtomicInteger pending = pendingIntervalModificationsByUser.get(timesheet.getUserId());
+    if (timesheet.getStartTime() != null
+        && timesheet.getStopTime() != null
+        && (pending == null || pending.get() == 0)
+        && getTimesheetIntervals(timesheet.getUserId()).hasOverlap(timesheet.getId(), timesheet.getStartTime(), timesheet.getStopTime()) == false) {
+      return false;
+    }
     final QueryFilter queryFilter = new QueryFilter();
     queryFilter.add(Restrictions.eq("user", timesheet.getUser()));
     queryFilter.add(Restrictions.lt("startTime", timesheet.getStopTime()));
@@ -479,6 +785,96 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
     return false;
   }
 
+  /**
+   * @return The initialized time period index of the given user.
+   */
+  @SuppressWarnings("unchecked")
+  private UserTimesheetIntervals getTimesheetIntervals(final Integer userId)
+  {
+    final UserTimesheetIntervals intervals = getOrCreateTimesheetIntervals(userId);
+    synchronized (intervals) {
+      if (intervals.isInitialized() == false) {
+        final List<Object[]> list = getHibernateTemplate().find(
+            "select id, startTime, stopTime from TimesheetDO t where user.id=? and deleted=false", userId);
+        intervals.initialize(list);
+        final Set<Integer> overlaps = intervals.getOverlaps();
+        if (CollectionUtils.isNotEmpty(overlaps) == true) {
+          log.info("Time sheet overlaps for user with id " + userId + ": " + overlaps);
+        }
+      }
+    }
+    return intervals;
+  }
+
+  /**
+   * Updates the time period of the given time sheet in the user's index after the commit of the current transaction (immediately, if no
+   * transaction is active). Rolled back modifications never reach the index.
+   * @param startTime If null, the time sheet is removed from the index.
+   */
+  private void updateTimesheetIntervals(final Integer userId, final Integer timesheetId, final Date startTime, final Date stopTime)
+  {
+    final Runnable update = new Runnable() {
+      @Override
+      public void run()
+      {
+        final UserTimesheetIntervals intervals = getOrCreateTimesheetIntervals(userId);
+        if (startTime == null) {
+          intervals.remove(timesheetId);
+        } else {
+          intervals.update(timesheetId, startTime, stopTime);
+        }
+      }
+    };
+    if (TransactionSynchronizationManager.isSynchronizationActive() == false) {
+      update.run();
+      return;
+    }
+    AtomicInteger pending = pendingIntervalModificationsByUser.get(userId);
+    if (pending == null) {
+      pending = new AtomicInteger();
+      final AtomicInteger existing = pendingIntervalModificationsByUser.putIfAbsent(userId, pending);
+      if (existing != null) {
+        pending = existing;
+      }
+    }
+    final AtomicInteger counter = pending;
+    counter.incrementAndGet();
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCommit()
+      {
+        update.run();
+      }
+
+      @Override
+      public void afterCompletion(final int status)
+      {
+        counter.decrementAndGet();
+      }
+    });
+  }
+
+  private void invalidateCalendarFeeds(final Integer userId)
+  {
+    CalendarFeedCache.getInstance().invalidate(CalendarFeed.PARAM_NAME_TIMESHEET_USER, String.valueOf(userId));
+  }
+
+  /**
+   * @return The time period index of the given user, not yet initialized if not used before.
+   */
+  private UserTimesheetIntervals getOrCreateTimesheetIntervals(final Integer userId)
+  {
+    UserTimesheetIntervals intervals = timesheetIntervalsByUser.get(userId);
+    if (intervals == null) {
+      intervals = new UserTimesheetIntervals();
+      final UserTimesheetIntervals existing = timesheetIntervalsByUser.putIfAbsent(userId, intervals);
+      if (existing != null) {
+        intervals = existing;
+      }
+    }
+    return intervals;
+  }
+
   /**
    * return Always true, no generic select access needed for address objects.
    * @see org.projectforge.core.BaseDao#hasSelectAccess()
@@ -493,19 +889,13 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
   public boolean hasAccess(final PFUserDO user, final TimesheetDO obj, final TimesheetDO oldObj, final OperationType operationType,
       final boolean throwException)
   {
-    if (accessChecker.userEquals(user, obj.getUser()) == true) {
-      // Own time sheet
-      if (accessChecker.hasPermission(user, obj.getTaskId(), AccessType.OWN_TIMESHEETS, operationType, throwException) == false) {
-        return false;
-      }
-    } else {
+    if (accessChecker.userEquals(user, obj.getUser()) == false
+        && accessChecker.isUserMemberOfGroup(user, ProjectForgeGroup.FINANCE_GROUP) == true) {
       // Foreign time sheet
-      if (accessChecker.isUserMemberOfGroup(user, ProjectForgeGroup.FINANCE_GROUP) == true) {
-        return true;
-      }
-      if (accessChecker.hasPermission(user, obj.getTaskId(), AccessType.TIMESHEETS, operationType, throwException) == false) {
-        return false;
-      }
+      return true;
+    }
+    if (hasTaskPermission(user, obj, operationType, throwException) == false) {
+      return false;
     }
     if (operationType == OperationType.DELETE) {
       // UPDATE and INSERT is already checked, SELECT will be ignored.
@@ -515,6 +905,23 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
     return true;
   }
 
+  /**
+   * Checks the access right of the user for the task of the time sheet, it depends only on the task and the owner of the time sheet.
+   */
+  private boolean hasTaskPermission(final PFUserDO user, final TimesheetDO obj, final OperationType operationType,
+      final boolean throwException)
+  {
+    if (accessChecker.userEquals(user, obj.getUser()) == true) {
+      // Own time sheet
+      return accessChecker.hasPermission(user, obj.getTaskId(), AccessType.OWN_TIMESHEETS, operationType, throwException);
+    }
+    // Foreign time sheet
+    if (accessChecker.isUserMemberOfGroup(user, ProjectForgeGroup.FINANCE_GROUP) == true) {
+      return true;
+    }
+    return accessChecker.hasPermission(user, obj.getTaskId(), AccessType.TIMESHEETS, operationType, throwException);
+  }
+
   /**
    * User can always see his own time sheets. But if he has no access then the location and description values are hidden (empty strings).
    * @see org.projectforge.core.BaseDao#hasSelectAccess(PFUserDO, org.projectforge.core.ExtendedBaseDO, boolean)
@@ -594,6 +1001,47 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
     return result;
   }
 
+  /**
+   * Does the same checks as {@link #hasUpdateAccess(PFUserDO, TimesheetDO, TimesheetDO, boolean)}, but the task access rights are checked
+   * only once per distinct combination of old and new task and user. Only the time sheet protection, the overlap and the book-able status
+   * are checked for every time sheet.
+   * @see org.projectforge.core.BaseDao#hasLoggedInUserMassUpdateAccess(org.projectforge.core.ExtendedBaseDO,
+   *      org.projectforge.core.ExtendedBaseDO, java.util.Map)
+   */
+  @Override
+  protected boolean hasLoggedInUserMassUpdateAccess(final TimesheetDO obj, final TimesheetDO dbObj, final Map<Object, Boolean> accessCache)
+  {
+    if (obj.getTaskId() == null || dbObj.getTaskId() == null) {
+      return false;
+    }
+    final PFUserDO user = PFUserContext.getUser();
+    final boolean userChanged = dbObj.getUserId().equals(obj.getUserId()) == false;
+    final boolean taskChanged = dbObj.getTaskId().equals(obj.getTaskId()) == false;
+    final List<Integer> key = Arrays.asList(obj.getUserId(), dbObj.getUserId(), obj.getTaskId(), dbObj.getTaskId());
+    Boolean taskAccess = accessCache.get(key);
+    if (taskAccess == null) {
+      taskAccess = hasTaskPermission(user, obj, OperationType.UPDATE, false) == true
+          && ((userChanged == false && taskChanged == false) || hasTaskPermission(user, dbObj, OperationType.DELETE, false) == true)
+          && (taskChanged == false || hasTaskPermission(user, obj, OperationType.INSERT, false) == true);
+      accessCache.put(key, taskAccess);
+    }
+    if (taskAccess == false) {
+      return false;
+    }
+    if ((userChanged == true || taskChanged == true)
+        && (accessChecker.userEquals(user, dbObj.getUser()) == true || accessChecker.isUserMemberOfGroup(user,
+            ProjectForgeGroup.FINANCE_GROUP) == false)
+            && checkTimesheetProtection(user, dbObj, null, OperationType.DELETE, false) == false) {
+      // Same as hasAccess(user, dbObj, null, OperationType.DELETE, false) without the task access rights.
+      return false;
+    }
+    if (hasTimeOverlap(obj, false) == true) {
+      return false;
+    }
+    return checkTimesheetProtection(user, obj, dbObj, OperationType.UPDATE, false) == true
+        && checkTaskBookable(obj, dbObj, OperationType.UPDATE, false) == true;
+  }
+
   @Override
   public boolean hasInsertAccess(final PFUserDO user, final TimesheetDO obj, final boolean throwException)
   {
@@ -759,27 +1207,50 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
   }
 
   /**
-   * Get all locations of the user's time sheet (not deleted ones) with modification date within last year.
+   * Get all locations of the user's time sheet (not deleted ones) with modification date within last year. The locations of each user are
+   * held in an in-memory index, loaded on first usage.
    * @param searchString
+   * @return The matching locations, the most used ones first.
    */
-  @SuppressWarnings("unchecked")
   public List<String> getLocationAutocompletion(final String searchString)
   {
     checkLoggedInUserSelectAccess();
     if (StringUtils.isBlank(searchString) == true) {
       return null;
     }
-    final String s = "select distinct location from "
+    final DateHolder dh = new DateHolder();
+    dh.add(Calendar.YEAR, -1);
+    return getLocationIndex(PFUserContext.getUser().getId()).search(searchString, dh.getDate());
+  }
+
+  @SuppressWarnings("unchecked")
+  private AutocompletionIndex getLocationIndex(final Integer userId)
+  {
+    AutocompletionIndex index = getLoadedLocationIndex(userId);
+    if (index != null) {
+      return index;
+    }
+    final String s = "select location, lastUpdate from "
         + clazz.getSimpleName()
-        + " t where deleted=false and t.user.id = ? and lastUpdate > ? and lower(t.location) like ?) order by t.location";
+        + " t where deleted=false and t.user.id = ? and lastUpdate > ? and t.location != null and t.location != ''";
     final Query query = getSession().createQuery(s);
-    query.setInteger(0, PFUserContext.getUser().getId());
+    query.setInteger(0, userId);
     final DateHolder dh = new DateHolder();
     dh.add(Calendar.YEAR, -1);
-    query.setDate(1, dh.getDate());
-    query.setString(2, "%" + StringUtils.lowerCase(searchString) + "%");
-    final List<String> list = query.list();
-    return list;
+    query.setTimestamp(1, dh.getDate());
+    index = new AutocompletionIndex(dh.getDate());
+    for (final Object[] oa : (List<Object[]>) query.list()) {
+      index.add((String) oa[0], (Date) oa[1]);
+    }
+    synchronized (locationIndexByUser) {
+      final AutocompletionIndex existing = locationIndexByUser.get(userId);
+      if (existing != null && existing.isExpired() == false) {
+        // Loaded by another thread meanwhile.
+        return existing;
+      }
+      locationIndexByUser.put(userId, index);
+    }
+    return index;
   }
 
   /**
@@ -0,0 +1,201 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.timesheet;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Index of the time periods of all (not deleted) time sheets of one user, sorted by start time. Used by the TimesheetDao for detecting
+ * time sheet overlaps without any data base access. All methods are synchronized, so there is one lock per user.<br/>
+ * Every time sheet with an overlap starts in the interval [start - maxDuration, stop) of the given time period, so the overlap detection
+ * costs only O(log n) plus the number of time sheets inside this interval.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ *
+ */
+class UserTimesheetIntervals
+{
+  private static class Interval implements Comparable<Interval>
+  {
+    private final int id;
+
+    private final long start;
+
+    private final long stop;
+
+    private Interval(final int id, final long start, final long stop)
+    {
+      this.id = id;
+      this.start = start;
+      this.stop = stop;
+    }
+
+    @Override
+    public int compareTo(final Interval o)
+    {
+      if (start != o.start) {
+        return start < o.start ? -1 : 1;
+      }
+      return id < o.id ? -1 : (id == o.id ? 0 : 1);
+    }
+  }
+
+  private final TreeSet<Interval> intervals = new TreeSet<Interval>();
+
+  private final Map<Integer, Interval> intervalsById = new HashMap<Integer, Interval>();
+
+  /**
+   * Ids of all time sheets overlapping any other time sheet of this user.
+   */
+  private final Set<Integer> overlaps = new HashSet<Integer>();
+
+  /**
+   * Maximum duration of all time sheets ever added (it's not decreased on removal, this is only a bound for the overlap search).
+   */
+  private long maxDuration = 0;
+
+  private boolean initialized;
+
+  /**
+   * Ids of the time sheets modified before initialization. Their entries of the initial data base query will be ignored.
+   */
+  private Set<Integer> modifiedBeforeInitialization;
+
+  synchronized boolean isInitialized()
+  {
+    return initialized;
+  }
+
+  /**
+   * @param list Result of the data base query: id, start and stop time of every time sheet of the user.
+   */
+  synchronized void initialize(final List<Object[]> list)
+  {
+    for (final Object[] oa : list) {
+      final Integer id = (Integer) oa[0];
+      if (modifiedBeforeInitialization != null && modifiedBeforeInitialization.contains(id) == true) {
+        continue;
+      }
+      add(id, (Date) oa[1], (Date) oa[2]);
+    }
+    modifiedBeforeInitialization = null;
+    initialized = true;
+  }
+
+  /**
+   * Adds or updates the time period of the given time sheet.
+   */
+  synchronized void update(final Integer id, final Date startTime, final Date stopTime)
+  {
+    remove(id);
+    add(id, startTime, stopTime);
+  }
+
+  /**
+   * Removes the given time sheet (if indexed) and updates the overlap state of the time sheets overlapped by the removed one.
+   */
+  synchronized void remove(final Integer id)
+  {
+    if (initialized == false) {
+      if (modifiedBeforeInitialization == null) {
+        modifiedBeforeInitialization = new HashSet<Integer>();
+      }
+      modifiedBeforeInitialization.add(id);
+    }
+    final Interval interval = intervalsById.remove(id);
+    if (interval == null) {
+      return;
+    }
+    intervals.remove(interval);
+    if (overlaps.remove(id) == false) {
+      return;
+    }
+    for (final Interval other : getOverlappingIntervals(interval.start, interval.stop, null)) {
+      if (getOverlappingIntervals(other.start, other.stop, other.id).isEmpty() == true) {
+        overlaps.remove(other.id);
+      }
+    }
+  }
+
+  /**
+   * @param excludeId The id of the time sheet itself (on update), may be null.
+   * @return true, if any indexed time sheet (other than the given one) overlaps the given time period.
+   */
+  synchronized boolean hasOverlap(final Integer excludeId, final Date startTime, final Date stopTime)
+  {
+    return getOverlappingIntervals(startTime.getTime(), stopTime.getTime(), excludeId).isEmpty() == false;
+  }
+
+  /**
+   * @return A copy of the ids of all time sheets of this user with an overlap.
+   */
+  synchronized Set<Integer> getOverlaps()
+  {
+    return new HashSet<Integer>(overlaps);
+  }
+
+  synchronized int size()
+  {
+    return intervalsById.size();
+  }
+
+  private void add(final Integer id, final Date startTime, final Date stopTime)
+  {
+    if (id == null || startTime == null || stopTime == null) {
+      return;
+    }
+    final Interval interval = new Interval(id, startTime.getTime(), stopTime.getTime());
+    for (final Interval other : getOverlappingIntervals(interval.start, interval.stop, id)) {
+      overlaps.add(other.id);
+      overlaps.add(id);
+    }
+    intervals.add(interval);
+    intervalsById.put(id, interval);
+    if (interval.stop - interval.start > maxDuration) {
+      maxDuration = interval.stop - interval.start;
+    }
+  }
+
+  private List<Interval> getOverlappingIntervals(final long start, final long stop, final Integer excludeId)
+  {
+    final List<Interval> result = new ArrayList<Interval>();
+    if (stop <= start) {
+      return result;
+    }
+    final Interval from = new Interval(Integer.MIN_VALUE, start - maxDuration, 0);
+    final Interval to = new Interval(Integer.MIN_VALUE, stop, 0);
+    for (final Interval other : intervals.subSet(from, to)) {
+      if (other.stop > start && (excludeId == null || other.id != excludeId)) {
+        result.add(other);
+      }
+    }
+    return result;
+  }
+}
@@ -281,7 +281,11 @@ public class GroupDao extends BaseDao<GroupDO>
     }
     getSession().flush();
     createHistoryEntry(user, unassignedGroups, assignedGroups);
-    userGroupCache.setExpired();
+    final List<GroupDO> modifiedGroups = new ArrayList<GroupDO>(assignedGroups);
+    modifiedGroups.addAll(unassignedGroups);
+    if (modifiedGroups.isEmpty() == false) {
+      userGroupCache.updateGroups(modifiedGroups);
+    }
       }
 
   private void createHistoryEntry(final PFUserDO user, Collection<GroupDO> unassignedList, Collection<GroupDO> assignedList)
@@ -313,10 +317,11 @@ public class GroupDao extends BaseDao<GroupDO>
   @Override
   protected void afterSaveOrModify(final GroupDO group)
   {
-    userGroupCache.setExpired();
+    userGroupCache.updateGroup(group);
   }
 
   /**
+   * Deletions are rare, therefore the user group cache is fully refreshed.
    * @see org.projectforge.core.BaseDao#afterDelete(org.projectforge.core.ExtendedBaseDO)
    */
   @Override
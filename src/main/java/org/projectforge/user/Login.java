@@ -24,6 +24,7 @@
 package org.projectforge.user;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.projectforge.web.UserFilter;
@@ -159,7 +160,7 @@ public class Login
     return loginHandler.getAllGroups();
   }
 
-  public void afterUserGroupCacheRefresh(final List<PFUserDO> users, final List<GroupDO> groups)
+  public void afterUserGroupCacheRefresh(final Collection<PFUserDO> users, final Collection<GroupDO> groups)
   {
     if (UserFilter.isUpdateRequiredFirst() == true) {
       // Don't run e. g. LDAP synchronization because user and groups may not be available!
@@ -181,6 +182,14 @@ public class Login
     log.info("LoginHandler " + loginHandler.getClass().getName() + " registered.");
   }
 
+  /**
+   * @return The registered login handler or null if no login handler is defined yet.
+   */
+  public LoginHandler getLoginHandler()
+  {
+    return loginHandler;
+  }
+
   public boolean hasExternalUsermanagementSystem()
   {
     if (loginHandler == null) {
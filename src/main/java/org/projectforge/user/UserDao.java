@@ -200,7 +200,7 @@ public class UserDao extends BaseDao<PFUserDO>
   protected void afterSaveOrModify(final PFUserDO obj)
   {
     if (obj.isMinorChange() == false) {
-      userGroupCache.setExpired();
+      userGroupCache.updateUserAndRights(obj);
     }
   }
 
@@ -25,6 +25,7 @@ package org.projectforge.user;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -34,6 +35,7 @@ import java.util.Set;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
 import org.apache.log4j.Logger;
+import org.hibernate.Hibernate;
 import org.projectforge.common.AbstractCache;
 import org.projectforge.common.StringHelper;
 import org.projectforge.fibu.EmployeeDO;
@@ -50,32 +52,32 @@ public class UserGroupCache extends AbstractCache
   private static Logger log = Logger.getLogger(UserGroupCache.class);
 
   /** The key is the user id and the value is a list of assigned groups. */
-  private Map<Integer, Set<Integer>> userGroupIdMap;
+  private volatile Map<Integer, Set<Integer>> userGroupIdMap;
 
-  private Map<Integer, GroupDO> groupMap;
+  private volatile Map<Integer, GroupDO> groupMap;
 
   /**
    * List of all rights (value) defined for the user ids (key).
    */
-  private Map<Integer, List<UserRightDO>> rightMap;
+  private volatile Map<Integer, List<UserRightDO>> rightMap;
 
-  private Map<Integer, PFUserDO> userMap;
+  private volatile Map<Integer, PFUserDO> userMap;
 
-  private Map<Integer, EmployeeDO> employeeMap;
+  private volatile Map<Integer, EmployeeDO> employeeMap;
 
-  private Set<Integer> adminUsers;
+  private volatile Set<Integer> adminUsers;
 
-  private Set<Integer> financeUsers;
+  private volatile Set<Integer> financeUsers;
 
-  private Set<Integer> controllingUsers;
+  private volatile Set<Integer> controllingUsers;
 
-  private Set<Integer> projectManagers;
+  private volatile Set<Integer> projectManagers;
 
-  private Set<Integer> projectAssistants;
+  private volatile Set<Integer> projectAssistants;
 
-  private Set<Integer> marketingUsers;
+  private volatile Set<Integer> marketingUsers;
 
-  private Set<Integer> orgaUsers;
+  private volatile Set<Integer> orgaUsers;
 
   private HibernateTemplate hibernateTemplate;
 
@@ -454,7 +456,270 @@ public class UserGroupCache extends AbstractCache
    */
   void updateUser(final PFUserDO user)
   {
-    getUserMap().put(user.getId(), user);
+    checkRefresh();
+    synchronized (this) {
+      setUser(user);
+      afterModification(new Runnable() {
+        @Override
+        public void run()
+        {
+          setUser(user);
+        }
+      });
+    }
+  }
+
+  /**
+   * Should be called after saving or modifying a user (not only minor changes). The user and his rights will be updated without reloading
+   * all users and groups.
+   * @param user
+   */
+  void updateUserAndRights(final PFUserDO user)
+  {
+    checkRefresh();
+    synchronized (this) {
+      if (userMap == null || rightMap == null) {
+        // Maintenance mode.
+        setExpired();
+        return;
+      }
+      setUser(user);
+      final Collection<Integer> userIds = Collections.singleton(user.getId());
+      final List<UserRightDO> rights = refreshUserRights(userIds);
+      afterModification(new Runnable() {
+        @Override
+        public void run()
+        {
+          setUser(user);
+          setUserRights(userIds, rights);
+        }
+      });
+    }
+    afterIncrementalUpdate();
+  }
+
+  /**
+   * Replaces the given user (copy on write, so the user map is never modified after assigning it).
+   */
+  private void setUser(final PFUserDO user)
+  {
+    final Map<Integer, PFUserDO> uMap = new HashMap<Integer, PFUserDO>(userMap);
+    uMap.put(user.getId(), user);
+    this.userMap = uMap;
+  }
+
+  /**
+   * Should be called after saving or modifying the rights of the given user.
+   * @param userId
+   */
+  void updateUserRights(final Integer userId)
+  {
+    checkRefresh();
+    synchronized (this) {
+      if (rightMap == null) {
+        // Maintenance mode.
+        setExpired();
+        return;
+      }
+      final Collection<Integer> userIds = Collections.singleton(userId);
+      final List<UserRightDO> rights = refreshUserRights(userIds);
+      afterModification(new Runnable() {
+        @Override
+        public void run()
+        {
+          setUserRights(userIds, rights);
+        }
+      });
+    }
+  }
+
+  /**
+   * @see #updateGroups(Collection)
+   */
+  void updateGroup(final GroupDO group)
+  {
+    final Collection<GroupDO> groups = new ArrayList<GroupDO>();
+    groups.add(group);
+    updateGroups(groups);
+  }
+
+  /**
+   * Should be called after saving or modifying groups or group memberships. The memberships, the special group sets (admin, finance etc.)
+   * and the rights of the affected users are updated without reloading all users and groups. A full refresh is only forced if the name of a
+   * ProjectForge group is changed or the assigned users of a group aren't available.
+   * @param groups
+   */
+  void updateGroups(final Collection<GroupDO> groups)
+  {
+    checkRefresh();
+    synchronized (this) {
+      if (groupMap == null || userGroupIdMap == null || rightMap == null) {
+        // Maintenance mode.
+        setExpired();
+        return;
+      }
+      final Set<Integer> affectedUserIds = setGroups(groups);
+      if (affectedUserIds == null) {
+        // Full refresh needed.
+        return;
+      }
+      // Availability of rights depends on group memberships:
+      final List<UserRightDO> rights = affectedUserIds.isEmpty() == false ? refreshUserRights(affectedUserIds) : null;
+      afterModification(new Runnable() {
+        @Override
+        public void run()
+        {
+          if (setGroups(groups) != null && rights != null) {
+            setUserRights(affectedUserIds, rights);
+          }
+        }
+      });
+    }
+    afterIncrementalUpdate();
+  }
+
+  /**
+   * Updates the given groups, the memberships and the special group sets (admin, finance etc.). Must be called synchronized on this cache.
+   * @return The ids of the users with modified memberships or null if a full refresh is needed (the cache is expired).
+   */
+  private Set<Integer> setGroups(final Collection<GroupDO> groups)
+  {
+    final Map<Integer, GroupDO> gMap = new HashMap<Integer, GroupDO>(groupMap);
+    final Map<Integer, Set<Integer>> ugIdMap = new HashMap<Integer, Set<Integer>>(userGroupIdMap);
+    final Map<ProjectForgeGroup, Set<Integer>> specialGroups = new HashMap<ProjectForgeGroup, Set<Integer>>();
+    final Set<Integer> affectedUserIds = new HashSet<Integer>();
+    for (final GroupDO group : groups) {
+      final GroupDO oldGroup = gMap.get(group.getId());
+      final String oldName = oldGroup != null ? oldGroup.getName() : null;
+      if (StringUtils.equals(oldName, group.getName()) == false
+          && (getProjectForgeGroup(oldName) != null || getProjectForgeGroup(group.getName()) != null)) {
+        log.info("Name of ProjectForge group changed ('" + oldName + "' -> '" + group.getName() + "'), full refresh needed.");
+        setExpired();
+        return null;
+      }
+      if (Hibernate.isInitialized(group.getAssignedUsers()) == false) {
+        log.info("Assigned users of group '" + group.getName() + "' not initialized, full refresh needed.");
+        setExpired();
+        return null;
+      }
+      final Integer groupId = group.getId();
+      gMap.put(groupId, group);
+      final Set<Integer> memberIds = new HashSet<Integer>();
+      if (group.getAssignedUsers() != null) {
+        for (final PFUserDO user : group.getAssignedUsers()) {
+          if (user != null) {
+            memberIds.add(user.getId());
+          }
+        }
+      }
+      // Remove unassigned users:
+      for (final Map.Entry<Integer, Set<Integer>> entry : userGroupIdMap.entrySet()) {
+        final Integer userId = entry.getKey();
+        if (memberIds.contains(userId) == true) {
+          continue;
+        }
+        final Set<Integer> groupIdSet = ugIdMap.get(userId);
+        if (groupIdSet.contains(groupId) == true) {
+          // Copy on write, the old set may be in use by other threads:
+          final Set<Integer> newGroupIdSet = new HashSet<Integer>(groupIdSet);
+          newGroupIdSet.remove(groupId);
+          ugIdMap.put(userId, newGroupIdSet);
+          affectedUserIds.add(userId);
+        }
+      }
+      // Add assigned users:
+      for (final Integer userId : memberIds) {
+        final Set<Integer> groupIdSet = ugIdMap.get(userId);
+        if (groupIdSet == null || groupIdSet.contains(groupId) == false) {
+          final Set<Integer> newGroupIdSet = groupIdSet != null ? new HashSet<Integer>(groupIdSet) : new HashSet<Integer>();
+          newGroupIdSet.add(groupId);
+          ugIdMap.put(userId, newGroupIdSet);
+          affectedUserIds.add(userId);
+        }
+      }
+      final ProjectForgeGroup projectForgeGroup = getProjectForgeGroup(group.getName());
+      if (projectForgeGroup != null) {
+        specialGroups.put(projectForgeGroup, memberIds);
+      }
+    }
+    this.groupMap = gMap;
+    this.userGroupIdMap = ugIdMap;
+    for (final Map.Entry<ProjectForgeGroup, Set<Integer>> entry : specialGroups.entrySet()) {
+      setSpecialGroupUsers(entry.getKey(), entry.getValue());
+    }
+    return affectedUserIds;
+  }
+
+  /**
+   * Reloads the rights of the given users from the data base.
+   * @param userIds
+   */
+  @SuppressWarnings("unchecked")
+  private List<UserRightDO> refreshUserRights(final Collection<Integer> userIds)
+  {
+    final List<UserRightDO> rights = hibernateTemplate.findByNamedParam(
+        "from UserRightDO t where t.user.id in (:userIds) order by user.id, right_id", "userIds", userIds);
+    setUserRights(userIds, rights);
+    return rights;
+  }
+
+  /**
+   * Replaces the rights of the given users (copy on write).
+   * @param userIds
+   * @param rights The rights of the given users, must be ordered by user id.
+   */
+  private void setUserRights(final Collection<Integer> userIds, final List<UserRightDO> rights)
+  {
+    final Map<Integer, List<UserRightDO>> rMap = new HashMap<Integer, List<UserRightDO>>(rightMap);
+    for (final Integer userId : userIds) {
+      rMap.remove(userId);
+    }
+    addUserRights(rMap, rights);
+    this.rightMap = rMap;
+  }
+
+  /**
+   * Informs the login handler (e. g. LDAP synchronization) about the modification. Must be called without holding the monitor of this
+   * cache, the user and group maps are replaced on modification (copy on write), so they can be read unsynchronized.<br/>
+   * The users and groups aren't copied on every modification: the published maps aren't modified anymore, so read-only views are passed
+   * and the login handler determines the modified users and groups itself (see dirty tracking of the LDAP master login handler).
+   */
+  private void afterIncrementalUpdate()
+  {
+    Login.getInstance().afterUserGroupCacheRefresh(Collections.unmodifiableCollection(userMap.values()),
+        Collections.unmodifiableCollection(groupMap.values()));
+  }
+
+  private static ProjectForgeGroup getProjectForgeGroup(final String groupName)
+  {
+    if (groupName == null) {
+      return null;
+    }
+    for (final ProjectForgeGroup group : ProjectForgeGroup.values()) {
+      if (group.equals(groupName) == true) {
+        return group;
+      }
+    }
+    return null;
+  }
+
+  private void setSpecialGroupUsers(final ProjectForgeGroup group, final Set<Integer> userIds)
+  {
+    if (group == ProjectForgeGroup.ADMIN_GROUP) {
+      this.adminUsers = userIds;
+    } else if (group == ProjectForgeGroup.FINANCE_GROUP) {
+      this.financeUsers = userIds;
+    } else if (group == ProjectForgeGroup.CONTROLLING_GROUP) {
+      this.controllingUsers = userIds;
+    } else if (group == ProjectForgeGroup.PROJECT_MANAGER) {
+      this.projectManagers = userIds;
+    } else if (group == ProjectForgeGroup.PROJECT_ASSISTANT) {
+      this.projectAssistants = userIds;
+    } else if (group == ProjectForgeGroup.MARKETING_GROUP) {
+      this.marketingUsers = userIds;
+    } else if (group == ProjectForgeGroup.ORGA_TEAM) {
+      this.orgaUsers = userIds;
+    }
   }
 
   private Map<Integer, PFUserDO> getUserMap()
@@ -464,7 +729,7 @@ public class UserGroupCache extends AbstractCache
   }
 
   /**
-   * This method will be called by CacheHelper and is synchronized.
+   * This method will be called by CacheHelper and is synchronized by the refresh lock (not by the monitor of this cache).
    */
   @SuppressWarnings("unchecked")
   @Override
@@ -521,17 +786,20 @@ public class UserGroupCache extends AbstractCache
         }
       }
     }
-    this.userMap = uMap;
-    this.groupMap = gMap;
-    this.adminUsers = nAdminUsers;
-    this.financeUsers = nFinanceUser;
-    this.controllingUsers = nControllingUsers;
-    this.projectManagers = nProjectManagers;
-    this.projectAssistants = nProjectAssistants;
-    this.marketingUsers = nMarketingUsers;
-    this.orgaUsers = nOrgaUsers;
-    this.userGroupIdMap = ugIdMap;
-    this.employeeMap = new HashMap<Integer, EmployeeDO>();
+    // The availability of the rights depends on the new group memberships, so assign them first:
+    synchronized (this) {
+      this.userMap = uMap;
+      this.groupMap = gMap;
+      this.adminUsers = nAdminUsers;
+      this.financeUsers = nFinanceUser;
+      this.controllingUsers = nControllingUsers;
+      this.projectManagers = nProjectManagers;
+      this.projectAssistants = nProjectAssistants;
+      this.marketingUsers = nMarketingUsers;
+      this.orgaUsers = nOrgaUsers;
+      this.userGroupIdMap = ugIdMap;
+      this.employeeMap = new HashMap<Integer, EmployeeDO>();
+    }
     final Map<Integer, List<UserRightDO>> rMap = new HashMap<Integer, List<UserRightDO>>();
     List<UserRightDO> rights;
     try {
@@ -541,6 +809,20 @@ public class UserGroupCache extends AbstractCache
           + ex.getMessage());
       rights = new ArrayList<UserRightDO>();
     }
+    addUserRights(rMap, rights);
+    synchronized (this) {
+      this.rightMap = rMap;
+    }
+    log.info("Initializing of UserGroupCache done.");
+    Login.getInstance().afterUserGroupCacheRefresh(users, groups);
+  }
+
+  /**
+   * @param rMap
+   * @param rights Must be ordered by user id.
+   */
+  private void addUserRights(final Map<Integer, List<UserRightDO>> rMap, final List<UserRightDO> rights)
+  {
     List<UserRightDO> list = null;
     Integer userId = null;
     for (final UserRightDO right : rights) {
@@ -559,9 +841,6 @@ public class UserGroupCache extends AbstractCache
         list.add(right);
       }
     }
-    this.rightMap = rMap;
-    log.info("Initializing of UserGroupCache done.");
-    Login.getInstance().afterUserGroupCacheRefresh(users, groups);
   }
 
   private static Set<Integer> ensureAndGetUserGroupIdMap(final Map<Integer, Set<Integer>> ugIdMap, final Integer userId)
@@ -574,13 +853,15 @@ public class UserGroupCache extends AbstractCache
     return set;
   }
 
-  public synchronized void internalSetAdminUser(final PFUserDO adminUser)
+  public void internalSetAdminUser(final PFUserDO adminUser)
   {
     if (UserFilter.isUpdateRequiredFirst() == false) {
       throw new IllegalStateException(
           "Can't set admin user internally! This method is only available if system is under maintenance (update required first is true)!");
     }
     checkRefresh();
-    this.adminUsers.add(adminUser.getId());
+    synchronized (this) {
+      this.adminUsers.add(adminUser.getId());
+    }
   }
 }
@@ -92,7 +92,7 @@ public class UserRightDao extends BaseDao<UserRightDO>
         update(rightDO);
       }
     }
-    userGroupCache.setExpired();
+    userGroupCache.updateUserRights(user.getId());
   }
 
   private void copy(final UserRightDO dest, final UserRightVO src)
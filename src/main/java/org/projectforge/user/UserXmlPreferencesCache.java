@@ -23,15 +23,24 @@
 
 package org.projectforge.user;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.projectforge.access.AccessChecker;
 import org.projectforge.common.AbstractCache;
 
 /**
- * Stores all user persistent objects such as filter settings, personal settings and persists them to the database.
+ * Stores all user persistent objects such as filter settings, personal settings and persists them to the database.<br/>
+ * The preferences of every user are locked separately (see {@link UserXmlPreferencesMap}). Modified preferences are written behind: the
+ * users with modifications are collected and their modified entries are written in batches by the refresh running in background (every
+ * modified entry is written only once per refresh, independent of the number of modifications). The preferences of users without any
+ * access since {@link #EVICTION_TIME} are removed from the cache after writing them (they are reloaded on next access). A map is evicted
+ * under its own lock, so concurrent modifications either prevent the eviction or are done on a reloaded map.
  * 
  * @author Kai Reinhard (k.reinhard@micromata.de)
  * 
@@ -40,7 +49,24 @@ public class UserXmlPreferencesCache extends AbstractCache
 {
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(UserXmlPreferencesCache.class);
 
-  private final Map<Integer, UserXmlPreferencesMap> allPreferences = new HashMap<Integer, UserXmlPreferencesMap>();
+  /**
+   * Should be greater than the session timeout, because the volatile data gets lost on eviction.
+   */
+  static final long EVICTION_TIME = 12 * TICKS_PER_HOUR;
+
+  private static final int BATCH_SIZE = 50;
+
+  private final ConcurrentHashMap<Integer, UserXmlPreferencesMap> allPreferences = new ConcurrentHashMap<Integer, UserXmlPreferencesMap>();
+
+  /**
+   * Users with modified preferences not yet written to the data base.
+   */
+  private final Set<Integer> modifiedUserIds = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+  /**
+   * Serializes the writing of {@link #flushToDB(Integer)} and {@link #refresh()}, so an older value of an entry never overwrites a newer one.
+   */
+  private final Object flushLock = new Object();
 
   private UserXmlPreferencesDao userXmlPreferencesDao;
 
@@ -74,8 +100,20 @@ public class UserXmlPreferencesCache extends AbstractCache
    */
   public void putEntry(final Integer userId, final String key, final Object value, final boolean persistent)
   {
-    final UserXmlPreferencesMap data = ensureAndGetUserPreferencesData(userId);
-    data.putEntry(key, value, persistent);
+    while (true) {
+      final UserXmlPreferencesMap data = ensureAndGetUserPreferencesData(userId);
+      synchronized (data) {
+        if (data.isEvicted() == true) {
+          // Removed from the cache meanwhile, the modification would get lost, so reload:
+          continue;
+        }
+        data.putEntry(key, value, persistent);
+        if (persistent == true) {
+          modifiedUserIds.add(userId);
+        }
+      }
+      break;
+    }
     checkRefresh(); // Should be called at the end of this method for considering changes inside this method.
   }
 
@@ -85,9 +123,22 @@ public class UserXmlPreferencesCache extends AbstractCache
    */
   public Object getEntry(final Integer userId, final String key)
   {
-    final UserXmlPreferencesMap data = ensureAndGetUserPreferencesData(userId);
     checkRefresh();
-    return data.getEntry(key);
+    while (true) {
+      final UserXmlPreferencesMap data = ensureAndGetUserPreferencesData(userId);
+      synchronized (data) {
+        if (data.isEvicted() == true) {
+          // Removed from the cache meanwhile, the value may be modified by the caller, so reload:
+          continue;
+        }
+        final Object value = data.getEntry(key);
+        if (value != null && data.isModified(key) == true) {
+          // Persistent values are assumed to be modified after use-age.
+          modifiedUserIds.add(userId);
+        }
+        return value;
+      }
+    }
   }
 
   /**
@@ -115,20 +166,22 @@ public class UserXmlPreferencesCache extends AbstractCache
    * @param userId
    * @return
    */
-  public synchronized UserXmlPreferencesMap ensureAndGetUserPreferencesData(final Integer userId)
+  public UserXmlPreferencesMap ensureAndGetUserPreferencesData(final Integer userId)
   {
     UserXmlPreferencesMap data = getUserPreferencesData(userId);
-    if (data == null) {
-      data = new UserXmlPreferencesMap();
-      data.setUserId(userId);
-      final List<UserXmlPreferencesDO> userPrefs = userXmlPreferencesDao.getUserPreferencesByUserId(userId);
-      for (final UserXmlPreferencesDO userPref : userPrefs) {
-        final Object value = userXmlPreferencesDao.deserialize(userPref, true);
-        data.putEntry(userPref.getKey(), value, true);
-      }
-      this.allPreferences.put(userId, data);
+    if (data != null) {
+      return data;
+    }
+    // Loaded without lock, only the first loaded data of concurrent requests of the same user is used.
+    data = new UserXmlPreferencesMap();
+    data.setUserId(userId);
+    final List<UserXmlPreferencesDO> userPrefs = userXmlPreferencesDao.getUserPreferencesByUserId(userId);
+    for (final UserXmlPreferencesDO userPref : userPrefs) {
+      final Object value = userXmlPreferencesDao.deserialize(userPref, true);
+      data.putEntry(userPref.getKey(), value, true);
     }
-    return data;
+    final UserXmlPreferencesMap other = allPreferences.putIfAbsent(userId, data);
+    return other != null ? other : data;
   }
 
   UserXmlPreferencesMap getUserPreferencesData(final Integer userId)
@@ -150,7 +203,7 @@ public class UserXmlPreferencesCache extends AbstractCache
     flushToDB(userId, true);
   }
 
-  private synchronized void flushToDB(final Integer userId, final boolean checkAccess)
+  private void flushToDB(final Integer userId, final boolean checkAccess)
   {
     if (checkAccess == true) {
       if (userId.equals(PFUserContext.getUserId()) == false) {
@@ -164,24 +217,106 @@ public class UserXmlPreferencesCache extends AbstractCache
       return;
     }
     final UserXmlPreferencesMap data = allPreferences.get(userId);
+    modifiedUserIds.remove(userId);
     if (data == null || data.isModified() == false) {
       return;
     }
-    userXmlPreferencesDao.saveOrUpdateUserEntries(userId, data, checkAccess);
+    final Map<String, Object> entries = data.getModifiedPersistentEntries();
+    synchronized (flushLock) {
+      try {
+        userXmlPreferencesDao.saveOrUpdateUserEntries(userId, entries, checkAccess);
+      } catch (final RuntimeException ex) {
+        setModified(userId, data, entries);
+        throw ex;
+      }
+    }
   }
 
   /**
-   * Stores the PersistentUserObjects in the database or on start up restores the persistent user objects from the database.
+   * Marks the given entries as modified again after writing them failed, so they will be written by the next flush.
+   */
+  private void setModified(final Integer userId, final UserXmlPreferencesMap data, final Map<String, Object> entries)
+  {
+    synchronized (data) {
+      data.setModified(entries.keySet());
+      modifiedUserIds.add(userId);
+    }
+  }
+
+  /**
+   * Stores the modified user preferences of all users in the database (in batches) and removes the preferences of inactive users. Runs in
+   * background if the cache is expired, explicit calls of {@link #forceReload()} (e. g. on shutdown) are processed synchronously.
    * @see org.projectforge.common.AbstractCache#refresh()
    */
   @Override
   protected void refresh()
   {
     log.info("Flushing all user preferences to data-base....");
-    for (final Integer userId : allPreferences.keySet()) {
-      flushToDB(userId, false);
+    final List<Integer> userIds = new ArrayList<Integer>(modifiedUserIds);
+    int counter = 0;
+    for (int i = 0; i < userIds.size(); i += BATCH_SIZE) {
+      synchronized (flushLock) {
+        counter += flushBatch(userIds.subList(i, Math.min(i + BATCH_SIZE, userIds.size())));
+      }
+    }
+    final long evictionLimit = System.currentTimeMillis() - EVICTION_TIME;
+    int evicted = 0;
+    for (final Map.Entry<Integer, UserXmlPreferencesMap> entry : allPreferences.entrySet()) {
+      final UserXmlPreferencesMap data = entry.getValue();
+      if (data.getLastAccess() >= evictionLimit) {
+        continue;
+      }
+      // Check again under the lock of the map, so no modification since the check gets lost:
+      synchronized (data) {
+        if (modifiedUserIds.contains(entry.getKey()) == false && data.evict(evictionLimit) == true) {
+          allPreferences.remove(entry.getKey(), data);
+          ++evicted;
+        }
+      }
+    }
+    log.info("Flushing of user preferences to data-base done: " + counter + " entries of " + userIds.size() + " users written, " + evicted
+        + " inactive users removed from cache.");
+  }
+
+  /**
+   * Writes the modified entries of the given users in one transaction. If the transaction fails, the entries are written user by user. The
+   * entries of users which can't be written are marked as modified again, so they're retried by the next flush.
+   * @return The number of written entries.
+   */
+  private int flushBatch(final List<Integer> userIds)
+  {
+    final Map<Integer, Map<String, Object>> batch = new HashMap<Integer, Map<String, Object>>();
+    final Map<Integer, UserXmlPreferencesMap> batchData = new HashMap<Integer, UserXmlPreferencesMap>();
+    int counter = 0;
+    for (final Integer userId : userIds) {
+      modifiedUserIds.remove(userId);
+      final UserXmlPreferencesMap data = allPreferences.get(userId);
+      if (data == null || accessChecker.isDemoUser(userId) == true) {
+        continue;
+      }
+      final Map<String, Object> entries = data.getModifiedPersistentEntries();
+      if (entries.isEmpty() == false) {
+        batch.put(userId, entries);
+        batchData.put(userId, data);
+        counter += entries.size();
+      }
+    }
+    try {
+      userXmlPreferencesDao.saveOrUpdateUserEntries(batch);
+    } catch (final Throwable ex) {
+      log.error("Can't write user preferences batch, trying every user separately: " + ex.getMessage(), ex);
+      for (final Map.Entry<Integer, Map<String, Object>> entry : batch.entrySet()) {
+        try {
+          userXmlPreferencesDao.saveOrUpdateUserEntries(entry.getKey(), entry.getValue(), false);
+        } catch (final Throwable ex2) {
+          log.error("Can't write user preferences of user '" + entry.getKey() + "', will be retried by the next flush: " + ex2.getMessage(),
+              ex2);
+          counter -= entry.getValue().size();
+          setModified(entry.getKey(), batchData.get(entry.getKey()), entry.getValue());
+        }
+      }
     }
-    log.info("Flushing of user preferences to data-base done.");
+    return counter;
   }
 
   /**
@@ -24,10 +24,14 @@
 package org.projectforge.user;
 
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.ObjectUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
 import org.projectforge.access.AccessChecker;
 import org.projectforge.common.GZIPHelper;
@@ -51,7 +55,9 @@ import com.thoughtworks.xstream.XStream;
 
 /**
  * Stores all user persistent objects such as filter settings, personal settings and persists them to the database as xml (compressed (gzip
- * and base64) for larger xml content).
+ * and base64) for larger xml content).<br/>
+ * Values of the often used simple types (strings, numbers, booleans and sets of integers, such as the open task tree nodes) are stored in a
+ * compact text format instead of xml (prefix {@link #COMPACT_PREFIX}), all other values are serialized by XStream.
  * 
  * @author Kai Reinhard (k.reinhard@micromata.de)
  * 
@@ -65,6 +71,11 @@ public class UserXmlPreferencesDao extends HibernateDaoSupport
 
   private UserDao userDao;
 
+  /**
+   * Prefix of the values serialized in the compact format (xml values start with '&lt;', compressed values with '!').
+   */
+  static final char COMPACT_PREFIX = '#';
+
   private final XStream xstream;
 
   public UserXmlPreferencesDao()
@@ -179,6 +190,9 @@ public class UserXmlPreferencesDao extends HibernateDaoSupport
         final String uncompressed = GZIPHelper.uncompress(xml.substring(1));
         xml = uncompressed;
       }
+      if (xml.length() > 0 && xml.charAt(0) == COMPACT_PREFIX) {
+        return fromCompactString(xml);
+      }
       final Object value = XStreamHelper.fromXml(xstream, xml);
       return value;
     } catch (final Throwable ex) {
@@ -198,7 +212,10 @@ public class UserXmlPreferencesDao extends HibernateDaoSupport
 
   public String serialize(final UserXmlPreferencesDO userPrefs, final Object value)
   {
-    final String xml = XStreamHelper.toXml(xstream, value);
+    String xml = toCompactString(value);
+    if (xml == null) {
+      xml = XStreamHelper.toXml(xstream, value);
+    }
     if (xml.length() > 1000) {
       // Compress value:
       final String compressed = GZIPHelper.compress(xml);
@@ -209,19 +226,143 @@ public class UserXmlPreferencesDao extends HibernateDaoSupport
     return xml;
   }
 
+  /**
+   * @return The compact string of the given value or null if the type of the value isn't supported by the compact format.
+   */
+  static String toCompactString(final Object value)
+  {
+    if (value == null) {
+      return null;
+    }
+    final Class< ? > type = value.getClass();
+    if (type == String.class) {
+      return COMPACT_PREFIX + "s:" + value;
+    } else if (type == Integer.class) {
+      return COMPACT_PREFIX + "i:" + value;
+    } else if (type == Long.class) {
+      return COMPACT_PREFIX + "l:" + value;
+    } else if (type == Boolean.class) {
+      return COMPACT_PREFIX + "b:" + value;
+    } else if (type == HashSet.class) {
+      final StringBuilder buf = new StringBuilder();
+      buf.append(COMPACT_PREFIX).append("I:");
+      boolean first = true;
+      for (final Object element : (Set< ? >) value) {
+        if (element == null || element.getClass() != Integer.class) {
+          // Only sets of integers are supported.
+          return null;
+        }
+        if (first == true) {
+          first = false;
+        } else {
+          buf.append(',');
+        }
+        buf.append(element);
+      }
+      return buf.toString();
+    }
+    return null;
+  }
+
+  /**
+   * @param str Value serialized by {@link #toCompactString(Object)}.
+   */
+  static Object fromCompactString(final String str)
+  {
+    final char type = str.charAt(1);
+    final String value = str.substring(3);
+    switch (type) {
+      case 's':
+        return value;
+      case 'i':
+        return Integer.valueOf(value);
+      case 'l':
+        return Long.valueOf(value);
+      case 'b':
+        return Boolean.valueOf(value);
+      case 'I':
+        final Set<Integer> set = new HashSet<Integer>();
+        if (value.length() > 0) {
+          for (final String element : StringUtils.split(value, ',')) {
+            set.add(Integer.valueOf(element));
+          }
+        }
+        return set;
+      default:
+        throw new IllegalArgumentException("Unsupported type '" + type + "' of compact user preferences value: " + str);
+    }
+  }
+
   // REQUIRES_NEW needed for avoiding a lot of new data base connections from HibernateFilter.
   @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW)
   public void saveOrUpdateUserEntries(final Integer userId, final UserXmlPreferencesMap data, final boolean checkAccess)
   {
-    for (final Map.Entry<String, Object> prefEntry : data.getPersistentData().entrySet()) {
-      final String key = prefEntry.getKey();
-      if (data.isModified(key) == true) {
+    saveOrUpdateUserEntries(userId, data.getModifiedPersistentEntries(), checkAccess);
+  }
+
+  /**
+   * Stores the given entries of one user (one transaction).
+   * @param entries Key and value of every entry to write.
+   */
+  @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW)
+  public void saveOrUpdateUserEntries(final Integer userId, final Map<String, Object> entries, final boolean checkAccess)
+  {
+    for (final Map.Entry<String, Object> prefEntry : entries.entrySet()) {
+      try {
+        saveOrUpdate(userId, prefEntry.getKey(), prefEntry.getValue(), checkAccess);
+      } catch (final Throwable ex) {
+        log.warn(ex.getMessage(), ex);
+      }
+    }
+  }
+
+  /**
+   * Stores the modified entries of several users in one transaction: the existing data base entries of all users are selected by one query
+   * (used by the write-behind of the {@link UserXmlPreferencesCache}, no access checking).
+   * @param entriesByUser Modified entries (key and value) by user id.
+   */
+  @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW)
+  public void saveOrUpdateUserEntries(final Map<Integer, Map<String, Object>> entriesByUser)
+  {
+    if (entriesByUser.isEmpty() == true) {
+      return;
+    }
+    @SuppressWarnings("unchecked")
+    final List<UserXmlPreferencesDO> list = getHibernateTemplate().findByNamedParam(
+        "from UserXmlPreferencesDO u where u.user.id in (:userIds)", "userIds", entriesByUser.keySet());
+    final Map<String, UserXmlPreferencesDO> existingEntries = new HashMap<String, UserXmlPreferencesDO>();
+    for (final UserXmlPreferencesDO userPrefs : list) {
+      existingEntries.put(userPrefs.getUserId() + ":" + userPrefs.getKey(), userPrefs);
+    }
+    final Date date = new Date();
+    for (final Map.Entry<Integer, Map<String, Object>> userEntry : entriesByUser.entrySet()) {
+      final Integer userId = userEntry.getKey();
+      if (accessChecker.isDemoUser(userId) == true) {
+        continue;
+      }
+      for (final Map.Entry<String, Object> prefEntry : userEntry.getValue().entrySet()) {
+        final String key = prefEntry.getKey();
+        UserXmlPreferencesDO userPrefs = existingEntries.get(userId + ":" + key);
+        final boolean isNew = userPrefs == null;
+        if (isNew == true) {
+          userPrefs = new UserXmlPreferencesDO();
+          userPrefs.setCreated(date);
+          userPrefs.setUser(userDao.internalGetById(userId));
+          userPrefs.setKey(key);
+        }
         try {
-          saveOrUpdate(userId, key, prefEntry.getValue(), checkAccess);
+          serialize(userPrefs, prefEntry.getValue());
         } catch (final Throwable ex) {
-          log.warn(ex.getMessage(), ex);
+          log.warn("Can't serialize user preferences of user '" + userId + "': " + key + ": " + ex.getMessage(), ex);
+          continue;
+        }
+        userPrefs.setLastUpdate(date);
+        userPrefs.setVersion();
+        if (isNew == true) {
+          getHibernateTemplate().save(userPrefs);
+        } else {
+          getHibernateTemplate().update(userPrefs);
         }
-        data.setModified(key, false);
       }
     }
   }
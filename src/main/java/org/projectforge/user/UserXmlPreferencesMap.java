@@ -23,6 +23,7 @@
 
 package org.projectforge.user;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -33,7 +34,8 @@ import com.thoughtworks.xstream.annotations.XStreamOmitField;
 
 /**
  * User preferences contains a Map used by UserXmlPreferencesCache for storing user data application wide. Also persistent user preferences in
- * the database are supported.
+ * the database are supported.<br/>
+ * All methods are synchronized, so every user has its own lock and the preferences of different users are accessed concurrently.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  * 
  */
@@ -52,32 +54,32 @@ public class UserXmlPreferencesMap
   @XStreamOmitField
   private transient Map<String, Object> volatileData;
 
-  protected Map<String, Object> getPersistentData()
+  @XStreamOmitField
+  private transient volatile long lastAccess = System.currentTimeMillis();
+
+  @XStreamOmitField
+  private transient boolean evicted;
+
+  protected synchronized Map<String, Object> getPersistentData()
   {
-    synchronized (this) {
-      if (persistentData == null) {
-        persistentData = new HashMap<String, Object>();
-      }
+    if (persistentData == null) {
+      persistentData = new HashMap<String, Object>();
     }
     return persistentData;
   }
 
-  protected Map<String, Object> getVolatileData()
+  protected synchronized Map<String, Object> getVolatileData()
   {
-    synchronized (this) {
-      if (volatileData == null) {
-        volatileData = new HashMap<String, Object>();
-      }
+    if (volatileData == null) {
+      volatileData = new HashMap<String, Object>();
     }
     return volatileData;
   }
 
-  protected Set<String> getModifiedObjects()
+  protected synchronized Set<String> getModifiedObjects()
   {
-    synchronized (this) {
-      if (modifiedObjects == null) {
-        modifiedObjects = new HashSet<String>();
-      }
+    if (modifiedObjects == null) {
+      modifiedObjects = new HashSet<String>();
     }
     return modifiedObjects;
   }
@@ -87,8 +89,9 @@ public class UserXmlPreferencesMap
    * @param value
    * @param persistent If true, the object will be persisted in the database.
    */
-  public void putEntry(String key, Object value, boolean persistent)
+  public synchronized void putEntry(final String key, final Object value, final boolean persistent)
   {
+    lastAccess = System.currentTimeMillis();
     if (persistent == true) {
       setModified(key, true);
       getPersistentData().put(key, value);
@@ -102,9 +105,10 @@ public class UserXmlPreferencesMap
    * @param key
    * @return Return a persistent object with this key, if existing, or if not a volatile object with this key, if existing, otherwise null;
    */
-  public Object getEntry(String key)
+  public synchronized Object getEntry(final String key)
   {
-    Object value = getPersistentData().get(key);
+    lastAccess = System.currentTimeMillis();
+    final Object value = getPersistentData().get(key);
     if (value != null) {
       // Assuming modification after use-age:
       setModified(key, true);
@@ -118,14 +122,16 @@ public class UserXmlPreferencesMap
    * @param key
    * @return the removed value if found.
    */
-  public Object removeEntry(String key)
+  public synchronized Object removeEntry(final String key)
   {
+    lastAccess = System.currentTimeMillis();
     Object value = getPersistentData().remove(key);
     if (value == null) {
       value = getVolatileData().remove(key);
     } else {
       getVolatileData().remove(key);
     }
+    setModified(key, false);
     return value;
   }
 
@@ -134,17 +140,17 @@ public class UserXmlPreferencesMap
     return userId;
   }
 
-  public void setUserId(Integer userId)
+  public void setUserId(final Integer userId)
   {
     this.userId = userId;
   }
 
-  public boolean isModified()
+  public synchronized boolean isModified()
   {
     return getModifiedObjects().isEmpty() == false;
   }
 
-  protected void setModified(String key, boolean isModified)
+  protected synchronized void setModified(final String key, final boolean isModified)
   {
     if (isModified == true) {
       getModifiedObjects().add(key);
@@ -153,15 +159,73 @@ public class UserXmlPreferencesMap
     }
   }
 
-  protected boolean isModified(String key)
+  /**
+   * Marks the given entries as modified again, e. g. if writing the entries returned by {@link #getModifiedPersistentEntries()} failed.
+   * @param keys
+   */
+  protected synchronized void setModified(final Collection<String> keys)
+  {
+    getModifiedObjects().addAll(keys);
+  }
+
+  protected synchronized boolean isModified(final String key)
   {
     return getModifiedObjects().contains(key);
   }
 
+  /**
+   * Returns all modified persistent entries for writing them to the data base and resets their modified flags. Any modification after this
+   * call will be written by the next flush (modifications between two flushes are written only once). If writing fails, the caller has to
+   * mark the entries as modified again (see {@link #setModified(Collection)}).
+   * @return The modified entries (copy, key and value).
+   */
+  protected synchronized Map<String, Object> getModifiedPersistentEntries()
+  {
+    final Map<String, Object> result = new HashMap<String, Object>();
+    for (final String key : getModifiedObjects()) {
+      if (getPersistentData().containsKey(key) == true) {
+        result.put(key, getPersistentData().get(key));
+      }
+    }
+    getModifiedObjects().clear();
+    return result;
+  }
+
+  /**
+   * @return Time in millis of the last put, get or remove.
+   */
+  public long getLastAccess()
+  {
+    return lastAccess;
+  }
+
+  /**
+   * Marks this map as removed from the cache, if it wasn't accessed since the given time and isn't modified. The caller should hold the
+   * lock of this map until the map is removed from the cache.
+   * @param evictionLimit Time in millis.
+   * @return true, if evicted.
+   */
+  synchronized boolean evict(final long evictionLimit)
+  {
+    if (lastAccess >= evictionLimit || isModified() == true) {
+      return false;
+    }
+    evicted = true;
+    return true;
+  }
+
+  /**
+   * @return true, if this map was removed from the cache. Modifications of an evicted map get lost, so the map has to be reloaded.
+   */
+  synchronized boolean isEvicted()
+  {
+    return evicted;
+  }
+
   /**
    * Clear all volatile data (after logout). Forces refreshing of volatile data after re-login.
    */
-  public void clear()
+  public synchronized void clear()
   {
     if (volatileData != null) {
       volatileData.clear();
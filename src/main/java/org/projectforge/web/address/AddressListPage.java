@@ -241,6 +241,15 @@ public class AddressListPage extends AbstractListPage<AddressListForm, AddressDa
     return columns;
   }
 
+  /**
+   * @see org.projectforge.web.wicket.AbstractListPage#isPageable(java.lang.String)
+   */
+  @Override
+  protected boolean isPageable(final String sortProperty)
+  {
+    return isBaseDaoPageable(sortProperty);
+  }
+
   @SuppressWarnings("serial")
   @Override
   protected void init()
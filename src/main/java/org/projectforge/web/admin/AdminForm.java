@@ -23,6 +23,7 @@
 
 package org.projectforge.web.admin;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.Date;
 
@@ -33,13 +34,16 @@ import org.apache.wicket.model.Model;
 import org.apache.wicket.model.PropertyModel;
 import org.projectforge.AppVersion;
 import org.projectforge.common.DateHelper;
+import org.projectforge.core.ConfigXml;
 import org.projectforge.user.PFUserContext;
+import org.projectforge.web.HtmlHelper;
 import org.projectforge.web.wicket.AbstractStandardForm;
 import org.projectforge.web.wicket.WicketApplication;
 import org.projectforge.web.wicket.WicketUtils;
 import org.projectforge.web.wicket.bootstrap.GridSize;
 import org.projectforge.web.wicket.components.DatePanel;
 import org.projectforge.web.wicket.components.MaxLengthTextArea;
+import org.projectforge.web.wicket.components.MaxLengthTextField;
 import org.projectforge.web.wicket.components.MinMaxNumberField;
 import org.projectforge.web.wicket.components.SingleButtonPanel;
 import org.projectforge.web.wicket.flowlayout.DivPanel;
@@ -62,6 +66,8 @@ public class AdminForm extends AbstractStandardForm<AdminForm, AdminPage>
 
   protected String alertMessage;
 
+  protected String snapshotDirectory = ConfigXml.getInstance().getWorkingDirectory() + File.separator + "snapshot";
+
   protected DatePanel reindexFromDatePanel;
 
   public AdminForm(final AdminPage parentPage)
@@ -142,6 +148,46 @@ public class AdminForm extends AbstractStandardForm<AdminForm, AdminPage>
         }
       }.getButtonPanel());
     }
+    {
+      final FieldsetPanel fs = new FieldsetPanel(gridBuilder.getPanel(), getString("system.admin.reindex.progress")) {
+        @Override
+        public boolean isVisible()
+        {
+          return parentPage.getReindexProgress() != null;
+        }
+      };
+      final DivTextPanel progress = new DivTextPanel(fs.newChildId(), new Model<String>() {
+        @Override
+        public String getObject()
+        {
+          return HtmlHelper.formatText(parentPage.getReindexProgress(), true);
+        }
+      });
+      progress.getLabel().setEscapeModelStrings(false);
+      fs.add(progress);
+    }
+    {
+      final FieldsetPanel fs = gridBuilder.newFieldset(getString("system.admin.snapshot.directory"));
+      fs.add(new MaxLengthTextField(InputPanel.WICKET_ID, new PropertyModel<String>(this, "snapshotDirectory"), 1000));
+      fs.addHelpIcon(getString("system.admin.snapshot.directory.tooltip"));
+      fs.add(new MyButtonPanel(fs.newChildId(), "writeSnapshot") {
+        @Override
+        public void onSubmit()
+        {
+          parentPage.writeSnapshot();
+        }
+      }.getButtonPanel());
+      final MyButtonPanel restoreSnapshotButtonPanel = new MyButtonPanel(fs.newChildId(), "restoreSnapshot") {
+        @Override
+        public void onSubmit()
+        {
+          parentPage.restoreSnapshot();
+        }
+      };
+      restoreSnapshotButtonPanel.getButton().add(
+          WicketUtils.javaScriptConfirmDialogOnClick(getString("system.admin.button.restoreSnapshot.question")));
+      fs.add(restoreSnapshotButtonPanel.getButtonPanel());
+    }
 
     gridBuilder.newGridPanel();
     {
@@ -211,6 +257,11 @@ public class AdminForm extends AbstractStandardForm<AdminForm, AdminPage>
       return buttonPanel;
     }
 
+    public Button getButton()
+    {
+      return button;
+    }
+
     public abstract void onSubmit();
 
     public boolean isVisible()
@@ -23,9 +23,10 @@
 
 package org.projectforge.web.admin;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -35,9 +36,12 @@ import java.util.Set;
 import java.util.TreeSet;
 
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.apache.wicket.markup.html.link.Link;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.spring.injection.annot.SpringBean;
+import org.apache.wicket.util.resource.AbstractResourceStreamWriter;
+import org.apache.wicket.util.resource.IResourceStream;
 import org.projectforge.book.BookDO;
 import org.projectforge.book.BookDao;
 import org.projectforge.book.BookStatus;
@@ -48,6 +52,8 @@ import org.projectforge.core.ConfigurationParam;
 import org.projectforge.core.HibernateSearchReindexer;
 import org.projectforge.core.ReindexSettings;
 import org.projectforge.core.SystemDao;
+import org.projectforge.database.DatabaseDao;
+import org.projectforge.database.DatabaseSnapshot;
 import org.projectforge.database.MyDatabaseUpdater;
 import org.projectforge.database.XmlDump;
 import org.projectforge.meb.MebMailClient;
@@ -92,6 +98,12 @@ public class AdminPage extends AbstractStandardFormPage implements ISelectCaller
   @SpringBean(name = "hibernateSearchReindexer")
   private HibernateSearchReindexer hibernateSearchReindexer;
 
+  @SpringBean(name = "databaseDao")
+  private DatabaseDao databaseDao;
+
+  @SpringBean(name = "databaseSnapshot")
+  private DatabaseSnapshot databaseSnapshot;
+
   @SpringBean(name = "mebMailClient")
   private MebMailClient mebMailClient;
 
@@ -508,9 +520,51 @@ public class AdminPage extends AbstractStandardFormPage implements ISelectCaller
     myDatabaseUpdater.getDatabaseUpdateDao().fixDBHistoryEntries();
     final String ts = DateHelper.getTimestampAsFilenameSuffix(new Date());
     final String filename = "projectforgedump_" + ts + ".xml.gz";
-    final ByteArrayOutputStream out = new ByteArrayOutputStream();
-    xmlDump.dumpDatabase(filename, out);
-    DownloadUtils.setDownloadTarget(out.toByteArray(), filename);
+    final IResourceStream resourceStream = new AbstractResourceStreamWriter() {
+      private static final long serialVersionUID = -4381406219592462358L;
+
+      @Override
+      public String getContentType()
+      {
+        return "application/x-gzip";
+      }
+
+      @Override
+      public void write(final OutputStream output)
+      {
+        // The dump is written directly into the response (the response stream isn't closed by the dump):
+        xmlDump.dumpDatabaseStreaming(filename, new CloseShieldOutputStream(output));
+      }
+    };
+    DownloadUtils.setDownloadTarget(filename, resourceStream);
+  }
+
+  protected void writeSnapshot()
+  {
+    log.info("Administration: write data-base snapshot to '" + form.snapshotDirectory + "'.");
+    checkAccess();
+    // Fix the data-base history entries first:
+    myDatabaseUpdater.getDatabaseUpdateDao().fixDBHistoryEntries();
+    final File dir = new File(form.snapshotDirectory);
+    databaseSnapshot.writeSnapshot(dir);
+    setResponsePage(new MessagePage("system.admin.snapshot.written", dir.getAbsolutePath()));
+  }
+
+  protected void restoreSnapshot()
+  {
+    log.info("Administration: restore data-base snapshot from '" + form.snapshotDirectory + "'.");
+    checkAccess();
+    final File dir = new File(form.snapshotDirectory);
+    if (new File(dir, DatabaseSnapshot.MANIFEST_FILENAME).canRead() == false) {
+      error(getLocalizedMessage("system.admin.snapshot.error.notFound", dir.getAbsolutePath()));
+      return;
+    }
+    // All rows are replaced, the caches and search indices are rebuilt by the snapshot restore:
+    databaseSnapshot.restoreSnapshot(dir, true);
+    Configuration.getInstance().setExpired();
+    userXmlPreferencesCache.forceReload();
+    menuBuilder.refreshAllMenus();
+    setResponsePage(new MessagePage("system.admin.snapshot.restored", dir.getAbsolutePath()));
   }
 
   protected void reindex()
@@ -522,6 +576,14 @@ public class AdminPage extends AbstractStandardFormPage implements ISelectCaller
     setResponsePage(new MessagePage("administration.databaseSearchIndicesRebuild", tables));
   }
 
+  /**
+   * @return The progress of the running re-index jobs or null, if no job is running.
+   */
+  protected String getReindexProgress()
+  {
+    return databaseDao.getReindexProgress();
+  }
+
   protected void schemaExport()
   {
     log.info("Administration: schema export.");
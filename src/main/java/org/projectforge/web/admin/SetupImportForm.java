@@ -27,13 +27,16 @@ import org.apache.wicket.markup.html.form.Button;
 import org.apache.wicket.markup.html.form.upload.FileUploadField;
 import org.apache.wicket.markup.repeater.RepeatingView;
 import org.apache.wicket.model.Model;
+import org.apache.wicket.model.PropertyModel;
 import org.apache.wicket.util.lang.Bytes;
 import org.projectforge.web.wicket.AbstractForm;
 import org.projectforge.web.wicket.CsrfTokenHandler;
 import org.projectforge.web.wicket.bootstrap.GridBuilder;
+import org.projectforge.web.wicket.components.MaxLengthTextField;
 import org.projectforge.web.wicket.components.SingleButtonPanel;
 import org.projectforge.web.wicket.flowlayout.FieldsetPanel;
 import org.projectforge.web.wicket.flowlayout.FileUploadPanel;
+import org.projectforge.web.wicket.flowlayout.InputPanel;
 
 public class SetupImportForm extends AbstractForm<SetupImportForm, SetupPage>
 {
@@ -43,6 +46,8 @@ public class SetupImportForm extends AbstractForm<SetupImportForm, SetupPage>
 
   protected String filename;
 
+  protected String snapshotDirectory;
+
   /**
    * Cross site request forgery token.
    */
@@ -75,6 +80,12 @@ public class SetupImportForm extends AbstractForm<SetupImportForm, SetupPage>
       fileUploadField = new FileUploadField(FileUploadPanel.WICKET_ID);
       fs.add(new FileUploadPanel(fs.newChildId(), fileUploadField));
     }
+    {
+      // Snapshot directory on the server (alternative to the dump file)
+      final FieldsetPanel fs = gridBuilder.newFieldset(getString("administration.setup.snapshotDirectory"));
+      fs.add(new MaxLengthTextField(InputPanel.WICKET_ID, new PropertyModel<String>(this, "snapshotDirectory"), 1000));
+      fs.addHelpIcon(getString("administration.setup.snapshotDirectory.tooltip"));
+    }
     final RepeatingView actionButtons = new RepeatingView("buttons");
     add(actionButtons);
     {
@@ -89,5 +100,17 @@ public class SetupImportForm extends AbstractForm<SetupImportForm, SetupPage>
           SingleButtonPanel.DEFAULT_SUBMIT);
       actionButtons.add(importButtonPanel);
     }
+    {
+      final Button restoreSnapshotButton = new Button(SingleButtonPanel.WICKET_ID, new Model<String>("restoreSnapshot")) {
+        @Override
+        public final void onSubmit()
+        {
+          parentPage.restoreSnapshot();
+        }
+      };
+      final SingleButtonPanel restoreSnapshotButtonPanel = new SingleButtonPanel(actionButtons.newChildId(), restoreSnapshotButton,
+          getString("administration.setup.restoreSnapshot"), SingleButtonPanel.NORMAL);
+      actionButtons.add(restoreSnapshotButtonPanel);
+    }
   }
 }
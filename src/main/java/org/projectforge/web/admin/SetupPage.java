@@ -23,6 +23,7 @@
 
 package org.projectforge.web.admin;
 
+import java.io.File;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.zip.GZIPInputStream;
@@ -37,6 +38,9 @@ import org.projectforge.core.ConfigurationDO;
 import org.projectforge.core.ConfigurationDao;
 import org.projectforge.core.ConfigurationParam;
 import org.projectforge.core.HibernateSearchReindexer;
+import org.projectforge.core.InternalErrorException;
+import org.projectforge.core.ReindexSettings;
+import org.projectforge.database.DatabaseSnapshot;
 import org.projectforge.database.InitDatabaseDao;
 import org.projectforge.database.MyDatabaseUpdater;
 import org.projectforge.database.XmlDump;
@@ -79,6 +83,9 @@ public class SetupPage extends AbstractUnsecureBasePage
   @SpringBean(name = "xmlDump")
   private XmlDump xmlDump;
 
+  @SpringBean(name = "databaseSnapshot")
+  private DatabaseSnapshot databaseSnapshot;
+
   private final SetupForm setupForm;
 
   private final SetupImportForm importForm;
@@ -188,19 +195,43 @@ public class SetupPage extends AbstractUnsecureBasePage
       Configuration.getInstance().setExpired();
       taskTree.setExpired();
       userGroupCache.setExpired();
-      new Thread() {
-        @Override
-        public void run()
-        {
-          hibernateSearchReindexer.rebuildDatabaseSearchIndices();
-        }
-      }.start();
+      // The data base is new, so don't continue any aborted re-index run:
+      hibernateSearchReindexer.executeInBackground(new ReindexSettings().setResumeAbortedRun(false));
       if (counter > 0) {
         ((MySession) getSession()).logout();
         setResponsePage(LoginPage.class);
       } else {
         error(getString("administration.setup.error.import"));
       }
+    } catch (final InternalErrorException ex) {
+      // Data-base is partially restored:
+      log.error(ex.getMessage(), ex);
+      error(getLocalizedMessage(ex.getI18nKey(), ex.getParams()));
+    } catch (final Exception ex) {
+      log.error(ex.getMessage(), ex);
+      error(getString("administration.setup.error.import"));
+    }
+  }
+
+  protected void restoreSnapshot()
+  {
+    checkAccess();
+    if (StringUtils.isBlank(importForm.snapshotDirectory) == true) {
+      return;
+    }
+    final File dir = new File(importForm.snapshotDirectory);
+    log.info("Restoring data-base snapshot from '" + dir.getAbsolutePath() + "'...");
+    if (new File(dir, DatabaseSnapshot.MANIFEST_FILENAME).canRead() == false) {
+      error(getLocalizedMessage("administration.setup.error.snapshotNotFound", dir.getAbsolutePath()));
+      return;
+    }
+    try {
+      // Expires the caches and rebuilds the search indices:
+      databaseSnapshot.restoreSnapshot(dir);
+      configurationDao.checkAndUpdateDatabaseEntries();
+      Configuration.getInstance().setExpired();
+      ((MySession) getSession()).logout();
+      setResponsePage(LoginPage.class);
     } catch (final Exception ex) {
       log.error(ex.getMessage(), ex);
       error(getString("administration.setup.error.import"));
@@ -23,7 +23,9 @@
 
 package org.projectforge.web.calendar;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedList;
@@ -36,16 +38,16 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import net.fortuna.ical4j.data.CalendarOutputter;
+import net.fortuna.ical4j.data.FoldingWriter;
 import net.fortuna.ical4j.model.Calendar;
 import net.fortuna.ical4j.model.TimeZone;
-import net.fortuna.ical4j.model.ValidationException;
 import net.fortuna.ical4j.model.component.VEvent;
 import net.fortuna.ical4j.model.property.CalScale;
 import net.fortuna.ical4j.model.property.Description;
 import net.fortuna.ical4j.model.property.Location;
 import net.fortuna.ical4j.model.property.ProdId;
 import net.fortuna.ical4j.model.property.Version;
+import net.fortuna.ical4j.util.Strings;
 import net.ftlines.wicket.fullcalendar.Event;
 
 import org.apache.commons.httpclient.HttpStatus;
@@ -72,7 +74,9 @@ import org.projectforge.web.timesheet.TimesheetEventsProvider;
 
 /**
  * Feed Servlet, which generates a 'text/calendar' output of the last four mounts. Currently relevant informations are date, start- and stop
- * time and last but not least the location of an event.
+ * time and last but not least the location of an event.<br/>
+ * The rendered feeds are cached by the {@link CalendarFeedCache} and delivered with ETag and Last-Modified headers, so polling clients get
+ * a 304 (not modified) as long as the feed isn't changed.
  * 
  * @author Kai Reinhard (k.reinhard@micromata.de)
  * 
@@ -85,7 +89,7 @@ public class CalendarFeed extends HttpServlet
 
   private static final int PERIOD_IN_MONTHS = 4;
 
-  private static final String PARAM_NAME_TIMESHEET_USER = "timesheetUser";
+  public static final String PARAM_NAME_TIMESHEET_USER = "timesheetUser";
 
   private static final String PARAM_NAME_HOLIDAYS = "holidays";
 
@@ -184,7 +188,6 @@ public class CalendarFeed extends HttpServlet
         return;
       }
       final Map<String, String> params = StringHelper.getKeyValues(decryptedParams, "&");
-      final Calendar calendar = createCal(params, userId, params.get("token"), params.get(PARAM_NAME_TIMESHEET_USER));
       final StringBuffer buf = new StringBuffer();
       boolean first = true;
       for (final Map.Entry<String, String> entry : params.entrySet()) {
@@ -197,19 +200,41 @@ public class CalendarFeed extends HttpServlet
       logMessage = buf.toString();
       log.info("Getting calendar entries for: " + logMessage);
 
-      if (calendar == null) {
+      final PFUserDO loggedInUser = registry.getDao(UserDao.class).getUserByAuthenticationToken(userId, params.get("token"));
+      CalendarFeedCache.Entry entry = null;
+      if (loggedInUser != null) {
+        final CalendarFeedCache feedCache = CalendarFeedCache.getInstance();
+        entry = feedCache.get(userId, decryptedParams);
+        if (entry == null) {
+          final byte[] content = createCal(params, loggedInUser, params.get(PARAM_NAME_TIMESHEET_USER));
+          if (content != null) {
+            entry = feedCache.put(userId, decryptedParams, params, content);
+          }
+        } else if (log.isDebugEnabled() == true) {
+          log.debug("Calendar feed taken from cache: " + logMessage);
+        }
+      }
+      if (entry == null) {
         resp.sendError(HttpStatus.SC_BAD_REQUEST);
         log.error("Bad request, can't find calendar.");
         return;
       }
 
       resp.setContentType("text/calendar");
-      final CalendarOutputter output = new CalendarOutputter(false);
+      resp.setHeader("ETag", entry.getETag());
+      resp.setDateHeader("Last-Modified", entry.getLastModified());
+      long ifModifiedSince = -1;
       try {
-        output.output(calendar, resp.getOutputStream());
-      } catch (final ValidationException ex) {
-        ex.printStackTrace();
+        ifModifiedSince = req.getDateHeader("If-Modified-Since");
+      } catch (final IllegalArgumentException ex) {
+        log.info("Ignoring unparseable header If-Modified-Since: " + req.getHeader("If-Modified-Since"));
+      }
+      if (entry.isNotModified(req.getHeader("If-None-Match"), ifModifiedSince) == true) {
+        resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return;
       }
+      resp.setContentLength(entry.getContent().length);
+      resp.getOutputStream().write(entry.getContent());
     } finally {
       log.info("Finished request: " + logMessage);
       PFUserContext.setUser(null);
@@ -222,21 +247,17 @@ public class CalendarFeed extends HttpServlet
   }
 
   /**
-   * creates a calendar for the user, identified by his name and authentication key.
+   * Creates the calendar (ics) for the user. The components are serialized one by one (no ical4j calendar model and no string of the
+   * whole calendar is built).
    * @param params
-   * 
-   * @param userName
-   * @param userKey
-   * @return a calendar, null if authentication fails
+   * @param loggedInUser The user authenticated by his authentication key.
+   * @param timesheetUserParam
+   * @return The calendar as UTF-8 encoded ics or null if the time sheet user isn't allowed.
    */
-  private Calendar createCal(final Map<String, String> params, final Integer userId, final String authKey, final String timesheetUserParam)
+  private byte[] createCal(final Map<String, String> params, final PFUserDO loggedInUser, final String timesheetUserParam)
+      throws IOException
   {
     final UserDao userDao = Registry.instance().getDao(UserDao.class);
-    final PFUserDO loggedInUser = userDao.getUserByAuthenticationToken(userId, authKey);
-
-    if (loggedInUser == null) {
-      return null;
-    }
     PFUserDO timesheetUser = null;
     if (StringUtils.isNotBlank(timesheetUserParam) == true) {
       final Integer timesheetUserId = NumberHelper.parseInteger(timesheetUserParam);
@@ -252,22 +273,28 @@ public class CalendarFeed extends HttpServlet
         }
       }
     }
-    // creating a new calendar
-    final Calendar calendar = new Calendar();
-    final Locale locale = PFUserContext.getLocale();
-    calendar.getProperties().add(
-        new ProdId("-//" + loggedInUser.getDisplayUsername() + "//ProjectForge//" + locale.toString().toUpperCase()));
-    calendar.getProperties().add(Version.VERSION_2_0);
-    calendar.getProperties().add(CalScale.GREGORIAN);
-
-    // setup event is needed for empty calendars
-    calendar.getComponents().add(new VEvent(new net.fortuna.ical4j.model.Date(0), SETUP_EVENT));
-
-    // adding events
-    for (final VEvent event : getEvents(params, timesheetUser)) {
-      calendar.getComponents().add(event);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    // Same output as CalendarOutputter (not validating), but written component by component.
+    final FoldingWriter writer = new FoldingWriter(new OutputStreamWriter(out, "UTF-8"), FoldingWriter.REDUCED_FOLD_LENGTH);
+    try {
+      writer.write(Calendar.BEGIN + ':' + Calendar.VCALENDAR + Strings.LINE_SEPARATOR);
+      final Locale locale = PFUserContext.getLocale();
+      writer.write(new ProdId("-//" + loggedInUser.getDisplayUsername() + "//ProjectForge//" + locale.toString().toUpperCase()).toString());
+      writer.write(Version.VERSION_2_0.toString());
+      writer.write(CalScale.GREGORIAN.toString());
+
+      // setup event is needed for empty calendars
+      writer.write(new VEvent(new net.fortuna.ical4j.model.Date(0), SETUP_EVENT).toString());
+
+      // adding events
+      for (final VEvent event : getEvents(params, timesheetUser)) {
+        writer.write(event.toString());
+      }
+      writer.write(Calendar.END + ':' + Calendar.VCALENDAR + Strings.LINE_SEPARATOR);
+    } finally {
+      writer.close();
     }
-    return calendar;
+    return out.toByteArray();
   }
 
   /**
@@ -0,0 +1,222 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.web.calendar;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang.ArrayUtils;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Caches the rendered ics feeds of the {@link CalendarFeed} per user and request parameters. Calendar clients poll their subscriptions
+ * every few minutes, so most requests are answered by the cache (or by the ETag without any content).<br/>
+ * The entries expire after {@link #EXPIRE_TIME} (the feeds contain periods relative to now and external subscriptions) and are removed by
+ * the daos on every modification of the time sheets or team events they contain. The total size of all cached feeds is limited, the least
+ * recently used feeds are removed first.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * 
+ */
+public class CalendarFeedCache
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(CalendarFeedCache.class);
+
+  private static final CalendarFeedCache instance = new CalendarFeedCache();
+
+  static final long EXPIRE_TIME = 60 * 60 * 1000;
+
+  private static final long MAX_TOTAL_SIZE = 50 * 1024 * 1024;
+
+  /**
+   * A rendered feed.
+   */
+  public static class Entry
+  {
+    private final Map<String, String> params;
+
+    private final byte[] content;
+
+    private final String eTag;
+
+    private final long lastModified;
+
+    private Entry(final Map<String, String> params, final byte[] content)
+    {
+      this.params = params;
+      this.content = content;
+      this.eTag = "\"" + DigestUtils.md5Hex(content) + "\"";
+      // Seconds only (precision of the http date headers).
+      this.lastModified = System.currentTimeMillis() / 1000 * 1000;
+    }
+
+    public byte[] getContent()
+    {
+      return content;
+    }
+
+    /**
+     * @return The quoted md5 hex of the content.
+     */
+    public String getETag()
+    {
+      return eTag;
+    }
+
+    public long getLastModified()
+    {
+      return lastModified;
+    }
+
+    /**
+     * @param ifNoneMatch Value of the request header If-None-Match, may be null.
+     * @param ifModifiedSince Value of the request header If-Modified-Since, -1 if not given.
+     * @return true, if the client's copy is up to date (response 304, not modified).
+     */
+    public boolean isNotModified(final String ifNoneMatch, final long ifModifiedSince)
+    {
+      if (ifNoneMatch != null) {
+        // If-Modified-Since is ignored if If-None-Match is given (RFC 2616, 14.26).
+        for (final String tag : StringUtils.split(ifNoneMatch, ',')) {
+          final String trimmed = tag.trim();
+          if ("*".equals(trimmed) == true || eTag.equals(trimmed) == true || ("W/" + eTag).equals(trimmed) == true) {
+            return true;
+          }
+        }
+        return false;
+      }
+      return ifModifiedSince >= 0 && lastModified <= ifModifiedSince;
+    }
+
+    private boolean isExpired()
+    {
+      return lastModified + EXPIRE_TIME < System.currentTimeMillis();
+    }
+  }
+
+  private final Map<String, Entry> cache = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+
+  private long totalSize;
+
+  public static CalendarFeedCache getInstance()
+  {
+    return instance;
+  }
+
+  /**
+   * @param userId The logged-in user.
+   * @param decryptedParams The request parameters (including the user's authentication token, so the entries of an old token are never
+   *          used).
+   * @return The cached feed or null if not cached or expired.
+   */
+  public Entry get(final Integer userId, final String decryptedParams)
+  {
+    final String key = getKey(userId, decryptedParams);
+    synchronized (cache) {
+      final Entry entry = cache.get(key);
+      if (entry == null) {
+        return null;
+      }
+      if (entry.isExpired() == true) {
+        remove(key);
+        return null;
+      }
+      return entry;
+    }
+  }
+
+  /**
+   * @param params The parsed request parameters used by {@link #invalidate(String, String)}.
+   * @return The new cache entry.
+   */
+  public Entry put(final Integer userId, final String decryptedParams, final Map<String, String> params, final byte[] content)
+  {
+    final String key = getKey(userId, decryptedParams);
+    final Entry entry = new Entry(params, content);
+    synchronized (cache) {
+      remove(key);
+      cache.put(key, entry);
+      totalSize += content.length;
+      final Iterator<Entry> it = cache.values().iterator();
+      while (totalSize > MAX_TOTAL_SIZE && it.hasNext() == true) {
+        final Entry eldest = it.next();
+        if (eldest == entry) {
+          break;
+        }
+        totalSize -= eldest.content.length;
+        it.remove();
+      }
+    }
+    return entry;
+  }
+
+  /**
+   * Removes all feeds with the given parameter containing the given value (values may be lists separated by ';', such as "teamCals=1;5").
+   * @param paramName
+   * @param value
+   */
+  public void invalidate(final String paramName, final String value)
+  {
+    if (value == null) {
+      return;
+    }
+    synchronized (cache) {
+      final Iterator<Entry> it = cache.values().iterator();
+      while (it.hasNext() == true) {
+        final Entry entry = it.next();
+        final String paramValue = entry.params.get(paramName);
+        if (paramValue != null && ArrayUtils.contains(StringUtils.split(paramValue, ';'), value) == true) {
+          totalSize -= entry.content.length;
+          it.remove();
+          if (log.isDebugEnabled() == true) {
+            log.debug("Calendar feed removed from cache: " + paramName + "=" + paramValue);
+          }
+        }
+      }
+    }
+  }
+
+  public void clear()
+  {
+    synchronized (cache) {
+      cache.clear();
+      totalSize = 0;
+    }
+  }
+
+  private void remove(final String key)
+  {
+    final Entry entry = cache.remove(key);
+    if (entry != null) {
+      totalSize -= entry.content.length;
+    }
+  }
+
+  private String getKey(final Integer userId, final String decryptedParams)
+  {
+    return userId + ":" + decryptedParams;
+  }
+}
@@ -27,17 +27,24 @@ import java.math.BigDecimal;
 
 import javax.sql.DataSource;
 
+import org.apache.wicket.markup.html.WebMarkupContainer;
 import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.spring.injection.annot.SpringBean;
 import org.projectforge.common.DateHelper;
 import org.projectforge.common.NumberHelper;
+import org.projectforge.core.HibernateSearchDependentObjectsReindexer;
 import org.projectforge.core.NumberFormatter;
 import org.projectforge.database.HibernateUtils;
+import org.projectforge.ldap.LdapMasterLoginHandler;
+import org.projectforge.ldap.LdapSyncStatus;
 import org.projectforge.task.TaskDO;
 import org.projectforge.task.TaskTree;
 import org.projectforge.timesheet.TimesheetDO;
+import org.projectforge.user.Login;
+import org.projectforge.user.LoginHandler;
 import org.projectforge.user.PFUserDO;
+import org.projectforge.web.calendar.DateTimeFormatter;
 import org.projectforge.web.wicket.AbstractSecuredPage;
 import org.springframework.jdbc.core.JdbcTemplate;
 
@@ -70,6 +77,45 @@ public class SystemStatisticsPage extends AbstractSecuredPage
     body.add(new Label("totalNumberOfTasks", NumberFormatter.format(getTableCount(jdbc, TaskDO.class))));
     final int totalNumberOfHistoryEntries = getTableCount(jdbc, HistoryEntry.class) + getTableCount(jdbc, PropertyDelta.class);
     body.add(new Label("totalNumberOfHistoryEntries", NumberFormatter.format(totalNumberOfHistoryEntries)));
+    final HibernateSearchDependentObjectsReindexer reindexer = HibernateSearchDependentObjectsReindexer.getSingleton();
+    body.add(new Label("dependentObjectsReindexing", NumberFormatter.format(reindexer.getQueuedCounter())
+        + " / "
+        + NumberFormatter.format(reindexer.getIndexedCounter())
+        + " / "
+        + NumberFormatter.format(reindexer.getFailedCounter())
+        + " / "
+        + NumberFormatter.format(reindexer.getQueueSize())));
+    final LdapSyncStatus ldapSyncStatus = getLdapSyncStatus();
+    final WebMarkupContainer ldapSyncRow = new WebMarkupContainer("ldapSyncRow");
+    body.add(ldapSyncRow.setVisible(ldapSyncStatus != null));
+    final StringBuffer buf = new StringBuffer();
+    if (ldapSyncStatus != null) {
+      buf.append(DateTimeFormatter.instance().getFormattedDateTime(ldapSyncStatus.getStartTime()));
+      if (ldapSyncStatus.isFullSync() == true) {
+        buf.append(" (").append(getString("system.statistics.ldapSync.full")).append(")");
+      }
+      buf.append(", ")
+          .append(ldapSyncStatus.getEndTime() != null ? NumberFormatter.format(ldapSyncStatus.getDuration()) + " ms" : "...")
+          .append(" / ")
+          .append(NumberFormatter.format(ldapSyncStatus.getDirtyUsers()))
+          .append(" / ")
+          .append(NumberFormatter.format(ldapSyncStatus.getDirtyGroups()))
+          .append(" / ")
+          .append(NumberFormatter.format(ldapSyncStatus.getUserCounter().getErrors() + ldapSyncStatus.getGroupCounter().getErrors()));
+      if (ldapSyncStatus.getErrorMessage() != null) {
+        buf.append(" (").append(ldapSyncStatus.getErrorMessage()).append(")");
+      }
+    }
+    ldapSyncRow.add(new Label("ldapSync", buf.toString()));
+  }
+
+  private LdapSyncStatus getLdapSyncStatus()
+  {
+    final LoginHandler loginHandler = Login.getInstance().getLoginHandler();
+    if (loginHandler instanceof LdapMasterLoginHandler == false) {
+      return null;
+    }
+    return ((LdapMasterLoginHandler) loginHandler).getLastSyncStatus();
   }
 
   private int getTableCount(final JdbcTemplate jdbc, final Class< ? > entity)
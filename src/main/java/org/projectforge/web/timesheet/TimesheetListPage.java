@@ -490,6 +490,36 @@ IListPageColumnsCreator<TimesheetDO>
     return super.buildList();
   }
 
+  /**
+   * @see org.projectforge.web.wicket.AbstractListPage#isPageable(java.lang.String)
+   */
+  @Override
+  protected boolean isPageable(final String sortProperty)
+  {
+    final TimesheetFilter filter = form.getSearchFilter();
+    if (filter.getStartTime() == null && filter.getStopTime() == null && filter.getTaskId() == null) {
+      return false; // See buildList().
+    }
+    return isBaseDaoPageable(sortProperty);
+  }
+
+  /**
+   * @return The total duration of all time sheets of the result list in millis.
+   */
+  long getTotalDuration()
+  {
+    if (isPagedMode() == true) {
+      return timesheetDao.getTotalDuration(form.getSearchFilter());
+    }
+    long duration = 0;
+    if (getList() != null) {
+      for (final TimesheetDO sheet : getList()) {
+        duration += sheet.getDuration();
+      }
+    }
+    return duration;
+  }
+
   void exportPDF()
   {
     refresh();
@@ -494,6 +494,9 @@ extends AbstractSecuredPage implements ISelectCallerPage
   {
     this.resultList = null; // Force reload of list
     this.refreshResultList = true;
+    if (listPageSortableDataProvider != null) {
+      listPageSortableDataProvider.resetPaging();
+    }
     final long itemsPerPage = dataTable.getItemsPerPage();
     if (form.getPageSize() != null && form.getPageSize().longValue() != itemsPerPage) {
       dataTable.setItemsPerPage(form.getPageSize());
@@ -532,13 +535,45 @@ extends AbstractSecuredPage implements ISelectCallerPage
     return (List<O>) getBaseDao().getList(form.getSearchFilter());
   }
 
+  /**
+   * If the list is pageable, the data table loads only the entries of the displayed page (and the number of entries by a count query)
+   * instead of the complete list. Overwrite this method and return {@link #isBaseDaoPageable(String)} if the result list is given by the
+   * base dao (e. g. {@link #buildList()} isn't overwritten).
+   * @param sortProperty The current sort property of the data table.
+   * @return false at default.
+   */
+  protected boolean isPageable(final String sortProperty)
+  {
+    return false;
+  }
+
+  /**
+   * @param sortProperty
+   * @return true, if the base dao supports paged list queries for the current search filter and the given sort property.
+   * @see BaseDao#isPageable(org.projectforge.core.BaseSearchFilter, String)
+   */
+  protected boolean isBaseDaoPageable(final String sortProperty)
+  {
+    final D baseDao = getBaseDao();
+    return baseDao instanceof BaseDao && ((BaseDao< ? >) baseDao).isPageable(form.getSearchFilter(), sortProperty) == true;
+  }
+
+  /**
+   * @return true, if the data table loads only the entries of the displayed page.
+   * @see #isPageable(String)
+   */
+  public boolean isPagedMode()
+  {
+    return listPageSortableDataProvider != null && listPageSortableDataProvider.isPaged() == true;
+  }
+
   /**
    * @see org.projectforge.web.wicket.AbstractUnsecureBasePage#onBeforeRender()
    */
   @Override
   protected void onBeforeRender()
   {
-    if (this.refreshResultList == true) {
+    if (this.refreshResultList == true && isPagedMode() == false) {
       getList();
     }
     super.onBeforeRender();
@@ -26,9 +26,11 @@ package org.projectforge.web.wicket;
 import java.io.Serializable;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
@@ -38,9 +40,11 @@ import org.apache.wicket.extensions.markup.html.repeater.util.SortParam;
 import org.apache.wicket.extensions.markup.html.repeater.util.SortableDataProvider;
 import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.Model;
+import org.projectforge.common.BeanHelper;
 import org.projectforge.common.MyBeanComparator;
 import org.projectforge.core.BaseDao;
 import org.projectforge.core.IdObject;
+import org.projectforge.core.PageRequest;
 
 /**
  * Stores list of result sets (id's) for pagination and provides iterator of data-base objects on demand.
@@ -69,6 +73,19 @@ public class MyListPageSortableDataProvider<T extends IdObject< ? >> extends Sor
 
   private final AbstractListPage< ? , ? , T> listPage;
 
+  /**
+   * Number of entries in paged mode (given by a count query).
+   */
+  private Long pagedSize;
+
+  private SortParam<String> pagedSortParam;
+
+  /**
+   * Keys (sort value and id) of the last entry of the previous page by index of the first entry of a page, used for keyset pagination in
+   * paged mode.
+   */
+  private final Map<Long, Serializable[]> pageKeys = new HashMap<Long, Serializable[]>();
+
   public MyListPageSortableDataProvider(final SortParam<String> sortParam, final SortParam<String> secondSortParam,
       final AbstractListPage< ? , ? , T> listPage)
   {
@@ -83,6 +100,7 @@ public class MyListPageSortableDataProvider<T extends IdObject< ? >> extends Sor
 
   public MyListPageSortableDataProvider<T> setCompleteList(final List<T> completeList)
   {
+    resetPaging();
     this.completeList = completeList;
     this.idList = new LinkedList<Serializable>();
     if (this.completeList != null) {
@@ -101,6 +119,9 @@ public class MyListPageSortableDataProvider<T extends IdObject< ? >> extends Sor
   @Override
   public Iterator<T> iterator(final long first, final long count)
   {
+    if (isPaged() == true) {
+      return getPage(first, count).iterator();
+    }
     if ((this.first != null && this.first != first) || (this.count != null && this.count != count)) {
       this.completeList = null; // Force to load all elements from data-base (avoid lazy initialization exceptions).
     }
@@ -168,12 +189,64 @@ public class MyListPageSortableDataProvider<T extends IdObject< ? >> extends Sor
   @Override
   public long size()
   {
+    if (isPaged() == true) {
+      if (pagedSize == null) {
+        pagedSize = ((BaseDao< ? >) listPage.getBaseDao()).getCount(listPage.form.getSearchFilter());
+      }
+      return pagedSize;
+    }
     if (idList == null) {
       reloadList();
     }
     return this.idList != null ? this.idList.size() : 0;
   }
 
+  /**
+   * @return true, if only the entries of the requested page are loaded from the data base (if supported by the list page for the current
+   *         sort property).
+   * @see AbstractListPage#isPageable(String)
+   */
+  public boolean isPaged()
+  {
+    final SortParam<String> sp = getSort();
+    return sp != null && listPage.isPageable(sp.getProperty()) == true;
+  }
+
+  /**
+   * Forces a new count query and a new loading of the pages (e. g. after modifying the search filter).
+   */
+  public void resetPaging()
+  {
+    this.pagedSize = null;
+    this.pageKeys.clear();
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<T> getPage(final long first, final long count)
+  {
+    final SortParam<String> sp = getSort();
+    if (ObjectUtils.equals(pagedSortParam, sp) == false) {
+      // The sort parameters were changed, the keys of the pages aren't valid anymore:
+      pageKeys.clear();
+      pagedSortParam = sp;
+    }
+    final PageRequest page = new PageRequest(sp.getProperty(), sp.isAscending(), (int) count).setFirstResult((int) first);
+    final Serializable[] key = pageKeys.get(first);
+    if (key != null) {
+      page.setLastKey(key[0], key[1]);
+    }
+    final List<T> list = (List<T>) ((BaseDao< ? >) listPage.getBaseDao()).getListPage(listPage.form.getSearchFilter(), page);
+    if (list == null) {
+      return new LinkedList<T>();
+    }
+    if (list.isEmpty() == false) {
+      final T last = list.get(list.size() - 1);
+      pageKeys.put(first + list.size(), new Serializable[] { (Serializable) BeanHelper.getProperty(last, sp.getProperty()),
+        (Serializable) last.getId()});
+    }
+    return list;
+  }
+
   private void reloadList()
   {
     final List<T> list = listPage.getList();
@@ -0,0 +1,161 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.xml.stream;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.projectforge.common.BeanHelper;
+
+/**
+ * Cached reflection data of a class used by XmlObjectWriter and XmlObjectReader: the declared fields (already accessible) with their
+ * annotations and the field lookup by element or attribute name. Without this cache the fields and annotations were evaluated on every
+ * serialized object.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * 
+ */
+final class XmlObjectMetadata
+{
+  private static final Map<Class< ? >, XmlObjectMetadata> cache = new ConcurrentHashMap<Class< ? >, XmlObjectMetadata>();
+
+  /**
+   * Field with its pre-evaluated annotations.
+   */
+  static final class FieldInfo
+  {
+    final Field field;
+
+    final XmlField annotation;
+
+    final boolean omitted;
+
+    final boolean ignored;
+
+    final String name;
+
+    private FieldInfo(final Field field)
+    {
+      this.field = field;
+      this.annotation = field.isAnnotationPresent(XmlField.class) == true ? field.getAnnotation(XmlField.class) : null;
+      this.omitted = field.isAnnotationPresent(XmlOmitField.class);
+      this.ignored = XmlObjectWriter.ignoreField(field);
+      if (annotation != null && StringUtils.isNotEmpty(annotation.alias()) == true) {
+        this.name = annotation.alias();
+      } else {
+        this.name = field.getName();
+      }
+    }
+  }
+
+  private final String alias;
+
+  private final Field[] fields;
+
+  private final FieldInfo[] fieldInfos;
+
+  private final Map<String, Field> fieldsByKey;
+
+  /**
+   * @param clazz
+   * @return The cached meta data of the given class, created on first access.
+   */
+  static XmlObjectMetadata get(final Class< ? > clazz)
+  {
+    XmlObjectMetadata metadata = cache.get(clazz);
+    if (metadata == null) {
+      // Concurrent creation is harmless, the results are equal.
+      metadata = new XmlObjectMetadata(clazz);
+      cache.put(clazz, metadata);
+    }
+    return metadata;
+  }
+
+  private XmlObjectMetadata(final Class< ? > clazz)
+  {
+    final XmlObject xmlObject = clazz.getAnnotation(XmlObject.class);
+    if (xmlObject != null && StringUtils.isNotEmpty(xmlObject.alias()) == true) {
+      this.alias = xmlObject.alias();
+    } else {
+      this.alias = null;
+    }
+    this.fields = BeanHelper.getAllDeclaredFields(clazz);
+    AccessibleObject.setAccessible(fields, true);
+    final List<FieldInfo> infos = new ArrayList<FieldInfo>(fields.length);
+    final Map<String, Field> map = new HashMap<String, Field>();
+    for (final Field field : fields) {
+      final FieldInfo info = new FieldInfo(field);
+      infos.add(info);
+      if (info.ignored == true) {
+        continue;
+      }
+      // The first field matching by name or alias wins (same order as the former linear search):
+      if (map.containsKey(field.getName()) == false) {
+        map.put(field.getName(), field);
+      }
+      if (info.annotation != null
+          && StringUtils.isNotEmpty(info.annotation.alias()) == true
+          && map.containsKey(info.annotation.alias()) == false) {
+        map.put(info.annotation.alias(), field);
+      }
+    }
+    this.fieldInfos = infos.toArray(new FieldInfo[infos.size()]);
+    this.fieldsByKey = map;
+  }
+
+  /**
+   * @return The alias of the {@link XmlObject} annotation of the class if given, otherwise null.
+   */
+  String getAlias()
+  {
+    return alias;
+  }
+
+  /**
+   * @return All declared fields including those of the super classes. Don't modify the returned array.
+   */
+  Field[] getFields()
+  {
+    return fields;
+  }
+
+  FieldInfo[] getFieldInfos()
+  {
+    return fieldInfos;
+  }
+
+  /**
+   * @param key Name of the xml element or attribute.
+   * @return The not ignored field with the given name or alias, or null if not found.
+   */
+  Field getField(final String key)
+  {
+    return fieldsByKey.get(key);
+  }
+}
@@ -23,7 +23,7 @@
 
 package org.projectforge.xml.stream;
 
-import java.lang.reflect.AccessibleObject;
+import java.io.StringReader;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -35,6 +35,11 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
 import org.dom4j.Attribute;
@@ -54,6 +59,13 @@ public class XmlObjectReader
 
   private static final int ABBREVIATE_WARNING = 500;
 
+  private static final XMLInputFactory xmlInputFactory;
+
+  static {
+    xmlInputFactory = XMLInputFactory.newInstance();
+    xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+  }
+
   private AliasMap aliasMap;
 
   private Map<Class< ? >, Class< ? >> implementationMapping;
@@ -79,6 +91,13 @@ public class XmlObjectReader
 
   private boolean ignoreEmptyCollections;
 
+  private boolean streamingMode;
+
+  /**
+   * Streaming mode: the warnings of the current read.
+   */
+  private StringBuffer streamingWarnings;
+
   /**
    * For customization, the base xml registry of XmlRegistry is used at default.
    * @param xmlRegistry
@@ -122,6 +141,21 @@ public class XmlObjectReader
     this.ignoreEmptyCollections = ignoreEmptyCollections;
   }
 
+  /**
+   * If true then {@link #read(String)} parses the xml directly via StAX without building a dom4j tree. The hook methods with dom4j
+   * parameters ({@link #newInstance(Class, Element, String, String)}, {@link #addCollectionEntry(Collection, Object, Element)},
+   * {@link #fromString(IConverter, Element, String, String)}, {@link #enumFromString(Class, Element, String, String)} and
+   * {@link #setField(Field, Object, Object, Element, String, String)}) aren't called in streaming mode, so readers customizing these hooks
+   * have to use the dom4j mode.
+   * @param streamingMode
+   * @return this for chaining.
+   */
+  public XmlObjectReader setStreamingMode(final boolean streamingMode)
+  {
+    this.streamingMode = streamingMode;
+    return this;
+  }
+
   private AliasMap getAliasMap()
   {
     if (this.aliasMap == null) {
@@ -168,12 +202,21 @@ public class XmlObjectReader
 
   public Object read(final String xml)
   {
+    if (streamingMode == true) {
+      return readStreaming(xml);
+    }
     final Element element = XmlHelper.fromString(xml);
     processedElements = new HashSet<Element>();
     processedAttributes = new HashMap<Element, Set<String>>();
     warnings = null;
     final Object obj = read(element);
     warnings = checkForIgnoredElements(element);
+    logWarnings();
+    return obj;
+  }
+
+  private void logWarnings()
+  {
     if (warnings != null) {
       if (warnings.length() > ABBREVIATE_WARNING) {
         log.warn("Warnings while parsing xml:\n" + StringUtils.abbreviate(warnings, ABBREVIATE_WARNING) + " (message abbreviated).");
@@ -181,7 +224,6 @@ public class XmlObjectReader
         log.warn("Warnings while parsing xml:\n" + warnings);
       }
     }
-    return obj;
   }
 
   public Object read(final Element el)
@@ -295,21 +337,9 @@ public class XmlObjectReader
     return obj;
   }
 
-  @SuppressWarnings({ "unchecked", "rawtypes"})
   protected Object enumFromString(final Class< ? > clazz, final Element element, final String attrName, final String attrValue)
   {
-    final String val = attrValue != null ? attrValue : element.getText();
-    Enum enumValue;
-    if (StringUtils.isBlank(val) || "null".equals(val) == true) {
-      enumValue = null;
-    } else {
-      try {
-        enumValue = Enum.valueOf((Class) clazz, val);
-      } catch (final IllegalArgumentException ex) {
-        // Try toUpperCase:
-        enumValue = Enum.valueOf((Class) clazz, val.toUpperCase());
-      }
-    }
+    final Enum< ? > enumValue = toEnum(clazz, attrValue != null ? attrValue : element.getText());
     if (attrName != null) {
       putProcessedAttribute(element, attrName);
     } else {
@@ -318,6 +348,41 @@ public class XmlObjectReader
     return enumValue;
   }
 
+  @SuppressWarnings({ "unchecked", "rawtypes"})
+  private static Enum< ? > toEnum(final Class< ? > clazz, final String val)
+  {
+    if (StringUtils.isBlank(val) || "null".equals(val) == true) {
+      return null;
+    }
+    try {
+      return Enum.valueOf((Class) clazz, val);
+    } catch (final IllegalArgumentException ex) {
+      // Try toUpperCase:
+      return Enum.valueOf((Class) clazz, val.toUpperCase());
+    }
+  }
+
+  private static Collection<Object> newCollection(final Class< ? > clazz)
+  {
+    if (SortedSet.class.isAssignableFrom(clazz) == true) {
+      return new TreeSet<Object>();
+    } else if (Set.class.isAssignableFrom(clazz) == true) {
+      return new HashSet<Object>();
+    } else {
+      return new ArrayList<Object>();
+    }
+  }
+
+  private Object newObjectInstance(final Class< ? > clazz)
+  {
+    final Class< ? > mappingClass = getImplemenationMapping(clazz);
+    if (mappingClass != null) {
+      return BeanHelper.newInstance(mappingClass);
+    } else {
+      return BeanHelper.newInstance(clazz);
+    }
+  }
+
   private Object read(final Class< ? > clazz, final Element el, final String attrName, final String attrValue)
   {
     final Attribute refIdAttr = el.attribute(XmlObjectWriter.ATTR_REF_ID);
@@ -354,12 +419,8 @@ public class XmlObjectReader
         @SuppressWarnings("unchecked")
         final Collection<Object> c = (Collection<Object>) value;
         col = c;
-      } else if (SortedSet.class.isAssignableFrom(clazz) == true) {
-        col = new TreeSet<Object>();
-      } else if (Set.class.isAssignableFrom(clazz) == true) {
-        col = new HashSet<Object>();
       } else {
-        col = new ArrayList<Object>();
+        col = newCollection(clazz);
       }
       putProcessedElement(el);
       for (final Object listObject : el.elements()) {
@@ -376,12 +437,7 @@ public class XmlObjectReader
       }
     } else {
       if (value == null) {
-        final Class< ? > mappingClass = getImplemenationMapping(clazz);
-        if (mappingClass != null) {
-          value = BeanHelper.newInstance(mappingClass);
-        } else {
-          value = BeanHelper.newInstance(clazz);
-        }
+        value = newObjectInstance(clazz);
       }
       if (value != null) {
         final Attribute idAttr = el.attribute(XmlObjectWriter.ATTR_ID);
@@ -411,8 +467,7 @@ public class XmlObjectReader
     if (el == null) {
       return;
     }
-    final Field[] fields = BeanHelper.getAllDeclaredFields(obj.getClass());
-    AccessibleObject.setAccessible(fields, true);
+    final XmlObjectMetadata metadata = XmlObjectMetadata.get(obj.getClass());
     for (final Object listObject : el.attributes()) {
       final Attribute attr = (Attribute) listObject;
       final String key = attr.getName();
@@ -421,12 +476,12 @@ public class XmlObjectReader
         continue;
       }
       final String value = attr.getText();
-      proceedElement(obj, fields, el, key, value, true);
+      proceedElement(obj, metadata, el, key, value, true);
     }
     for (final Object listObject : el.elements()) {
       final Element childElement = (Element) listObject;
       final String key = childElement.getName();
-      proceedElement(obj, fields, childElement, key, null, false);
+      proceedElement(obj, metadata, childElement, key, null, false);
     }
     putProcessedElement(el);
   }
@@ -466,21 +521,10 @@ public class XmlObjectReader
     }
   }
 
-  private void proceedElement(final Object obj, final Field[] fields, final Element el, final String key, final String attrValue,
-      final boolean isAttribute)
+  private void proceedElement(final Object obj, final XmlObjectMetadata metadata, final Element el, final String key,
+      final String attrValue, final boolean isAttribute)
   {
-    Field foundField = null;
-    for (final Field field : fields) {
-      if (XmlObjectWriter.ignoreField(field) == true) {
-        continue;
-      }
-      final XmlField ann = field.isAnnotationPresent(XmlField.class) == true ? field.getAnnotation(XmlField.class) : null;
-      if (key.equals(field.getName()) == false && (ann == null || key.equals(ann.alias()) == false)) {
-        continue;
-      }
-      foundField = field;
-      break;
-    }
+    final Field foundField = metadata.getField(key);
     if (foundField != null) {
       // Field found:
       final Class< ? > type = foundField.getType();
@@ -496,6 +540,206 @@ public class XmlObjectReader
     }
   }
 
+  private Object readStreaming(final String xml)
+  {
+    warnings = null;
+    if (StringUtils.isBlank(xml) == true) {
+      return null;
+    }
+    streamingWarnings = new StringBuffer();
+    Object obj = null;
+    XMLStreamReader in = null;
+    try {
+      in = xmlInputFactory.createXMLStreamReader(new StringReader(xml));
+      if (nextChildElement(in) == true) {
+        final String name = in.getLocalName();
+        final Class< ? > clazz = getClass(name);
+        if (clazz != null) {
+          obj = readStreaming(in, clazz, "/" + name);
+        } else {
+          skipElement(in, "/" + name);
+        }
+      }
+    } catch (final XMLStreamException ex) {
+      log.error("Exception encountered " + ex.getMessage());
+      return null;
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (final XMLStreamException ex) {
+          log.error(ex.getMessage(), ex);
+        }
+      }
+    }
+    if (streamingWarnings.length() > 0) {
+      warnings = streamingWarnings.toString();
+    }
+    streamingWarnings = null;
+    logWarnings();
+    return obj;
+  }
+
+  /**
+   * Reads the current element as object of the given class. Afterwards the reader is positioned on the end tag of the element.
+   */
+  private Object readStreaming(final XMLStreamReader in, final Class< ? > clazz, final String path) throws XMLStreamException
+  {
+    final String refId = in.getAttributeValue(null, XmlObjectWriter.ATTR_REF_ID);
+    if (refId != null) {
+      Object obj = null;
+      if (StringUtils.isEmpty(refId) == true) {
+        log.error("Invalid ref-id for element '" + in.getLocalName() + "': " + refId);
+      } else {
+        obj = referenceObjects.get(refId);
+        if (obj == null) {
+          log.error("Oups, can't find referenced object for element '" + in.getLocalName() + "': " + refId);
+        }
+      }
+      skipContent(in, path);
+      return obj;
+    }
+    final IConverter< ? > converter = xmlRegistry.getConverter(clazz);
+    if (converter != null) {
+      return converter.fromString(readText(in, path));
+    } else if (Enum.class.isAssignableFrom(clazz) == true) {
+      return toEnum(clazz, readText(in, path));
+    } else if (Collection.class.isAssignableFrom(clazz) == true) {
+      final Collection<Object> col = newCollection(clazz);
+      while (nextChildElement(in) == true) {
+        final String name = in.getLocalName();
+        final Class< ? > childClass = getClass(name);
+        if (childClass == null) {
+          skipElement(in, path + "/" + name);
+          continue;
+        }
+        final Object child = readStreaming(in, childClass, path + "/" + name);
+        if (child != null) {
+          col.add(child);
+        }
+      }
+      if (ignoreEmptyCollections == false || CollectionUtils.isNotEmpty(col) == true) {
+        return col;
+      }
+      return null;
+    }
+    final Object value = newObjectInstance(clazz);
+    if (value == null) {
+      skipElement(in, path);
+      return null;
+    }
+    final XmlObjectMetadata metadata = XmlObjectMetadata.get(value.getClass());
+    for (int i = 0; i < in.getAttributeCount(); i++) {
+      final String key = in.getAttributeLocalName(i);
+      final String attrValue = in.getAttributeValue(i);
+      if (XmlObjectWriter.ATTR_ID.equals(key) == true) {
+        if (StringUtils.isEmpty(attrValue) == true) {
+          log.error("Invalid id for element '" + in.getLocalName() + "': " + attrValue);
+        } else {
+          this.referenceObjects.put(attrValue, value);
+        }
+        continue;
+      }
+      final Field field = metadata.getField(key);
+      if (field == null) {
+        log.warn("Field '" + key + "' not found.");
+        streamingWarnings.append("Ignored xml attribute: ").append(path).append("/@").append(key).append("\n");
+        continue;
+      }
+      final Class< ? > type = field.getType();
+      final IConverter< ? > fieldConverter = xmlRegistry.getConverter(type);
+      if (fieldConverter != null) {
+        setFieldValue(field, value, fieldConverter.fromString(attrValue));
+      } else if (Enum.class.isAssignableFrom(type) == true) {
+        setFieldValue(field, value, toEnum(type, attrValue));
+      } else {
+        // Complex types can't be read from attributes.
+        streamingWarnings.append("Ignored xml attribute: ").append(path).append("/@").append(key).append("\n");
+      }
+    }
+    while (nextChildElement(in) == true) {
+      final String key = in.getLocalName();
+      final Field field = metadata.getField(key);
+      if (field == null) {
+        log.warn("Field '" + key + "' not found.");
+        skipElement(in, path + "/" + key);
+        continue;
+      }
+      setFieldValue(field, value, readStreaming(in, field.getType(), path + "/" + key));
+    }
+    return value;
+  }
+
+  private void setFieldValue(final Field field, final Object obj, final Object value)
+  {
+    if (value != null) {
+      setField(field, obj, value);
+    }
+  }
+
+  /**
+   * Moves to the next child element of the current element.
+   * @return true if the reader is positioned on the start tag of the next child, false if the end tag of the current element is reached.
+   */
+  private static boolean nextChildElement(final XMLStreamReader in) throws XMLStreamException
+  {
+    while (in.hasNext() == true) {
+      final int event = in.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        return true;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Reads the text content of the current element (such as dom4j's getText()), child elements are ignored.
+   */
+  private String readText(final XMLStreamReader in, final String path) throws XMLStreamException
+  {
+    final StringBuilder buf = new StringBuilder();
+    while (in.hasNext() == true) {
+      final int event = in.next();
+      if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE) {
+        buf.append(in.getText());
+      } else if (event == XMLStreamConstants.START_ELEMENT) {
+        skipElement(in, path + "/" + in.getLocalName());
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        break;
+      }
+    }
+    return buf.toString();
+  }
+
+  /**
+   * Skips the current element and adds a warning for it.
+   */
+  private void skipElement(final XMLStreamReader in, final String path) throws XMLStreamException
+  {
+    streamingWarnings.append("Ignored xml element: ").append(path).append("\n");
+    int depth = 1;
+    while (depth > 0 && in.hasNext() == true) {
+      final int event = in.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  /**
+   * Skips the child elements of the current element (they will be reported as ignored).
+   */
+  private void skipContent(final XMLStreamReader in, final String path) throws XMLStreamException
+  {
+    while (nextChildElement(in) == true) {
+      skipElement(in, path + "/" + in.getLocalName());
+    }
+  }
+
   private void putProcessedElement(final Element el)
   {
     if (processedElements != null) {
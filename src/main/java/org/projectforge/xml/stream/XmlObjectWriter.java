@@ -23,13 +23,19 @@
 
 package org.projectforge.xml.stream;
 
-import java.lang.reflect.AccessibleObject;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.dom4j.Attribute;
@@ -65,11 +71,24 @@ public class XmlObjectWriter
 
   private XmlRegistry xmlRegistry = XmlRegistry.baseRegistry();
 
+  private boolean streamingMode;
+
   /**
    * Key is the class name with the hashCode of the object, e. g.: org.projectforge.xml.stream.TestObject:987345678854 and the value is the
    * element where the object was written to.
    */
-  private Map<String, Element> writtenObjects = new HashMap<String, Element>();
+  private final Map<String, Element> writtenObjects = new HashMap<String, Element>();
+
+  /**
+   * Streaming mode: keys (see {@link #writtenObjects}) of the objects already written.
+   */
+  private final Set<String> streamedObjects = new HashSet<String>();
+
+  /**
+   * Streaming mode: the ref ids of all objects referenced more than once (detected before writing, because the o-id attribute can't be
+   * added afterwards to an already written element).
+   */
+  private final Map<String, Integer> streamedRefIds = new HashMap<String, Integer>();
 
   /**
    * For customization, the base xml registry of XmlRegistry is used at default.
@@ -132,6 +151,8 @@ public class XmlObjectWriter
   public static String writeAsXml(final Object obj, final AliasMap aliasMap, final boolean prettyFormat)
   {
     final XmlObjectWriter xmlWriter = new XmlObjectWriter();
+    // The pretty format is only supported by dom4j:
+    xmlWriter.setStreamingMode(prettyFormat == false);
     if (aliasMap != null) {
       xmlWriter.setAliasMap(aliasMap);
     }
@@ -154,6 +175,20 @@ public class XmlObjectWriter
     return this;
   }
 
+  /**
+   * If true then {@link #writeToXml(Object)} writes the xml directly without building a dom4j tree (the pretty format is still written
+   * via dom4j). The output is the same, but the hook methods with dom4j parameters
+   * ({@link #writeField(Field, Object, Object, XmlField, Element)} and {@link #addAttribute(Element, Object, String, String)}) aren't
+   * called in streaming mode, {@link #ignoreField(Object, Field)} is called as usual.
+   * @param streamingMode
+   * @return this for chaining.
+   */
+  public XmlObjectWriter setStreamingMode(final boolean streamingMode)
+  {
+    this.streamingMode = streamingMode;
+    return this;
+  }
+
   public String writeToXml(final Object obj)
   {
     return writeToXml(obj, false);
@@ -161,6 +196,17 @@ public class XmlObjectWriter
 
   public String writeToXml(final Object obj, final boolean prettyFormat)
   {
+    if (streamingMode == true && prettyFormat == false) {
+      final StringWriter out = new StringWriter();
+      try {
+        write(out, obj);
+      } catch (final IOException ex) {
+        // Shouldn't occur for StringWriter.
+        log.error(ex.getMessage(), ex);
+        return null;
+      }
+      return out.toString();
+    }
     final Document document = DocumentHelper.createDocument();
     final Element element = write(document, obj);
     return XmlHelper.toString(element, prettyFormat);
@@ -172,34 +218,60 @@ public class XmlObjectWriter
     return write(parent, obj, null, false, false);
   }
 
+  /**
+   * Writes the given object directly (streaming mode) to the given writer without building a dom4j tree.
+   * @param out
+   * @param obj
+   * @see #setStreamingMode(boolean)
+   */
+  public void write(final Writer out, final Object obj) throws IOException
+  {
+    reset();
+    if (obj == null) {
+      return;
+    }
+    collectReferences(new HashSet<String>(), obj);
+    final XmlStreamingOutput output = new XmlStreamingOutput(out);
+    write(output, obj, null, false, false);
+    output.flush();
+  }
+
   private void reset()
   {
     this.writtenObjects.clear();
+    this.streamedObjects.clear();
+    this.streamedRefIds.clear();
   }
 
-  private Element write(final Branch parent, final Object obj, String name, final boolean asAttribute, final boolean asCDATA)
+  private String getName(final Object obj, final String name)
   {
-    if (obj == null) {
-      return null;
+    if (name != null) {
+      return name;
     }
     final Class< ? > type = obj.getClass();
-    if (name == null) {
-      name = getAliasMap().getAliasForClass(type);
+    String alias = getAliasMap().getAliasForClass(type);
+    if (alias == null && type.isAnnotationPresent(XmlObject.class) == true) {
+      alias = XmlObjectMetadata.get(type).getAlias();
     }
-    if (name == null && obj.getClass().isAnnotationPresent(XmlObject.class) == true) {
-      final XmlObject xmlObject = obj.getClass().getAnnotation(XmlObject.class);
-      if (StringUtils.isNotEmpty(xmlObject.alias()) == true) {
-        name = xmlObject.alias();
-      }
+    if (alias == null) {
+      alias = xmlRegistry.getAliasForClass(type);
     }
-    if (name == null) {
-      name = xmlRegistry.getAliasForClass(type);
+    if (alias == null) {
+      alias = type.getName();
     }
-    if (name == null) {
-      name = obj.getClass().getName();
+    return alias;
+  }
+
+  private Element write(final Branch parent, final Object obj, String name, final boolean asAttribute, final boolean asCDATA)
+  {
+    if (obj == null) {
+      return null;
     }
-    if (isRegistered(obj) == true) {
-      final Element el = getRegisteredElement(obj);
+    final Class< ? > type = obj.getClass();
+    name = getName(obj, name);
+    final String key = getKey(obj);
+    final Element el = writtenObjects.get(key);
+    if (el != null) {
       Integer refId;
       final Attribute attr = el.attribute(ATTR_ID);
       if (attr == null) {
@@ -235,19 +307,13 @@ public class XmlObjectWriter
       return listElement;
     }
     final Element element = parent.addElement(name);
-    registerElement(obj, element);
-    final Field[] fields = BeanHelper.getAllDeclaredFields(obj.getClass());
-    AccessibleObject.setAccessible(fields, true);
-    for (final Field field : fields) {
-      if (field.isAnnotationPresent(XmlOmitField.class) == true || ignoreField(obj, field) == true) {
-        continue;
-      }
-      final XmlField ann = field.isAnnotationPresent(XmlField.class) == true ? field.getAnnotation(XmlField.class) : null;
-      if (onlyAnnotatedFields == true && field.isAnnotationPresent(XmlField.class) == false) {
+    writtenObjects.put(key, element);
+    for (final XmlObjectMetadata.FieldInfo info : XmlObjectMetadata.get(type).getFieldInfos()) {
+      if (isFieldSkipped(obj, info) == true) {
         continue;
       }
-      final Object value = BeanHelper.getFieldValue(obj, field);
-      writeField(field, obj, value, ann, element);
+      final Object value = BeanHelper.getFieldValue(obj, info.field);
+      writeField(info.field, obj, value, info.annotation, element);
     }
     return element;
   }
@@ -257,14 +323,6 @@ public class XmlObjectWriter
     if (fieldValue == null || isDefaultType(annotation, fieldValue) == true) {
       return;
     }
-    boolean childAsAttribute = false;
-    if (annotation != null) {
-      if (annotation.asElement() == false && (asAttributeAsDefault(field.getType()) == true || annotation.asAttribute() == true)) {
-        childAsAttribute = true;
-      }
-    } else if (asAttributeAsDefault(field.getType()) == true) {
-      childAsAttribute = true;
-    }
     final boolean childAsCDATA = (annotation != null && annotation.asCDATA() == true);
     final String childName;
     if (annotation != null && StringUtils.isNotEmpty(annotation.alias()) == true) {
@@ -272,7 +330,157 @@ public class XmlObjectWriter
     } else {
       childName = field.getName();
     }
-    write(element, fieldValue, childName, childAsAttribute, childAsCDATA);
+    write(element, fieldValue, childName, isChildAsAttribute(field, annotation), childAsCDATA);
+  }
+
+  private boolean isChildAsAttribute(final Field field, final XmlField annotation)
+  {
+    if (annotation != null) {
+      return annotation.asElement() == false && (asAttributeAsDefault(field.getType()) == true || annotation.asAttribute() == true);
+    }
+    return asAttributeAsDefault(field.getType());
+  }
+
+  private boolean isFieldSkipped(final Object obj, final XmlObjectMetadata.FieldInfo info)
+  {
+    if (info.omitted == true || ignoreField(obj, info.field) == true) {
+      return true;
+    }
+    return onlyAnnotatedFields == true && info.annotation == null;
+  }
+
+  /**
+   * @return The value of the field to write or null if the field isn't written (ignored, null or default value).
+   */
+  private Object getStreamedFieldValue(final Object obj, final XmlObjectMetadata.FieldInfo info)
+  {
+    if (isFieldSkipped(obj, info) == true) {
+      return null;
+    }
+    final Object value = BeanHelper.getFieldValue(obj, info.field);
+    if (value == null || isDefaultType(info.annotation, value) == true) {
+      return null;
+    }
+    return value;
+  }
+
+  /**
+   * @return The string value if the given object is written via a converter or as enum, otherwise null.
+   */
+  private String getStringValue(final Object obj)
+  {
+    final IConverter< ? > converter = xmlRegistry.getConverter(obj.getClass());
+    if (converter != null) {
+      return converter.toString(obj);
+    } else if (obj instanceof Enum< ? >) {
+      return ((Enum< ? >) obj).name();
+    }
+    return null;
+  }
+
+  private boolean isSimpleValue(final Object obj)
+  {
+    return xmlRegistry.getConverter(obj.getClass()) != null || obj instanceof Enum< ? >;
+  }
+
+  /**
+   * Traverses the object tree the same way as {@link #write(XmlStreamingOutput, Object, String, boolean, boolean)} and assigns a ref id
+   * to each object found more than once.
+   */
+  private void collectReferences(final Set<String> visited, final Object obj)
+  {
+    if (isSimpleValue(obj) == true) {
+      return;
+    }
+    if (obj instanceof Collection< ? >) {
+      for (final Object item : (Collection< ? >) obj) {
+        if (item != null) {
+          collectReferences(visited, item);
+        }
+      }
+      return;
+    }
+    final String key = getKey(obj);
+    if (visited.add(key) == false) {
+      if (streamedRefIds.containsKey(key) == false) {
+        streamedRefIds.put(key, refIdCounter++);
+      }
+      return;
+    }
+    for (final XmlObjectMetadata.FieldInfo info : XmlObjectMetadata.get(obj.getClass()).getFieldInfos()) {
+      final Object value = getStreamedFieldValue(obj, info);
+      if (value != null) {
+        collectReferences(visited, value);
+      }
+    }
+  }
+
+  private void write(final XmlStreamingOutput out, final Object obj, final String alias, final boolean asAttribute, final boolean asCDATA)
+      throws IOException
+  {
+    final String name = getName(obj, alias);
+    if (isSimpleValue(obj) == true) {
+      final String sValue = getStringValue(obj);
+      if (sValue == null) {
+        return;
+      }
+      if (asAttribute == true) {
+        out.attribute(name, sValue);
+      } else {
+        out.startElement(name);
+        if (asCDATA == true) {
+          out.cdata(sValue);
+        } else {
+          out.text(sValue);
+        }
+        out.endElement();
+      }
+      return;
+    }
+    if (obj instanceof Collection< ? >) {
+      out.startElement(name);
+      for (final Object item : (Collection< ? >) obj) {
+        if (item != null) {
+          write(out, item, null, false, false);
+        }
+      }
+      out.endElement();
+      return;
+    }
+    final String key = getKey(obj);
+    final Integer refId = streamedRefIds.get(key);
+    out.startElement(name);
+    if (streamedObjects.add(key) == false) {
+      out.attribute(ATTR_REF_ID, String.valueOf(refId));
+      out.endElement();
+      return;
+    }
+    // Attributes have to be written before any child element:
+    List<Object[]> children = null;
+    for (final XmlObjectMetadata.FieldInfo info : XmlObjectMetadata.get(obj.getClass()).getFieldInfos()) {
+      final Object value = getStreamedFieldValue(obj, info);
+      if (value == null) {
+        continue;
+      }
+      if (isSimpleValue(value) == true && isChildAsAttribute(info.field, info.annotation) == true) {
+        write(out, value, info.name, true, false);
+      } else {
+        if (children == null) {
+          children = new ArrayList<Object[]>();
+        }
+        children.add(new Object[] { info, value});
+      }
+    }
+    if (refId != null) {
+      out.attribute(ATTR_ID, String.valueOf(refId));
+    }
+    if (children != null) {
+      for (final Object[] child : children) {
+        final XmlObjectMetadata.FieldInfo info = (XmlObjectMetadata.FieldInfo) child[0];
+        write(out, child[1], info.name, false, info.annotation != null && info.annotation.asCDATA() == true);
+      }
+    }
+    out.endElement();
   }
 
   protected void addAttribute(final Element element, final Object obj, final String name, final String value)
@@ -295,19 +503,9 @@ public class XmlObjectWriter
     }
   }
 
-  private void registerElement(final Object obj, final Element element)
-  {
-    writtenObjects.put(obj.getClass().getName() + ":" + obj.hashCode(), element);
-  }
-
-  private Element getRegisteredElement(final Object obj)
-  {
-    return writtenObjects.get(obj.getClass().getName() + ":" + obj.hashCode());
-  }
-
-  private boolean isRegistered(final Object obj)
+  private String getKey(final Object obj)
   {
-    return writtenObjects.containsKey(obj.getClass().getName() + ":" + obj.hashCode());
+    return obj.getClass().getName() + ":" + obj.hashCode();
   }
 
   /**
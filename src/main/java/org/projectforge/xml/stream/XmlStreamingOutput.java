@@ -0,0 +1,154 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.xml.stream;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal xml output used by the streaming mode of {@link XmlObjectWriter}. Writes the elements directly to the given writer without
+ * building a dom4j tree. The output is equal to the output of dom4j's XMLWriter with the default (not pretty) format: empty elements
+ * are closed by "/>" and the same characters are escaped.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * 
+ */
+class XmlStreamingOutput
+{
+  private final Writer out;
+
+  private final List<String> openElements = new ArrayList<String>();
+
+  /**
+   * True if the start tag of the current element isn't yet closed (attributes may be added).
+   */
+  private boolean startTagOpen;
+
+  XmlStreamingOutput(final Writer out)
+  {
+    this.out = out;
+  }
+
+  void startElement(final String name) throws IOException
+  {
+    closeStartTag();
+    out.write('<');
+    out.write(name);
+    openElements.add(name);
+    startTagOpen = true;
+  }
+
+  /**
+   * Must be called directly after {@link #startElement(String)} or any other attribute.
+   */
+  void attribute(final String name, final String value) throws IOException
+  {
+    if (startTagOpen == false) {
+      throw new IllegalStateException("Can't write attribute '" + name + "' after the content of an element.");
+    }
+    out.write(' ');
+    out.write(name);
+    out.write("=\"");
+    escape(value, true);
+    out.write('"');
+  }
+
+  void text(final String text) throws IOException
+  {
+    closeStartTag();
+    escape(text, false);
+  }
+
+  void cdata(final String text) throws IOException
+  {
+    closeStartTag();
+    out.write("<![CDATA[");
+    out.write(text);
+    out.write("]]>");
+  }
+
+  void endElement() throws IOException
+  {
+    final String name = openElements.remove(openElements.size() - 1);
+    if (startTagOpen == true) {
+      out.write("/>");
+      startTagOpen = false;
+    } else {
+      out.write("</");
+      out.write(name);
+      out.write('>');
+    }
+  }
+
+  void flush() throws IOException
+  {
+    out.flush();
+  }
+
+  private void closeStartTag() throws IOException
+  {
+    if (startTagOpen == true) {
+      out.write('>');
+      startTagOpen = false;
+    }
+  }
+
+  private void escape(final String text, final boolean attribute) throws IOException
+  {
+    final int length = text.length();
+    int start = 0;
+    for (int i = 0; i < length; i++) {
+      final char c = text.charAt(i);
+      final String entity;
+      switch (c) {
+        case '<':
+          entity = "&lt;";
+          break;
+        case '>':
+          entity = "&gt;";
+          break;
+        case '&':
+          entity = "&amp;";
+          break;
+        case '"':
+          entity = attribute == true ? "&quot;" : null;
+          break;
+        case '\t':
+        case '\n':
+        case '\r':
+          entity = null;
+          break;
+        default:
+          entity = c < 32 ? "&#" + (int) c + ";" : null;
+      }
+      if (entity != null) {
+        out.write(text, start, i - start);
+        out.write(entity);
+        start = i + 1;
+      }
+    }
+    out.write(text, start, length - start);
+  }
+}
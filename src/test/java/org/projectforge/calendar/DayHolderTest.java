@@ -72,6 +72,22 @@ public class DayHolderTest
     assertBigDecimal(21, DayHolder.getNumberOfWorkingDays(fromDay, toDay));
     toDay.setDate(2009, Calendar.FEBRUARY, 28, 0, 0, 0);
     assertBigDecimal(41, DayHolder.getNumberOfWorkingDays(fromDay, toDay));
+    fromDay.setDate(2009, Calendar.JANUARY, 2, 0, 0, 0);
+    assertBigDecimal(1, DayHolder.getNumberOfWorkingDays(fromDay, fromDay));
+    toDay.setDate(2009, Calendar.JANUARY, 1, 0, 0, 0);
+    assertBigDecimal(0, DayHolder.getNumberOfWorkingDays(fromDay, toDay));
+    // Time periods over several years:
+    fromDay.setDate(2008, Calendar.DECEMBER, 1, 0, 0, 0);
+    toDay.setDate(2011, Calendar.MARCH, 15, 0, 0, 0);
+    BigDecimal expected = BigDecimal.ZERO;
+    final DayHolder day = new DayHolder(fromDay);
+    while (day.after(toDay) == false) {
+      if (day.isWorkingDay() == true) {
+        expected = expected.add(day.getWorkFraction() != null ? day.getWorkFraction() : BigDecimal.ONE);
+      }
+      day.add(Calendar.DAY_OF_MONTH, 1);
+    }
+    assertEquals(0, expected.compareTo(DayHolder.getNumberOfWorkingDays(fromDay, toDay)));
   }
 
   @Test
@@ -0,0 +1,149 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.calendar;
+
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.Locale;
+
+import org.projectforge.common.DateHelper;
+import org.projectforge.common.DateHolder;
+import org.projectforge.common.DatePrecision;
+import org.projectforge.core.ConfigXmlTest;
+import org.projectforge.core.Configuration;
+
+/**
+ * Compares the working day calculation by {@link WorkingDayIndex} with the former day by day loop (checking every day with a new
+ * DayHolder): Adds working days to and counts the working days of all months of several years. Should be executed manually after modifying
+ * the working day calculation, usage: WorkingDaysBenchmark [years] [iterations]
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * 
+ */
+public class WorkingDaysBenchmark
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(WorkingDaysBenchmark.class);
+
+  private static final int WARM_UP_ITERATIONS = 3;
+
+  private static final int[] WORKING_DAYS = { -250, -20, -5, -1, 1, 5, 20, 250};
+
+  public static void main(final String[] args)
+  {
+    final int years = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+    final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+    ConfigXmlTest.createTestConfiguration();
+    Configuration.init4TestMode();
+    if (run(years, false) != run(years, true)) {
+      log.error("Results of the day by day loop and the working day index differ!");
+    }
+    for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+      run(years, false);
+      run(years, true);
+    }
+    long loop = 0, index = 0;
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      run(years, false);
+      loop += System.nanoTime() - start;
+      start = System.nanoTime();
+      run(years, true);
+      index += System.nanoTime() - start;
+    }
+    log.info("Average for " + years + " years: loop=" + average(loop, iterations) + "ms, index=" + average(index, iterations) + "ms");
+  }
+
+  /**
+   * Adds working days to every day and counts the working days of every month and of every time period of one year.
+   * @return Hash of all results (for comparing the results of both implementations).
+   */
+  private static long run(final int years, final boolean useIndex)
+  {
+    long hash = 0;
+    final DateHolder day = new DateHolder(DatePrecision.DAY, DateHelper.UTC, Locale.GERMAN);
+    day.setDate(2010, Calendar.JANUARY, 1);
+    final DateHolder to = new DateHolder(DatePrecision.DAY, DateHelper.UTC, Locale.GERMAN);
+    for (int i = 0; i < years * 365; i++) {
+      for (final int workingDays : WORKING_DAYS) {
+        final DateHolder dh = day.clone();
+        if (useIndex == true) {
+          dh.addWorkingDays(workingDays);
+        } else {
+          addWorkingDaysDayByDay(dh, workingDays);
+        }
+        hash = 31 * hash + dh.getTimeInMillis();
+      }
+      if (day.getDayOfMonth() == 1) {
+        to.setDate(day.getDate()).setEndOfMonth();
+        hash = 31 * hash + getNumberOfWorkingDays(day, to, useIndex).hashCode();
+        to.setDate(day.getDate()).add(Calendar.DAY_OF_YEAR, 364);
+        hash = 31 * hash + getNumberOfWorkingDays(day, to, useIndex).hashCode();
+      }
+      day.add(Calendar.DAY_OF_MONTH, 1);
+    }
+    return hash;
+  }
+
+  private static BigDecimal getNumberOfWorkingDays(final DateHolder from, final DateHolder to, final boolean useIndex)
+  {
+    if (useIndex == true) {
+      return DayHolder.getNumberOfWorkingDays(from, to);
+    }
+    final DayHolder day = new DayHolder(from);
+    BigDecimal numberOfWorkingDays = BigDecimal.ZERO;
+    int numberOfFullWorkingDays = 0;
+    while (true) {
+      if (day.isWorkingDay() == true) {
+        final BigDecimal workFraction = day.getWorkFraction();
+        if (workFraction != null) {
+          numberOfWorkingDays = numberOfWorkingDays.add(workFraction);
+        } else {
+          numberOfFullWorkingDays++;
+        }
+      }
+      if (day.isSameDay(to) == true) {
+        break;
+      }
+      day.add(Calendar.DAY_OF_MONTH, 1);
+    }
+    return numberOfWorkingDays.add(new BigDecimal(numberOfFullWorkingDays));
+  }
+
+  private static void addWorkingDaysDayByDay(final DateHolder dateHolder, final int days)
+  {
+    final int sign = days < 0 ? -1 : 1;
+    int counter = 0;
+    while (counter != days) {
+      do {
+        dateHolder.add(Calendar.DAY_OF_MONTH, sign);
+      } while (new DayHolder(dateHolder).isWorkingDay() == false);
+      counter += sign;
+    }
+  }
+
+  private static String average(final long nanos, final int iterations)
+  {
+    return String.valueOf(nanos / iterations / 1000000);
+  }
+}
@@ -0,0 +1,141 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AbstractCacheTest
+{
+  @Test
+  public void synchronousRefresh()
+  {
+    final TestCache cache = new TestCache(0);
+    Assert.assertEquals(1, cache.getValue());
+    cache.setExpired();
+    Assert.assertEquals(2, cache.getValue());
+  }
+
+  @Test
+  public void asyncRefresh() throws InterruptedException
+  {
+    final TestCache cache = new TestCache(200);
+    cache.setAsyncRefresh(true);
+    cache.setExpireTimeInSeconds(0);
+    Assert.assertEquals("Initial load is always synchronous.", 1, cache.getValue());
+    Thread.sleep(10);
+    // Expired by time: old value is served while refreshing in background.
+    Assert.assertEquals(1, cache.getValue());
+    Assert.assertEquals(1, cache.getValue());
+    for (int i = 0; i < 200 && cache.value != 2; i++) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(2, cache.value);
+    cache.setExpireTimeInHours(1);
+    for (int i = 0; i < 200 && cache.isRefreshInProgress() == true; i++) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(2, cache.getValue());
+    // Explicitly expired: refresh is done synchronously.
+    cache.setExpired();
+    Assert.assertEquals(3, cache.getValue());
+  }
+
+  @Test
+  public void modificationWhileRefreshing() throws InterruptedException
+  {
+    final TestCache cache = new TestCache(300);
+    cache.setAsyncRefresh(true);
+    cache.setExpireTimeInSeconds(0);
+    Assert.assertEquals(1, cache.getValue());
+    Thread.sleep(10);
+    Assert.assertEquals(1, cache.getValue()); // Starts the background refresh.
+    for (int i = 0; i < 200 && cache.isRefreshInProgress() == false; i++) {
+      Thread.sleep(5);
+    }
+    Assert.assertTrue(cache.isRefreshInProgress());
+    final long start = System.currentTimeMillis();
+    cache.setModification(42);
+    Assert.assertTrue("Monitor of the cache mustn't be held by the background refresh.", System.currentTimeMillis() - start < 200);
+    Assert.assertEquals(42, cache.modification);
+    cache.setExpireTimeInHours(1);
+    for (int i = 0; i < 200 && cache.isRefreshInProgress() == true; i++) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(2, cache.getValue());
+    Assert.assertEquals("Modification has to be replayed after refresh.", 42, cache.modification);
+  }
+
+  private class TestCache extends AbstractCache
+  {
+    private final long refreshDuration;
+
+    private volatile int counter;
+
+    private volatile int value;
+
+    private volatile int modification;
+
+    private TestCache(final long refreshDuration)
+    {
+      this.refreshDuration = refreshDuration;
+    }
+
+    int getValue()
+    {
+      checkRefresh();
+      return value;
+    }
+
+    void setModification(final int modification)
+    {
+      checkRefresh();
+      synchronized (this) {
+        this.modification = modification;
+        afterModification(new Runnable() {
+          @Override
+          public void run()
+          {
+            TestCache.this.modification = modification;
+          }
+        });
+      }
+    }
+
+    @Override
+    protected void refresh()
+    {
+      final int newValue = ++counter;
+      if (counter > 1 && refreshDuration > 0) {
+        try {
+          Thread.sleep(refreshDuration);
+        } catch (final InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      value = newValue;
+      modification = 0;
+    }
+  }
+}
@@ -33,6 +33,7 @@ import java.util.Locale;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.projectforge.calendar.DayHolder;
 import org.projectforge.test.TestConfiguration;
 
 public class DateHolderTest
@@ -221,6 +222,33 @@ public class DateHolderTest
     dateHolder.addWorkingDays(1); // Skip saturday, sunday and whit monday and weekend.
     dateHolder.addWorkingDays(-6); // Skip saturday, sunday and whit monday and weekends.
     assertEquals("2010-05-14 04:50:00.000", DateHelper.getForTestCase(dateHolder.getDate()));
+    dateHolder.setDate(2010, Calendar.DECEMBER, 30, 4, 50, 23); // Thursday
+    dateHolder.addWorkingDays(2); // Skip new year and weekend.
+    assertEquals("2011-01-04 04:50:00.000", DateHelper.getForTestCase(dateHolder.getDate()));
+    dateHolder.addWorkingDays(-2);
+    assertEquals("2010-12-30 04:50:00.000", DateHelper.getForTestCase(dateHolder.getDate()));
+  }
+
+  @Test
+  public void addWorkingDaysDayByDay()
+  {
+    final DateHolder dateHolder = new DateHolder(DatePrecision.DAY, DateHelper.UTC, Locale.GERMAN);
+    dateHolder.setDate(2009, Calendar.NOVEMBER, 1);
+    for (int i = 0; i < 500; i++) {
+      for (final int days : new int[] { -300, -20, -1, 1, 3, 20, 300}) {
+        final DateHolder expected = dateHolder.clone();
+        int counter = 0;
+        while (counter != days) {
+          do {
+            expected.add(Calendar.DAY_OF_MONTH, days > 0 ? 1 : -1);
+          } while (new DayHolder(expected).isWorkingDay() == false);
+          counter += days > 0 ? 1 : -1;
+        }
+        final DateHolder result = dateHolder.clone().addWorkingDays(days);
+        assertEquals(DateHelper.formatIsoDate(expected.getDate()), DateHelper.formatIsoDate(result.getDate()));
+      }
+      dateHolder.add(Calendar.DAY_OF_MONTH, 1);
+    }
   }
 
   private int daysBetween(final DateHolder date1, final DateHolder date2)
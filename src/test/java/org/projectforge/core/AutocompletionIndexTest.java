@@ -0,0 +1,111 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+public class AutocompletionIndexTest
+{
+  @Test
+  public void testSearch()
+  {
+    final AutocompletionIndex index = new AutocompletionIndex();
+    final Date now = new Date();
+    index.add("Kassel", now);
+    index.add("Berlin", now);
+    index.add("Berlin", now);
+    index.add("Berlin Mitte", now);
+    index.add("Berlin Mitte", now);
+    index.add("Berlin Mitte", now);
+    index.add("", now);
+    index.add(null, now);
+    assertEquals(3, index.size());
+    assertResult(index.search("BERLIN", null), "Berlin Mitte", "Berlin"); // Most used first.
+    assertResult(index.search("li", null), "Berlin Mitte", "Berlin"); // Short search string without n-grams.
+    assertResult(index.search("sse", null), "Kassel");
+    assertResult(index.search("el", null), "Kassel");
+    assertResult(index.search("xyz", null));
+    assertResult(index.search("Kassel Nord", null));
+
+    index.remove("Berlin Mitte", now);
+    index.remove("Berlin Mitte", now);
+    assertResult(index.search("berlin", null), "Berlin", "Berlin Mitte"); // Same frequency: alphabetical order.
+    index.remove("Berlin Mitte", now);
+    assertResult(index.search("berlin", null), "Berlin");
+    assertEquals(2, index.size());
+    index.remove("Unknown", now);
+    assertEquals(2, index.size());
+  }
+
+  @Test
+  public void testExpired()
+  {
+    final AutocompletionIndex index = new AutocompletionIndex();
+    final long now = System.currentTimeMillis();
+    assertFalse(index.isExpired(now));
+    assertTrue("Not searched for too long.", index.isExpired(now + AutocompletionIndex.MAX_IDLE + 1000));
+    index.search("test", null);
+    assertFalse(index.isExpired(System.currentTimeMillis() + AutocompletionIndex.MAX_IDLE - 1000));
+    assertTrue(index.isExpired(now + AutocompletionIndex.MAX_AGE + 1000));
+  }
+
+  @Test
+  public void testModifiedSince()
+  {
+    final AutocompletionIndex index = new AutocompletionIndex();
+    index.add("Kassel", new Date(1000));
+    index.add("Kassel Nord", new Date(3000));
+    assertResult(index.search("kas", new Date(2000)), "Kassel Nord");
+    index.add("Kassel", new Date(4000));
+    assertResult(index.search("kas", new Date(2000)), "Kassel", "Kassel Nord");
+  }
+
+  @Test
+  public void testIndexedSince()
+  {
+    final AutocompletionIndex index = new AutocompletionIndex(new Date(2000));
+    index.add("Kassel", new Date(1000)); // Not indexed.
+    index.add("Kassel", new Date(3000));
+    assertResult(index.search("kas", null), "Kassel");
+    index.remove("Kassel", new Date(1000)); // Wasn't counted, so the occurrence of 3000 is still there.
+    assertResult(index.search("kas", null), "Kassel");
+    index.remove("Kassel", new Date(3000));
+    assertResult(index.search("kas", null));
+  }
+
+  private void assertResult(final List<String> result, final String... expected)
+  {
+    assertEquals(expected.length, result.size());
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], result.get(i));
+    }
+  }
+}
@@ -24,17 +24,29 @@
 package org.projectforge.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import org.hibernate.SessionFactory;
 import org.junit.Test;
 import org.projectforge.task.TaskDO;
 import org.projectforge.user.GroupDO;
 import org.projectforge.user.PFUserDO;
 import org.projectforge.user.UserPrefDO;
+import org.springframework.orm.hibernate3.HibernateTemplate;
 
 public class HibernateSearchDependentObjectsReindexerTest
 {
+  private final HibernateTemplate hibernateTemplate = new HibernateTemplate();
+
   @Test
   public void register()
   {
@@ -55,6 +67,191 @@ public class HibernateSearchDependentObjectsReindexerTest
     assertEntry(list.get(2), UserPrefDO.class, "user");
   }
 
+  @Test
+  public void coalescing() throws InterruptedException
+  {
+    final TestReindexer reindexer = new TestReindexer();
+    reindexer.reindexDependents(hibernateTemplate, createUser(1));
+    // The worker blocks while processing the first batch, so all further objects are queued:
+    reindexer.awaitFirstBatch();
+    reindexer.reindexDependents(hibernateTemplate, Arrays.asList(createUser(2), createUser(3), createUser(2)));
+    reindexer.reindexDependents(hibernateTemplate, createUser(3));
+    reindexer.reindexDependents(hibernateTemplate, createUser(1)); // Not queued anymore (in process), so queued again.
+    assertEquals(3, reindexer.getQueueSize());
+    assertEquals(4, reindexer.getQueuedCounter());
+    assertEquals(2, reindexer.getCoalescedCounter());
+    reindexer.release();
+    reindexer.awaitProcessed(4);
+    assertEquals(2, reindexer.batches.size());
+    assertEquals(Arrays.asList((Serializable) 1), reindexer.batches.get(0));
+    assertEquals(Arrays.asList((Serializable) 2, 3, 1), reindexer.batches.get(1));
+    assertEquals(0, reindexer.getQueueSize());
+    assertEquals(8, reindexer.getIndexedCounter());
+    assertEquals(0, reindexer.getFailedCounter());
+  }
+
+  @Test
+  public void ignoredObjects()
+  {
+    final TestReindexer reindexer = new TestReindexer();
+    reindexer.reindexDependents(hibernateTemplate, createUser(null)); // Not yet saved.
+    final TaskDO task = new TaskDO();
+    task.setId(1);
+    reindexer.reindexDependents(hibernateTemplate, task); // No dependents registered.
+    assertEquals(0, reindexer.getQueuedCounter());
+    assertEquals(0, reindexer.getQueueSize());
+  }
+
+  @Test
+  public void batching() throws InterruptedException
+  {
+    final TestReindexer reindexer = new TestReindexer();
+    reindexer.reindexDependents(hibernateTemplate, createUser(0));
+    reindexer.awaitFirstBatch();
+    final int number = 2 * HibernateSearchDependentObjectsReindexer.BATCH_SIZE + 50;
+    reindexer.reindexDependents(hibernateTemplate, createUsers(1, number));
+    assertEquals(number, reindexer.getQueueSize());
+    reindexer.release();
+    reindexer.awaitProcessed(number + 1);
+    assertEquals(4, reindexer.batches.size());
+    assertEquals(1, reindexer.batches.get(0).size());
+    assertEquals(HibernateSearchDependentObjectsReindexer.BATCH_SIZE, reindexer.batches.get(1).size());
+    assertEquals(HibernateSearchDependentObjectsReindexer.BATCH_SIZE, reindexer.batches.get(2).size());
+    assertEquals(50, reindexer.batches.get(3).size());
+    // Insertion order:
+    assertEquals(1, reindexer.batches.get(1).get(0));
+    assertEquals(number, reindexer.batches.get(3).get(49));
+    assertEquals(number + 1, reindexer.getQueuedCounter());
+    assertEquals(2 * (number + 1), reindexer.getIndexedCounter());
+  }
+
+  @Test
+  public void backPressure() throws InterruptedException
+  {
+    final TestReindexer reindexer = new TestReindexer();
+    reindexer.reindexDependents(hibernateTemplate, createUser(0));
+    reindexer.awaitFirstBatch();
+    final int max = HibernateSearchDependentObjectsReindexer.MAX_QUEUE_SIZE;
+    reindexer.reindexDependents(hibernateTemplate, createUsers(1, max));
+    assertEquals(max, reindexer.getQueueSize());
+    final Thread caller = new Thread() {
+      @Override
+      public void run()
+      {
+        reindexer.reindexDependents(hibernateTemplate, createUser(max + 1));
+      }
+    };
+    caller.start();
+    caller.join(200);
+    assertTrue("Caller has to be blocked while the queue is full.", caller.isAlive());
+    assertEquals(max, reindexer.getQueueSize());
+    reindexer.release();
+    caller.join(10000);
+    assertFalse(caller.isAlive());
+    reindexer.awaitProcessed(max + 2);
+    assertEquals(max + 2, reindexer.getQueuedCounter());
+    assertEquals(0, reindexer.getFailedCounter());
+  }
+
+  @Test
+  public void failures() throws InterruptedException
+  {
+    final TestReindexer reindexer = new TestReindexer();
+    reindexer.fail = true;
+    reindexer.release();
+    reindexer.reindexDependents(hibernateTemplate, createUsers(1, 5));
+    reindexer.awaitProcessed(5);
+    assertEquals(5, reindexer.getQueuedCounter());
+    assertEquals(5, reindexer.getFailedCounter());
+    assertEquals(0, reindexer.getIndexedCounter());
+  }
+
+  private static PFUserDO createUser(final Integer id)
+  {
+    final PFUserDO user = new PFUserDO();
+    user.setId(id);
+    return user;
+  }
+
+  private static List<PFUserDO> createUsers(final int fromId, final int toId)
+  {
+    final List<PFUserDO> users = new ArrayList<PFUserDO>();
+    for (int id = fromId; id <= toId; id++) {
+      users.add(createUser(id));
+    }
+    return users;
+  }
+
+  /**
+   * Records the batches instead of re-indexing. The worker is blocked while processing the first batch until {@link #release()} is called.
+   */
+  private static class TestReindexer extends HibernateSearchDependentObjectsReindexer
+  {
+    private final List<List<Serializable>> batches = Collections.synchronizedList(new ArrayList<List<Serializable>>());
+
+    private final CountDownLatch firstBatchStarted = new CountDownLatch(1);
+
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    private volatile boolean fail;
+
+    private TestReindexer()
+    {
+      map.clear();
+      register(TaskDO.class); // Dependents of PFUserDO.
+    }
+
+    @Override
+    int processBatch(final SessionFactory sessionFactory, final List<QueueEntry> batch)
+    {
+      firstBatchStarted.countDown();
+      try {
+        released.await(10, TimeUnit.SECONDS);
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      final List<Serializable> ids = new ArrayList<Serializable>();
+      for (final QueueEntry entry : batch) {
+        ids.add(entry.id);
+      }
+      batches.add(ids);
+      if (fail == true) {
+        throw new RuntimeException("Test exception.");
+      }
+      return 2 * batch.size(); // Two dependents per object.
+    }
+
+    private void awaitFirstBatch() throws InterruptedException
+    {
+      assertTrue(firstBatchStarted.await(10, TimeUnit.SECONDS));
+    }
+
+    private void release()
+    {
+      released.countDown();
+    }
+
+    private void awaitProcessed(final int number) throws InterruptedException
+    {
+      // The counters are incremented after the batch is processed:
+      for (int i = 0; i < 1000 && getIndexedCounter() / 2 + getFailedCounter() < number; i++) {
+        Thread.sleep(10);
+      }
+      assertEquals(number, getProcessed());
+    }
+
+    private int getProcessed()
+    {
+      int processed = 0;
+      synchronized (batches) {
+        for (final List<Serializable> batch : batches) {
+          processed += batch.size();
+        }
+      }
+      return processed;
+    }
+  }
+
   private void assertEntry(final HibernateSearchDependentObjectsReindexer.Entry entry, final Class< ? > clazz, final String fieldName)
   {
     assertEquals(fieldName, entry.fieldName);
@@ -0,0 +1,132 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.projectforge.plugins.teamcal.TeamCalTestHelper;
+import org.projectforge.task.TaskDO;
+import org.projectforge.task.TaskDao;
+import org.projectforge.test.TestBase;
+import org.projectforge.user.PFUserDO;
+import org.projectforge.user.UserGroupCache;
+
+public class DatabaseSnapshotTestFork extends TestBase
+{
+  private DatabaseSnapshot databaseSnapshot;
+
+  private TaskDao taskDao;
+
+  private UserGroupCache userGroupCache;
+
+  private XmlDump xmlDump;
+
+  public void setDatabaseSnapshot(final DatabaseSnapshot databaseSnapshot)
+  {
+    this.databaseSnapshot = databaseSnapshot;
+  }
+
+  public void setTaskDao(final TaskDao taskDao)
+  {
+    this.taskDao = taskDao;
+  }
+
+  public void setUserGroupCache(final UserGroupCache userGroupCache)
+  {
+    this.userGroupCache = userGroupCache;
+  }
+
+  public void setXmlDump(final XmlDump xmlDump)
+  {
+    this.xmlDump = xmlDump;
+  }
+
+  @BeforeClass
+  public static void setUp() throws Exception
+  {
+    preInit();
+    TeamCalTestHelper.setup(false);
+  }
+
+  @Test
+  public void restoreSnapshot() throws IOException
+  {
+    clearDatabase();
+    userGroupCache.setExpired();
+    xmlDump.restoreDatabaseFromClasspathResource(InitDatabaseDao.TEST_DATA_BASE_DUMP_FILE, "utf-8");
+    // A task referencing a parent task with a higher id (the rows of the table are written ordered by id):
+    final TaskDO root = (TaskDO) hibernate.find("from TaskDO t where t.parentTask is null").get(0);
+    final TaskDO child = new TaskDO().setTitle("snapshot-child").setParentTask(root);
+    taskDao.internalSave(child);
+    final TaskDO parent = new TaskDO().setTitle("snapshot-parent").setParentTask(root);
+    taskDao.internalSave(parent);
+    child.setParentTask(parent);
+    taskDao.internalUpdate(child);
+    assertTrue(child.getId() < parent.getId());
+
+    final String[] entities = { PFUserDO.class.getName(), TaskDO.class.getName(),
+        TaskDO.class.getName() + " t where t.parentTask is null"};
+    final long[] counts = new long[entities.length];
+    for (int i = 0; i < entities.length; i++) {
+      counts[i] = count(entities[i]);
+    }
+    final File dir = new File(TEST_DIR, "snapshot");
+    FileUtils.deleteDirectory(dir);
+    databaseSnapshot.writeSnapshot(dir);
+
+    clearDatabase();
+    userGroupCache.setExpired();
+    databaseSnapshot.restoreSnapshot(dir);
+    for (int i = 0; i < entities.length; i++) {
+      assertEquals("Number of restored " + entities[i], counts[i], count(entities[i]));
+    }
+    final TaskDO restored = (TaskDO) hibernate.find("from TaskDO t where t.title = ?", "snapshot-child").get(0);
+    assertEquals(child.getId(), restored.getId());
+    assertEquals(parent.getId(), restored.getParentTaskId());
+
+    try {
+      databaseSnapshot.restoreSnapshot(dir);
+      fail("Data-base isn't empty, exception expected.");
+    } catch (final IllegalStateException ex) {
+      // OK
+    }
+    databaseSnapshot.restoreSnapshot(dir, true);
+    for (int i = 0; i < entities.length; i++) {
+      assertEquals("Number of restored " + entities[i] + " into cleared data-base", counts[i], count(entities[i]));
+    }
+  }
+
+  private long count(final String entity)
+  {
+    return (Long) hibernate.find("select count(*) from " + entity).get(0);
+  }
+}
@@ -0,0 +1,110 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class ReindexCheckpointTest
+{
+  @Test
+  public void testResume() throws IOException
+  {
+    final File file = File.createTempFile("reindex-checkpoint", ".properties");
+    file.delete();
+    ReindexCheckpoint checkpoint = new ReindexCheckpoint(file, true);
+    assertFalse(checkpoint.isResumed());
+    assertFalse(checkpoint.isDone(String.class));
+    assertNull(checkpoint.getShards(Integer.class));
+    checkpoint.setDone(String.class);
+    final long[][] shards = new long[][] { { 1, 100, 0}, { 101, 200, 100}};
+    checkpoint.setShards(Integer.class, shards);
+    checkpoint.setShardPosition(Integer.class, 1, shards[1], 150);
+
+    // Simulates a restart after a crash:
+    checkpoint = new ReindexCheckpoint(file, true);
+    assertTrue(checkpoint.isResumed());
+    assertTrue(checkpoint.isDone(String.class));
+    assertFalse(checkpoint.isDone(Integer.class));
+    final long[][] loaded = checkpoint.getShards(Integer.class);
+    assertEquals(2, loaded.length);
+    assertEquals(1, loaded[0][0]);
+    assertEquals(100, loaded[0][1]);
+    assertEquals(0, loaded[0][2]);
+    assertEquals(101, loaded[1][0]);
+    assertEquals(200, loaded[1][1]);
+    assertEquals(150, loaded[1][2]);
+
+    checkpoint.delete();
+    assertFalse(file.exists());
+    assertFalse(new ReindexCheckpoint(file, true).isResumed());
+  }
+
+  @Test
+  public void testNewRun() throws IOException
+  {
+    final File file = File.createTempFile("reindex-checkpoint", ".properties");
+    file.delete();
+    ReindexCheckpoint checkpoint = new ReindexCheckpoint(file, true);
+    final Date runStarted = checkpoint.getRunStarted();
+    checkpoint.setDone(String.class);
+    checkpoint = new ReindexCheckpoint(file, true);
+    assertTrue(checkpoint.isResumed());
+    assertEquals(runStarted, checkpoint.getRunStarted());
+
+    // A new run (e. g. after a restore of the data base) ignores and deletes the check-point of the aborted run:
+    checkpoint = new ReindexCheckpoint(file, false);
+    assertFalse(checkpoint.isResumed());
+    assertFalse(checkpoint.isDone(String.class));
+    assertFalse(file.exists());
+    checkpoint.setDone(String.class);
+
+    // Expired check-point:
+    final Properties properties = new Properties();
+    final InputStream in = new FileInputStream(file);
+    properties.load(in);
+    in.close();
+    properties.setProperty("run.started", String.valueOf(System.currentTimeMillis() - ReindexCheckpoint.MAX_AGE - 1000));
+    final OutputStream out = new FileOutputStream(file);
+    properties.store(out, null);
+    out.close();
+    checkpoint = new ReindexCheckpoint(file, true);
+    assertFalse(checkpoint.isResumed());
+    assertFalse(checkpoint.isDone(String.class));
+    checkpoint.delete();
+  }
+}
@@ -0,0 +1,78 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class SnapshotRowCodecTest
+{
+  @Test
+  public void writeAndReadRows() throws IOException
+  {
+    final int[] types = new int[] { Types.INTEGER, Types.BIGINT, Types.VARCHAR, Types.NUMERIC, Types.TIMESTAMP, Types.DATE,
+        Types.BOOLEAN, Types.VARBINARY, Types.DOUBLE};
+    final Timestamp timestamp = new Timestamp(1234567890123L);
+    timestamp.setNanos(123456789);
+    final Object[] row1 = new Object[] { 42, 4242424242L, "Hello W\u00f6rld", new BigDecimal("-1234.5600"), timestamp,
+        new java.sql.Date(1234567890000L), true, new byte[] { 1, 2, 3}, 3.5};
+    final Object[] row2 = new Object[types.length];
+    final SnapshotRowCodec codec = new SnapshotRowCodec(types);
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    codec.writeRow(out, row1);
+    codec.writeRow(out, row2);
+    codec.writeEndOfTable(out);
+    out.close();
+
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    final Object[] read1 = codec.readRow(in);
+    for (int i = 0; i < row1.length; i++) {
+      if (row1[i] instanceof byte[]) {
+        assertTrue(Arrays.equals((byte[]) row1[i], (byte[]) read1[i]));
+      } else {
+        assertEquals(row1[i], read1[i]);
+      }
+    }
+    assertEquals(123456789, ((Timestamp) read1[4]).getNanos());
+    final Object[] read2 = codec.readRow(in);
+    for (int i = 0; i < row2.length; i++) {
+      assertNull(read2[i]);
+    }
+    assertNull(codec.readRow(in));
+  }
+}
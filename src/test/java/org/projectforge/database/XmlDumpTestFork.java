@@ -26,11 +26,19 @@ package org.projectforge.database;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.util.zip.GZIPInputStream;
+
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.projectforge.database.xstream.XStreamSavingConverter;
+import org.projectforge.fibu.AuftragDO;
 import org.projectforge.plugins.teamcal.TeamCalTestHelper;
+import org.projectforge.task.TaskDO;
 import org.projectforge.test.TestBase;
+import org.projectforge.timesheet.TimesheetDO;
 import org.projectforge.user.PFUserDO;
 import org.projectforge.user.UserGroupCache;
 
@@ -83,4 +91,37 @@ public class XmlDumpTestFork extends TestBase
     assertEquals("Error should be detected.", -counter, xmlDump.verifyDump(converter));
     log.info("****** } The previous import error from XmlDump are OK.");
   }
+
+  @Test
+  public void streamingDumpRoundTrip() throws Exception
+  {
+    clearDatabase();
+    userGroupCache.setExpired();
+    xmlDump.restoreDatabaseFromClasspathResource(InitDatabaseDao.TEST_DATA_BASE_DUMP_FILE, "utf-8");
+    // The last one checks the restored parent task references (self references):
+    final String[] entities = { PFUserDO.class.getName(), TaskDO.class.getName(), TimesheetDO.class.getName(), AuftragDO.class.getName(),
+        TaskDO.class.getName() + " t where t.parentTask is null"};
+    final long[] counts = new long[entities.length];
+    for (int i = 0; i < entities.length; i++) {
+      counts[i] = count(entities[i]);
+    }
+    assertTrue(counts[0] > 0);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    xmlDump.dumpDatabaseStreaming("projectforgedump.xml.gz", out);
+
+    clearDatabase();
+    userGroupCache.setExpired();
+    final XStreamSavingConverter converter = xmlDump.restoreDatabase(new InputStreamReader(new GZIPInputStream(
+        new ByteArrayInputStream(out.toByteArray())), "utf-8"));
+    final int counter = xmlDump.verifyDump(converter);
+    assertTrue("Import was not successful.", counter > 0);
+    for (int i = 0; i < entities.length; i++) {
+      assertEquals("Number of restored " + entities[i], counts[i], count(entities[i]));
+    }
+  }
+
+  private long count(final String entity)
+  {
+    return (Long) hibernate.find("select count(*) from " + entity).get(0);
+  }
 }
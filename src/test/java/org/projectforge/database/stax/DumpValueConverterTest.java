@@ -0,0 +1,87 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.database.stax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class DumpValueConverterTest
+{
+  private enum Status
+  {
+    OPEN, CLOSED;
+  }
+
+  @Test
+  public void convert()
+  {
+    assertConvert("Hello <world> & \"friends\"", String.class);
+    assertConvert(42, Integer.class);
+    assertConvert(4242424242L, Long.class);
+    assertConvert((short) 7, Short.class);
+    assertConvert(true, Boolean.class);
+    assertConvert(Status.CLOSED, Status.class);
+    assertConvert(Locale.GERMANY, Locale.class);
+    assertConvert(TimeZone.getTimeZone("Europe/Berlin"), TimeZone.class);
+    assertConvert(new Date(1234567890123L), Date.class);
+    assertConvert(new Timestamp(1234567890123L), Timestamp.class);
+    assertEquals("1000.50", DumpValueConverter.toString(new BigDecimal("1.00050E3")));
+    assertEquals(new BigDecimal("1000.50"), DumpValueConverter.fromString("1000.50", BigDecimal.class));
+    final byte[] bytes = new byte[] { 0, 1, -1, 127, -128};
+    assertTrue(Arrays.equals(bytes, (byte[]) DumpValueConverter.fromString(DumpValueConverter.toString(bytes), byte[].class)));
+    assertNull(DumpValueConverter.toString(null));
+    assertNull(DumpValueConverter.fromString(null, Integer.class));
+  }
+
+  @Test
+  public void unsupported()
+  {
+    assertFalse(DumpValueConverter.isSupported(Object.class));
+    assertNull(DumpValueConverter.toString(new Object()));
+    try {
+      DumpValueConverter.fromString("x", Object.class);
+    } catch (final IllegalArgumentException ex) {
+      return;
+    }
+    throw new AssertionError("IllegalArgumentException expected.");
+  }
+
+  private void assertConvert(final Object value, final Class< ? > type)
+  {
+    assertTrue(DumpValueConverter.isSupported(type));
+    final String str = DumpValueConverter.toString(value);
+    assertEquals(value, DumpValueConverter.fromString(str, type));
+  }
+}
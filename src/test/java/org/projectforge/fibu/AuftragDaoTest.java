@@ -24,10 +24,13 @@
 package org.projectforge.fibu;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.Serializable;
 import java.util.Calendar;
+import java.util.List;
 import java.util.Random;
 
 import org.junit.Test;
@@ -338,6 +341,8 @@ public class AuftragDaoTest extends TestBase
     auftrag1.setAuftragsStatus(AuftragsStatus.ABGESCHLOSSEN);
     auftragDao.update(auftrag1);
     auftrag1 = auftragDao.getById(id1);
+    assertFalse(auftrag1.isCompletelyInvoiced());
+    assertTrue("Closed order isn't invoiced yet.", auftrag1.isClosedNotCompletelyInvoiced());
 
     logon(TEST_PROJECT_MANAGER_USER);
     position = auftrag1.getPositionen().get(0);
@@ -356,6 +361,24 @@ public class AuftragDaoTest extends TestBase
     position.setStatus(AuftragsPositionsStatus.ABGESCHLOSSEN);
     position.setVollstaendigFakturiert(true);
     auftragDao.update(auftrag1);
+    auftrag1 = auftragDao.getById(id1);
+    assertTrue(auftrag1.isCompletelyInvoiced());
+    assertFalse(auftrag1.isClosedNotCompletelyInvoiced());
+    final AuftragFilter filter = new AuftragFilter();
+    filter.setListType(AuftragFilter.FILTER_VOLLSTAENDIG_FAKTURIERT);
+    assertTrue("Order expected in list of completely invoiced orders.", containsId(auftragDao.getList(filter), id1));
+    filter.setListType(AuftragFilter.FILTER_ABGESCHLOSSEN_NF);
+    assertFalse(containsId(auftragDao.getList(filter), id1));
+  }
+
+  private boolean containsId(final List<AuftragDO> list, final Serializable id)
+  {
+    for (final AuftragDO auftrag : list) {
+      if (auftrag.getId().equals(id) == true) {
+        return true;
+      }
+    }
+    return false;
   }
 
   @Test
@@ -93,6 +93,8 @@ public class RechnungCacheTest extends TestBase
     set = rechnungCache.getRechnungsPositionVOSetByAuftragsPositionId(auftrag.getPosition((short)2).getId());
     assertEquals("1 invoice positions expected.", 1, set.size());
     assertTrue(new BigDecimal("200").compareTo(RechnungDao.getNettoSumme(set)) == 0);
+    assertTrue("Invoiced sum of order expected.",
+        new BigDecimal("700").compareTo(auftragDao.getById(auftrag.getId()).getInvoicedSum()) == 0);
 
     final RechnungDO rechnung = rechnungDao.getById(rechnung2.getId());
     rechnung.getPosition(0).setAuftragsPosition(null);
@@ -100,6 +102,10 @@ public class RechnungCacheTest extends TestBase
     set = rechnungCache.getRechnungsPositionVOSetByAuftragId(auftrag.getId());
     assertEquals("2 invoice positions expected.", 2, set.size());
     assertTrue(new BigDecimal("300").compareTo(RechnungDao.getNettoSumme(set)) == 0);
+    set = rechnungCache.getRechnungsPositionVOSetByAuftragsPositionId(auftrag.getPosition((short)1).getId());
+    assertEquals("1 invoice position expected.", 1, set.size());
+    assertTrue("Invoiced sum of formerly assigned order expected.",
+        new BigDecimal("300").compareTo(auftragDao.getById(auftrag.getId()).getInvoicedSum()) == 0);
   }
 
   public void setAuftragDao(final AuftragDao auftragDao)
@@ -0,0 +1,132 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.gantt;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.projectforge.xml.stream.AliasMap;
+import org.projectforge.xml.stream.XmlObjectReader;
+import org.projectforge.xml.stream.XmlObjectWriter;
+
+/**
+ * Compares the dom4j mode with the streaming mode of XmlObjectWriter and XmlObjectReader by writing and reading a large Gantt chart
+ * (default: 50 summary tasks with 100 activities each, every activity has its predecessor). Should be executed manually after modifying
+ * the xml.stream package, usage: GanttXmlStreamingBenchmark [summaries] [activities per summary] [iterations]
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * 
+ */
+public class GanttXmlStreamingBenchmark
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(GanttXmlStreamingBenchmark.class);
+
+  private static final int WARM_UP_ITERATIONS = 5;
+
+  public static void main(final String[] args)
+  {
+    final int summaries = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+    final int activities = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+    final int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+    final GanttTaskImpl root = createGanttChart(summaries, activities);
+    final AliasMap aliasMap = new AliasMap();
+    aliasMap.put(GanttTaskImpl.class, "ganttObject");
+    final String domXml = createWriter(aliasMap, false).writeToXml(root);
+    final String streamedXml = createWriter(aliasMap, true).writeToXml(root);
+    if (domXml.equals(streamedXml) == false) {
+      log.error("Output of the dom4j and streaming mode differs!");
+    }
+    log.info("Gantt chart with " + (summaries * (activities + 1) + 1) + " tasks, xml size: " + domXml.length() + " characters.");
+    for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+      runWrite(root, aliasMap, false);
+      runWrite(root, aliasMap, true);
+      runRead(domXml, aliasMap, false);
+      runRead(domXml, aliasMap, true);
+    }
+    long domWrite = 0, streamingWrite = 0, domRead = 0, streamingRead = 0;
+    for (int i = 0; i < iterations; i++) {
+      domWrite += runWrite(root, aliasMap, false);
+      streamingWrite += runWrite(root, aliasMap, true);
+      domRead += runRead(domXml, aliasMap, false);
+      streamingRead += runRead(domXml, aliasMap, true);
+    }
+    log.info("Average write: dom4j=" + average(domWrite, iterations) + "ms, streaming=" + average(streamingWrite, iterations) + "ms");
+    log.info("Average read: dom4j=" + average(domRead, iterations) + "ms, streaming=" + average(streamingRead, iterations) + "ms");
+  }
+
+  private static GanttTaskImpl createGanttChart(final int summaries, final int activities)
+  {
+    int id = 0;
+    final Date startDate = new Date();
+    final GanttTaskImpl root = new GanttTaskImpl(id++).setTitle("Root").setType(GanttObjectType.SUMMARY);
+    GanttTaskImpl previousSummary = null;
+    for (int i = 0; i < summaries; i++) {
+      final GanttTaskImpl summary = new GanttTaskImpl(id++).setTitle("Summary " + i).setType(GanttObjectType.SUMMARY)
+          .setWorkpackageCode("WP-" + i);
+      if (previousSummary != null) {
+        summary.setPredecessor(previousSummary).setRelationType(GanttRelationType.FINISH_START);
+      }
+      root.addChild(summary);
+      GanttTaskImpl previous = null;
+      for (int j = 0; j < activities; j++) {
+        final GanttTaskImpl activity = new GanttTaskImpl(id++).setTitle("Activity " + i + "." + j).setType(GanttObjectType.ACTIVITY)
+            .setDuration(new BigDecimal(j % 10 + 1)).setProgress(j % 100).setDescription("Description of activity " + i + "." + j);
+        if (previous != null) {
+          activity.setPredecessor(previous).setPredecessorOffset(j % 3);
+        } else {
+          activity.setStartDate(startDate);
+        }
+        summary.addChild(activity);
+        previous = activity;
+      }
+      previousSummary = summary;
+    }
+    return root;
+  }
+
+  private static XmlObjectWriter createWriter(final AliasMap aliasMap, final boolean streamingMode)
+  {
+    return new XmlObjectWriter().setAliasMap(aliasMap).setStreamingMode(streamingMode);
+  }
+
+  private static long runWrite(final GanttTaskImpl root, final AliasMap aliasMap, final boolean streamingMode)
+  {
+    final long start = System.nanoTime();
+    createWriter(aliasMap, streamingMode).writeToXml(root);
+    return System.nanoTime() - start;
+  }
+
+  private static long runRead(final String xml, final AliasMap aliasMap, final boolean streamingMode)
+  {
+    final XmlObjectReader reader = new XmlObjectReader().setAliasMap(aliasMap).setStreamingMode(streamingMode);
+    reader.addImplementationMapping(GanttTask.class, GanttTaskImpl.class);
+    final long start = System.nanoTime();
+    reader.read(xml);
+    return System.nanoTime() - start;
+  }
+
+  private static String average(final long nanos, final int iterations)
+  {
+    return String.valueOf(nanos / iterations / 1000000);
+  }
+}
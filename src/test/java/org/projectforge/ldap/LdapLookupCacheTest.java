@@ -0,0 +1,75 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class LdapLookupCacheTest
+{
+  @Test
+  public void getAndPut()
+  {
+    final LdapLookupCache<String> cache = new LdapLookupCache<String>();
+    assertNull(cache.get("kai"));
+    cache.put("kai", "uid=kai", 60000);
+    assertEquals("uid=kai", cache.get("kai"));
+    cache.put("kai", "uid=kai2", 60000);
+    assertEquals("uid=kai2", cache.get("kai"));
+    cache.remove("kai");
+    assertNull(cache.get("kai"));
+    cache.put("kai", "uid=kai", 0);
+    assertNull("Time to live of 0 means no caching.", cache.get("kai"));
+    cache.put("kai", null, 60000);
+    assertNull(cache.get("kai"));
+    assertNull(cache.get(null));
+  }
+
+  @Test
+  public void expire() throws InterruptedException
+  {
+    final LdapLookupCache<String> cache = new LdapLookupCache<String>();
+    cache.put("kai", "uid=kai", 1);
+    Thread.sleep(10);
+    assertNull(cache.get("kai"));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void maxSize()
+  {
+    final LdapLookupCache<String> cache = new LdapLookupCache<String>();
+    for (int i = 0; i < LdapLookupCache.MAX_SIZE; i++) {
+      cache.put("user" + i, "uid=user" + i, 60000);
+    }
+    assertEquals(LdapLookupCache.MAX_SIZE, cache.size());
+    cache.put("kai", "uid=kai", 60000);
+    assertEquals("Cache is cleared if no entry is expired.", 1, cache.size());
+    assertEquals("uid=kai", cache.get("kai"));
+    cache.clear();
+    assertEquals(0, cache.size());
+  }
+}
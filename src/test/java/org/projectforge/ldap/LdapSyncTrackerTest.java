@@ -0,0 +1,132 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+import org.projectforge.user.GroupDO;
+import org.projectforge.user.PFUserDO;
+
+public class LdapSyncTrackerTest
+{
+  @Test
+  public void fullSyncRequired()
+  {
+    final LdapSyncTracker tracker = new LdapSyncTracker();
+    assertTrue("First synchronization is always a full one.", tracker.isFullSyncRequired(1000));
+    tracker.startFullSync(1000);
+    assertFalse(tracker.isFullSyncRequired(1000 + LdapSyncTracker.FULL_SYNC_INTERVAL - 1));
+    assertTrue(tracker.isFullSyncRequired(1000 + LdapSyncTracker.FULL_SYNC_INTERVAL));
+    tracker.requestFullSync();
+    assertTrue(tracker.isFullSyncRequired(1001));
+    tracker.startFullSync(1001);
+    assertFalse(tracker.isFullSyncRequired(1002));
+  }
+
+  @Test
+  public void dirtyUsers()
+  {
+    final LdapSyncTracker tracker = new LdapSyncTracker();
+    final PFUserDO user1 = createUser(1, "user1", 100);
+    final PFUserDO user2 = createUser(2, "user2", 100);
+    final PFUserDO user3 = createUser(3, "user3", 100);
+    user3.setLastUpdate(null);
+    final List<PFUserDO> users = Arrays.asList(user1, user2, user3);
+    assertEquals(3, tracker.getDirtyUsers(users).size());
+    for (final PFUserDO user : users) {
+      tracker.userSynchronized(user);
+    }
+    assertEquals("User without time stamp of last update is always dirty.", Arrays.asList(user3), tracker.getDirtyUsers(users));
+
+    user1.setLastUpdate(new Date(200));
+    assertEquals(Arrays.asList(user1, user3), tracker.getDirtyUsers(users));
+    tracker.userSynchronized(user1);
+    user2.setDeleted(true);
+    assertEquals(Arrays.asList(user2, user3), tracker.getDirtyUsers(users));
+    tracker.userFailed(user2);
+    user2.setDeleted(false);
+    assertEquals("Failed user is dirty until synchronized successfully.", Arrays.asList(user2, user3), tracker.getDirtyUsers(users));
+    tracker.userSynchronized(user2);
+    assertEquals(Arrays.asList(user3), tracker.getDirtyUsers(users));
+
+    tracker.startFullSync(1000);
+    assertEquals("All users are dirty after starting a full synchronization.", 3, tracker.getDirtyUsers(users).size());
+  }
+
+  @Test
+  public void dirtyGroups()
+  {
+    final LdapSyncTracker tracker = new LdapSyncTracker();
+    final PFUserDO user1 = createUser(1, "user1", 100);
+    final PFUserDO user2 = createUser(2, "user2", 100);
+    final GroupDO group1 = createGroup(1, "group1", 100, user1);
+    final GroupDO group2 = createGroup(2, "group2", 100, user2);
+    final List<GroupDO> groups = Arrays.asList(group1, group2);
+    final HashSet<Integer> noDirtyUsers = new HashSet<Integer>();
+    assertEquals(2, tracker.getDirtyGroups(groups, noDirtyUsers).size());
+    tracker.groupSynchronized(group1);
+    tracker.groupSynchronized(group2);
+    assertTrue(tracker.getDirtyGroups(groups, noDirtyUsers).isEmpty());
+
+    assertEquals("Group of dirty user is dirty.", Arrays.asList(group2),
+        tracker.getDirtyGroups(groups, new HashSet<Integer>(Collections.singleton(2))));
+
+    group1.addUser(user2); // Without modifying the time stamp of last update.
+    assertEquals(Arrays.asList(group1), tracker.getDirtyGroups(groups, noDirtyUsers));
+    tracker.groupSynchronized(group1);
+    group2.setName("renamed");
+    assertEquals(Arrays.asList(group2), tracker.getDirtyGroups(groups, noDirtyUsers));
+    tracker.groupFailed(group2);
+    group2.setName("group2");
+    assertEquals(Arrays.asList(group2), tracker.getDirtyGroups(groups, noDirtyUsers));
+  }
+
+  private PFUserDO createUser(final Integer id, final String username, final long lastUpdate)
+  {
+    final PFUserDO user = new PFUserDO().setUsername(username);
+    user.setId(id);
+    user.setLastUpdate(new Date(lastUpdate));
+    return user;
+  }
+
+  private GroupDO createGroup(final Integer id, final String name, final long lastUpdate, final PFUserDO... users)
+  {
+    final GroupDO group = new GroupDO().setName(name);
+    group.setId(id);
+    group.setLastUpdate(new Date(lastUpdate));
+    for (final PFUserDO user : users) {
+      group.addUser(user);
+    }
+    return group;
+  }
+}
@@ -0,0 +1,155 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.plugins.teamcal.event;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TimeZone;
+
+import junit.framework.Assert;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.projectforge.common.DateHelper;
+import org.projectforge.common.RecurrenceFrequency;
+import org.projectforge.core.Configuration;
+import org.projectforge.core.ConfigurationParam;
+import org.projectforge.test.AbstractTestBase;
+
+public class TeamRecurrenceEventCacheTest extends AbstractTestBase
+{
+  private static final long DAY = 24L * 60 * 60 * 1000;
+
+  @BeforeClass
+  public static void setUp() throws Exception
+  {
+    preInit();
+    init(true);
+    Configuration.getInstance().forceReload();
+    Configuration.init4TestMode().put(ConfigurationParam.CALENDAR_DOMAIN, "projectforge.org");
+  }
+
+  @Test
+  public void getBucket()
+  {
+    Assert.assertEquals(0, TeamRecurrenceEventCache.getBucket(0));
+    Assert.assertEquals(0, TeamRecurrenceEventCache.getBucket(TeamRecurrenceEventCache.BUCKET_SIZE - 1));
+    Assert.assertEquals(1, TeamRecurrenceEventCache.getBucket(TeamRecurrenceEventCache.BUCKET_SIZE));
+    Assert.assertEquals(-1, TeamRecurrenceEventCache.getBucket(-1));
+    Assert.assertEquals(-1, TeamRecurrenceEventCache.getBucket(-TeamRecurrenceEventCache.BUCKET_SIZE));
+    Assert.assertEquals(-2, TeamRecurrenceEventCache.getBucket(-TeamRecurrenceEventCache.BUCKET_SIZE - 1));
+  }
+
+  @Test
+  public void sameResultAsTeamEventUtils()
+  {
+    final TimeZone[] timeZones = new TimeZone[] { DateHelper.EUROPE_BERLIN, DateHelper.UTC, TimeZone.getTimeZone("America/Los_Angeles")};
+    for (final TimeZone timeZone : timeZones) {
+      final TeamEventDO daily = createEvent(1, timeZone, "2013-03-21 20:00", "2013-03-21 21:30", RecurrenceFrequency.DAILY, 1, null);
+      daily.addRecurrenceExDate(DateHelper.parseIsoTimestamp("2013-03-28 20:00:00.0", timeZone), timeZone);
+      final TeamEventDO weekly = createEvent(2, timeZone, "2013-03-21 00:00", "2013-03-21 00:00", RecurrenceFrequency.WEEKLY, 2,
+          "2013-12-31").setAllDay(true);
+      final TeamEventDO monthly = createEvent(3, timeZone, "2012-12-31 08:30", "2012-12-31 09:00", RecurrenceFrequency.MONTHLY, 1, null);
+      final TeamEventDO yearly = createEvent(4, timeZone, "2010-03-31 23:00", "2010-04-01 01:00", RecurrenceFrequency.YEARLY, 1, null);
+      final Date start = DateHelper.parseIsoDate("2013-01-01", timeZone);
+      for (int i = 0; i < 400; i += 7) {
+        final Date startDate = new Date(start.getTime() + i * DAY);
+        for (final int days : new int[] { 1, 7, 42, 120}) {
+          final Date endDate = new Date(startDate.getTime() + days * DAY);
+          for (final TeamEventDO event : new TeamEventDO[] { daily, weekly, monthly, yearly}) {
+            final Collection<TeamEvent> expected = TeamEventUtils.getRecurrenceEvents(startDate, endDate, event, timeZone);
+            assertEquals(expected, TeamRecurrenceEventCache.getInstance().getRecurrenceEvents(startDate, endDate, event, timeZone));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void invalidate()
+  {
+    final TimeZone timeZone = DateHelper.EUROPE_BERLIN;
+    final TeamRecurrenceEventCache cache = TeamRecurrenceEventCache.getInstance();
+    cache.clear();
+    final TeamEventDO event = createEvent(42, timeZone, "2013-03-21 20:00", "2013-03-21 21:30", RecurrenceFrequency.WEEKLY, 1, null);
+    final Date startDate = DateHelper.parseIsoDate("2013-03-01", timeZone);
+    final Date endDate = DateHelper.parseIsoDate("2013-04-05", timeZone);
+    Assert.assertEquals(3, cache.getRecurrenceEvents(startDate, endDate, event, timeZone).size());
+    Assert.assertTrue(cache.size() > 0);
+    cache.invalidate(43);
+    Assert.assertTrue(cache.size() > 0);
+    cache.invalidate(42);
+    Assert.assertEquals(0, cache.size());
+
+    // Modified events (new last update) never use the outdated entries:
+    cache.getRecurrenceEvents(startDate, endDate, event, timeZone);
+    event.addRecurrenceExDate(DateHelper.parseIsoTimestamp("2013-03-28 20:00:00.0", timeZone), timeZone);
+    event.setLastUpdate(new Date(event.getLastUpdate().getTime() + 1000));
+    final Collection<TeamEvent> col = cache.getRecurrenceEvents(startDate, endDate, event, timeZone);
+    Assert.assertEquals(2, col.size());
+    final Iterator<TeamEvent> it = col.iterator();
+    Assert.assertTrue(it.next() instanceof TeamEventDO);
+    Assert.assertEquals("2013-04-04 20:00:00.000", DateHelper.formatIsoTimestamp(it.next().getStartDate(), timeZone));
+  }
+
+  private void assertEquals(final Collection<TeamEvent> expected, final Collection<TeamEvent> actual)
+  {
+    Assert.assertEquals(toString(expected), toString(actual));
+  }
+
+  private List<String> toString(final Collection<TeamEvent> events)
+  {
+    final List<String> result = new ArrayList<String>();
+    for (final TeamEvent event : events) {
+      result.add(DateHelper.formatAsUTC(event.getStartDate())
+          + "-"
+          + DateHelper.formatAsUTC(event.getEndDate())
+          + (event instanceof TeamEventDO ? " (master)" : ""));
+    }
+    return result;
+  }
+
+  private TeamEventDO createEvent(final Integer id, final TimeZone timeZone, final String startDate, final String endDate,
+      final RecurrenceFrequency frequency, final int interval, final String recurrenceUntil)
+  {
+    final TeamEventDO event = new TeamEventDO();
+    event.setId(id);
+    event.setLastUpdate(new Date());
+    event.setStartDate(new Timestamp(DateHelper.parseIsoTimestamp(startDate + ":00.0", timeZone).getTime()));
+    event.setEndDate(new Timestamp(DateHelper.parseIsoTimestamp(endDate + ":00.0", timeZone).getTime()));
+    final TeamEventRecurrenceData recurData = new TeamEventRecurrenceData(timeZone);
+    recurData.setFrequency(frequency);
+    recurData.setInterval(interval);
+    if (recurrenceUntil != null) {
+      recurData.setUntil(new java.sql.Date(DateHelper.parseIsoDate(recurrenceUntil, timeZone).getTime()));
+    }
+    event.setRecurrence(recurData);
+    return event;
+  }
+}
@@ -0,0 +1,112 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.plugins.teamcal.externalsubscription;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.projectforge.plugins.teamcal.event.TeamEventDO;
+
+public class SubscriptionHolderTest
+{
+  private static final long ONE_HOUR = 60L * 60 * 1000;
+
+  private static final long ONE_DAY = 24 * ONE_HOUR;
+
+  @Test
+  public void getResultList()
+  {
+    final SubscriptionHolder holder = new SubscriptionHolder();
+    assertEquals(0, holder.getResultList(0L, ONE_DAY, false).size());
+    final TeamEventDO longEvent = createEvent(-1, 0, 100 * ONE_DAY);
+    holder.add(createEvent(-2, 50 * ONE_DAY, 50 * ONE_DAY + ONE_HOUR));
+    holder.add(createEvent(-3, 10 * ONE_DAY, 10 * ONE_DAY + ONE_HOUR));
+    holder.add(longEvent);
+    holder.add(createEvent(-4, 20 * ONE_DAY, 20 * ONE_DAY + ONE_HOUR));
+    assertIds(holder.getResultList(9 * ONE_DAY, 21 * ONE_DAY, false), -1, -3, -4);
+    assertIds(holder.getResultList(30 * ONE_DAY, 40 * ONE_DAY, false), -1);
+    // Periods are extended by one day (all day events):
+    assertIds(holder.getResultList(51 * ONE_DAY, 60 * ONE_DAY, false), -1, -2);
+    assertIds(holder.getResultList(200 * ONE_DAY, 300 * ONE_DAY, false));
+    // Index is rebuilt after adding events:
+    holder.add(createEvent(-5, 35 * ONE_DAY, 36 * ONE_DAY));
+    assertIds(holder.getResultList(30 * ONE_DAY, 40 * ONE_DAY, false), -1, -5);
+    assertEquals(5, holder.size());
+  }
+
+  @Test
+  public void compareWithSequentialScan()
+  {
+    final Random random = new Random(42);
+    final SubscriptionHolder holder = new SubscriptionHolder();
+    final List<TeamEventDO> events = new ArrayList<TeamEventDO>();
+    for (int i = 1; i <= 1000; i++) {
+      final long start = random.nextInt(1000) * ONE_HOUR * 6;
+      final long duration = random.nextInt(10) == 0 ? random.nextInt(100) * ONE_DAY : random.nextInt(8) * ONE_HOUR;
+      final TeamEventDO event = createEvent(-i, start, start + duration);
+      holder.add(event);
+      events.add(event);
+    }
+    for (int i = 0; i < 100; i++) {
+      final long startTime = (random.nextInt(300) - 20) * ONE_DAY;
+      final long endTime = startTime + random.nextInt(40) * ONE_DAY;
+      final List<TeamEventDO> result = holder.getResultList(startTime, endTime, false);
+      int expected = 0;
+      for (final TeamEventDO event : events) {
+        final long eventStart = event.getStartDate().getTime();
+        final long eventEnd = event.getEndDate().getTime();
+        if (eventStart <= endTime && eventEnd >= startTime - ONE_DAY) {
+          expected++;
+        }
+      }
+      assertEquals(expected, result.size());
+      for (int j = 1; j < result.size(); j++) {
+        // Sorted by start date:
+        assertEquals(false, result.get(j).getStartDate().before(result.get(j - 1).getStartDate()));
+      }
+    }
+  }
+
+  private TeamEventDO createEvent(final int id, final long startTime, final long endTime)
+  {
+    final TeamEventDO event = new TeamEventDO();
+    event.setId(id);
+    event.setStartDate(new Timestamp(startTime)).setEndDate(new Timestamp(endTime));
+    return event;
+  }
+
+  private void assertIds(final List<TeamEventDO> result, final int... ids)
+  {
+    assertEquals(ids.length, result.size());
+    for (int i = 0; i < ids.length; i++) {
+      assertEquals(ids[i], (int) result.get(i).getId());
+    }
+  }
+}
@@ -0,0 +1,199 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.plugins.teamcal.externalsubscription;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.projectforge.core.ModificationStatus;
+import org.projectforge.plugins.teamcal.admin.TeamCalDO;
+import org.projectforge.plugins.teamcal.admin.TeamCalDao;
+import org.projectforge.plugins.teamcal.event.TeamEventDO;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the conditional requests of the subscriptions with a local http server.
+ */
+public class TeamEventSubscriptionTest
+{
+  private static final long ONE_DAY = 24L * 60 * 60 * 1000;
+
+  private HttpServer server;
+
+  private volatile String content;
+
+  private volatile String eTag;
+
+  private volatile int numberOfRequests, numberOfNotModified, numberOfDatabaseUpdates;
+
+  private TeamCalDao teamCalDao;
+
+  private TeamCalDO calendar;
+
+  @Before
+  public void setUp() throws IOException
+  {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/calendar.ics", new HttpHandler() {
+      @Override
+      public void handle(final HttpExchange exchange) throws IOException
+      {
+        numberOfRequests++;
+        final String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (eTag != null && eTag.equals(ifNoneMatch) == true) {
+          numberOfNotModified++;
+          exchange.sendResponseHeaders(304, -1);
+          exchange.close();
+          return;
+        }
+        if (eTag != null) {
+          exchange.getResponseHeaders().add("ETag", eTag);
+        }
+        final byte[] bytes = content.getBytes("UTF-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        final OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+      }
+    });
+    server.start();
+    teamCalDao = new TeamCalDao() {
+      @Override
+      public ModificationStatus internalUpdate(final TeamCalDO obj)
+      {
+        numberOfDatabaseUpdates++;
+        return ModificationStatus.MAJOR;
+      }
+    };
+    calendar = new TeamCalDO();
+    calendar.setId(42);
+    calendar.setExternalSubscription(true);
+    calendar.setExternalSubscriptionUrl("http://localhost:" + server.getAddress().getPort() + "/calendar.ics");
+  }
+
+  @After
+  public void tearDown()
+  {
+    server.stop(0);
+  }
+
+  @Test
+  public void conditionalRequests()
+  {
+    final long now = System.currentTimeMillis();
+    content = createCalendar("Event 1", "Event 2");
+    eTag = "\"v1\"";
+    final TeamEventSubscription subscription1 = new TeamEventSubscription(teamCalDao, calendar);
+    final List<TeamEventDO> events1 = subscription1.getEvents(now, now + 10 * ONE_DAY, false);
+    assertEquals(2, events1.size());
+    assertEquals(1, numberOfDatabaseUpdates);
+
+    // Not modified, the events are re-used:
+    final TeamEventSubscription subscription2 = new TeamEventSubscription(teamCalDao, calendar, subscription1);
+    assertEquals(2, numberOfRequests);
+    assertEquals(1, numberOfNotModified);
+    assertSame(events1.get(0), subscription2.getEvents(now, now + 10 * ONE_DAY, false).get(0));
+    assertEquals(1, numberOfDatabaseUpdates);
+
+    // Modified:
+    content = createCalendar("Event 1", "Event 2", "Event 3");
+    eTag = "\"v2\"";
+    final TeamEventSubscription subscription3 = new TeamEventSubscription(teamCalDao, calendar, subscription2);
+    assertEquals(3, subscription3.getEvents(now, now + 10 * ONE_DAY, false).size());
+    assertEquals(1, numberOfNotModified);
+    assertEquals(2, numberOfDatabaseUpdates);
+
+    // No ETag, but same content (same hash), the events are re-used:
+    eTag = null;
+    final TeamEventSubscription subscription4 = new TeamEventSubscription(teamCalDao, calendar, subscription3);
+    assertSame(subscription3.getEvents(now, now + 10 * ONE_DAY, false).get(0),
+        subscription4.getEvents(now, now + 10 * ONE_DAY, false).get(0));
+    assertEquals(2, numberOfDatabaseUpdates);
+
+    // Other url, nothing is re-used:
+    calendar.setExternalSubscriptionUrl(calendar.getExternalSubscriptionUrl() + "?other");
+    final TeamEventSubscription subscription5 = new TeamEventSubscription(teamCalDao, calendar, subscription4);
+    assertNotSame(subscription4.getEvents(now, now + 10 * ONE_DAY, false).get(0),
+        subscription5.getEvents(now, now + 10 * ONE_DAY, false).get(0));
+    assertEquals(5, numberOfRequests);
+  }
+
+  @Test
+  public void updateCacheInParallel()
+  {
+    content = createCalendar("Event 1");
+    final TeamEventExternalSubscriptionCache cache = TeamEventExternalSubscriptionCache.instance();
+    final TeamCalDO calendar2 = new TeamCalDO();
+    calendar2.setId(43);
+    calendar2.setExternalSubscription(true);
+    calendar2.setExternalSubscriptionUrl(calendar.getExternalSubscriptionUrl());
+    final TeamCalDO notSubscribed = new TeamCalDO();
+    notSubscribed.setId(44);
+    cache.updateCache(teamCalDao, Arrays.asList(calendar, calendar2, notSubscribed), true);
+    assertEquals(2, numberOfRequests);
+    assertEquals(true, cache.isExternalSubscribedCalendar(42));
+    assertEquals(true, cache.isExternalSubscribedCalendar(43));
+    // Not updated again (update interval not exceeded):
+    cache.updateCache(teamCalDao, Arrays.asList(calendar, calendar2), false);
+    assertEquals(2, numberOfRequests);
+  }
+
+  private String createCalendar(final String... subjects)
+  {
+    final SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    final StringBuilder buf = new StringBuilder();
+    buf.append("BEGIN:VCALENDAR\r\nVERSION:2.0\r\nPRODID:-//ProjectForge//Test//EN\r\n");
+    long time = System.currentTimeMillis() + ONE_DAY;
+    int counter = 0;
+    for (final String subject : subjects) {
+      buf.append("BEGIN:VEVENT\r\nUID:test-").append(counter++).append("@projectforge.org\r\n") //
+      .append("DTSTAMP:").append(format.format(new Date())).append("\r\n") //
+      .append("DTSTART:").append(format.format(new Date(time))).append("\r\n") //
+      .append("DTEND:").append(format.format(new Date(time + 60 * 60 * 1000))).append("\r\n") //
+      .append("SUMMARY:").append(subject).append("\r\n") //
+      .append("END:VEVENT\r\n");
+      time += ONE_DAY;
+    }
+    buf.append("END:VCALENDAR\r\n");
+    return buf.toString();
+  }
+}
@@ -0,0 +1,130 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.task;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.projectforge.access.AccessType;
+import org.projectforge.access.GroupTaskAccessDO;
+import org.projectforge.access.OperationType;
+import org.projectforge.user.GroupDO;
+
+public class TaskNodePermissionTest
+{
+  private final List<TaskNode> nodes = new ArrayList<TaskNode>();
+
+  @Test
+  public void calculatedPermissions()
+  {
+    final TaskNode root = createNode(1, null);
+    final TaskNode a = createNode(2, root);
+    final TaskNode a1 = createNode(3, a);
+    final TaskNode a11 = createNode(4, a1);
+    final TaskNode b = createNode(5, root);
+    final TaskNode b1 = createNode(6, b);
+    final GroupDO group1 = createGroup(101);
+    final GroupDO group2 = createGroup(102);
+    final GroupDO group3 = createGroup(103);
+    final Map<Integer, Integer> groupIndexMap = new HashMap<Integer, Integer>();
+    groupIndexMap.put(group1.getId(), 0);
+    groupIndexMap.put(group2.getId(), 1);
+    groupIndexMap.put(group3.getId(), 2);
+
+    GroupTaskAccessDO access = createAccess(root, group1, true);
+    access.guest();
+    access = createAccess(a, group1, true);
+    access.leader();
+    access = createAccess(a, group2, false);
+    access.employee();
+    access = createAccess(a1, group1, true);
+    access.clear();
+    access = createAccess(b, group3, false);
+    access.administrator();
+    access = createAccess(b1, group2, true);
+    access.employee();
+    root.calculatePermissions(groupIndexMap, new int[0]);
+    assertPermissions(groupIndexMap, group1, group2, group3);
+
+    // Modify one access and recalculate the sub tree only:
+    a.removeGroupTaskAccess(group2.getId());
+    a.calculatePermissions(groupIndexMap, root.inheritedPermissions);
+    assertPermissions(groupIndexMap, group1, group2, group3);
+    Assert.assertSame("Nodes without own accesses should share the inherited permissions.", a1.inheritedPermissions,
+        a11.permissions);
+  }
+
+  private void assertPermissions(final Map<Integer, Integer> groupIndexMap, final GroupDO... groups)
+  {
+    for (final TaskNode node : nodes) {
+      for (final GroupDO group : groups) {
+        final int index = groupIndexMap.get(group.getId());
+        for (final AccessType accessType : AccessType.values()) {
+          for (final OperationType opType : OperationType.values()) {
+            final boolean expected = node.hasPermission(group.getId(), accessType, opType);
+            final boolean calculated = index < node.permissions.length
+                && (node.permissions[index] & TaskNode.getPermissionBit(accessType, opType)) != 0;
+            Assert.assertEquals("Task " + node.getId() + ", group " + group.getId() + ", " + accessType + ", " + opType, expected,
+                calculated);
+          }
+        }
+      }
+    }
+  }
+
+  private TaskNode createNode(final Integer id, final TaskNode parent)
+  {
+    final TaskDO task = new TaskDO();
+    task.setId(id);
+    final TaskNode node = new TaskNode();
+    node.setTask(task);
+    if (parent != null) {
+      node.setParent(parent);
+      parent.addChild(node);
+    }
+    nodes.add(node);
+    return node;
+  }
+
+  private GroupDO createGroup(final Integer id)
+  {
+    final GroupDO group = new GroupDO();
+    group.setId(id);
+    return group;
+  }
+
+  private GroupTaskAccessDO createAccess(final TaskNode node, final GroupDO group, final boolean recursive)
+  {
+    final GroupTaskAccessDO access = new GroupTaskAccessDO();
+    access.setTask(node.getTask());
+    access.setGroup(group);
+    access.setRecursive(recursive);
+    node.setGroupTaskAccess(access);
+    return access;
+  }
+}
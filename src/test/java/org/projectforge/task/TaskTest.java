@@ -140,6 +140,33 @@ public class TaskTest extends TestBase
     assertEquals("Third task in path is the node itself: '1.1'", getTask("1.1.1").getId(), path.get(2).getId());
   }
 
+  @Test
+  public void testTaskIdSets()
+  {
+    logon(getUser(TEST_ADMIN_USER));
+    final TaskTree taskTree = taskDao.getTaskTree();
+    final int[] counter = new int[1];
+    final TaskIdSets.Builder builder = new TaskIdSets.Builder() {
+      @Override
+      public void build(final TaskNode rootNode, final TaskIdSets idSets)
+      {
+        counter[0]++;
+        idSets.addAllowedId(rootNode.getId());
+      }
+    };
+    final TaskIdSets idSets = taskTree.getTaskIdSets("TaskTest", "dependency", builder);
+    assertTrue(idSets.getAllowedIds().contains(taskTree.getRootTaskNode().getId()));
+    assertTrue(idSets == taskTree.getTaskIdSets("TaskTest", "dependency", builder));
+    assertEquals("Id sets are cached.", 1, counter[0]);
+    taskTree.getTaskIdSets("TaskTest", "other dependency", builder);
+    assertEquals("Modified dependency: id sets are rebuilt.", 2, counter[0]);
+    initTestDB.addTask("taskIdSets", "root");
+    taskTree.getTaskIdSets("TaskTest", "other dependency", builder);
+    assertEquals("Modified task tree: id sets are rebuilt.", 3, counter[0]);
+    taskTree.getTaskIdSets("TaskTest", "other dependency", builder);
+    assertEquals(3, counter[0]);
+  }
+
   @Test
   public void testTraversingTaskTree()
   {
@@ -530,6 +557,25 @@ public class TaskTest extends TestBase
     assertEquals(4 * 3600, getDuration(subTask1.getId()));
     assertEquals(0, getTotalDuration(subTask2.getId()));
     assertEquals(0, getDuration(subTask2.getId()));
+    // Durations are updated incrementally on modification, deletion and undeletion of time sheets:
+    ts = timesheetDao.getById(ts.getId());
+    ts.setTask(subTask2);
+    timesheetDao.update(ts);
+    assertEquals(12 * 3600, getTotalDuration(task.getId()));
+    assertEquals(0, getTotalDuration(subTask1.getId()));
+    assertEquals(4 * 3600, getTotalDuration(subTask2.getId()));
+    timesheetDao.markAsDeleted(ts);
+    assertEquals(8 * 3600, getTotalDuration(task.getId()));
+    assertEquals(0, getTotalDuration(subTask2.getId()));
+    timesheetDao.undelete(ts);
+    assertEquals(12 * 3600, getTotalDuration(task.getId()));
+    assertEquals(4 * 3600, getDuration(subTask2.getId()));
+    timesheetDao.undelete(ts); // Not deleted, duration mustn't be counted twice.
+    assertEquals(12 * 3600, getTotalDuration(task.getId()));
+    assertEquals(4 * 3600, getDuration(subTask2.getId()));
+    taskTree.refresh();
+    assertEquals(12 * 3600, getTotalDuration(task.getId()));
+    assertEquals(4 * 3600, getTotalDuration(subTask2.getId()));
   }
 
   private long getTotalDuration(final Integer taskId)
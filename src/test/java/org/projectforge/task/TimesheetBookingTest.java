@@ -26,6 +26,9 @@ package org.projectforge.task;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import java.util.Calendar;
 
 import org.junit.Test;
@@ -34,6 +37,7 @@ import org.projectforge.access.AccessEntryDO;
 import org.projectforge.access.AccessException;
 import org.projectforge.access.AccessType;
 import org.projectforge.access.GroupTaskAccessDO;
+import org.projectforge.access.OperationType;
 import org.projectforge.common.DateHolder;
 import org.projectforge.common.DatePrecision;
 import org.projectforge.fibu.AuftragDO;
@@ -113,6 +117,20 @@ public class TimesheetBookingTest extends TestBase
     initTestDB.addTask("TBT-5.2", "TBT-5");
     initTestDB.addTask("TBT-5.2.1", "TBT-5.2");
     initTestDB.addTask("TBT-5.2.1.1", "TBT-5.2.1");
+    initTestDB.addTask("TBT-6", "TimesheetBookingTest");
+    taskDao.update(initTestDB.addTask("TBT-6.1", "TBT-6").setTimesheetBookingStatus(TimesheetBookingStatus.ONLY_LEAFS));
+    initTestDB.addTask("TBT-6.1.1", "TBT-6.1");
+    initTestDB.addTask("TBT-6.1.1.1", "TBT-6.1.1");
+    taskDao.update(initTestDB.addTask("TBT-6.2", "TBT-6").setTimesheetBookingStatus(TimesheetBookingStatus.NO_BOOKING));
+    initTestDB.addTask("TBT-6.2.1", "TBT-6.2");
+    taskDao.update(initTestDB.addTask("TBT-6.3", "TBT-6").setStatus(TaskStatus.C));
+    initTestDB.addTask("TBT-6.3.1", "TBT-6.3");
+    initTestDB.addTask("TBT-6.4", "TBT-6");
+    initTestDB.addTask("TBT-6.4.1", "TBT-6.4");
+    initTestDB.addTask("TBT-6.4.1.1", "TBT-6.4.1");
+    final AuftragDO auftrag = new AuftragDO().addPosition(new AuftragsPositionDO().setTask(getTask("TBT-6.4.1.1")).setTitel("Pos 1"))
+        .addPosition(new AuftragsPositionDO().setTask(getTask("TBT-6.2.1")).setTitel("Pos 2"));
+    auftragDao.save(auftrag.setNummer(auftragDao.getNextNumber(auftrag)));
   }
 
   @Test
@@ -168,6 +186,53 @@ public class TimesheetBookingTest extends TestBase
     save(sheet.setTask(getTask("TBT-1.2.1")), "timesheet.error.taskNotBookable.taskDeleted");
   }
 
+  /**
+   * The bookable status of all task nodes is calculated by the refresh of the task tree in one pass. It has to be the same as the result of
+   * TimesheetDao#checkTaskBookable for every single task (closed and deleted ancestors, NO_BOOKING, ONLY_LEAFS, order positions in sub
+   * tasks).
+   */
+  @Test
+  public void testBookableStatusOfRefreshedTaskTree()
+  {
+    initialize();
+    logon(getUser(TEST_ADMIN_USER));
+    final TaskTree taskTree = taskDao.getTaskTree();
+    taskTree.forceReload();
+    final List<TaskNode> nodes = new ArrayList<TaskNode>();
+    addNodes(nodes, taskTree.getRootTaskNode());
+    int bookable = 0;
+    for (final TaskNode node : nodes) {
+      final TimesheetDO sheet = new TimesheetDO().setTask(node.getTask());
+      final boolean expected = timesheetDao.checkTaskBookable(sheet, null, OperationType.INSERT, false);
+      assertEquals("Bookable status of task '" + node.getTask().getTitle() + "'", expected, node.isBookableForTimesheets());
+      if (expected == true) {
+        bookable++;
+      }
+    }
+    // Both states have to be tested:
+    assertEquals(false, bookable == 0);
+    assertEquals(false, bookable == nodes.size());
+    assertEquals(false, taskTree.getTaskNodeById(getTask("TBT-6").getId()).isBookableForTimesheets());
+    assertEquals(false, taskTree.getTaskNodeById(getTask("TBT-6.1.1").getId()).isBookableForTimesheets());
+    assertEquals(true, taskTree.getTaskNodeById(getTask("TBT-6.1.1.1").getId()).isBookableForTimesheets());
+    assertEquals(false, taskTree.getTaskNodeById(getTask("TBT-6.2.1").getId()).isBookableForTimesheets());
+    assertEquals(false, taskTree.getTaskNodeById(getTask("TBT-6.3.1").getId()).isBookableForTimesheets());
+    assertEquals(false, taskTree.getTaskNodeById(getTask("TBT-6.4.1").getId()).isBookableForTimesheets());
+    assertEquals(true, taskTree.getTaskNodeById(getTask("TBT-6.4.1.1").getId()).isBookableForTimesheets());
+    assertEquals(false, taskTree.getTaskNodeById(getTask("TBT-1.2.1").getId()).isBookableForTimesheets());
+    assertEquals(true, taskTree.getTaskNodeById(getTask("TBT-4.1.1").getId()).isBookableForTimesheets());
+  }
+
+  private void addNodes(final List<TaskNode> nodes, final TaskNode node)
+  {
+    nodes.add(node);
+    if (node.hasChilds() == true) {
+      for (final TaskNode child : node.getChilds()) {
+        addNodes(nodes, child);
+      }
+    }
+  }
+
   private TimesheetDO createNewSheet()
   {
     return new TimesheetDO().setUser(getUser(TEST_USER)).setStartDate(date.getDate()).setStopTime(
@@ -111,6 +111,29 @@ public class TimesheetMassUpdateTest extends TestBase
     assertAll(list, master);
   }
 
+  @Test
+  public void massUpdateMoreThanOneBatch()
+  {
+    final String prefix = "ts-mu2-";
+    final List<TimesheetDO> list = new ArrayList<TimesheetDO>();
+    getInitTestDB().addTask(prefix + "1", "root");
+    getInitTestDB().addTask(prefix + "2", "root");
+    getInitTestDB().addUser(prefix + "user1");
+    logon(getUser(TEST_FINANCE_USER));
+    for (int day = 1; day <= 25; day++) { // 125 time sheets, updated in more than one block.
+      for (int hour = 8; hour < 13; hour++) {
+        list.add(createTimesheet(prefix, "1", "user1", 2009, 10, day, hour, 0, hour + 1, 0, "Office", "Mass update test."));
+      }
+    }
+    final TimesheetDO master = new TimesheetDO();
+    master.setTask(getInitTestDB().getTask(prefix + "2"));
+    master.setLocation("Headquarter");
+    timesheetDao.massUpdate(list, master);
+    for (final TimesheetDO sheet : list) {
+      assertSheet(timesheetDao.getById(sheet.getId()), master);
+    }
+  }
+
   @Test
   public void massUpdateWithKost2Transformation()
   {
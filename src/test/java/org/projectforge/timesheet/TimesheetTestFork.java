@@ -24,22 +24,28 @@
 package org.projectforge.timesheet;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.Serializable;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 import org.junit.Test;
 import org.projectforge.access.AccessException;
 import org.projectforge.common.DateHolder;
 import org.projectforge.common.DatePrecision;
+import org.projectforge.core.ListEntryHandler;
+import org.projectforge.core.PageRequest;
 import org.projectforge.core.UserException;
 import org.projectforge.task.TaskDO;
 import org.projectforge.task.TaskDao;
 import org.projectforge.task.TaskStatus;
+import org.projectforge.task.TaskTree;
 import org.projectforge.test.TestBase;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
@@ -200,6 +206,61 @@ public class TimesheetTestFork extends TestBase
     }
   }
 
+  @Test
+  public void testOverlapAfterRollback()
+  {
+    logon(ADMIN);
+    getInitTestDB().addTask("timesheet-rollback", "root");
+    getInitTestDB().addUser("timesheet-rollback-user");
+    final TimesheetDO ts1 = new TimesheetDO().setTask(getTask("timesheet-rollback")).setUser(getUser("timesheet-rollback-user"));
+    setTimeperiod(ts1, 22, 8, 0, 22, 16, 0); // 11/22 from 8:00 to 16:00
+    final Serializable id = timesheetDao.save(ts1);
+    txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        final TimesheetDO t = timesheetDao.internalGetById(id);
+        setTimeperiod(t, 22, 18, 0, 22, 20, 0); // Move to 18:00 to 20:00
+        timesheetDao.internalUpdate(t);
+        status.setRollbackOnly();
+        return null;
+      }
+    });
+    final TimesheetDO ts2 = new TimesheetDO().setTask(getTask("timesheet-rollback")).setUser(getUser("timesheet-rollback-user"));
+    setTimeperiod(ts2, 22, 9, 0, 22, 10, 0); // 11/22 from 9:00 to 10:00
+    try {
+      timesheetDao.save(ts2); // Overlap with ts1 (move was rolled back)!
+      fail();
+    } catch (final UserException ex) {
+      assertEquals("timesheet.error.timeperiodOverlapDetection", ex.getI18nKey());
+    }
+  }
+
+  @Test
+  public void testTotalDurationAfterRollback()
+  {
+    logon(ADMIN);
+    final TaskDO task = getInitTestDB().addTask("timesheet-duration", "root");
+    getInitTestDB().addUser("timesheet-duration-user");
+    final TaskTree taskTree = taskDao.getTaskTree();
+    final long duration = taskTree.getTaskNodeById(task.getId()).getDuration(taskTree, false);
+    txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        final TimesheetDO ts = new TimesheetDO().setTask(getTask("timesheet-duration")).setUser(getUser("timesheet-duration-user"));
+        setTimeperiod(ts, 23, 8, 0, 23, 9, 0); // 11/23 from 8:00 to 9:00
+        timesheetDao.internalSave(ts);
+        status.setRollbackOnly();
+        return null;
+      }
+    });
+    assertEquals("Duration of rolled back time sheet mustn't be added.", duration, taskTree.getTaskNodeById(task.getId()).getDuration(
+        taskTree, false));
+    final TimesheetDO ts = new TimesheetDO().setTask(getTask("timesheet-duration")).setUser(getUser("timesheet-duration-user"));
+    setTimeperiod(ts, 23, 8, 0, 23, 9, 0); // 11/23 from 8:00 to 9:00
+    timesheetDao.save(ts);
+    assertEquals(duration + 3600, taskTree.getTaskNodeById(task.getId()).getDuration(taskTree, false));
+  }
+
   @Test
   public void testTimesheetProtection()
   {
@@ -299,6 +360,89 @@ public class TimesheetTestFork extends TestBase
     }
   }
 
+  @Test
+  public void processList()
+  {
+    logon(ADMIN);
+    getInitTestDB().addTask("processList", "root");
+    getInitTestDB().addUser("processList-user");
+    for (int day = 1; day <= 5; day++) {
+      final TimesheetDO ts = new TimesheetDO().setTask(getTask("processList")).setUser(getUser("processList-user"));
+      setTimeperiod(ts, 1971, Calendar.JANUARY, day, 8, 0, day, 12, 0);
+      timesheetDao.save(ts);
+    }
+    final TimesheetFilter filter = new TimesheetFilter();
+    filter.setUserId(getUser("processList-user").getId());
+    final List<Integer> ids = new ArrayList<Integer>();
+    int counter = timesheetDao.processList(filter, new ListEntryHandler<TimesheetDO>() {
+      @Override
+      public boolean handle(final TimesheetDO obj)
+      {
+        ids.add(obj.getId());
+        return true;
+      }
+    });
+    assertEquals(5, counter);
+    final List<TimesheetDO> list = timesheetDao.getList(filter);
+    assertEquals(5, list.size());
+    for (final TimesheetDO ts : list) {
+      assertTrue(ids.contains(ts.getId()));
+    }
+    counter = timesheetDao.processList(filter, new ListEntryHandler<TimesheetDO>() {
+      @Override
+      public boolean handle(final TimesheetDO obj)
+      {
+        return false; // Stop after first entry.
+      }
+    });
+    assertEquals(1, counter);
+  }
+
+  @Test
+  public void getListPage()
+  {
+    logon(ADMIN);
+    getInitTestDB().addTask("listPage", "root");
+    getInitTestDB().addUser("listPage-user");
+    for (int day = 1; day <= 5; day++) {
+      final TimesheetDO ts = new TimesheetDO().setTask(getTask("listPage")).setUser(getUser("listPage-user"));
+      setTimeperiod(ts, 1972, Calendar.JANUARY, day, 8, 0, day, 12, 0);
+      timesheetDao.save(ts);
+    }
+    final TimesheetFilter filter = new TimesheetFilter();
+    filter.setUserId(getUser("listPage-user").getId());
+    filter.setTaskId(getTask("listPage").getId());
+    assertTrue(timesheetDao.isPageable(filter, "startTime"));
+    assertEquals(5, timesheetDao.getCount(filter));
+    assertEquals(5 * 4 * 3600 * 1000, timesheetDao.getTotalDuration(filter));
+    List<TimesheetDO> page = timesheetDao.getListPage(filter, new PageRequest("startTime", true, 2));
+    assertEquals(2, page.size());
+    assertTrue(page.get(0).getStartTime().before(page.get(1).getStartTime()));
+    TimesheetDO last = page.get(1);
+    // Keyset pagination:
+    page = timesheetDao.getListPage(filter, new PageRequest("startTime", true, 2).setLastKey(last.getStartTime(), last.getId()));
+    assertEquals(2, page.size());
+    assertTrue(last.getStartTime().before(page.get(0).getStartTime()));
+    last = page.get(1);
+    page = timesheetDao.getListPage(filter, new PageRequest("startTime", true, 2).setLastKey(last.getStartTime(), last.getId()));
+    assertEquals(1, page.size());
+    // Offset pagination:
+    page = timesheetDao.getListPage(filter, new PageRequest("location", true, 2).setFirstResult(4));
+    assertEquals(1, page.size());
+    page = timesheetDao.getListPage(filter, new PageRequest("startTime", false, 2));
+    assertTrue(page.get(0).getStartTime().after(page.get(1).getStartTime()));
+    getInitTestDB().addUser("listPage-user2");
+    // Own time sheets are visible (with hidden fields):
+    logon(getUser("listPage-user"));
+    assertEquals(5, timesheetDao.getCount(filter));
+    assertEquals(5 * 4 * 3600 * 1000, timesheetDao.getTotalDuration(filter));
+    // Foreign time sheets without access aren't counted:
+    logon(getUser("listPage-user2"));
+    assertEquals(0, timesheetDao.getCount(filter));
+    assertEquals(0, timesheetDao.getTotalDuration(filter));
+    assertEquals(0, timesheetDao.getListPage(filter, new PageRequest("location", true, 2)).size());
+  }
+
   private void setTimeperiod(final TimesheetDO timesheet, final int fromDay, final int fromHour, final int fromMinute, final int toDay, final int toHour, final int toMinute)
   {
     setTimeperiod(timesheet, 1970, Calendar.NOVEMBER, fromDay, fromHour, fromMinute, toDay, toHour, toMinute);
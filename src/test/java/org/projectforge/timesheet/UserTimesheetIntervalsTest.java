@@ -0,0 +1,94 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.timesheet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+public class UserTimesheetIntervalsTest
+{
+  private static final long HOUR = 3600 * 1000;
+
+  @Test
+  public void testOverlaps()
+  {
+    final UserTimesheetIntervals intervals = new UserTimesheetIntervals();
+    final List<Object[]> list = new ArrayList<Object[]>();
+    list.add(new Object[] { 1, date(8), date(16)}); // Long time sheet.
+    list.add(new Object[] { 2, date(16), date(18)});
+    list.add(new Object[] { 3, date(10), date(11)}); // Overlaps 1.
+    intervals.initialize(list);
+    assertEquals(3, intervals.size());
+    assertOverlaps(intervals, 1, 3);
+    assertTrue(intervals.hasOverlap(null, date(15), date(17)));
+    assertTrue(intervals.hasOverlap(null, date(12), date(13))); // Inside of 1 only.
+    assertFalse(intervals.hasOverlap(null, date(18), date(19)));
+    assertFalse(intervals.hasOverlap(2, date(16), date(18))); // Itself.
+    assertTrue(intervals.hasOverlap(2, date(15), date(18)));
+
+    intervals.update(3, date(18), date(19)); // Move 3 behind 2.
+    assertOverlaps(intervals);
+    intervals.update(4, date(17), date(20));
+    assertOverlaps(intervals, 2, 3, 4);
+    intervals.remove(4);
+    assertOverlaps(intervals);
+    assertEquals(3, intervals.size());
+  }
+
+  @Test
+  public void testModificationBeforeInitialization()
+  {
+    final UserTimesheetIntervals intervals = new UserTimesheetIntervals();
+    intervals.update(1, date(8), date(9));
+    intervals.remove(2);
+    final List<Object[]> list = new ArrayList<Object[]>();
+    list.add(new Object[] { 1, date(10), date(12)}); // Outdated (read before modification).
+    list.add(new Object[] { 2, date(8), date(10)}); // Outdated (deleted).
+    list.add(new Object[] { 3, date(11), date(12)});
+    intervals.initialize(list);
+    assertEquals(2, intervals.size());
+    assertOverlaps(intervals);
+    assertFalse(intervals.hasOverlap(null, date(9), date(11)));
+  }
+
+  private void assertOverlaps(final UserTimesheetIntervals intervals, final Integer... ids)
+  {
+    assertEquals(ids.length, intervals.getOverlaps().size());
+    for (final Integer id : ids) {
+      assertTrue("Overlap expected for " + id, intervals.getOverlaps().contains(id));
+    }
+  }
+
+  private Date date(final int hour)
+  {
+    return new Date(hour * HOUR);
+  }
+}
@@ -81,4 +81,29 @@ public class UserGroupCacheTest extends TestBase
     assertTrue(userGroupCache.isUserMemberOfAtLeastOneGroup(getUser(TEST_ADMIN_USER).getId(), null, group1.getId(), null, group2.getId(), null));
     assertTrue(userGroupCache.isUserMemberOfAtLeastOneGroup(getUser(TEST_ADMIN_USER).getId(), group2.getId(), group1.getId()));
   }
+
+  @Test
+  public void testIncrementalGroupUpdate()
+  {
+    logon(TEST_ADMIN_USER);
+    final Integer adminUserId = getUser(TEST_ADMIN_USER).getId();
+    final Integer userId = getUser(TEST_USER).getId();
+    GroupDO group = new GroupDO();
+    group.setName("testusergroupcache3");
+    Set<PFUserDO> assignedUsers = new HashSet<PFUserDO>();
+    group.setAssignedUsers(assignedUsers);
+    assignedUsers.add(getUser(TEST_USER));
+    final Serializable id = groupDao.save(group);
+    assertTrue(userGroupCache.isUserMemberOfGroup(userId, (Integer) id));
+    assertFalse(userGroupCache.isUserMemberOfGroup(adminUserId, (Integer) id));
+
+    group = groupDao.getById(id);
+    assignedUsers = new HashSet<PFUserDO>();
+    assignedUsers.add(getUser(TEST_ADMIN_USER));
+    groupDao.setAssignedUsers(group, assignedUsers);
+    groupDao.update(group);
+    assertFalse(userGroupCache.isUserMemberOfGroup(userId, (Integer) id));
+    assertTrue(userGroupCache.isUserMemberOfGroup(adminUserId, (Integer) id));
+    assertTrue(userGroupCache.isUserMemberOfAdminGroup(adminUserId)); // Unchanged membership of other groups.
+  }
 }
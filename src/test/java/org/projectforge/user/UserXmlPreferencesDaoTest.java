@@ -0,0 +1,105 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.user;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class UserXmlPreferencesDaoTest
+{
+  @Test
+  public void compactFormat()
+  {
+    assertCompact("Hurzel");
+    assertCompact("");
+    assertCompact("#s:with prefix\nand new line");
+    assertCompact(42);
+    assertCompact(-1);
+    assertCompact(1234567890123L);
+    assertCompact(Boolean.TRUE);
+    assertCompact(Boolean.FALSE);
+    final Set<Integer> set = new HashSet<Integer>();
+    assertCompact(set);
+    set.add(5);
+    assertCompact(set);
+    set.add(-3);
+    set.add(42);
+    assertCompact(set);
+
+    // Not supported (serialized by XStream):
+    assertNull(UserXmlPreferencesDao.toCompactString(null));
+    assertNull(UserXmlPreferencesDao.toCompactString(new Date()));
+    assertNull(UserXmlPreferencesDao.toCompactString(new TreeSet<Integer>(set)));
+    final Set<Object> mixed = new HashSet<Object>();
+    mixed.add(1);
+    mixed.add("2");
+    assertNull(UserXmlPreferencesDao.toCompactString(mixed));
+  }
+
+  @Test
+  public void modifiedPersistentEntries()
+  {
+    final UserXmlPreferencesMap data = new UserXmlPreferencesMap();
+    data.putEntry("a", "1", true);
+    data.putEntry("b", "2", true);
+    data.putEntry("c", "3", false);
+    Map<String, Object> entries = data.getModifiedPersistentEntries();
+    assertEquals(2, entries.size());
+    assertEquals("1", entries.get("a"));
+    assertEquals("2", entries.get("b"));
+    assertFalse(data.isModified());
+    assertTrue(data.getModifiedPersistentEntries().isEmpty());
+
+    // Modified on use-age:
+    assertEquals("2", data.getEntry("b"));
+    assertEquals("3", data.getEntry("c"));
+    data.putEntry("a", "4", true);
+    data.putEntry("a", "5", true);
+    entries = data.getModifiedPersistentEntries();
+    assertEquals(2, entries.size());
+    assertEquals("5", entries.get("a"));
+
+    data.getEntry("a");
+    data.removeEntry("a");
+    assertFalse(data.isModified());
+  }
+
+  private void assertCompact(final Object value)
+  {
+    final String str = UserXmlPreferencesDao.toCompactString(value);
+    assertEquals(UserXmlPreferencesDao.COMPACT_PREFIX, str.charAt(0));
+    assertEquals(value, UserXmlPreferencesDao.fromCompactString(str));
+  }
+}
@@ -26,6 +26,8 @@ package org.projectforge.user;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.util.Map;
+
 import org.junit.Test;
 import org.projectforge.access.AccessException;
 import org.projectforge.test.TestBase;
@@ -35,11 +37,18 @@ public class UserXmlPreferencesTestFork extends TestBase
 {
   UserXmlPreferencesCache userXmlPreferencesCache;
 
+  UserXmlPreferencesDao userXmlPreferencesDao;
+
   public void setUserXmlPreferencesCache(UserXmlPreferencesCache userXmlPreferencesCache)
   {
     this.userXmlPreferencesCache = userXmlPreferencesCache;
   }
 
+  public void setUserXmlPreferencesDao(UserXmlPreferencesDao userXmlPreferencesDao)
+  {
+    this.userXmlPreferencesDao = userXmlPreferencesDao;
+  }
+
   @Test
   public void testUserDO()
   {
@@ -72,4 +81,42 @@ public class UserXmlPreferencesTestFork extends TestBase
     logon(user2);
     assertEquals("ProjectForge", userXmlPreferencesCache.getEntry(user1.getId(), "application"));
   }
+
+  @Test
+  public void testFailedFlush()
+  {
+    PFUserDO user1 = getUser("user1");
+    logon(user1);
+    userXmlPreferencesCache.putEntry(user1.getId(), "failedFlush", "Hurzel", true);
+    UserXmlPreferencesMap data = userXmlPreferencesCache.ensureAndGetUserPreferencesData(user1.getId());
+    assertEquals(true, data.isModified());
+    userXmlPreferencesCache.setUserXmlPreferencesDao(new UserXmlPreferencesDao() {
+      @Override
+      public void saveOrUpdateUserEntries(Map<Integer, Map<String, Object>> entriesByUser)
+      {
+        throw new RuntimeException("Test exception: data-base not available.");
+      }
+
+      @Override
+      public void saveOrUpdateUserEntries(Integer userId, Map<String, Object> entries, boolean checkAccess)
+      {
+        throw new RuntimeException("Test exception: data-base not available.");
+      }
+    });
+    try {
+      userXmlPreferencesCache.refresh();
+      assertEquals("Entry has to be written by the next flush.", true, data.isModified());
+    } finally {
+      userXmlPreferencesCache.setUserXmlPreferencesDao(userXmlPreferencesDao);
+    }
+    userXmlPreferencesCache.refresh();
+    assertEquals(false, data.isModified());
+    Object value = null;
+    for (UserXmlPreferencesDO userPrefs : userXmlPreferencesDao.getUserPreferencesByUserId(user1.getId())) {
+      if ("failedFlush".equals(userPrefs.getKey()) == true) {
+        value = userXmlPreferencesDao.deserialize(userPrefs, true);
+      }
+    }
+    assertEquals("Hurzel", value);
+  }
 }
@@ -0,0 +1,94 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.web.calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class CalendarFeedCacheTest
+{
+  private static final byte[] CONTENT = "BEGIN:VCALENDAR".getBytes();
+
+  @Test
+  public void getAndInvalidate()
+  {
+    final CalendarFeedCache cache = new CalendarFeedCache();
+    final CalendarFeedCache.Entry entry = cache.put(1, "token=a&teamCals=1;5", createParams("teamCals", "1;5"), CONTENT);
+    cache.put(1, "token=a&timesheetUser=1", createParams("timesheetUser", "1"), CONTENT);
+    cache.put(2, "token=b&teamCals=15", createParams("teamCals", "15"), CONTENT);
+    assertSame(entry, cache.get(1, "token=a&teamCals=1;5"));
+    assertNull(cache.get(2, "token=a&teamCals=1;5"));
+    assertNull(cache.get(1, "token=c&teamCals=1;5"));
+
+    cache.invalidate("teamCals", "15");
+    assertNull(cache.get(2, "token=b&teamCals=15"));
+    assertNotNull(cache.get(1, "token=a&teamCals=1;5"));
+    cache.invalidate("teamCals", "5");
+    assertNull(cache.get(1, "token=a&teamCals=1;5"));
+    assertNotNull(cache.get(1, "token=a&timesheetUser=1"));
+    cache.invalidate("teamCals", "1");
+    assertNotNull(cache.get(1, "token=a&timesheetUser=1"));
+    cache.invalidate("timesheetUser", "1");
+    assertNull(cache.get(1, "token=a&timesheetUser=1"));
+  }
+
+  @Test
+  public void notModified()
+  {
+    final CalendarFeedCache cache = new CalendarFeedCache();
+    final CalendarFeedCache.Entry entry = cache.put(1, "token=a", createParams("token", "a"), CONTENT);
+    final String eTag = entry.getETag();
+    assertTrue(eTag.startsWith("\"") == true && eTag.endsWith("\"") == true);
+    assertEquals(eTag, cache.put(1, "token=a", createParams("token", "a"), CONTENT).getETag());
+    assertFalse(eTag.equals(cache.put(1, "token=a", createParams("token", "a"), "END:VCALENDAR".getBytes()).getETag()));
+
+    assertTrue(entry.isNotModified(eTag, -1));
+    assertTrue(entry.isNotModified("\"other\", " + eTag, -1));
+    assertTrue(entry.isNotModified("W/" + eTag, -1));
+    assertTrue(entry.isNotModified("*", -1));
+    assertFalse(entry.isNotModified("\"other\"", -1));
+    assertFalse(entry.isNotModified(null, -1));
+    assertTrue(entry.isNotModified(null, entry.getLastModified()));
+    assertFalse(entry.isNotModified(null, entry.getLastModified() - 1000));
+    // If-None-Match wins:
+    assertFalse(entry.isNotModified("\"other\"", entry.getLastModified()));
+  }
+
+  private Map<String, String> createParams(final String key, final String value)
+  {
+    final Map<String, String> params = new HashMap<String, String>();
+    params.put(key, value);
+    return params;
+  }
+}
@@ -407,6 +407,50 @@ public class XmlStreamTest extends TestBase
     assertEquals(list.get(1), list.get(2));
   }
 
+  @Test
+  public void testStreamingMode()
+  {
+    TestObject obj = create("s1 <&\"quoted\">", "", null, null, "t1", "", 5.0, 0.0, 0, 42);
+    obj.testObject = obj; // Self reference.
+    obj.color1 = TestEnum.RED;
+    obj.s0 = "a < b & c";
+    TestObject2 obj2 = new TestObject2();
+    obj2.testObject = obj;
+    obj2.testObjectIFace = obj;
+    obj2.list = new ArrayList<TestObject>();
+    obj2.list.add(obj);
+    obj = new TestObject();
+    obj.s1 = "Fin";
+    obj2.list.add(obj);
+    obj2.list.add(obj);
+    obj2.set = new HashSet<TestObject>();
+    final String xml = new XmlObjectWriter().writeToXml(obj2);
+    assertEquals("Streaming and dom4j mode should produce the same output.", xml,
+        new XmlObjectWriter().setStreamingMode(true).writeToXml(obj2));
+    final XmlObjectReader reader = new XmlObjectReader().setStreamingMode(true);
+    reader.initialize(TestObject2.class);
+    obj2 = (TestObject2) reader.read(xml);
+    assertNull(reader.getWarnings());
+    assertEquals("s1 <&\"quoted\">", obj2.testObject.s1);
+    assertEquals("a < b & c", obj2.testObject.s0);
+    assertEquals("t1", obj2.testObject.t1);
+    assertEquals(TestEnum.RED, obj2.testObject.color1);
+    assertTrue(obj2.testObject == obj2.testObjectIFace);
+    assertTrue(obj2.testObject == obj2.testObject.testObject);
+    assertEquals(0, obj2.set.size());
+    final ArrayList<TestObject> list = (ArrayList<TestObject>) obj2.list;
+    assertEquals("list should contain 3 elements", 3, list.size());
+    assertTrue(obj2.testObject == list.get(0));
+    assertEquals("Fin", list.get(1).s1);
+    assertTrue(list.get(1) == list.get(2));
+
+    obj = (TestObject) reader.read("<test color1=\"blue\" unknown=\"1\"><s0><![CDATA[Hallo]]></s0><unknown2/></test>");
+    log.info("***** TESTMODE: The last warning message of XmlObjectReader while parsing xml was expected.");
+    assertEquals(TestEnum.BLUE, obj.color1);
+    assertEquals("Hallo", obj.s0);
+    assertEquals("Ignored xml attribute: /test/@unknown\nIgnored xml element: /test/unknown2\n", reader.getWarnings());
+  }
+
   @XmlObject(alias = "ProjectForge")
   public class MyRootElement extends ProjectForgeRootElement
   {